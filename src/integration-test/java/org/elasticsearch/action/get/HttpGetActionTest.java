@@ -0,0 +1,76 @@
+package org.elasticsearch.action.get;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpGetActionTest {
+
+    @Test
+    public void testSourceFiltering() throws Exception {
+        HttpGetAction action = new HttpGetAction(Settings.EMPTY);
+        URL url = new URL("http://localhost:9200");
+        GetRequest request = new GetRequest("test", "test", "1")
+                .fetchSourceContext(new FetchSourceContext(new String[]{"a", "b"}, new String[]{"c"}));
+        Map<String, List<String>> params = new QueryStringDecoder(action.createHttpRequest(url, request).getUri())
+                .getParameters();
+        assertEquals(Arrays.asList("a,b"), params.get("_source_include"));
+        assertEquals(Arrays.asList("c"), params.get("_source_exclude"));
+        assertFalse(params.containsKey("_source"));
+        request = new GetRequest("test", "test", "1").fetchSourceContext(new FetchSourceContext(false));
+        params = new QueryStringDecoder(action.createHttpRequest(url, request).getUri()).getParameters();
+        assertEquals(Arrays.asList("false"), params.get("_source"));
+        request = new GetRequest("test", "test", "1");
+        QueryStringDecoder decoder = new QueryStringDecoder(action.createHttpRequest(url, request).getUri());
+        assertEquals("/test/test/1", decoder.getPath());
+        assertTrue(decoder.getParameters().isEmpty());
+    }
+
+    @Test
+    public void testParseFound() throws Exception {
+        GetResult result = parse("{\"_index\":\"test\",\"_type\":\"test\",\"_id\":\"1\",\"_version\":3,\"found\":true," +
+                "\"_source\":{\"name\":\"Hello\",\"tags\":[\"a\",\"b\"]},\"fields\":{\"f\":[1,2]}}");
+        assertEquals("test", result.getIndex());
+        assertEquals("test", result.getType());
+        assertEquals("1", result.getId());
+        assertEquals(3L, result.getVersion());
+        assertTrue(result.isExists());
+        assertEquals("Hello", result.sourceAsMap().get("name"));
+        assertEquals(Arrays.<Object>asList(1, 2), result.field("f").getValues());
+    }
+
+    @Test
+    public void testParseNotFound() throws Exception {
+        GetResult result = parse("{\"_index\":\"test\",\"_type\":\"test\",\"_id\":\"2\",\"found\":false}");
+        assertEquals("2", result.getId());
+        assertFalse(result.isExists());
+        assertNull(result.sourceRef());
+    }
+
+    @Test(expected = ElasticsearchException.class)
+    public void testParseError() throws Exception {
+        parse("{\"error\":{\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"},\"status\":404}");
+    }
+
+    private static GetResult parse(String json) throws Exception {
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(json)) {
+            parser.nextToken();
+            return HttpGetResultParser.parse(parser);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class HttpMultiSearchActionTest {
+
+    @Test
+    public void testHeader() throws Exception {
+        HttpMultiSearchAction action = new HttpMultiSearchAction(Settings.EMPTY);
+        MultiSearchRequest request = new MultiSearchRequest()
+                .add(new SearchRequest("test").types("doc").routing("r").preference("_local"))
+                .add(new SearchRequest("test").requestCache(true)
+                        .indicesOptions(IndicesOptions.lenientExpandOpen()))
+                .add(new SearchRequest("test").requestCache(false)
+                        .indicesOptions(IndicesOptions.fromOptions(false, true, true, true)));
+        String[] lines = action.createHttpRequest(new URL("http://localhost:9200"), request).getContent()
+                .toString(CharsetUtil.UTF_8).split("\n");
+        assertEquals(6, lines.length);
+        Map<String, Object> header = parse(lines[0]);
+        assertEquals("r", header.get("routing"));
+        assertEquals("_local", header.get("preference"));
+        // default options are left to the server
+        assertFalse(header.containsKey("request_cache"));
+        assertFalse(header.containsKey("ignore_unavailable"));
+        assertFalse(header.containsKey("allow_no_indices"));
+        assertFalse(header.containsKey("expand_wildcards"));
+        header = parse(lines[2]);
+        assertEquals(true, header.get("request_cache"));
+        assertEquals(true, header.get("ignore_unavailable"));
+        assertEquals(true, header.get("allow_no_indices"));
+        assertEquals("open", header.get("expand_wildcards"));
+        header = parse(lines[4]);
+        assertEquals(false, header.get("request_cache"));
+        assertEquals(false, header.get("ignore_unavailable"));
+        assertEquals(true, header.get("allow_no_indices"));
+        assertEquals("all", header.get("expand_wildcards"));
+        assertEquals("{}", lines[5]);
+    }
+
+    private static Map<String, Object> parse(String line) throws Exception {
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(line)) {
+            return parser.map();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpSearchResponseParserTest {
+
+    @Test
+    public void testParse() throws Exception {
+        SearchResponse response = parse("{\"_scroll_id\":\"abc\",\"took\":5,\"timed_out\":false," +
+                "\"_shards\":{\"total\":5,\"successful\":4,\"failed\":1}," +
+                "\"hits\":{\"total\":2,\"max_score\":1.5,\"hits\":[" +
+                "{\"_index\":\"test\",\"_type\":\"test\",\"_id\":\"1\",\"_score\":1.5,\"_source\":{\"name\":\"a\"}," +
+                "\"sort\":[1,\"x\"]}," +
+                "{\"_index\":\"test\",\"_type\":\"test\",\"_id\":\"2\",\"_score\":0.5,\"fields\":{\"f\":[\"v\"]}}]}," +
+                "\"aggregations\":{\"agg\":{\"value\":1}}}");
+        assertEquals("abc", response.getScrollId());
+        assertEquals(5L, response.getTookInMillis());
+        assertFalse(response.isTimedOut());
+        assertEquals(5, response.getTotalShards());
+        assertEquals(4, response.getSuccessfulShards());
+        assertEquals(2L, response.getHits().getTotalHits());
+        assertEquals(1.5f, response.getHits().getMaxScore(), 0.0f);
+        SearchHit[] hits = response.getHits().getHits();
+        assertEquals(2, hits.length);
+        assertEquals("1", hits[0].getId());
+        assertEquals("test", hits[0].getIndex());
+        assertEquals("a", hits[0].getSource().get("name"));
+        assertArrayEquals(new Object[]{1, "x"}, hits[0].getSortValues());
+        assertEquals("2", hits[1].getId());
+        assertEquals("v", hits[1].field("f").getValue());
+    }
+
+    @Test
+    public void testParseEmpty() throws Exception {
+        SearchResponse response = parse("{\"took\":1,\"timed_out\":true,\"_shards\":{\"total\":1,\"successful\":1}," +
+                "\"hits\":{\"total\":0,\"max_score\":null,\"hits\":[]}}");
+        assertTrue(response.isTimedOut());
+        assertEquals(0L, response.getHits().getTotalHits());
+        assertEquals(0, response.getHits().getHits().length);
+    }
+
+    @Test(expected = ElasticsearchException.class)
+    public void testParseError() throws Exception {
+        parse("{\"error\":{\"type\":\"search_phase_execution_exception\",\"reason\":\"all shards failed\"},\"status\":400}");
+    }
+
+    private static SearchResponse parse(String json) throws Exception {
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(json)) {
+            parser.nextToken();
+            return HttpSearchResponseParser.parse(parser);
+        }
+    }
+}
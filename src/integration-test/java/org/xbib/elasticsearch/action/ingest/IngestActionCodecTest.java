@@ -0,0 +1,163 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.index.VersionType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IngestActionCodecTest {
+
+    private static final long[] VERSIONS = {
+            Versions.MATCH_ANY, Versions.NOT_FOUND, Versions.NOT_SET, Versions.MATCH_DELETED,
+            0L, 1L, 127L, 128L, 1L << 62, (1L << 62) + 1L, Long.MAX_VALUE, Long.MIN_VALUE
+    };
+
+    @Test
+    public void testIndex() throws Exception {
+        IndexRequest request = new IndexRequest("test", "type", "1").source("{\"a\":1}")
+                .routing("r").parent("p").timestamp("1000").ttl(60000L).refresh(true);
+        IndexRequest copy = (IndexRequest) roundTrip(request).get(0);
+        assertEquals("test", copy.index());
+        assertEquals("type", copy.type());
+        assertEquals("1", copy.id());
+        assertEquals("r", copy.routing());
+        assertEquals("p", copy.parent());
+        assertEquals("1000", copy.timestamp());
+        assertEquals(60000L, copy.ttl().millis());
+        assertTrue(copy.refresh());
+        assertFalse(copy.autoGeneratedId());
+        assertEquals(IndexRequest.OpType.INDEX, copy.opType());
+        assertEquals("{\"a\":1}", copy.source().toUtf8());
+    }
+
+    @Test
+    public void testIndexWithoutOptionalFields() throws Exception {
+        IndexRequest copy = (IndexRequest) roundTrip(new IndexRequest("test", "type").source("{}")).get(0);
+        assertNull(copy.id());
+        assertNull(copy.routing());
+        assertNull(copy.parent());
+        assertNull(copy.timestamp());
+        assertNull(copy.ttl());
+        assertFalse(copy.refresh());
+        assertEquals(Versions.MATCH_ANY, copy.version());
+        assertEquals(VersionType.INTERNAL, copy.versionType());
+    }
+
+    @Test
+    public void testCreateWithAutoGeneratedId() throws Exception {
+        IndexRequest request = new IndexRequest("test", "type").source("{\"a\":1}");
+        request.process(MetaData.builder().build(), null, true, "test");
+        assertTrue(request.autoGeneratedId());
+        IndexRequest copy = (IndexRequest) roundTrip(request).get(0);
+        assertTrue(copy.autoGeneratedId());
+        assertEquals(request.id(), copy.id());
+        assertEquals(IndexRequest.OpType.CREATE, copy.opType());
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        DeleteRequest request = new DeleteRequest("test", "type", "1").routing("r").refresh(true);
+        DeleteRequest copy = (DeleteRequest) roundTrip(request).get(0);
+        assertEquals("test", copy.index());
+        assertEquals("type", copy.type());
+        assertEquals("1", copy.id());
+        assertEquals("r", copy.routing());
+        assertTrue(copy.refresh());
+        assertFalse(((DeleteRequest) roundTrip(new DeleteRequest("test", "type", "1")).get(0)).refresh());
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        UpdateRequest request = new UpdateRequest("test", "type", "1").doc("{\"a\":1}").retryOnConflict(3);
+        UpdateRequest copy = (UpdateRequest) roundTrip(request).get(0);
+        assertEquals("1", copy.id());
+        assertEquals(3, copy.retryOnConflict());
+        assertEquals("{\"a\":1}", copy.doc().source().toUtf8());
+    }
+
+    @Test
+    public void testNull() throws Exception {
+        List<ActionRequest<?>> copy = roundTrip(new IndexRequest("test", "type", "1").source("{}"), null,
+                new DeleteRequest("test", "type", "2"));
+        assertEquals(3, copy.size());
+        assertNull(copy.get(1));
+        assertTrue(copy.get(2) instanceof DeleteRequest);
+    }
+
+    @Test
+    public void testVersions() throws Exception {
+        for (VersionType versionType : VersionType.values()) {
+            for (long version : VERSIONS) {
+                IndexRequest index = new IndexRequest("test", "type", "1").source("{}")
+                        .version(version).versionType(versionType);
+                DeleteRequest delete = new DeleteRequest("test", "type", "1");
+                delete.version(version).versionType(versionType);
+                List<ActionRequest<?>> copy = roundTrip(index, delete);
+                assertEquals(version, ((IndexRequest) copy.get(0)).version());
+                assertEquals(versionType, ((IndexRequest) copy.get(0)).versionType());
+                assertEquals(version, ((DeleteRequest) copy.get(1)).version());
+                assertEquals(versionType, ((DeleteRequest) copy.get(1)).versionType());
+            }
+        }
+    }
+
+    @Test
+    public void testSourcesAreSliced() throws Exception {
+        List<ActionRequest<?>> copy = roundTrip(new IndexRequest("test", "type", "1").source("{\"a\":1}"),
+                new DeleteRequest("test", "type", "2"),
+                new IndexRequest("other", "type", "3").source("{\"b\":22}"));
+        assertEquals("{\"a\":1}", ((IndexRequest) copy.get(0)).source().toUtf8());
+        assertEquals("other", ((IndexRequest) copy.get(2)).index());
+        assertEquals("{\"b\":22}", ((IndexRequest) copy.get(2)).source().toUtf8());
+    }
+
+    @Test
+    public void testSize() throws Exception {
+        List<ActionRequest<?>> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(new IndexRequest("test", "type", Integer.toString(i)).source("{\"a\":" + i + "}"));
+        }
+        requests.add(new DeleteRequest("test", "type", "1"));
+        // the stream format of the requests, as written one by one
+        BytesStreamOutput plain = new BytesStreamOutput();
+        for (ActionRequest<?> request : requests) {
+            plain.writeByte((byte) (request instanceof IndexRequest ? 0 : 1));
+            request.writeTo(plain);
+        }
+        BytesStreamOutput compact = new BytesStreamOutput();
+        IngestActionCodec.writeActions(compact, requests);
+        assertTrue(compact.size() + " bytes, plain " + plain.size() + " bytes", compact.size() * 2 < plain.size());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testUnknownFormat() throws Exception {
+        BytesStreamOutput out = new BytesStreamOutput();
+        out.writeByte((byte) (IngestActionCodec.FORMAT_VERSION + 1));
+        IngestActionCodec.readActions(StreamInput.wrap(out.bytes()), new ArrayList<ActionRequest<?>>());
+    }
+
+    private static List<ActionRequest<?>> roundTrip(ActionRequest<?>... requests) throws Exception {
+        BytesStreamOutput out = new BytesStreamOutput();
+        IngestActionCodec.writeActions(out, Arrays.<ActionRequest<?>>asList(requests));
+        List<ActionRequest<?>> list = new ArrayList<>();
+        StreamInput in = StreamInput.wrap(out.bytes());
+        IngestActionCodec.readActions(in, list);
+        assertEquals(0, in.available());
+        return list;
+    }
+}
@@ -0,0 +1,109 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IngestExecutorTest {
+
+    private ThreadPool threadPool;
+
+    @Before
+    public void setup() {
+        threadPool = new ThreadPool("test");
+    }
+
+    @After
+    public void cleanup() {
+        ThreadPool.terminate(threadPool, 10L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testMarker() throws Exception {
+        assertFalse(IngestExecutor.isCurrentThread());
+        final AtomicBoolean marked = new AtomicBoolean();
+        final AtomicBoolean nested = new AtomicBoolean();
+        IngestExecutor.wrap(new AbstractRunnable() {
+            @Override
+            public void onFailure(Throwable t) {
+            }
+
+            @Override
+            protected void doRun() throws Exception {
+                IngestExecutor.wrap(new AbstractRunnable() {
+                    @Override
+                    public void onFailure(Throwable t) {
+                    }
+
+                    @Override
+                    protected void doRun() throws Exception {
+                        nested.set(IngestExecutor.isCurrentThread());
+                    }
+                }).run();
+                // still marked after a nested task
+                marked.set(IngestExecutor.isCurrentThread());
+            }
+        }).run();
+        assertTrue(nested.get());
+        assertTrue(marked.get());
+        assertFalse(IngestExecutor.isCurrentThread());
+    }
+
+    @Test
+    public void testThreadsOfSameNameAreNotMarked() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicBoolean plain = new AtomicBoolean(true);
+        final AtomicBoolean wrapped = new AtomicBoolean();
+        threadPool.executor(ThreadPool.Names.GENERIC).execute(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().setName(Thread.currentThread().getName() + "[" + IngestAction.EXECUTOR + "]");
+                plain.set(IngestExecutor.isCurrentThread());
+                latch.countDown();
+            }
+        });
+        threadPool.executor(ThreadPool.Names.GENERIC).execute(IngestExecutor.wrap(new AbstractRunnable() {
+            @Override
+            public void onFailure(Throwable t) {
+            }
+
+            @Override
+            protected void doRun() throws Exception {
+                wrapped.set(IngestExecutor.isCurrentThread());
+                latch.countDown();
+            }
+        }));
+        assertTrue(latch.await(10L, TimeUnit.SECONDS));
+        assertFalse(plain.get());
+        assertTrue(wrapped.get());
+    }
+
+    @Test
+    public void testFailureIsDelegated() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        IngestExecutor.wrap(new AbstractRunnable() {
+            @Override
+            public void onFailure(Throwable t) {
+                failure.set(t);
+            }
+
+            @Override
+            protected void doRun() throws Exception {
+                throw new IllegalStateException("failed");
+            }
+        }).run();
+        assertEquals("failed", failure.get().getMessage());
+        assertFalse(IngestExecutor.isCurrentThread());
+    }
+}
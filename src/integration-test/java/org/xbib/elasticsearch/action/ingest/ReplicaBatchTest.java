@@ -0,0 +1,147 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardRequest;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicaBatchTest {
+
+    @Test
+    public void testFirstBatchIsSentAtOnce() throws Exception {
+        Fixture fixture = new Fixture(3);
+        fixture.leaderResponse(0);
+        // the replicas of the first leader do not wait for the other leaders
+        assertEquals(1, fixture.sender.batches.size());
+        assertEquals(1, fixture.sender.batches.get(0).size());
+        fixture.leaderResponse(1);
+        fixture.leaderResponse(2);
+        // collected while the first batch is in flight
+        assertEquals(1, fixture.sender.batches.size());
+        fixture.sender.respond(0);
+        assertEquals(2, fixture.sender.batches.size());
+        assertEquals(2, fixture.sender.batches.get(1).size());
+        assertFalse(fixture.future.isDone());
+        fixture.sender.respond(1);
+        IngestResponse response = fixture.future.get();
+        assertEquals(3, response.replicaShardResponses().size());
+        assertTrue(response.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testIdleBatchSendsNextLeader() throws Exception {
+        Fixture fixture = new Fixture(2);
+        fixture.leaderResponse(0);
+        fixture.sender.respond(0);
+        assertFalse(fixture.future.isDone());
+        fixture.leaderResponse(1);
+        assertEquals(2, fixture.sender.batches.size());
+        assertEquals(1, fixture.sender.batches.get(1).size());
+        fixture.sender.respond(1);
+        assertEquals(2, fixture.future.get().replicaShardResponses().size());
+    }
+
+    @Test
+    public void testReplicaFailuresStayInReplicaResponses() throws Exception {
+        Fixture fixture = new Fixture(1);
+        fixture.sender.failedShards.add(0);
+        fixture.leaderResponse(0);
+        fixture.sender.respond(0);
+        IngestResponse response = fixture.future.get();
+        // reported like the replica responses without batching
+        assertTrue(response.getFailures().isEmpty());
+        assertEquals(1, response.replicaShardResponses().size());
+        assertEquals(1, response.replicaShardResponses().get(0).getFailures().size());
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        Fixture fixture = new Fixture(2);
+        fixture.leaderResponse(0);
+        fixture.leaderResponse(1);
+        fixture.sender.fail(0, new IllegalStateException("node gone"));
+        fixture.sender.respond(1);
+        IngestResponse response = fixture.future.get();
+        assertEquals(1, response.getFailures().size());
+        assertEquals(1, response.replicaShardResponses().size());
+    }
+
+    /**
+     * An ingest request over a number of shards, with the response counter of the transport action.
+     */
+    private static class Fixture {
+
+        final RecordingSender sender = new RecordingSender();
+
+        final PlainActionFuture<IngestResponse> future = PlainActionFuture.newFuture();
+
+        final IngestResponse ingestResponse = new IngestResponse();
+
+        final AtomicInteger responseCounter;
+
+        final ReplicaBatch batch;
+
+        Fixture(int shards) {
+            this.responseCounter = new AtomicInteger(shards);
+            this.batch = new ReplicaBatch(sender, new IngestRequest(), ingestResponse, new AtomicInteger(),
+                    responseCounter, System.currentTimeMillis(), future);
+        }
+
+        void leaderResponse(int shard) {
+            batch.add(new IngestReplicaShardRequest(1L, new ShardId("test", shard),
+                    Collections.<ActionRequest<?>>emptyList()));
+            if (responseCounter.decrementAndGet() == 0) {
+                future.onResponse(ingestResponse);
+            }
+        }
+    }
+
+    /**
+     * Records the batches, and answers them when told to.
+     */
+    private static class RecordingSender implements ReplicaBatch.Sender {
+
+        final List<List<IngestReplicaShardRequest>> batches = new ArrayList<>();
+
+        final List<ActionListener<List<IngestReplicaShardResponse>>> listeners = new ArrayList<>();
+
+        final List<Integer> failedShards = new ArrayList<>();
+
+        @Override
+        public synchronized void executeByNode(List<IngestReplicaShardRequest> requests,
+                                               ActionListener<List<IngestReplicaShardResponse>> listener) {
+            batches.add(requests);
+            listeners.add(listener);
+        }
+
+        void respond(int batch) {
+            List<IngestReplicaShardResponse> responses = new LinkedList<>();
+            for (IngestReplicaShardRequest request : batches.get(batch)) {
+                List<IngestActionFailure> failures = new LinkedList<>();
+                if (failedShards.contains(request.shardId().id())) {
+                    failures.add(new IngestActionFailure(request.ingestId(), request.shardId(), "replica failed"));
+                }
+                responses.add(new IngestReplicaShardResponse(request.ingestId(), request.shardId(), 1,
+                        failures.isEmpty() ? 1 : 0, 1L, failures));
+            }
+            listeners.get(batch).onResponse(responses);
+        }
+
+        void fail(int batch, Throwable t) {
+            listeners.get(batch).onFailure(t);
+        }
+    }
+}
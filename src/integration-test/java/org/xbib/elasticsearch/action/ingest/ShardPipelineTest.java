@@ -0,0 +1,246 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.leader.IngestLeaderShardRequest;
+import org.xbib.elasticsearch.action.ingest.leader.IngestLeaderShardResponse;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardRequest;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardPipelineTest {
+
+    @Test
+    public void testChunks() throws Exception {
+        Fixture fixture = new Fixture(7, 3, 1);
+        fixture.pipeline.start();
+        // the next chunk is sent after the leader has answered the previous chunk
+        assertEquals(1, fixture.shard.leaderRequests.size());
+        assertEquals(3, fixture.shard.leaderRequests.get(0).getActionRequests().size());
+        fixture.shard.leaderRespond(0, 0);
+        assertEquals(2, fixture.shard.leaderRequests.size());
+        assertEquals(3, fixture.shard.leaderRequests.get(1).getActionRequests().size());
+        fixture.shard.leaderRespond(1, 0);
+        assertEquals(3, fixture.shard.leaderRequests.size());
+        assertEquals(1, fixture.shard.leaderRequests.get(2).getActionRequests().size());
+        assertFalse(fixture.future.isDone());
+        fixture.shard.leaderRespond(2, 0);
+        // the chunks keep the order of the actions
+        assertEquals("0", ((IndexRequest) fixture.shard.leaderRequests.get(0).getActionRequests().get(0)).id());
+        assertEquals("3", ((IndexRequest) fixture.shard.leaderRequests.get(1).getActionRequests().get(0)).id());
+        assertEquals("6", ((IndexRequest) fixture.shard.leaderRequests.get(2).getActionRequests().get(0)).id());
+        assertEquals(2, fixture.shard.forks.get());
+        IngestResponse response = fixture.future.get();
+        assertEquals(7, response.successSize());
+        assertTrue(response.getFailures().isEmpty());
+        assertTrue(fixture.shard.replicaRequests.isEmpty());
+    }
+
+    @Test
+    public void testReplicaChunksInOrder() throws Exception {
+        Fixture fixture = new Fixture(6, 2, 1);
+        fixture.pipeline.start();
+        fixture.shard.leaderRespond(0, 1);
+        // the replicas of the first chunk do not wait for the leader
+        assertEquals(1, fixture.shard.replicaRequests.size());
+        fixture.shard.leaderRespond(1, 1);
+        fixture.shard.leaderRespond(2, 1);
+        // one replica chunk at a time
+        assertEquals(1, fixture.shard.replicaRequests.size());
+        fixture.shard.replicaRespond(0);
+        assertEquals(2, fixture.shard.replicaRequests.size());
+        assertSame(fixture.shard.leaderResponses.get(1).getActionRequests(),
+                fixture.shard.replicaRequests.get(1).actionRequests());
+        fixture.shard.replicaRespond(1);
+        assertEquals(3, fixture.shard.replicaRequests.size());
+        assertSame(fixture.shard.leaderResponses.get(2).getActionRequests(),
+                fixture.shard.replicaRequests.get(2).actionRequests());
+        // the shard is done after the last replica chunk
+        assertFalse(fixture.future.isDone());
+        fixture.shard.replicaRespond(2);
+        IngestResponse response = fixture.future.get();
+        assertEquals(3, response.replicaShardResponses().size());
+        assertTrue(response.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testFailedChunkSkipsRemainingActions() throws Exception {
+        Fixture fixture = new Fixture(7, 3, 1);
+        fixture.pipeline.start();
+        fixture.shard.leaderRespond(0, 1);
+        fixture.shard.leaderFail(1, new IllegalStateException("leader gone"));
+        assertEquals(2, fixture.shard.leaderRequests.size());
+        assertFalse(fixture.future.isDone());
+        fixture.shard.replicaRespond(0);
+        IngestResponse response = fixture.future.get();
+        assertEquals(3, response.successSize());
+        // the failure of the chunk, and each action of the skipped chunk
+        assertEquals(2, response.getFailures().size());
+        assertTrue(response.getFailures().get(0).message().contains("leader gone"));
+        assertTrue(response.getFailures().get(1).message().startsWith("skipped [test][type][6]"));
+        assertTrue(response.getFailures().get(1).message().contains("leader gone"));
+    }
+
+    @Test
+    public void testRejectedChunkRejectsShard() throws Exception {
+        Fixture fixture = new Fixture(7, 3, 1);
+        fixture.shard.rejectForks = true;
+        fixture.pipeline.start();
+        fixture.shard.leaderRespond(0, 0);
+        assertEquals(1, fixture.shard.leaderRequests.size());
+        try {
+            fixture.future.get();
+            fail();
+        } catch (ExecutionException e) {
+            // the client receives the rejection of the ingest executor
+            assertTrue(e.getCause() instanceof EsRejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void testRejectedChunkSkipsRemainingActions() throws Exception {
+        Fixture fixture = new Fixture(7, 3, 2);
+        fixture.shard.rejectForks = true;
+        fixture.pipeline.start();
+        fixture.shard.leaderRespond(0, 0);
+        // the other shard succeeds
+        fixture.countDown();
+        IngestResponse response = fixture.future.get();
+        assertEquals(3, response.successSize());
+        assertEquals(4, response.getFailures().size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(response.getFailures().get(i).message().startsWith("skipped [test][type][" + (i + 3) + "]"));
+        }
+    }
+
+    @Test
+    public void testRejectedFirstChunk() throws Exception {
+        Fixture fixture = new Fixture(4, 2, 1);
+        fixture.pipeline.start();
+        fixture.shard.leaderFail(0, new EsRejectedExecutionException("rejected"));
+        try {
+            fixture.future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EsRejectedExecutionException);
+        }
+    }
+
+    /**
+     * The pipeline of a shard of an ingest request over a number of shards, with the response counter of the
+     * transport action.
+     */
+    private static class Fixture {
+
+        final RecordingShard shard = new RecordingShard();
+
+        final PlainActionFuture<IngestResponse> future = PlainActionFuture.newFuture();
+
+        final IngestResponse ingestResponse = new IngestResponse();
+
+        final AtomicInteger responseCounter;
+
+        final ShardPipeline pipeline;
+
+        Fixture(int actions, int chunkSize, int shards) {
+            this.responseCounter = new AtomicInteger(shards);
+            List<ActionRequest<?>> actionRequests = new LinkedList<>();
+            for (int i = 0; i < actions; i++) {
+                actionRequests.add(new IndexRequest("test", "type", Integer.toString(i)));
+            }
+            this.pipeline = new ShardPipeline(shard, chunkSize, new IngestRequest(), new ShardId("test", 0),
+                    actionRequests, ingestResponse, new AtomicInteger(), responseCounter, System.currentTimeMillis(),
+                    new TransportIngestAction.RejectionListener(future, shards));
+        }
+
+        void countDown() {
+            if (responseCounter.decrementAndGet() == 0) {
+                future.onResponse(ingestResponse);
+            }
+        }
+    }
+
+    /**
+     * Records the leader and replica requests, and answers them when told to. Forks run at once, or are rejected.
+     */
+    private static class RecordingShard implements ShardPipeline.Shard {
+
+        final List<IngestLeaderShardRequest> leaderRequests = new ArrayList<>();
+
+        final List<ActionListener<IngestLeaderShardResponse>> leaderListeners = new ArrayList<>();
+
+        final List<IngestLeaderShardResponse> leaderResponses = new ArrayList<>();
+
+        final List<IngestReplicaShardRequest> replicaRequests = new ArrayList<>();
+
+        final List<ActionListener<List<IngestReplicaShardResponse>>> replicaListeners = new ArrayList<>();
+
+        final AtomicInteger forks = new AtomicInteger();
+
+        boolean rejectForks;
+
+        @Override
+        public void executeOnLeader(IngestLeaderShardRequest request, ActionListener<IngestLeaderShardResponse> listener) {
+            leaderRequests.add(request);
+            leaderListeners.add(listener);
+        }
+
+        @Override
+        public void executeOnReplica(IngestReplicaShardRequest request,
+                                     ActionListener<List<IngestReplicaShardResponse>> listener) {
+            replicaRequests.add(request);
+            replicaListeners.add(listener);
+        }
+
+        @Override
+        public void fork(AbstractRunnable runnable) {
+            forks.incrementAndGet();
+            if (rejectForks) {
+                runnable.onRejected(new EsRejectedExecutionException("rejected"));
+            } else {
+                runnable.run();
+            }
+        }
+
+        void leaderRespond(int chunk, int quorumShards) {
+            IngestLeaderShardRequest request = leaderRequests.get(chunk);
+            IngestLeaderShardResponse response = new IngestLeaderShardResponse()
+                    .setIngestId(request.getIngestId())
+                    .setShardId(request.getShardId())
+                    .setSuccessCount(request.getActionRequests().size())
+                    .setQuorumShards(quorumShards)
+                    .setActionRequests(new LinkedList<>(request.getActionRequests()));
+            leaderResponses.add(response);
+            leaderListeners.get(chunk).onResponse(response);
+        }
+
+        void leaderFail(int chunk, Throwable t) {
+            leaderListeners.get(chunk).onFailure(t);
+        }
+
+        void replicaRespond(int chunk) {
+            IngestReplicaShardRequest request = replicaRequests.get(chunk);
+            replicaListeners.get(chunk).onResponse(Collections.singletonList(
+                    new IngestReplicaShardResponse(request.ingestId(), request.shardId(), 1,
+                            request.actionRequests().size(), 1L, Collections.<IngestActionFailure>emptyList())));
+        }
+    }
+}
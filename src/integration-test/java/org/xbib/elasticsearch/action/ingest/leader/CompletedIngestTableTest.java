@@ -0,0 +1,147 @@
+package org.xbib.elasticsearch.action.ingest.leader;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompletedIngestTableTest {
+
+    @Test
+    public void testRetry() throws Exception {
+        CompletedIngestTable table = new CompletedIngestTable(10, 60000L);
+        CompletedIngestTable.Key key = CompletedIngestTable.key(request(1L, 0, "1", "2"));
+        PlainActionFuture<IngestLeaderShardResponse> first = PlainActionFuture.newFuture();
+        assertTrue(table.begin(key, first, 0L));
+        // the first execution is retried on another leader shard copy
+        assertTrue(table.begin(key, first, 0L));
+        List<IngestActionFailure> failures = new LinkedList<>();
+        failures.add(new IngestActionFailure(1L, new ShardId("test", 0), "failed"));
+        table.complete(key, first, new IngestLeaderShardResponse().setSuccessCount(1).setFailures(failures));
+        // a retry of the same request
+        PlainActionFuture<IngestLeaderShardResponse> retry = PlainActionFuture.newFuture();
+        assertFalse(table.begin(CompletedIngestTable.key(request(1L, 0, "1", "2")), retry, 0L));
+        IngestLeaderShardResponse response = retry.get();
+        assertEquals(1, response.getSuccessCount());
+        assertEquals(1, response.getFailures().size());
+        assertEquals(0, response.getQuorumShards());
+        assertEquals(0, response.getActionRequests().size());
+        // other actions, other shard, or other ingest ID are not retries
+        assertTrue(table.begin(CompletedIngestTable.key(request(1L, 0, "3", "4")), future(), 0L));
+        assertTrue(table.begin(CompletedIngestTable.key(request(1L, 1, "1", "2")), future(), 0L));
+        assertTrue(table.begin(CompletedIngestTable.key(request(2L, 0, "1", "2")), future(), 0L));
+    }
+
+    @Test
+    public void testRetryWaitsForFirstExecution() throws Exception {
+        CompletedIngestTable table = new CompletedIngestTable(10, 60000L);
+        CompletedIngestTable.Key key = CompletedIngestTable.key(request(1L, 0, "1", "2"));
+        PlainActionFuture<IngestLeaderShardResponse> first = PlainActionFuture.newFuture();
+        assertTrue(table.begin(key, first, 0L));
+        PlainActionFuture<IngestLeaderShardResponse> retry = PlainActionFuture.newFuture();
+        assertFalse(table.begin(key, retry, 0L));
+        assertFalse(retry.isDone());
+        // only the execution itself completes
+        table.complete(key, retry, new IngestLeaderShardResponse().setSuccessCount(2));
+        assertFalse(retry.isDone());
+        table.complete(key, first, new IngestLeaderShardResponse().setSuccessCount(3));
+        assertEquals(3, retry.get().getSuccessCount());
+        assertTrue(retry.get().getFailures().isEmpty());
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        CompletedIngestTable table = new CompletedIngestTable(10, 60000L);
+        CompletedIngestTable.Key key = CompletedIngestTable.key(request(1L, 0, "1"));
+        PlainActionFuture<IngestLeaderShardResponse> first = PlainActionFuture.newFuture();
+        assertTrue(table.begin(key, first, 0L));
+        PlainActionFuture<IngestLeaderShardResponse> retry = PlainActionFuture.newFuture();
+        assertFalse(table.begin(key, retry, 0L));
+        // only the execution itself aborts
+        table.abort(key, retry, new IllegalStateException("other"));
+        assertFalse(retry.isDone());
+        IllegalStateException failure = new IllegalStateException("failed");
+        table.abort(key, first, failure);
+        try {
+            retry.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        // executed again after the abort
+        PlainActionFuture<IngestLeaderShardResponse> again = PlainActionFuture.newFuture();
+        assertTrue(table.begin(key, again, 0L));
+        table.complete(key, again, new IngestLeaderShardResponse().setSuccessCount(1));
+        // completed entries are kept
+        table.abort(key, again, failure);
+        assertFalse(table.begin(key, future(), 0L));
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        CompletedIngestTable table = new CompletedIngestTable(2, 50L);
+        for (long i = 1L; i <= 3L; i++) {
+            CompletedIngestTable.Key key = CompletedIngestTable.key(request(i, 0, "1"));
+            PlainActionFuture<IngestLeaderShardResponse> execution = future();
+            assertTrue(table.begin(key, execution, 0L));
+            table.complete(key, execution, new IngestLeaderShardResponse().setSuccessCount(1));
+        }
+        assertEquals(2, table.size());
+        // the oldest entry has been dropped
+        assertTrue(table.begin(CompletedIngestTable.key(request(1L, 0, "1")), future(), 10L));
+        assertEquals(2, table.size());
+        assertFalse(table.begin(CompletedIngestTable.key(request(3L, 0, "1")), future(), 50L));
+        // expired
+        assertTrue(table.begin(CompletedIngestTable.key(request(3L, 0, "1")), future(), 51L));
+        assertEquals(2, table.size());
+        // a retry waits for the new execution
+        assertFalse(table.begin(CompletedIngestTable.key(request(3L, 0, "1")), future(), 51L));
+    }
+
+    @Test
+    public void testExpiredExecutionFailsWaitingRetries() throws Exception {
+        CompletedIngestTable table = new CompletedIngestTable(10, 50L);
+        CompletedIngestTable.Key key = CompletedIngestTable.key(request(1L, 0, "1"));
+        assertTrue(table.begin(key, future(), 0L));
+        PlainActionFuture<IngestLeaderShardResponse> retry = PlainActionFuture.newFuture();
+        assertFalse(table.begin(key, retry, 0L));
+        assertTrue(table.begin(CompletedIngestTable.key(request(2L, 0, "1")), future(), 100L));
+        assertEquals(1, table.size());
+        assertTrue(retry.isDone());
+        try {
+            retry.get();
+            fail();
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+
+    private static PlainActionFuture<IngestLeaderShardResponse> future() {
+        return PlainActionFuture.newFuture();
+    }
+
+    private static IngestLeaderShardRequest request(long ingestId, int shard, String... ids) {
+        List<ActionRequest<?>> actionRequests = new LinkedList<>();
+        for (String id : ids) {
+            actionRequests.add(new IndexRequest("test", "test", id).source("{}"));
+        }
+        actionRequests.add(new DeleteRequest("test", "test", "x"));
+        return new IngestLeaderShardRequest()
+                .setIngestId(ingestId)
+                .setShardId(new ShardId("test", shard))
+                .setActionRequests(actionRequests);
+    }
+}
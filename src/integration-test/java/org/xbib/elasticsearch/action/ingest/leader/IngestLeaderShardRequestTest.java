@@ -0,0 +1,163 @@
+package org.xbib.elasticsearch.action.ingest.leader;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.cluster.routing.AllocationId;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.Consistency;
+import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IngestLeaderShardRequestTest {
+
+    private final ShardId shardId = new ShardId("test", 0);
+
+    @Test
+    public void testCanResumeOn() throws Exception {
+        AllocationId leader = AllocationId.newInitializing();
+        AllocationId other = AllocationId.newInitializing();
+        IngestLeaderShardRequest request = request();
+        assertFalse(request.canResumeOn(leader));
+        request.setResumeAllocation(leader);
+        assertTrue(request.canResumeOn(leader));
+        assertFalse(request.canResumeOn(other));
+        assertFalse(request.canResumeOn(null));
+        request.setResumeAllocation(null);
+        assertFalse(request.canResumeOn(leader));
+    }
+
+    @Test
+    public void testCanResumeOnRelocationTarget() throws Exception {
+        AllocationId relocating = AllocationId.newRelocation(AllocationId.newInitializing());
+        AllocationId target = AllocationId.newTargetRelocation(relocating);
+        IngestLeaderShardRequest request = request().setResumeAllocation(relocating);
+        assertTrue(request.canResumeOn(relocating));
+        assertTrue(request.canResumeOn(target));
+    }
+
+    @Test
+    public void testRewind() throws Exception {
+        IngestLeaderShardRequest request = request();
+        List<ActionRequest<?>> actions = request.getActionRequests();
+        long[] versions = new long[actions.size()];
+        UpdateRequest[] updates = new UpdateRequest[actions.size()];
+        // the leader executes the index and the delete, and replaces the update by its result
+        versions[0] = Versions.MATCH_ANY;
+        ((IndexRequest) actions.get(0)).version(7L);
+        versions[1] = 3L;
+        ((DeleteRequest) actions.get(1)).version(4L);
+        UpdateRequest update = (UpdateRequest) actions.get(2);
+        updates[2] = update;
+        actions.set(2, new IndexRequest("test", "type", "3").source("{\"a\":2}")
+                .version(12L).versionType(VersionType.EXTERNAL));
+        List<IngestActionFailure> failures = new LinkedList<>();
+        failures.add(new IngestActionFailure(1L, shardId, "failed"));
+        request.setProgress(3, versions, updates, failures).setResumeAllocation(AllocationId.newInitializing());
+        assertEquals(3, request.getResumeOffset());
+
+        request.rewind();
+        assertEquals(0, request.getResumeOffset());
+        assertEquals(Versions.MATCH_ANY, ((IndexRequest) actions.get(0)).version());
+        assertEquals(3L, ((DeleteRequest) actions.get(1)).version());
+        // the update is executed again, not its result with the version of the previous leader
+        assertSame(update, actions.get(2));
+        assertNull(request.getResumeUpdates());
+        assertFalse(request.canResumeOn(AllocationId.newInitializing()));
+        // failures before the offset stay failed
+        assertEquals(1, request.getResumeFailures().size());
+    }
+
+    @Test
+    public void testRewindNoopUpdate() throws Exception {
+        IngestLeaderShardRequest request = request();
+        List<ActionRequest<?>> actions = request.getActionRequests();
+        UpdateRequest update = (UpdateRequest) actions.get(2);
+        UpdateRequest[] updates = new UpdateRequest[actions.size()];
+        updates[2] = update;
+        actions.set(2, null);
+        request.setProgress(3, new long[actions.size()], updates, new LinkedList<IngestActionFailure>());
+        request.rewind();
+        assertSame(update, actions.get(2));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        IngestLeaderShardRequest copy = copy(request());
+        assertEquals(1L, copy.getIngestId());
+        assertEquals(shardId, copy.getShardId());
+        assertEquals("test", copy.index());
+        assertEquals(Consistency.QUORUM, copy.requiredConsistency());
+        assertEquals(4, copy.getActionRequests().size());
+        assertEquals(0, copy.getResumeOffset());
+        assertNull(copy.getResumeVersions());
+        assertNull(copy.getResumeUpdates());
+    }
+
+    @Test
+    public void testSerializationWithProgress() throws Exception {
+        IngestLeaderShardRequest request = request();
+        List<ActionRequest<?>> actions = request.getActionRequests();
+        long[] versions = new long[actions.size()];
+        versions[0] = 5L;
+        versions[1] = Versions.MATCH_ANY;
+        UpdateRequest[] updates = new UpdateRequest[actions.size()];
+        updates[2] = (UpdateRequest) actions.get(2);
+        actions.set(2, new IndexRequest("test", "type", "3").source("{\"a\":2}"));
+        List<IngestActionFailure> failures = new LinkedList<>();
+        failures.add(new IngestActionFailure(1L, shardId, "failed"));
+        AllocationId allocationId = AllocationId.newInitializing();
+        request.setProgress(3, versions, updates, failures).setResumeAllocation(allocationId);
+
+        IngestLeaderShardRequest copy = copy(request);
+        assertEquals(3, copy.getResumeOffset());
+        assertEquals(5L, copy.getResumeVersions()[0]);
+        assertEquals(Versions.MATCH_ANY, copy.getResumeVersions()[1]);
+        assertNull(copy.getResumeUpdates()[0]);
+        assertNull(copy.getResumeUpdates()[1]);
+        assertEquals("3", copy.getResumeUpdates()[2].id());
+        assertNull(copy.getResumeUpdates()[3]);
+        assertEquals(1, copy.getResumeFailures().size());
+        assertEquals("failed", copy.getResumeFailures().get(0).message());
+        assertTrue(copy.canResumeOn(allocationId));
+        copy.rewind();
+        assertTrue(copy.getActionRequests().get(2) instanceof UpdateRequest);
+        assertEquals(5L, ((IndexRequest) copy.getActionRequests().get(0)).version());
+    }
+
+    private IngestLeaderShardRequest request() {
+        List<ActionRequest<?>> actions = new ArrayList<>();
+        actions.add(new IndexRequest("test", "type", "1").source("{\"a\":1}"));
+        actions.add(new DeleteRequest("test", "type", "2"));
+        actions.add(new UpdateRequest("test", "type", "3").doc("{\"a\":2}"));
+        actions.add(new IndexRequest("test", "type", "4").source("{\"a\":4}"));
+        return new IngestLeaderShardRequest()
+                .setIngestId(1L)
+                .setShardId(shardId)
+                .setActionRequests(actions)
+                .requiredConsistency(Consistency.QUORUM);
+    }
+
+    private static IngestLeaderShardRequest copy(IngestLeaderShardRequest request) throws Exception {
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        IngestLeaderShardRequest copy = new IngestLeaderShardRequest();
+        copy.readFrom(StreamInput.wrap(out.bytes()));
+        return copy;
+    }
+}
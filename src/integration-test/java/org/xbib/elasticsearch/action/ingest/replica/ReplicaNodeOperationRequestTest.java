@@ -0,0 +1,78 @@
+package org.xbib.elasticsearch.action.ingest.replica;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicaNodeOperationRequestTest {
+
+    @Test
+    public void testSerialization() throws Exception {
+        List<ActionRequest<?>> actions1 = new ArrayList<>();
+        actions1.add(new IndexRequest("test1", "type", "1").source("{\"a\":1}"));
+        actions1.add(null);
+        actions1.add(new DeleteRequest("test1", "type", "2"));
+        IngestReplicaShardRequest request1 = new IngestReplicaShardRequest(42L, new ShardId("test1", 0), actions1);
+        List<ActionRequest<?>> actions2 = new ArrayList<>();
+        actions2.add(new IndexRequest("test2", "type", "3").source("{\"b\":2}"));
+        IngestReplicaShardRequest request2 = new IngestReplicaShardRequest(42L, new ShardId("test2", 1), actions2);
+        ReplicaNodeOperationRequest request = new ReplicaNodeOperationRequest(Arrays.asList(
+                new ReplicaOperationRequest(1000L, "test1", 0, 1, request1),
+                new ReplicaOperationRequest(2000L, "test2", 1, 2, request2)));
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        ReplicaNodeOperationRequest copy = new ReplicaNodeOperationRequest();
+        StreamInput in = StreamInput.wrap(out.bytes());
+        copy.readFrom(in);
+        assertEquals(0, in.available());
+        assertEquals(2, copy.requests().size());
+
+        ReplicaOperationRequest first = copy.requests().get(0);
+        assertEquals(1000L, first.startTime());
+        assertEquals("test1", first.index());
+        assertEquals(0, first.shardId());
+        assertEquals(1, first.replicaId());
+        assertEquals(42L, first.request().ingestId());
+        assertEquals(new ShardId("test1", 0), first.request().shardId());
+        assertEquals("test1", first.request().index());
+        List<ActionRequest<?>> actions = first.request().actionRequests();
+        assertEquals(3, actions.size());
+        assertTrue(actions.get(0) instanceof IndexRequest);
+        assertEquals("1", ((IndexRequest) actions.get(0)).id());
+        assertEquals("{\"a\":1}", ((IndexRequest) actions.get(0)).source().toUtf8());
+        assertNull(actions.get(1));
+        assertTrue(actions.get(2) instanceof DeleteRequest);
+        assertEquals("2", ((DeleteRequest) actions.get(2)).id());
+
+        ReplicaOperationRequest second = copy.requests().get(1);
+        assertEquals(2000L, second.startTime());
+        assertEquals("test2", second.index());
+        assertEquals(1, second.shardId());
+        assertEquals(2, second.replicaId());
+        assertEquals(new ShardId("test2", 1), second.request().shardId());
+        assertEquals("{\"b\":2}", ((IndexRequest) second.request().actionRequests().get(0)).source().toUtf8());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ReplicaNodeOperationRequest request = new ReplicaNodeOperationRequest(Collections.<ReplicaOperationRequest>emptyList());
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        ReplicaNodeOperationRequest copy = new ReplicaNodeOperationRequest();
+        copy.readFrom(StreamInput.wrap(out.bytes()));
+        assertTrue(copy.requests().isEmpty());
+    }
+}
@@ -0,0 +1,106 @@
+package org.xbib.elasticsearch.helper;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+import org.junit.Test;
+import org.xbib.elasticsearch.NodeTestUtils;
+import org.xbib.elasticsearch.action.ingest.IngestAction;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IngestRejectionTest extends NodeTestUtils {
+
+    @Override
+    protected Settings getNodeSettings() {
+        return settingsBuilder()
+                .put(super.getNodeSettings())
+                .put("threadpool." + IngestAction.EXECUTOR + ".size", 1)
+                .put("threadpool." + IngestAction.EXECUTOR + ".queue_size", 1)
+                .build();
+    }
+
+    @Test
+    public void testFullQueueIsRejected() throws Exception {
+        Client client = client("1");
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth("test").setWaitForGreenStatus().execute().actionGet();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Executor executor = client("1").threadPool().executor(IngestAction.EXECUTOR);
+        try {
+            // occupy the only thread and the only queue slot of the ingest pool
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await(30L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            IngestRequest request = new IngestRequest().ingestId(1L);
+            for (int i = 0; i < 10; i++) {
+                request.add(new IndexRequest("test", "test", Integer.toString(i)).source("{\"n\":" + i + "}"));
+            }
+            try {
+                client.execute(IngestAction.INSTANCE, request).actionGet();
+                fail("expected rejection");
+            } catch (Exception e) {
+                // the client can back off
+                assertTrue(ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException);
+                assertEquals(RestStatus.TOO_MANY_REQUESTS, ExceptionsHelper.status(e));
+            }
+            NodesStatsResponse nodesStatsResponse = client.admin().cluster().prepareNodesStats()
+                    .setThreadPool(true).execute().actionGet();
+            ThreadPoolStats.Stats stats = null;
+            for (ThreadPoolStats.Stats poolStats : nodesStatsResponse.getNodes()[0].getThreadPool()) {
+                if (IngestAction.EXECUTOR.equals(poolStats.getName())) {
+                    stats = poolStats;
+                }
+            }
+            assertNotNull(stats);
+            assertEquals(1, stats.getThreads());
+            assertEquals(1, stats.getActive());
+            assertEquals(1, stats.getQueue());
+            assertTrue(stats.getRejected() > 0);
+            NodesInfoResponse nodesInfoResponse = client.admin().cluster().prepareNodesInfo()
+                    .setThreadPool(true).execute().actionGet();
+            ThreadPool.Info info = null;
+            for (ThreadPool.Info poolInfo : nodesInfoResponse.getNodes()[0].getThreadPool()) {
+                if (IngestAction.EXECUTOR.equals(poolInfo.getName())) {
+                    info = poolInfo;
+                }
+            }
+            assertNotNull(info);
+            assertEquals("fixed", info.getType());
+            assertEquals(1L, info.getQueueSize().singles());
+        } finally {
+            release.countDown();
+        }
+    }
+}
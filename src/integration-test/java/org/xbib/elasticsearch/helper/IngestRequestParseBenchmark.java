@@ -0,0 +1,76 @@
+package org.xbib.elasticsearch.helper;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.xbib.elasticsearch.action.ingest.ActionLineParser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the time of the byte level action line parser with the generic parser on bulk data.
+ *
+ * This is not a test and is not part of a suite. Run it with {@code main}, the arguments are the number of
+ * action lines and the number of measured rounds.
+ */
+public class IngestRequestParseBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        BytesReference data = bulkData(lines);
+        XContent xContent = XContentType.JSON.xContent();
+        ActionLineParser parser = new ActionLineParser();
+        long fast = 0L;
+        long generic = 0L;
+        // round 0 is for warming up
+        for (int round = 0; round <= rounds; round++) {
+            long t0 = System.nanoTime();
+            int fastCount = parse(data, xContent, parser, true);
+            long t1 = System.nanoTime();
+            int genericCount = parse(data, xContent, parser, false);
+            long t2 = System.nanoTime();
+            if (fastCount != lines || genericCount != lines) {
+                throw new IllegalStateException("parsed " + fastCount + " and " + genericCount + " of " + lines + " lines");
+            }
+            if (round > 0) {
+                fast += t1 - t0;
+                generic += t2 - t1;
+            }
+        }
+        System.out.println(String.format("%d action lines, %d rounds: byte level parser %d ms, generic parser %d ms",
+                lines, rounds, fast / rounds / 1000000L, generic / rounds / 1000000L));
+    }
+
+    private static int parse(BytesReference data, XContent xContent, ActionLineParser parser, boolean fast)
+            throws Exception {
+        int count = 0;
+        int from = 0;
+        int length = data.length();
+        while (true) {
+            int nextMarker = ActionLineParser.findNextMarker((byte) '\n', from, data, length);
+            if (nextMarker == -1) {
+                break;
+            }
+            BytesReference line = data.slice(from, nextMarker - from);
+            boolean parsed = fast ? parser.parseFast(line, null, null) : parser.parseGeneric(xContent, line, null, null);
+            if (parsed) {
+                count++;
+            }
+            // skip the source line
+            nextMarker = ActionLineParser.findNextMarker((byte) '\n', nextMarker + 1, data, length);
+            from = nextMarker + 1;
+        }
+        return count;
+    }
+
+    private static BytesReference bulkData(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("{\"index\":{\"_index\":\"test\",\"_type\":\"type1\",\"_id\":\"").append(i).append("\"}}\n");
+            sb.append("{\"field1\":\"value").append(i).append("\",\"field2\":").append(i).append("}\n");
+        }
+        return new BytesArray(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,99 @@
+package org.xbib.elasticsearch.helper;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.ActionLineParser;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the byte level action line parser with the generic parser.
+ */
+public class IngestRequestParseTest {
+
+    @Test
+    public void testSameResult() throws Exception {
+        String[] lines = {
+                "{\"index\":{\"_index\":\"test\",\"_type\":\"type1\",\"_id\":\"1\"}}",
+                "{ \"index\" : { \"_index\" : \"test\", \"_type\" : \"type1\", \"_routing\" : \"r\", \"_version\" : 3 } }",
+                "{\"create\":{\"_id\":\"2\",\"op_type\":\"create\",\"ttl\":\"1d\",\"version_type\":\"external\"}}",
+                "{\"delete\":{\"_index\":\"test\",\"_type\":\"type1\",\"_id\":\"3\",\"parent\":\"p\"}}",
+                "{\"index\":{}}"
+        };
+        XContent xContent = XContentType.JSON.xContent();
+        ActionLineParser fast = new ActionLineParser();
+        ActionLineParser generic = new ActionLineParser();
+        for (String line : lines) {
+            BytesReference bytes = new BytesArray(line.getBytes(StandardCharsets.UTF_8));
+            assertTrue(line, fast.parseFast(bytes, "default", "doc"));
+            assertTrue(line, generic.parseGeneric(xContent, bytes, "default", "doc"));
+            assertEquals(generic.action(), fast.action());
+            assertEquals(generic.index(), fast.index());
+            assertEquals(generic.type(), fast.type());
+            assertEquals(generic.id(), fast.id());
+            assertEquals(generic.routing(), fast.routing());
+            assertEquals(generic.parent(), fast.parent());
+            assertEquals(generic.ttl(), fast.ttl());
+            assertEquals(generic.opType(), fast.opType());
+            assertEquals(generic.version(), fast.version());
+            assertEquals(generic.versionType(), fast.versionType());
+        }
+        // escapes and unexpected values are left to the generic parser
+        assertFalse(fast.parseFast(new BytesArray("{\"index\":{\"_id\":\"a\\\"b\"}}"), null, null));
+        assertFalse(fast.parseFast(new BytesArray("{\"index\":{\"_id\":null}}"), null, null));
+        assertFalse(fast.parseFast(new BytesArray("   "), null, null));
+    }
+
+    @Test
+    public void testBulkData() throws Exception {
+        IngestRequest request = new IngestRequest();
+        request.add(bulkData(10), null, null);
+        assertEquals(10, request.numberOfActions());
+    }
+
+    @Test
+    public void testBulkDataTakesByteLevelPath() throws Exception {
+        BytesReference data = bulkData(1000);
+        XContent xContent = XContentType.JSON.xContent();
+        ActionLineParser fast = new ActionLineParser();
+        ActionLineParser generic = new ActionLineParser();
+        int count = 0;
+        int from = 0;
+        int length = data.length();
+        while (true) {
+            int nextMarker = ActionLineParser.findNextMarker((byte) '\n', from, data, length);
+            if (nextMarker == -1) {
+                break;
+            }
+            BytesReference line = data.slice(from, nextMarker - from);
+            // every action line of regular bulk data takes the byte level path
+            assertTrue(fast.parseFast(line, null, null));
+            assertTrue(generic.parseGeneric(xContent, line, null, null));
+            assertEquals(generic.index(), fast.index());
+            assertEquals(generic.type(), fast.type());
+            assertEquals(Integer.toString(count), fast.id());
+            count++;
+            // skip the source line
+            nextMarker = ActionLineParser.findNextMarker((byte) '\n', nextMarker + 1, data, length);
+            from = nextMarker + 1;
+        }
+        assertEquals(1000, count);
+    }
+
+    private static BytesReference bulkData(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("{\"index\":{\"_index\":\"test\",\"_type\":\"type1\",\"_id\":\"").append(i).append("\"}}\n");
+            sb.append("{\"field1\":\"value").append(i).append("\",\"field2\":").append(i).append("}\n");
+        }
+        return new BytesArray(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -4,10 +4,12 @@ import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.index.IndexAction;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.Requests;
 import org.junit.Test;
 import org.xbib.elasticsearch.action.ingest.IngestAction;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
 import org.xbib.elasticsearch.action.ingest.IngestRequestBuilder;
 import org.xbib.elasticsearch.NodeTestUtils;
 
@@ -47,4 +49,10 @@ public class IngestRequestTest extends NodeTestUtils {
         client.execute(IngestAction.INSTANCE, builder.request()).actionGet();
     }
 
+    @Test(expected = ActionRequestValidationException.class)
+    public void testIngest5() {
+        // an update needs a partial document or a script
+        new IngestRequest().add(new UpdateRequest("test", "test", "1").upsert("{\"name\":\"value\"}"));
+    }
+
 }
@@ -0,0 +1,57 @@
+package org.xbib.elasticsearch.helper;
+
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.junit.Test;
+import org.xbib.elasticsearch.NodeTestUtils;
+import org.xbib.elasticsearch.action.ingest.IngestAction;
+import org.xbib.elasticsearch.action.ingest.IngestRequest;
+import org.xbib.elasticsearch.action.ingest.IngestResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IngestRetryTest extends NodeTestUtils {
+
+    private static final int DOCS = 50;
+
+    @Test
+    public void testRetriedAutoIdRequestIsNotDuplicated() throws Exception {
+        Client client = client("1");
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        IngestResponse response = client.execute(IngestAction.INSTANCE, request(42L)).actionGet();
+        assertTrue(response.getFailures().isEmpty());
+        assertEquals(DOCS, count(client));
+        // a retry of the same ingest request, the documents have no IDs
+        response = client.execute(IngestAction.INSTANCE, request(42L)).actionGet();
+        assertTrue(response.getFailures().isEmpty());
+        assertEquals(DOCS, count(client));
+        // another ingest request with the same documents
+        client.execute(IngestAction.INSTANCE, request(43L)).actionGet();
+        assertEquals(2 * DOCS, count(client));
+    }
+
+    @Test
+    public void testWithoutIngestId() throws Exception {
+        Client client = client("1");
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.execute(IngestAction.INSTANCE, request(0L)).actionGet();
+        client.execute(IngestAction.INSTANCE, request(0L)).actionGet();
+        // without ingest ID, requests are not recognized as retries
+        assertEquals(2 * DOCS, count(client));
+    }
+
+    private static IngestRequest request(long ingestId) {
+        IngestRequest request = new IngestRequest().ingestId(ingestId);
+        for (int i = 0; i < DOCS; i++) {
+            request.add(new IndexRequest("test", "test").source("{\"n\":" + i + "}"));
+        }
+        return request;
+    }
+
+    private static long count(Client client) {
+        client.admin().indices().refresh(new RefreshRequest("test")).actionGet();
+        return client.prepareSearch("test").setSize(0).execute().actionGet().getHits().getTotalHits();
+    }
+}
@@ -0,0 +1,64 @@
+package org.xbib.elasticsearch.helper;
+
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.replica.ReplicaLagTracker;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicaLagTrackerTest {
+
+    @Test
+    public void testBoundedPerNode() throws Exception {
+        ReplicaLagTracker tracker = new ReplicaLagTracker(100L);
+        // a node without outstanding operations accepts one operation of any size
+        ReplicaLagTracker.Reservation r1 = tracker.reserve(Arrays.asList("node1", "node2"), 150L);
+        assertNotNull(r1);
+        assertNull(tracker.reserve(Collections.singletonList("node1"), 10L));
+        ReplicaLagTracker.Reservation r2 = tracker.reserve(Collections.singletonList("node3"), 60L);
+        assertNotNull(r2);
+        assertNull(tracker.reserve(Collections.singletonList("node3"), 50L));
+        assertNotNull(tracker.reserve(Collections.singletonList("node3"), 40L));
+        assertEquals(150L, tracker.outstandingBytes("node2"));
+        assertEquals(100L, tracker.outstandingBytes("node3"));
+        Thread.sleep(10L);
+        assertTrue(tracker.lagInMillis("node1") >= 10L);
+        tracker.release(r1, false);
+        assertEquals(0L, tracker.outstandingBytes("node1"));
+        assertEquals(0L, tracker.lagInMillis("node1"));
+        assertNotNull(tracker.reserve(Collections.singletonList("node1"), 10L));
+        tracker.release(r2, true);
+        assertEquals(40L, tracker.outstandingBytes("node3"));
+        // releasing twice does nothing
+        tracker.release(r2, true);
+        assertEquals(40L, tracker.outstandingBytes("node3"));
+    }
+
+    @Test
+    public void testRemovedNode() throws Exception {
+        ReplicaLagTracker tracker = new ReplicaLagTracker(100L);
+        ReplicaLagTracker.Reservation r1 = tracker.reserve(Arrays.asList("node1", "node2"), 50L);
+        assertNotNull(r1);
+        tracker.remove("node1");
+        assertEquals(0L, tracker.outstandingBytes("node1"));
+        assertEquals(0L, tracker.lagInMillis("node1"));
+        // the reservation is still released on the remaining nodes
+        tracker.release(r1, false);
+        assertEquals(0L, tracker.outstandingBytes("node1"));
+        assertEquals(0L, tracker.outstandingBytes("node2"));
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        tracker.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        String json = builder.endObject().string();
+        assertFalse(json, json.contains("node1"));
+        assertTrue(json, json.contains("node2"));
+    }
+}
@@ -0,0 +1,253 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateAction;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateRequest;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateResponse;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesAction;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.client.support.Headers;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterMetadataCacheTest {
+
+    private ThreadPool threadPool;
+
+    private ClusterClient client;
+
+    @Before
+    public void setup() {
+        threadPool = new ThreadPool("test");
+        client = new ClusterClient(threadPool);
+    }
+
+    @After
+    public void cleanup() {
+        ThreadPool.terminate(threadPool, 10L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testAliases() throws Exception {
+        client.put("index1", AliasMetaData.builder("a").build(), AliasMetaData.builder("b").build());
+        client.put("index2", AliasMetaData.builder("a").build());
+        ClusterMetadataCache cache = new ClusterMetadataCache(Settings.EMPTY);
+        ClusterMetadataCache.Aliases aliases = cache.aliases(client);
+        assertEquals(Arrays.asList("index1", "index2"), sorted(aliases.indicesOf("a")));
+        assertEquals(Collections.singletonList("index1"), aliases.indicesOf("b"));
+        assertTrue(aliases.indicesOf("index1").isEmpty());
+        assertEquals(2, aliases.ofIndex("index1").size());
+        assertNull(aliases.ofIndex("index3"));
+        // only the state version and the aliases are requested, never the metadata with the mappings
+        assertEquals(1, client.stateRequests.get());
+        assertEquals(1, client.aliasRequests.size());
+    }
+
+    @Test
+    public void testRefreshOnVersionChange() throws Exception {
+        client.put("index1", AliasMetaData.builder("a").build());
+        ClusterMetadataCache cache = new ClusterMetadataCache(settingsBuilder()
+                .put(ClusterMetadataCache.REFRESH_INTERVAL, "0ms").build());
+        assertEquals(Collections.singletonList("index1"), cache.aliases(client).indicesOf("a"));
+        // same version, no reload
+        cache.aliases(client);
+        assertEquals(2, client.stateRequests.get());
+        assertEquals(1, client.aliasRequests.size());
+        client.version.incrementAndGet();
+        client.put("index2", AliasMetaData.builder("a").build());
+        // the lookup that triggers the refresh is answered from the cache
+        assertEquals(Collections.singletonList("index1"), cache.aliases(client).indicesOf("a"));
+        assertEquals(2, client.aliasRequests.size());
+        assertEquals(Arrays.asList("index1", "index2"), sorted(cache.aliases(client).indicesOf("a")));
+    }
+
+    @Test
+    public void testNoRefreshWithinInterval() throws Exception {
+        client.put("index1", AliasMetaData.builder("a").build());
+        ClusterMetadataCache cache = new ClusterMetadataCache(Settings.EMPTY);
+        cache.aliases(client);
+        client.version.incrementAndGet();
+        client.put("index2", AliasMetaData.builder("a").build());
+        assertEquals(Collections.singletonList("index1"), cache.aliases(client).indicesOf("a"));
+        assertEquals(1, client.stateRequests.get());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        client.put("index1", AliasMetaData.builder("a").build());
+        ClusterMetadataCache cache = new ClusterMetadataCache(settingsBuilder()
+                .put(ClusterMetadataCache.REFRESH_INTERVAL, "1h").build());
+        cache.aliases(client);
+        client.put("index2", AliasMetaData.builder("a").build());
+        cache.invalidate();
+        // the next lookup loads synchronously, even if the version has not changed
+        assertEquals(Arrays.asList("index1", "index2"), sorted(cache.aliases(client).indicesOf("a")));
+        assertEquals(2, client.aliasRequests.size());
+    }
+
+    @Test
+    public void testResolveAlias() throws Exception {
+        client.put("index1", AliasMetaData.builder("single").build(), AliasMetaData.builder("several").build());
+        client.put("index2", AliasMetaData.builder("several").build());
+        TestClient baseClient = new TestClient(client);
+        assertEquals("index1", baseClient.resolveAlias("single"));
+        assertEquals("unknown", baseClient.resolveAlias("unknown"));
+        assertEquals(1, client.aliasRequests.size());
+        // an alias of several indices is resolved by the cluster
+        String index = baseClient.resolveAlias("several");
+        assertTrue(index, index.equals("index1") || index.equals("index2"));
+        assertEquals(2, client.aliasRequests.size());
+        assertEquals(Collections.singletonList("several"), Arrays.asList(client.aliasRequests.get(1).aliases()));
+    }
+
+    @Test
+    public void testResolveMostRecentIndex() throws Exception {
+        client.put("test1", AliasMetaData.builder("test").build());
+        client.put("test2", AliasMetaData.builder("test").build());
+        client.put("other3", AliasMetaData.builder("test").build());
+        TestClient baseClient = new TestClient(client);
+        assertEquals("test2", baseClient.resolveMostRecentIndex("test"));
+        assertEquals("nothing", baseClient.resolveMostRecentIndex("nothing"));
+        assertEquals(1, client.aliasRequests.size());
+    }
+
+    @Test
+    public void testIndexFilters() throws Exception {
+        client.put("index1", AliasMetaData.builder("plain").build(),
+                AliasMetaData.builder("filtered").filter("{\"term\":{\"field\":\"value\"}}").build());
+        TestClient baseClient = new TestClient(client);
+        Map<String, String> filters = baseClient.getIndexFilters("index1");
+        assertEquals(2, filters.size());
+        assertNull(filters.get("plain"));
+        assertTrue(filters.get("filtered").contains("value"));
+        assertEquals(filters, baseClient.getAliasFilters("filtered"));
+        assertEquals(1, client.aliasRequests.size());
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static class TestClient extends BaseClient {
+
+        private final ElasticsearchClient client;
+
+        TestClient(ElasticsearchClient client) {
+            this.client = client;
+            createMetadataCache(Settings.EMPTY);
+        }
+
+        @Override
+        public ElasticsearchClient client() {
+            return client;
+        }
+
+        @Override
+        protected void createClient(Settings settings) {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * Answers cluster state requests with an empty state of the current version, and alias requests
+     * from a table of aliases.
+     */
+    private static class ClusterClient extends AbstractClient {
+
+        final AtomicInteger stateRequests = new AtomicInteger();
+
+        final List<GetAliasesRequest> aliasRequests = new CopyOnWriteArrayList<>();
+
+        final AtomicInteger version = new AtomicInteger(1);
+
+        private final Map<String, List<AliasMetaData>> aliases = new LinkedHashMap<>();
+
+        ClusterClient(ThreadPool threadPool) {
+            super(Settings.EMPTY, threadPool, Headers.EMPTY);
+        }
+
+        synchronized void put(String index, AliasMetaData... aliasMetaData) {
+            aliases.put(index, Arrays.asList(aliasMetaData));
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+                void doExecute(Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+            if (action == ClusterStateAction.INSTANCE) {
+                ClusterStateRequest clusterStateRequest = (ClusterStateRequest) request;
+                if (clusterStateRequest.metaData()) {
+                    listener.onFailure(new IllegalStateException("metadata must not be requested"));
+                    return;
+                }
+                stateRequests.incrementAndGet();
+                ClusterName clusterName = new ClusterName("test");
+                listener.onResponse((Response) new ClusterStateResponse(clusterName,
+                        ClusterState.builder(clusterName).version(version.get()).build()));
+            } else if (action == GetAliasesAction.INSTANCE) {
+                GetAliasesRequest getAliasesRequest = (GetAliasesRequest) request;
+                aliasRequests.add(getAliasesRequest);
+                synchronized (this) {
+                    listener.onResponse((Response) response(getAliasesRequest.aliases()));
+                }
+            } else {
+                listener.onFailure(new UnsupportedOperationException(action.name()));
+            }
+        }
+
+        private GetAliasesResponse response(String[] names) {
+            List<String> filter = Arrays.asList(names);
+            ImmutableOpenMap.Builder<String, List<AliasMetaData>> builder = ImmutableOpenMap.builder();
+            for (Map.Entry<String, List<AliasMetaData>> entry : aliases.entrySet()) {
+                List<AliasMetaData> list = new ArrayList<>();
+                for (AliasMetaData aliasMetaData : entry.getValue()) {
+                    if (filter.isEmpty() || filter.contains(aliasMetaData.alias())) {
+                        list.add(aliasMetaData);
+                    }
+                }
+                if (!list.isEmpty()) {
+                    builder.put(entry.getKey(), list);
+                }
+            }
+            return new GetAliasesResponse(builder.build());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
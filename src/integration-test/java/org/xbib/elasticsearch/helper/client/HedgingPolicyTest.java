@@ -0,0 +1,114 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.index.IndexAction;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HedgingPolicyTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(Settings.EMPTY);
+        assertFalse(policy.isEnabled());
+        assertFalse(policy.isHedgeable(GetAction.INSTANCE, new GetRequest("test", "test", "1")));
+        assertFalse(policy.isHedgeable(SearchAction.INSTANCE, new SearchRequest("test")));
+    }
+
+    @Test
+    public void testHedgeable() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(settingsBuilder()
+                .put(HedgingPolicy.HEDGE_ENABLED, true).build());
+        assertTrue(policy.isHedgeable(GetAction.INSTANCE, new GetRequest("test", "test", "1")));
+        assertTrue(policy.isHedgeable(SearchAction.INSTANCE, new SearchRequest("test")));
+        assertFalse(policy.isHedgeable(SearchAction.INSTANCE,
+                new SearchRequest("test").scroll(TimeValue.timeValueMinutes(1))));
+        assertFalse(policy.isHedgeable(SearchAction.INSTANCE, new SearchRequest("test").searchType(SearchType.SCAN)));
+        assertFalse(policy.isHedgeable(IndexAction.INSTANCE, new IndexRequest("test", "test", "1")));
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(settingsBuilder()
+                .put(HedgingPolicy.HEDGE_ENABLED, true)
+                .put(HedgingPolicy.HEDGE_BUDGET, 0.5d).build());
+        assertFalse(policy.tryHedge());
+        policy.onRequest();
+        assertFalse(policy.tryHedge());
+        policy.onRequest();
+        // two requests earn one token
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+    }
+
+    @Test
+    public void testBudgetIsBounded() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(settingsBuilder()
+                .put(HedgingPolicy.HEDGE_ENABLED, true)
+                .put(HedgingPolicy.HEDGE_BUDGET, 0.5d).build());
+        for (int i = 0; i < 1000; i++) {
+            policy.onRequest();
+        }
+        // a long quiet period does not allow a burst of hedged requests
+        int hedged = 0;
+        while (policy.tryHedge()) {
+            hedged++;
+        }
+        assertEquals(10, hedged);
+    }
+
+    @Test
+    public void testZeroBudget() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(settingsBuilder()
+                .put(HedgingPolicy.HEDGE_ENABLED, true)
+                .put(HedgingPolicy.HEDGE_BUDGET, 0.0d).build());
+        for (int i = 0; i < 100; i++) {
+            policy.onRequest();
+        }
+        assertFalse(policy.tryHedge());
+    }
+
+    @Test
+    public void testDelay() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(settingsBuilder()
+                .put(HedgingPolicy.HEDGE_ENABLED, true)
+                .put(HedgingPolicy.HEDGE_PERCENTILE, 50.0d)
+                .put(HedgingPolicy.HEDGE_MIN_DELAY, "1ms").build());
+        for (int i = 1; i < 32; i++) {
+            policy.record(i * MS);
+            assertEquals(-1L, policy.getDelayNanos());
+        }
+        policy.record(32 * MS);
+        assertEquals(16 * MS, policy.getDelayNanos());
+    }
+
+    @Test
+    public void testMinDelay() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(settingsBuilder()
+                .put(HedgingPolicy.HEDGE_ENABLED, true).build());
+        for (int i = 0; i < 32; i++) {
+            policy.record(1L);
+        }
+        assertEquals(10 * MS, policy.getDelayNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBudget() throws Exception {
+        new HedgingPolicy(settingsBuilder().put(HedgingPolicy.HEDGE_BUDGET, 2.0d).build());
+    }
+}
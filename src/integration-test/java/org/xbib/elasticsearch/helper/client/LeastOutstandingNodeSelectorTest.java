@@ -0,0 +1,142 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.LocalTransportAddress;
+import org.junit.Test;
+import org.xbib.elasticsearch.helper.client.TransportLanes.Lane;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LeastOutstandingNodeSelectorTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    private static final long SEC = TimeUnit.SECONDS.toNanos(1L);
+
+    private final DiscoveryNode a = new DiscoveryNode("a", new LocalTransportAddress("a"), Version.CURRENT);
+
+    private final DiscoveryNode b = new DiscoveryNode("b", new LocalTransportAddress("b"), Version.CURRENT);
+
+    private final List<DiscoveryNode> nodes = Arrays.asList(a, b);
+
+    @Test
+    public void testLanesAreSeparate() throws Exception {
+        LeastOutstandingNodeSelector selector = new LeastOutstandingNodeSelector(Settings.EMPTY);
+        long now = System.nanoTime();
+        response(selector, a, Lane.BULK, 100 * MS, true, now);
+        response(selector, b, Lane.BULK, 10 * MS, true, now);
+        response(selector, a, Lane.INTERACTIVE, MS, true, now);
+        response(selector, b, Lane.INTERACTIVE, 10 * MS, true, now);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, selector.select(nodes, Lane.INTERACTIVE, now));
+            assertEquals(1, selector.select(nodes, Lane.BULK, now));
+        }
+    }
+
+    @Test
+    public void testInFlight() throws Exception {
+        LeastOutstandingNodeSelector selector = new LeastOutstandingNodeSelector(Settings.EMPTY);
+        long now = System.nanoTime();
+        response(selector, a, Lane.INTERACTIVE, MS, true, now);
+        response(selector, b, Lane.INTERACTIVE, 2 * MS, true, now);
+        selector.onStart(a);
+        selector.onStart(a);
+        // 3 * 1ms is more than 1 * 2ms
+        assertEquals(1, selector.select(nodes, Lane.INTERACTIVE, now));
+    }
+
+    @Test
+    public void testFailurePenaltyIsCapped() throws Exception {
+        NodeStatistics stats = new NodeStatistics("a", 0.3d, 0L, SEC);
+        long now = System.nanoTime();
+        // without a response time, a failure counts with its own duration
+        stats.start();
+        stats.finish(Lane.INTERACTIVE, 10 * MS, false, now);
+        assertEquals(10 * MS, stats.getEstimatedLatencyNanos(Lane.INTERACTIVE, now));
+        for (int i = 0; i < 100; i++) {
+            stats.start();
+            stats.finish(Lane.INTERACTIVE, MS, false, now);
+            assertTrue(stats.getEstimatedLatencyNanos(Lane.INTERACTIVE, now) <= SEC);
+        }
+        assertTrue(stats.getEstimatedLatencyNanos(Lane.INTERACTIVE, now) > 900 * MS);
+        // a failure that takes longer than the cap counts with its duration
+        stats.start();
+        stats.finish(Lane.INTERACTIVE, 10 * SEC, false, now);
+        assertTrue(stats.getEstimatedLatencyNanos(Lane.INTERACTIVE, now) > SEC);
+        assertEquals(102L, stats.getFailures());
+        assertEquals(0, stats.getInFlight());
+        assertEquals(0L, stats.getEstimatedLatencyNanos(Lane.BULK, now));
+    }
+
+    @Test
+    public void testDecay() throws Exception {
+        NodeStatistics stats = new NodeStatistics("a", 0.3d, 10 * SEC, SEC);
+        long now = System.nanoTime();
+        stats.ping(MS);
+        stats.start();
+        stats.finish(Lane.INTERACTIVE, SEC, true, now);
+        assertEquals(SEC, stats.getEstimatedLatencyNanos(Lane.INTERACTIVE, now));
+        // halfway to the ping time after one half-life
+        assertEquals(MS + (SEC - MS) / 2, stats.getEstimatedLatencyNanos(Lane.INTERACTIVE, now + 10 * SEC), MS);
+        assertEquals(MS, stats.getEstimatedLatencyNanos(Lane.INTERACTIVE, now + 600 * SEC));
+        // the decayed average is the base for the next response time
+        stats.start();
+        stats.finish(Lane.INTERACTIVE, MS, true, now + 600 * SEC);
+        assertEquals(MS, stats.getEstimatedLatencyNanos(Lane.INTERACTIVE, now + 600 * SEC), 1L);
+        // response times below the ping time do not decay
+        stats.start();
+        stats.finish(Lane.BULK, MS / 2, true, now);
+        assertEquals(MS / 2, stats.getEstimatedLatencyNanos(Lane.BULK, now + 600 * SEC));
+    }
+
+    @Test
+    public void testFailedNodeIsSelectedAgain() throws Exception {
+        LeastOutstandingNodeSelector selector = new LeastOutstandingNodeSelector(settingsBuilder()
+                .put(LeastOutstandingNodeSelector.DECAY, "10s").build());
+        long now = System.nanoTime();
+        selector.onPing(a, MS);
+        selector.onPing(b, MS);
+        response(selector, a, Lane.INTERACTIVE, 5 * SEC, false, now);
+        response(selector, b, Lane.INTERACTIVE, 2 * MS, true, now);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1, selector.select(nodes, Lane.INTERACTIVE, now));
+        }
+        // both nodes have decayed to their ping time, they are selected in turn
+        Set<Integer> selected = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            selected.add(selector.select(nodes, Lane.INTERACTIVE, now + 600 * SEC));
+        }
+        assertEquals(2, selected.size());
+    }
+
+    @Test
+    public void testRetain() throws Exception {
+        LeastOutstandingNodeSelector selector = new LeastOutstandingNodeSelector(Settings.EMPTY);
+        selector.onPing(a, MS);
+        selector.onPing(b, MS);
+        assertEquals(2, selector.getStatistics().size());
+        selector.retain(Collections.singletonList(a));
+        assertEquals(Collections.singleton("a"), selector.getStatistics().keySet());
+        // a request to the removed node that was still in flight does not bring it back
+        selector.onFinish(b, Lane.INTERACTIVE, MS, true);
+        assertFalse(selector.getStatistics().containsKey("b"));
+    }
+
+    private static void response(LeastOutstandingNodeSelector selector, DiscoveryNode node, Lane lane,
+                                 long nanos, boolean success, long now) {
+        selector.onStart(node);
+        selector.onFinish(node, lane, nanos, success, now);
+    }
+}
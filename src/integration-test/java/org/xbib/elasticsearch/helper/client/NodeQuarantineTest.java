@@ -0,0 +1,182 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.LocalTransportAddress;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NodeQuarantineTest {
+
+    private final DiscoveryNode a = new DiscoveryNode("a", new LocalTransportAddress("a"), Version.CURRENT);
+
+    private final DiscoveryNode b = new DiscoveryNode("b", new LocalTransportAddress("b"), Version.CURRENT);
+
+    private ThreadPool threadPool;
+
+    @Before
+    public void setup() {
+        threadPool = new ThreadPool("test");
+    }
+
+    @After
+    public void cleanup() {
+        ThreadPool.terminate(threadPool, 10L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        NodeQuarantine quarantine = new NodeQuarantine(settingsBuilder()
+                .put(NodeQuarantine.QUARANTINE_INITIAL_BACKOFF, "1h")
+                .put(NodeQuarantine.QUARANTINE_MAX_BACKOFF, "1h").build(), threadPool, new ScriptedProbe(0));
+        List<DiscoveryNode> nodes = Arrays.asList(a, b);
+        assertEquals(nodes, quarantine.filter(nodes));
+        quarantine.add(a);
+        assertTrue(quarantine.isQuarantined(a));
+        assertEquals(Collections.singletonList(b), quarantine.filter(nodes));
+        // if all nodes are quarantined, none is excluded
+        quarantine.add(b);
+        assertEquals(nodes, quarantine.filter(nodes));
+        quarantine.remove(a);
+        assertFalse(quarantine.isQuarantined(a));
+        assertEquals(Collections.singletonList(a), quarantine.filter(nodes));
+        assertEquals(Collections.singleton("b"), quarantine.getQuarantinedNodeIds());
+        quarantine.close();
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        NodeQuarantine quarantine = new NodeQuarantine(settingsBuilder()
+                .put(NodeQuarantine.QUARANTINE_ENABLED, false).build(), threadPool, new ScriptedProbe(0));
+        quarantine.add(a);
+        assertFalse(quarantine.isQuarantined(a));
+    }
+
+    @Test
+    public void testProbeReinstatesNode() throws Exception {
+        ScriptedProbe probe = new ScriptedProbe(2);
+        NodeQuarantine quarantine = new NodeQuarantine(settingsBuilder()
+                .put(NodeQuarantine.QUARANTINE_INITIAL_BACKOFF, "10ms")
+                .put(NodeQuarantine.QUARANTINE_MAX_BACKOFF, "1s").build(), threadPool, probe);
+        long t0 = System.nanoTime();
+        quarantine.add(a);
+        assertTrue(probe.await(3, 10L, TimeUnit.SECONDS));
+        assertTrue(awaitReinstated(quarantine, a));
+        // the backoff doubles after each failed probe: 10ms, 20ms, 40ms
+        List<Long> times = probe.times;
+        assertEquals(3, times.size());
+        assertTrue(times.get(0) - t0 >= TimeUnit.MILLISECONDS.toNanos(10L));
+        assertTrue(times.get(1) - times.get(0) >= TimeUnit.MILLISECONDS.toNanos(20L));
+        assertTrue(times.get(2) - times.get(1) >= TimeUnit.MILLISECONDS.toNanos(40L));
+        quarantine.close();
+    }
+
+    @Test
+    public void testBackoffIsBounded() throws Exception {
+        ScriptedProbe probe = new ScriptedProbe(7);
+        NodeQuarantine quarantine = new NodeQuarantine(settingsBuilder()
+                .put(NodeQuarantine.QUARANTINE_INITIAL_BACKOFF, "10ms")
+                .put(NodeQuarantine.QUARANTINE_MAX_BACKOFF, "20ms").build(), threadPool, probe);
+        long t0 = System.nanoTime();
+        quarantine.add(a);
+        assertTrue(probe.await(8, 10L, TimeUnit.SECONDS));
+        assertTrue(awaitReinstated(quarantine, a));
+        // 10ms + 7 * 20ms, without the bound it would take more than 2.5 seconds
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        assertTrue("reinstated after " + millis + " ms", millis >= 150L && millis < 1500L);
+        quarantine.close();
+    }
+
+    @Test
+    public void testRemovedNodeIsNotProbed() throws Exception {
+        ScriptedProbe probe = new ScriptedProbe(0);
+        NodeQuarantine quarantine = new NodeQuarantine(settingsBuilder()
+                .put(NodeQuarantine.QUARANTINE_INITIAL_BACKOFF, "50ms").build(), threadPool, probe);
+        quarantine.add(a);
+        quarantine.remove(a);
+        quarantine.add(b);
+        // the probe of b has been scheduled after the probe of a
+        assertTrue(probe.await(1, 10L, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("b"), probe.nodeIds);
+        quarantine.close();
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        NodeQuarantine quarantine = new NodeQuarantine(Settings.EMPTY, threadPool, new ScriptedProbe(0));
+        quarantine.add(a);
+        quarantine.close();
+        assertFalse(quarantine.isQuarantined(a));
+        quarantine.add(a);
+        assertFalse(quarantine.isQuarantined(a));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBackoff() throws Exception {
+        new NodeQuarantine(settingsBuilder()
+                .put(NodeQuarantine.QUARANTINE_INITIAL_BACKOFF, "10s")
+                .put(NodeQuarantine.QUARANTINE_MAX_BACKOFF, "1s").build(), threadPool, new ScriptedProbe(0));
+    }
+
+    private static boolean awaitReinstated(NodeQuarantine quarantine, DiscoveryNode node) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (quarantine.isQuarantined(node)) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1L);
+        }
+        return true;
+    }
+
+    /**
+     * A probe that fails a number of times before it succeeds.
+     */
+    private static class ScriptedProbe implements NodeQuarantine.Probe {
+
+        final List<Long> times = new CopyOnWriteArrayList<>();
+
+        final List<String> nodeIds = new CopyOnWriteArrayList<>();
+
+        final AtomicInteger failures;
+
+        final CountDownLatch[] latches = new CountDownLatch[16];
+
+        ScriptedProbe(int failures) {
+            this.failures = new AtomicInteger(failures);
+            for (int i = 0; i < latches.length; i++) {
+                latches[i] = new CountDownLatch(i);
+            }
+        }
+
+        @Override
+        public boolean probe(DiscoveryNode node) {
+            times.add(System.nanoTime());
+            nodeIds.add(node.id());
+            for (CountDownLatch latch : latches) {
+                latch.countDown();
+            }
+            return failures.getAndDecrement() <= 0;
+        }
+
+        boolean await(int probes, long timeout, TimeUnit unit) throws InterruptedException {
+            return latches[probes].await(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.LocalTransportAddress;
+import org.elasticsearch.transport.ConnectTransportException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NodeWarmupTest {
+
+    private final DiscoveryNode a = new DiscoveryNode("a", new LocalTransportAddress("a"), Version.CURRENT);
+
+    private final DiscoveryNode b = new DiscoveryNode("b", new LocalTransportAddress("b"), Version.CURRENT);
+
+    private final DiscoveryNode c = new DiscoveryNode("c", new LocalTransportAddress("c"), Version.CURRENT);
+
+    @Test
+    public void testWarmupOnce() throws Exception {
+        ScriptedWarmup script = new ScriptedWarmup();
+        NodeWarmup warmup = new NodeWarmup(Settings.EMPTY, script);
+        assertFalse(warmup.isWarmedUp(a));
+        assertTrue(warmup.warmup(a));
+        assertTrue(warmup.isWarmedUp(a));
+        assertTrue(warmup.warmup(a));
+        assertEquals(1, script.count.get());
+        // a reconnected node is warmed up again
+        warmup.retain(Collections.singletonList(b));
+        assertFalse(warmup.isWarmedUp(a));
+        assertTrue(warmup.warmup(a));
+        assertEquals(2, script.count.get());
+    }
+
+    @Test
+    public void testWarmupFailure() throws Exception {
+        ScriptedWarmup script = new ScriptedWarmup(a);
+        NodeWarmup warmup = new NodeWarmup(Settings.EMPTY, script);
+        assertFalse(warmup.warmup(a));
+        assertFalse(warmup.isWarmedUp(a));
+        // a connected node whose warm-up failed does not make the client ready
+        assertFalse(warmup.isReady(Collections.singletonList(a), 1));
+        assertTrue(warmup.warmup(b));
+        assertTrue(warmup.isReady(Arrays.asList(a, b), 2));
+        assertEquals(1, warmup.getWarmedUp(Arrays.asList(a, b)));
+        // the failed node is tried again
+        assertFalse(warmup.warmup(a));
+        assertEquals(2, script.count.get());
+    }
+
+    @Test
+    public void testDefaultReadyThreshold() throws Exception {
+        NodeWarmup warmup = new NodeWarmup(Settings.EMPTY, new ScriptedWarmup());
+        assertEquals(1, warmup.getReadyThreshold(0));
+        assertEquals(1, warmup.getReadyThreshold(1));
+        assertEquals(1, warmup.getReadyThreshold(10));
+        assertFalse(warmup.isReady(Collections.<DiscoveryNode>emptyList(), 0));
+        assertFalse(warmup.isReady(Collections.<DiscoveryNode>emptyList(), 3));
+        warmup.warmup(a);
+        assertTrue(warmup.isReady(Collections.singletonList(a), 3));
+    }
+
+    @Test
+    public void testReadyFraction() throws Exception {
+        NodeWarmup warmup = new NodeWarmup(settingsBuilder()
+                .put(NodeWarmup.WARMUP_READY_FRACTION, 0.5d).build(), new ScriptedWarmup());
+        assertEquals(1, warmup.getReadyThreshold(1));
+        assertEquals(2, warmup.getReadyThreshold(3));
+        assertEquals(2, warmup.getReadyThreshold(4));
+        List<DiscoveryNode> nodes = Arrays.asList(a, b, c);
+        warmup.warmup(a);
+        assertFalse(warmup.isReady(nodes, 3));
+        warmup.warmup(b);
+        assertTrue(warmup.isReady(nodes, 3));
+        // warmed up nodes count only while they are connected
+        assertFalse(warmup.isReady(Arrays.asList(a, c), 3));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ScriptedWarmup script = new ScriptedWarmup(a);
+        NodeWarmup warmup = new NodeWarmup(settingsBuilder()
+                .put(NodeWarmup.WARMUP_ENABLED, false)
+                .put(NodeWarmup.WARMUP_READY_FRACTION, 1.0d).build(), script);
+        // connected nodes count as warmed up
+        assertTrue(warmup.warmup(a));
+        assertEquals(0, script.count.get());
+        assertFalse(warmup.isReady(Collections.singletonList(a), 2));
+        warmup.warmup(b);
+        assertTrue(warmup.isReady(Arrays.asList(a, b), 2));
+    }
+
+    @Test
+    public void testInvalidReadyFraction() throws Exception {
+        try {
+            new NodeWarmup(settingsBuilder().put(NodeWarmup.WARMUP_READY_FRACTION, 1.5d).build(),
+                    new ScriptedWarmup());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static class ScriptedWarmup implements NodeWarmup.Warmup {
+
+        private final Set<DiscoveryNode> failing;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        ScriptedWarmup(DiscoveryNode... failing) {
+            this.failing = new HashSet<>(Arrays.asList(failing));
+        }
+
+        @Override
+        public void warmup(DiscoveryNode node) throws Exception {
+            count.incrementAndGet();
+            if (failing.contains(node)) {
+                throw new ConnectTransportException(node, "warm-up failed");
+            }
+        }
+    }
+}
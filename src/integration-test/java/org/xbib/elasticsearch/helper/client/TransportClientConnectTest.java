@@ -0,0 +1,163 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.transport.LocalTransportAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TransportClientConnectTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(10L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPingsRunConcurrently() throws Exception {
+        List<DiscoveryNode> listed = Arrays.asList(node("#transport#-1", "a"), node("#transport#-2", "b"),
+                node("#transport#-3", "c"));
+        // each ping waits until all pings have started, so a sequential ping never completes
+        final CyclicBarrier barrier = new CyclicBarrier(listed.size());
+        final AtomicInteger pinged = new AtomicInteger();
+        boolean complete = TransportClient.pingAll(listed, executor, 10000L, new TransportClient.Pinger() {
+            @Override
+            public void ping(DiscoveryNode listedNode) {
+                try {
+                    barrier.await(10L, TimeUnit.SECONDS);
+                    pinged.incrementAndGet();
+                } catch (Exception e) {
+                    // not concurrent
+                }
+            }
+        });
+        assertTrue(complete);
+        assertEquals(3, pinged.get());
+    }
+
+    @Test
+    public void testLivenessTimeout() throws Exception {
+        final DiscoveryNode hanging = node("#transport#-2", "b");
+        List<DiscoveryNode> listed = Arrays.asList(node("#transport#-1", "a"), hanging, node("#transport#-3", "c"));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger pinged = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            boolean complete = TransportClient.pingAll(listed, executor, 200L, new TransportClient.Pinger() {
+                @Override
+                public void ping(DiscoveryNode listedNode) {
+                    if (listedNode == hanging) {
+                        try {
+                            release.await(10L, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    } else {
+                        pinged.incrementAndGet();
+                    }
+                }
+            });
+            // a hanging node does not hold up the check longer than the liveness timeout
+            assertFalse(complete);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000L);
+            assertEquals(2, pinged.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testMergeUnchanged() throws Exception {
+        DiscoveryNode listed1 = node("#transport#-1", "a");
+        DiscoveryNode listed2 = node("#transport#-2", "b");
+        DiscoveryNode a = node("node-a", "a");
+        DiscoveryNode b = node("node-b", "b");
+        List<DiscoveryNode> current = Collections.unmodifiableList(Arrays.asList(a, b));
+        Map<DiscoveryNode, DiscoveryNode> alive = new HashMap<>();
+        // fresh instances of the same nodes, listed in reverse order
+        alive.put(listed1, node("node-a", "a"));
+        alive.put(listed2, node("node-b", "b"));
+        List<DiscoveryNode> removed = new ArrayList<>();
+        List<DiscoveryNode> merged = TransportClient.merge(current, Arrays.asList(listed2, listed1), alive, removed);
+        assertSame(current, merged);
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    public void testMergeChanged() throws Exception {
+        DiscoveryNode listed1 = node("#transport#-1", "a");
+        DiscoveryNode listed2 = node("#transport#-2", "b");
+        DiscoveryNode listed3 = node("#transport#-3", "c");
+        DiscoveryNode listed4 = node("#transport#-4", "d");
+        DiscoveryNode a = node("node-a", "a");
+        DiscoveryNode b = node("node-b", "b");
+        DiscoveryNode c = node("node-c", "c");
+        DiscoveryNode e = node("node-e", "e");
+        List<DiscoveryNode> current = Arrays.asList(a, b, c, e);
+        Map<DiscoveryNode, DiscoveryNode> alive = new HashMap<>();
+        alive.put(listed1, node("node-a", "a"));
+        // node-b is gone, node-c has moved to a new address, node-d is new
+        DiscoveryNode movedC = node("node-c", "c2");
+        DiscoveryNode d = node("node-d", "d");
+        alive.put(listed3, movedC);
+        alive.put(listed4, d);
+        List<DiscoveryNode> removed = new ArrayList<>();
+        List<DiscoveryNode> merged = TransportClient.merge(current,
+                Arrays.asList(listed1, listed2, listed3, listed4), alive, removed);
+        assertEquals(3, merged.size());
+        assertSame(a, merged.get(0));
+        assertSame(movedC, merged.get(1));
+        assertSame(d, merged.get(2));
+        assertEquals(2, removed.size());
+        assertSame(b, removed.get(0));
+        assertSame(e, removed.get(1));
+    }
+
+    @Test
+    public void testMergeFromEmpty() throws Exception {
+        DiscoveryNode listed1 = node("#transport#-1", "a");
+        DiscoveryNode listed2 = node("#transport#-2", "b");
+        DiscoveryNode a = node("node-a", "a");
+        DiscoveryNode b = node("node-b", "b");
+        Map<DiscoveryNode, DiscoveryNode> alive = new HashMap<>();
+        alive.put(listed2, b);
+        alive.put(listed1, a);
+        List<DiscoveryNode> removed = new ArrayList<>();
+        List<DiscoveryNode> merged = TransportClient.merge(Collections.<DiscoveryNode>emptyList(),
+                Arrays.asList(listed1, listed2), alive, removed);
+        // new nodes are appended in the order of the listed nodes
+        assertEquals(Arrays.asList(a, b), merged);
+        assertTrue(removed.isEmpty());
+    }
+
+    private static DiscoveryNode node(String id, String address) {
+        return new DiscoveryNode(id, new LocalTransportAddress(address), Version.CURRENT);
+    }
+}
@@ -0,0 +1,165 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+import org.xbib.elasticsearch.action.ingest.IngestAction;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TransportLanesTest {
+
+    @Test
+    public void testLaneByTransportRequestType() throws Exception {
+        TransportLanes lanes = new TransportLanes(Settings.EMPTY);
+        try {
+            assertEquals(TransportLanes.Lane.BULK, lanes.getLane(BulkAction.INSTANCE));
+            assertEquals(TransportLanes.Lane.BULK, lanes.getLane(IngestAction.INSTANCE));
+            assertEquals(TransportLanes.Lane.INTERACTIVE, lanes.getLane(SearchAction.INSTANCE));
+            assertEquals(TransportLanes.Lane.INTERACTIVE, lanes.getLane(GetAction.INSTANCE));
+        } finally {
+            lanes.close();
+        }
+    }
+
+    @Test
+    public void testTransportSettings() throws Exception {
+        Settings settings = TransportLanes.transportSettings(settingsBuilder()
+                .put(TransportLanes.BULK_CONNECTIONS, 2)
+                .put(TransportLanes.INTERACTIVE_CONNECTIONS, 5)
+                .build());
+        assertEquals("2", settings.get("transport.connections_per_node.bulk"));
+        assertEquals("5", settings.get("transport.connections_per_node.reg"));
+        // unset lanes keep the transport defaults
+        settings = TransportLanes.transportSettings(settingsBuilder()
+                .put(TransportLanes.BULK_CONNECTIONS, 1)
+                .build());
+        assertEquals("1", settings.get("transport.connections_per_node.bulk"));
+        assertNull(settings.get("transport.connections_per_node.reg"));
+        assertTrue(TransportLanes.transportSettings(Settings.EMPTY).getAsMap().isEmpty());
+    }
+
+    @Test
+    public void testInteractiveOutstanding() throws Exception {
+        TransportLanes lanes = new TransportLanes(Settings.EMPTY);
+        try {
+            RecordingListener first = new RecordingListener();
+            RecordingListener second = new RecordingListener();
+            ActionListener<String> l1 = lanes.wrap(SearchAction.INSTANCE, first);
+            ActionListener<String> l2 = lanes.wrap(SearchAction.INSTANCE, second);
+            assertEquals(2, lanes.getOutstanding(TransportLanes.Lane.INTERACTIVE));
+            assertEquals(0, lanes.getOutstanding(TransportLanes.Lane.BULK));
+            l1.onResponse("ok");
+            assertEquals(1, lanes.getOutstanding(TransportLanes.Lane.INTERACTIVE));
+            l2.onFailure(new IllegalStateException("failed"));
+            assertEquals(0, lanes.getOutstanding(TransportLanes.Lane.INTERACTIVE));
+            // delivered on the calling thread
+            assertSame(Thread.currentThread(), first.thread.get());
+            assertSame(Thread.currentThread(), second.thread.get());
+            assertTrue(second.failed);
+        } finally {
+            lanes.close();
+        }
+    }
+
+    @Test
+    public void testBulkOutstanding() throws Exception {
+        TransportLanes lanes = new TransportLanes(Settings.EMPTY);
+        try {
+            RecordingListener first = new RecordingListener();
+            RecordingListener second = new RecordingListener();
+            ActionListener<String> l1 = lanes.wrap(BulkAction.INSTANCE, first);
+            ActionListener<String> l2 = lanes.wrap(IngestAction.INSTANCE, second);
+            assertEquals(2, lanes.getOutstanding(TransportLanes.Lane.BULK));
+            l1.onResponse("ok");
+            l2.onFailure(new IllegalStateException("failed"));
+            assertEquals(0, lanes.getOutstanding(TransportLanes.Lane.BULK));
+            assertTrue(first.latch.await(10L, TimeUnit.SECONDS));
+            assertTrue(second.latch.await(10L, TimeUnit.SECONDS));
+            // delivered on the bulk lane thread pool
+            assertNotSame(Thread.currentThread(), first.thread.get());
+            assertNotSame(Thread.currentThread(), second.thread.get());
+            assertTrue(second.failed);
+        } finally {
+            lanes.close();
+        }
+    }
+
+    @Test
+    public void testRejectedDispatchRunsInline() throws Exception {
+        TransportLanes lanes = new TransportLanes(settingsBuilder()
+                .put(TransportLanes.BULK_THREADS, 1)
+                .put(TransportLanes.BULK_QUEUE_SIZE, 1)
+                .build());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // occupies the only thread of the bulk lane
+            RecordingListener blocking = new RecordingListener() {
+                @Override
+                public void onResponse(String response) {
+                    started.countDown();
+                    try {
+                        release.await(10L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.onResponse(response);
+                }
+            };
+            lanes.wrap(BulkAction.INSTANCE, blocking).onResponse("ok");
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+            // fills the queue
+            RecordingListener queued = new RecordingListener();
+            lanes.wrap(BulkAction.INSTANCE, queued).onResponse("ok");
+            assertEquals(1, lanes.getBulkQueueSize());
+            // rejected by the saturated pool, delivered on the calling thread
+            RecordingListener rejected = new RecordingListener();
+            lanes.wrap(BulkAction.INSTANCE, rejected).onFailure(new IllegalStateException("failed"));
+            assertTrue(rejected.latch.await(0L, TimeUnit.SECONDS));
+            assertSame(Thread.currentThread(), rejected.thread.get());
+            assertEquals(0, lanes.getOutstanding(TransportLanes.Lane.BULK));
+            release.countDown();
+            assertTrue(queued.latch.await(10L, TimeUnit.SECONDS));
+            assertTrue(blocking.latch.await(10L, TimeUnit.SECONDS));
+            assertEquals(0, lanes.getOutstanding(TransportLanes.Lane.BULK));
+        } finally {
+            release.countDown();
+            lanes.close();
+        }
+    }
+
+    private static class RecordingListener implements ActionListener<String> {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+
+        volatile boolean failed;
+
+        @Override
+        public void onResponse(String response) {
+            thread.set(Thread.currentThread());
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            failed = true;
+            thread.set(Thread.currentThread());
+            latch.countDown();
+        }
+    }
+}
@@ -22,6 +22,8 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class HttpBulkNodeClientTest extends NodeTestUtils {
 
@@ -170,4 +172,48 @@ public class HttpBulkNodeClientTest extends NodeTestUtils {
         }
     }
 
+    @Test
+    public void testScrollIterator() throws Exception {
+        final HttpBulkNodeClient client = ClientBuilder.builder()
+                .setMetric(new LongAdderIngestMetric())
+                .put("host", "127.0.0.1")
+                .put("port", 9200)
+                .put(ClientBuilder.MAX_ACTIONS_PER_REQUEST, MAX_ACTIONS)
+                .put(ClientBuilder.FLUSH_INTERVAL, TimeValue.timeValueSeconds(60))
+                .toHttpBulkNodeClient();
+        try {
+            client.newIndex("test");
+            for (int i = 0; i < NUM_ACTIONS; i++) {
+                client.index("test", "test", null, "{ \"name\" : \"" + randomString(32) + "\"}");
+            }
+            client.flushIngest();
+            client.waitForResponses(TimeValue.timeValueSeconds(30));
+            client.refreshIndex("test");
+            SearchRequestBuilder searchRequestBuilder = new SearchRequestBuilder(client.client(), SearchAction.INSTANCE)
+                    .setIndices("test")
+                    .setQuery(QueryBuilders.matchAllQuery())
+                    .setSize(100);
+            long count = 0L;
+            try (HttpScrollIterator iterator = new HttpScrollIterator(client.client(),
+                    searchRequestBuilder.request(), TimeValue.timeValueMinutes(1))) {
+                while (iterator.hasNext()) {
+                    assertNotNull(iterator.next().getSource());
+                    count++;
+                }
+                assertEquals(NUM_ACTIONS.longValue(), iterator.getTotalHits());
+            }
+            assertEquals(NUM_ACTIONS.longValue(), count);
+            // the request of the caller is not modified
+            assertNull(searchRequestBuilder.request().scroll());
+        } catch (NoNodeAvailableException e) {
+            logger.warn("skipping, no node available");
+        } finally {
+            if (client.hasThrowable()) {
+                logger.error("error", client.getThrowable());
+            }
+            assertFalse(client.hasThrowable());
+            client.shutdown();
+        }
+    }
+
 }
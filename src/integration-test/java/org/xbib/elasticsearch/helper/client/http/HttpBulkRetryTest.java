@@ -0,0 +1,239 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.client.support.Headers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpBulkRetryTest {
+
+    private ThreadPool threadPool;
+
+    private ScriptedClient client;
+
+    @Before
+    public void setup() {
+        threadPool = new ThreadPool("test");
+        client = new ScriptedClient(threadPool);
+    }
+
+    @After
+    public void cleanup() {
+        ThreadPool.terminate(threadPool, 10L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testBisect() throws Exception {
+        client.maxActions = 2;
+        HttpBulkRetry retry = new HttpBulkRetry(client, BackoffPolicy.noBackoff());
+        BulkResponse response = execute(retry, bulkRequest("0", "1", "2", "3", "4"));
+        assertFalse(response.hasFailures());
+        assertIds(response, "0", "1", "2", "3", "4");
+        // 5 is split into 2 and 3, 3 is split into 1 and 2
+        assertEquals(sizes(5, 2, 3, 1, 2), client.sizes);
+    }
+
+    @Test
+    public void testBisectSingleAction() throws Exception {
+        client.maxActions = 0;
+        client.oversized = "big";
+        HttpBulkRetry retry = new HttpBulkRetry(client, BackoffPolicy.noBackoff());
+        BulkResponse response = execute(retry, bulkRequest("0", "big", "2"));
+        assertTrue(response.hasFailures());
+        assertIds(response, "0", "big", "2");
+        assertFalse(response.getItems()[0].isFailed());
+        assertTrue(response.getItems()[1].isFailed());
+        assertEquals(RestStatus.REQUEST_ENTITY_TOO_LARGE, response.getItems()[1].getFailure().getStatus());
+        assertFalse(response.getItems()[2].isFailed());
+    }
+
+    @Test
+    public void testRetryRejectedItems() throws Exception {
+        client.rejectedOnce = "reject";
+        HttpBulkRetry retry = new HttpBulkRetry(client,
+                BackoffPolicy.constantBackoff(TimeValue.timeValueMillis(1L), 3));
+        BulkResponse response = execute(retry, bulkRequest("0", "reject1", "2", "reject3"));
+        assertFalse(response.hasFailures());
+        assertIds(response, "0", "reject1", "2", "reject3");
+        // only the rejected items are sent again
+        assertEquals(sizes(4, 2), client.sizes);
+        assertEquals(2, client.attempts.get("reject1").get());
+        assertEquals(1, client.attempts.get("0").get());
+    }
+
+    @Test
+    public void testRetryRejectedItemsExhausted() throws Exception {
+        client.rejectedOnce = "reject";
+        HttpBulkRetry retry = new HttpBulkRetry(client, BackoffPolicy.noBackoff());
+        BulkResponse response = execute(retry, bulkRequest("0", "reject1"));
+        assertTrue(response.hasFailures());
+        assertFalse(response.getItems()[0].isFailed());
+        assertEquals(RestStatus.TOO_MANY_REQUESTS, response.getItems()[1].getFailure().getStatus());
+        assertEquals(sizes(2), client.sizes);
+    }
+
+    @Test
+    public void testRetryRejectedRequestHonoursRetryAfter() throws Exception {
+        client.rejectedRequests.set(1);
+        client.retryAfter = TimeValue.timeValueSeconds(1L);
+        HttpBulkRetry retry = new HttpBulkRetry(client,
+                BackoffPolicy.constantBackoff(TimeValue.timeValueMillis(1L), 3));
+        long t0 = System.nanoTime();
+        BulkResponse response = execute(retry, bulkRequest("0", "1"));
+        long millis = (System.nanoTime() - t0) / 1000000L;
+        assertFalse(response.hasFailures());
+        assertIds(response, "0", "1");
+        assertEquals(sizes(2, 2), client.sizes);
+        assertTrue("retried after " + millis + " ms", millis >= 1000L);
+    }
+
+    @Test
+    public void testRejectedRequestWithoutBackoff() throws Exception {
+        client.rejectedRequests.set(1);
+        HttpBulkRetry retry = new HttpBulkRetry(client, BackoffPolicy.noBackoff());
+        try {
+            execute(retry, bulkRequest("0", "1"));
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpStatusException);
+            assertEquals(RestStatus.TOO_MANY_REQUESTS, ((HttpStatusException) e.getCause()).status());
+        }
+    }
+
+    private static BulkResponse execute(HttpBulkRetry retry, BulkRequest bulkRequest) throws Exception {
+        PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+        retry.execute(bulkRequest, future);
+        return future.get(10L, TimeUnit.SECONDS);
+    }
+
+    private static BulkRequest bulkRequest(String... ids) {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (String id : ids) {
+            bulkRequest.add(new IndexRequest("test", "test", id).source("{}"));
+        }
+        return bulkRequest;
+    }
+
+    private static List<Integer> sizes(Integer... sizes) {
+        List<Integer> list = new ArrayList<>();
+        for (Integer size : sizes) {
+            list.add(size);
+        }
+        return list;
+    }
+
+    private static void assertIds(BulkResponse response, String... ids) {
+        BulkItemResponse[] items = response.getItems();
+        assertEquals(ids.length, items.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, items[i].getItemId());
+            assertEquals(ids[i], items[i].getId());
+        }
+    }
+
+    /**
+     * Answers bulk requests with 413 if they are larger than {@code maxActions} or contain the oversized ID,
+     * with 429 while {@code rejectedRequests} is positive, and rejects items with IDs starting with
+     * {@code rejectedOnce} on their first attempt.
+     */
+    private static class ScriptedClient extends AbstractClient {
+
+        final List<Integer> sizes = new CopyOnWriteArrayList<>();
+
+        final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+        final AtomicInteger rejectedRequests = new AtomicInteger();
+
+        volatile int maxActions = Integer.MAX_VALUE;
+
+        volatile String oversized;
+
+        volatile String rejectedOnce;
+
+        volatile TimeValue retryAfter;
+
+        ScriptedClient(ThreadPool threadPool) {
+            super(Settings.EMPTY, threadPool, Headers.EMPTY);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+                void doExecute(Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+            if (action != BulkAction.INSTANCE) {
+                listener.onFailure(new UnsupportedOperationException(action.name()));
+                return;
+            }
+            BulkRequest bulkRequest = (BulkRequest) request;
+            sizes.add(bulkRequest.numberOfActions());
+            if (rejectedRequests.getAndDecrement() > 0) {
+                listener.onFailure(new HttpStatusException(RestStatus.TOO_MANY_REQUESTS, "busy", retryAfter));
+                return;
+            }
+            boolean tooLarge = bulkRequest.numberOfActions() > maxActions;
+            for (ActionRequest actionRequest : bulkRequest.requests()) {
+                if (((IndexRequest) actionRequest).id().equals(oversized)) {
+                    tooLarge = true;
+                }
+            }
+            if (tooLarge) {
+                listener.onFailure(new HttpStatusException(RestStatus.REQUEST_ENTITY_TOO_LARGE, "too large"));
+                return;
+            }
+            BulkItemResponse[] items = new BulkItemResponse[bulkRequest.numberOfActions()];
+            for (int i = 0; i < items.length; i++) {
+                IndexRequest indexRequest = (IndexRequest) bulkRequest.requests().get(i);
+                String id = indexRequest.id();
+                AtomicInteger counter = attempts.get(id);
+                if (counter == null) {
+                    counter = new AtomicInteger();
+                    attempts.put(id, counter);
+                }
+                int attempt = counter.incrementAndGet();
+                if (rejectedOnce != null && id.startsWith(rejectedOnce) && attempt == 1) {
+                    items[i] = new BulkItemResponse(i, "index", new BulkItemResponse.Failure("test", "test", id,
+                            new HttpStatusException(RestStatus.TOO_MANY_REQUESTS, "rejected")));
+                } else {
+                    items[i] = new BulkItemResponse(i, "index", new IndexResponse("test", "test", id, attempt, true));
+                }
+            }
+            listener.onResponse((Response) new BulkResponse(items, 1L));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class HttpChunkedInputStreamTest {
+
+    @Test
+    public void testRead() throws Exception {
+        HttpChunkedInputStream inputStream = new HttpChunkedInputStream(null, 1024L);
+        inputStream.offer(ChannelBuffers.copiedBuffer("Hello ", StandardCharsets.UTF_8));
+        inputStream.offer(ChannelBuffers.copiedBuffer("World", StandardCharsets.UTF_8));
+        inputStream.finish();
+        byte[] b = new byte[32];
+        int len = 0;
+        int n;
+        while ((n = inputStream.read(b, len, b.length - len)) != -1) {
+            len += n;
+        }
+        assertEquals("Hello World", new String(b, 0, len, StandardCharsets.UTF_8));
+        assertEquals(-1, inputStream.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailure() throws Exception {
+        HttpChunkedInputStream inputStream = new HttpChunkedInputStream(null, 1024L);
+        inputStream.offer(ChannelBuffers.copiedBuffer("Hello", StandardCharsets.UTF_8));
+        inputStream.fail(new IllegalStateException("connection lost"));
+        assertEquals('H', inputStream.read());
+        inputStream.skip(4L);
+        inputStream.read();
+    }
+
+    @Test
+    public void testTimeoutPausedWhileSuspended() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer();
+        try {
+            DecoderEmbedder<Object> embedder = new DecoderEmbedder<>(new SimpleChannelUpstreamHandler());
+            embedder.getPipeline().addFirst(HttpChunkedInputStream.TIMEOUT_HANDLER,
+                    new ReadTimeoutHandler(timer, 1L, TimeUnit.HOURS));
+            Channel channel = embedder.getPipeline().getChannel();
+            HttpChunkedInputStream inputStream = new HttpChunkedInputStream(channel, 8L);
+            inputStream.offer(ChannelBuffers.copiedBuffer("0123456789", StandardCharsets.UTF_8));
+            // above the high watermark
+            assertNull(embedder.getPipeline().get(HttpChunkedInputStream.TIMEOUT_HANDLER));
+            assertEquals('0', inputStream.read());
+            // below the low watermark
+            assertNotNull(embedder.getPipeline().get(HttpChunkedInputStream.TIMEOUT_HANDLER));
+            inputStream.finish();
+            inputStream.close();
+            embedder.finish();
+        } finally {
+            timer.stop();
+        }
+    }
+}
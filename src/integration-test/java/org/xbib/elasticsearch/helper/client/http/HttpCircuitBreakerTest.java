@@ -0,0 +1,146 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.jboss.netty.handler.timeout.ReadTimeoutException;
+import org.junit.Test;
+
+import java.net.ConnectException;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpCircuitBreakerTest {
+
+    @Test
+    public void testOutstandingCap() throws Exception {
+        HttpCircuitBreaker breaker = new HttpCircuitBreaker(settingsBuilder()
+                .put(HttpCircuitBreaker.MAX_OUTSTANDING_REQUESTS, 2).build(), "localhost");
+        ActionListener<TestResponse> listener1 = admit(breaker);
+        admit(breaker);
+        assertEquals(2, breaker.getOutstanding());
+        assertRejected(breaker);
+        listener1.onResponse(new TestResponse());
+        assertEquals(1, breaker.getOutstanding());
+        admit(breaker);
+        assertEquals(2, breaker.getOutstanding());
+    }
+
+    @Test
+    public void testHostFailure() throws Exception {
+        assertTrue(HttpCircuitBreaker.isHostFailure(0, new ConnectException()));
+        assertTrue(HttpCircuitBreaker.isHostFailure(0, new ReadTimeoutException()));
+        assertTrue(HttpCircuitBreaker.isHostFailure(503, new ElasticsearchException("unavailable")));
+        assertFalse(HttpCircuitBreaker.isHostFailure(404, new ElasticsearchException("index_not_found")));
+        assertFalse(HttpCircuitBreaker.isHostFailure(400, new ElasticsearchException("parse error")));
+        assertFalse(HttpCircuitBreaker.isHostFailure(0, new ActionRequestValidationException()));
+        assertFalse(HttpCircuitBreaker.isHostFailure(0, new IllegalArgumentException("bad request")));
+    }
+
+    @Test
+    public void testOpens() throws Exception {
+        HttpCircuitBreaker breaker = new HttpCircuitBreaker(settings("1h"), "localhost");
+        failure(breaker, 0);
+        success(breaker, 200);
+        failure(breaker, 500);
+        assertEquals(HttpCircuitBreaker.State.CLOSED, breaker.getState());
+        success(breaker, 200);
+        // two of four requests failed
+        assertEquals(HttpCircuitBreaker.State.OPEN, breaker.getState());
+        assertRejected(breaker);
+    }
+
+    @Test
+    public void testClientErrorsDoNotOpen() throws Exception {
+        HttpCircuitBreaker breaker = new HttpCircuitBreaker(settings("1h"), "localhost");
+        for (int i = 0; i < 8; i++) {
+            failure(breaker, 404);
+        }
+        assertEquals(HttpCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testProbe() throws Exception {
+        HttpCircuitBreaker breaker = new HttpCircuitBreaker(settings("0ms"), "localhost");
+        // admitted while closed, completes after the breaker has opened
+        ActionListener<TestResponse> straggler = admit(breaker);
+        open(breaker);
+        ActionListener<TestResponse> probe = admit(breaker);
+        assertEquals(HttpCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // only one probe at a time
+        assertRejected(breaker);
+        straggler.onFailure(new ConnectException());
+        assertEquals(HttpCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertRejected(breaker);
+        probe.onResponse(new TestResponse());
+        assertEquals(HttpCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getOutstanding());
+    }
+
+    @Test
+    public void testProbeFails() throws Exception {
+        HttpCircuitBreaker breaker = new HttpCircuitBreaker(settings("0ms"), "localhost");
+        open(breaker);
+        ActionListener<TestResponse> probe = admit(breaker);
+        assertEquals(HttpCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        probe.onFailure(new ConnectException());
+        assertEquals(HttpCircuitBreaker.State.OPEN, breaker.getState());
+        // the next probe
+        admit(breaker);
+        assertEquals(HttpCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    private static Settings settings(String openTime) {
+        return settingsBuilder()
+                .put(HttpCircuitBreaker.BREAKER_WINDOW, 4)
+                .put(HttpCircuitBreaker.BREAKER_ERROR_THRESHOLD, 0.5d)
+                .put(HttpCircuitBreaker.BREAKER_OPEN_TIME, openTime)
+                .build();
+    }
+
+    private static void open(HttpCircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            failure(breaker, 0);
+        }
+    }
+
+    private static ActionListener<TestResponse> admit(HttpCircuitBreaker breaker) {
+        return breaker.admit(PlainActionFuture.<TestResponse>newFuture());
+    }
+
+    private static void success(HttpCircuitBreaker breaker, int status) {
+        ActionListener<TestResponse> listener = admit(breaker);
+        ((HttpCircuitBreaker.Admission) listener).setStatus(status);
+        listener.onResponse(new TestResponse());
+    }
+
+    private static void failure(HttpCircuitBreaker breaker, int status) {
+        ActionListener<TestResponse> listener = admit(breaker);
+        if (status > 0) {
+            ((HttpCircuitBreaker.Admission) listener).setStatus(status);
+            listener.onFailure(new ElasticsearchException("status " + status));
+        } else {
+            listener.onFailure(new ConnectException());
+        }
+    }
+
+    private static void assertRejected(HttpCircuitBreaker breaker) {
+        try {
+            admit(breaker);
+            fail("expected rejection");
+        } catch (EsRejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    private static class TestResponse extends ActionResponse {
+    }
+}
@@ -0,0 +1,78 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+import org.xbib.metrics.Gauge;
+import org.xbib.metrics.MetricName;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpClientResourcesTest {
+
+    @Test
+    public void testShared() throws Exception {
+        Settings settings = settingsBuilder().put(HttpClientResources.WORKER_THREADS, 2).build();
+        HttpClientResources resources1 = HttpClientResources.acquire(settings);
+        HttpClientResources resources2 = HttpClientResources.acquire(settings);
+        assertSame(resources1, resources2);
+        assertEquals(2, resources1.getWorkerCount());
+        resources1.release();
+        assertFalse(resources2.isReleased());
+        resources2.release();
+        assertTrue(resources2.isReleased());
+        // released resources are not handed out again
+        HttpClientResources resources3 = HttpClientResources.acquire(settings);
+        assertNotSame(resources1, resources3);
+        resources3.release();
+        // releasing more often than acquired has no effect
+        resources3.release();
+        assertTrue(resources3.isReleased());
+    }
+
+    @Test
+    public void testSettingsOfLaterClients() throws Exception {
+        HttpClientResources resources1 = HttpClientResources.acquire(settingsBuilder()
+                .put(HttpClientResources.WORKER_THREADS, 2).build());
+        HttpClientResources resources2 = HttpClientResources.acquire(settingsBuilder()
+                .put(HttpClientResources.WORKER_THREADS, 4).build());
+        HttpClientResources resources3 = HttpClientResources.acquire(settingsBuilder()
+                .put(HttpClientResources.WORKER_THREADS, 2)
+                .put(HttpClientResources.DIRECT_BUFFERS, false).build());
+        assertNotSame(resources1, resources2);
+        assertNotSame(resources1, resources3);
+        assertEquals(2, resources1.getWorkerCount());
+        assertEquals(4, resources2.getWorkerCount());
+        resources1.release();
+        assertTrue(resources1.isReleased());
+        assertFalse(resources2.isReleased());
+        assertFalse(resources3.isReleased());
+        resources2.release();
+        resources3.release();
+    }
+
+    @Test
+    public void testBufferMetrics() throws Exception {
+        HttpClientResources resources = HttpClientResources.acquire(settingsBuilder()
+                .put(HttpClientResources.WORKER_THREADS, 1).build());
+        try {
+            resources.getBufferFactory().getBuffer(100);
+            resources.getBufferFactory().getBuffer(200);
+            assertEquals(2L, value(resources, "http", "client", "buffers", "allocated", "count"));
+            assertEquals(300L, value(resources, "http", "client", "buffers", "allocated", "bytes"));
+            assertTrue(value(resources, "http", "client", "buffers", "direct", "used") >= 0L);
+        } finally {
+            resources.release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long value(HttpClientResources resources, String... name) {
+        Gauge<Long> gauge = (Gauge<Long>) resources.getMetrics().get(MetricName.build(name));
+        return gauge.getValue();
+    }
+}
@@ -0,0 +1,158 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetAction;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.client.support.Headers;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpRequestCoalescerTest {
+
+    private ThreadPool threadPool;
+
+    private RecordingClient client;
+
+    @Before
+    public void setup() {
+        threadPool = new ThreadPool("test");
+        client = new RecordingClient(threadPool);
+    }
+
+    @After
+    public void cleanup() {
+        ThreadPool.terminate(threadPool, 10L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        HttpRequestCoalescer coalescer = new HttpRequestCoalescer(Settings.EMPTY, threadPool, client);
+        assertFalse(coalescer.isEnabled());
+        assertFalse(coalescer.offer(GetAction.INSTANCE, new GetRequest("test", "test", "1"),
+                PlainActionFuture.<GetResponse>newFuture()));
+    }
+
+    @Test
+    public void testNotCoalescable() throws Exception {
+        HttpRequestCoalescer coalescer = new HttpRequestCoalescer(settingsBuilder()
+                .put(HttpRequestCoalescer.COALESCE_WINDOW, "1h").build(), threadPool, client);
+        assertFalse(coalescer.offer(GetAction.INSTANCE, new GetRequest("test", "test", "1").preference("_local"),
+                PlainActionFuture.<GetResponse>newFuture()));
+        assertFalse(coalescer.offer(GetAction.INSTANCE, new GetRequest("test", "test", "1").refresh(true),
+                PlainActionFuture.<GetResponse>newFuture()));
+        assertFalse(coalescer.offer(SearchAction.INSTANCE, new SearchRequest("test").scroll(TimeValue.timeValueMinutes(1)),
+                PlainActionFuture.<SearchResponse>newFuture()));
+        assertTrue(client.multiGetRequests.isEmpty());
+    }
+
+    @Test
+    public void testMaxBatch() throws Exception {
+        HttpRequestCoalescer coalescer = new HttpRequestCoalescer(settingsBuilder()
+                .put(HttpRequestCoalescer.COALESCE_WINDOW, "1h")
+                .put(HttpRequestCoalescer.COALESCE_MAX_BATCH, 3).build(), threadPool, client);
+        FetchSourceContext fetchSourceContext = new FetchSourceContext(new String[]{"a"}, new String[0]);
+        PlainActionFuture<GetResponse> future1 = PlainActionFuture.newFuture();
+        PlainActionFuture<GetResponse> future2 = PlainActionFuture.newFuture();
+        PlainActionFuture<GetResponse> future3 = PlainActionFuture.newFuture();
+        assertTrue(coalescer.offer(GetAction.INSTANCE, new GetRequest("test", "test", "1")
+                .fetchSourceContext(fetchSourceContext), future1));
+        assertTrue(coalescer.offer(GetAction.INSTANCE, new GetRequest("test", "test", "missing"), future2));
+        assertTrue(client.multiGetRequests.isEmpty());
+        assertTrue(coalescer.offer(GetAction.INSTANCE, new GetRequest("test", "test", "3"), future3));
+        // the third request fills the batch
+        assertEquals(1, client.multiGetRequests.size());
+        List<MultiGetRequest.Item> items = client.multiGetRequests.get(0).getItems();
+        assertEquals(3, items.size());
+        assertSame(fetchSourceContext, items.get(0).fetchSourceContext());
+        assertEquals("1", future1.get().getId());
+        assertEquals("3", future3.get().getId());
+        try {
+            future2.get();
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertEquals("missing", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        HttpRequestCoalescer coalescer = new HttpRequestCoalescer(settingsBuilder()
+                .put(HttpRequestCoalescer.COALESCE_WINDOW, "10ms").build(), threadPool, client);
+        PlainActionFuture<GetResponse> future = PlainActionFuture.newFuture();
+        assertTrue(coalescer.offer(GetAction.INSTANCE, new GetRequest("test", "test", "1"), future));
+        // the batch is sent when the window has elapsed
+        assertEquals("1", future.get(10L, TimeUnit.SECONDS).getId());
+        assertEquals(1, client.multiGetRequests.size());
+    }
+
+    private static class RecordingClient extends AbstractClient {
+
+        final List<MultiGetRequest> multiGetRequests = new CopyOnWriteArrayList<>();
+
+        RecordingClient(ThreadPool threadPool) {
+            super(Settings.EMPTY, threadPool, Headers.EMPTY);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected <Request extends ActionRequest, Response extends ActionResponse, RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+                void doExecute(Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+            if (action != MultiGetAction.INSTANCE) {
+                listener.onFailure(new UnsupportedOperationException(action.name()));
+                return;
+            }
+            MultiGetRequest multiGetRequest = (MultiGetRequest) request;
+            multiGetRequests.add(multiGetRequest);
+            List<MultiGetRequest.Item> items = multiGetRequest.getItems();
+            MultiGetItemResponse[] responses = new MultiGetItemResponse[items.size()];
+            for (int i = 0; i < responses.length; i++) {
+                MultiGetRequest.Item item = items.get(i);
+                if ("missing".equals(item.id())) {
+                    responses[i] = new MultiGetItemResponse(null, new MultiGetResponse.Failure(item.index(),
+                            item.type(), item.id(), new IllegalStateException("missing")));
+                } else {
+                    responses[i] = new MultiGetItemResponse(new GetResponse(new GetResult(item.index(), item.type(),
+                            item.id(), 1L, true, new BytesArray("{}"), null)), null);
+                }
+            }
+            listener.onResponse((Response) new MultiGetResponse(responses));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
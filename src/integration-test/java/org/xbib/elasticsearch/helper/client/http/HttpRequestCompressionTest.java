@@ -0,0 +1,116 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+import org.xbib.metrics.CountMetric;
+import org.xbib.metrics.MetricName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpRequestCompressionTest {
+
+    @Test
+    public void testOffByDefault() throws Exception {
+        HttpRequestCompression compression = new HttpRequestCompression(Settings.EMPTY);
+        assertNull(compression.getEncoding());
+        assertFalse(compression.isCompressing(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testThreshold() throws Exception {
+        HttpRequestCompression compression = new HttpRequestCompression(settingsBuilder()
+                .put(HttpRequestCompression.COMPRESSION, "gzip")
+                .put(HttpRequestCompression.COMPRESSION_THRESHOLD, "1kb")
+                .build());
+        assertFalse(compression.isCompressing(1023L));
+        assertTrue(compression.isCompressing(1024L));
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        HttpRequestCompression compression = new HttpRequestCompression(settingsBuilder()
+                .put(HttpRequestCompression.COMPRESSION, "gzip")
+                .build());
+        assertEquals("gzip", compression.getEncoding());
+        byte[] body = body();
+        byte[] compressed = compress(compression, body);
+        assertArrayEquals(body, decompress(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        assertMetrics(compression, body.length, compressed.length);
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        HttpRequestCompression compression = new HttpRequestCompression(settingsBuilder()
+                .put(HttpRequestCompression.COMPRESSION, "deflate")
+                .put(HttpRequestCompression.COMPRESSION_LEVEL, 1)
+                .build());
+        assertEquals("deflate", compression.getEncoding());
+        byte[] body = body();
+        byte[] compressed = compress(compression, body);
+        assertArrayEquals(body, decompress(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+        assertMetrics(compression, body.length, compressed.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCompression() throws Exception {
+        new HttpRequestCompression(settingsBuilder().put(HttpRequestCompression.COMPRESSION, "snappy").build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLevel() throws Exception {
+        new HttpRequestCompression(settingsBuilder()
+                .put(HttpRequestCompression.COMPRESSION, "gzip")
+                .put(HttpRequestCompression.COMPRESSION_LEVEL, 10)
+                .build());
+    }
+
+    private static byte[] body() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("{\"index\":{\"_index\":\"test\",\"_type\":\"test\",\"_id\":\"").append(i).append("\"}}\n")
+                    .append("{\"name\":\"Hello World\"}\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(HttpRequestCompression compression, byte[] body) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = compression.wrap(bytes);
+        out.write(body, 0, body.length);
+        out.close();
+        // closing twice must not count twice
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Streams.copy(in, out);
+        return out.toByteArray();
+    }
+
+    private static void assertMetrics(HttpRequestCompression compression, long in, long out) {
+        assertTrue(out < in);
+        assertEquals(1L, count(compression, "http", "client", "compression", "requests"));
+        assertEquals(in, count(compression, "http", "client", "compression", "bytes", "in"));
+        assertEquals(out, count(compression, "http", "client", "compression", "bytes", "out"));
+    }
+
+    private static long count(HttpRequestCompression compression, String... name) {
+        return ((CountMetric) compression.getMetrics().get(MetricName.build(name))).getCount();
+    }
+}
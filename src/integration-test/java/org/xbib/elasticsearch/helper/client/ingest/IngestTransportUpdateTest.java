@@ -0,0 +1,65 @@
+package org.xbib.elasticsearch.helper.client.ingest;
+
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.get.GetRequestBuilder;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+import org.xbib.elasticsearch.NodeTestUtils;
+import org.xbib.elasticsearch.helper.client.ClientBuilder;
+import org.xbib.elasticsearch.helper.client.IngestTransportClient;
+import org.xbib.elasticsearch.helper.client.LongAdderIngestMetric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IngestTransportUpdateTest extends NodeTestUtils {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(IngestTransportUpdateTest.class.getSimpleName());
+
+    @Test
+    public void testUpdate() throws Exception {
+        final IngestTransportClient client = ClientBuilder.builder()
+                .put(getSettings())
+                .setMetric(new LongAdderIngestMetric())
+                .toIngestTransportClient();
+        try {
+            client.newIndex("test");
+            client.waitForCluster("GREEN", TimeValue.timeValueSeconds(30));
+            client.index("test", "test", "1", "{ \"name\" : \"Hello World\"}");
+            client.flushIngest();
+            client.waitForResponses(TimeValue.timeValueSeconds(30));
+            // partial document
+            client.update("test", "test", "1", "{ \"title\" : \"Hello\"}");
+            // upsert of a missing document
+            client.update("test", "test", "2", "{ \"name\" : \"Upsert\"}");
+            // noop
+            client.bulkUpdate(new UpdateRequest("test", "test", "1").doc("{ \"title\" : \"Hello\"}").detectNoop(true));
+            client.flushIngest();
+            client.waitForResponses(TimeValue.timeValueSeconds(30));
+            GetResponse getResponse = new GetRequestBuilder(client.client(), GetAction.INSTANCE)
+                    .setIndex("test").setType("test").setId("1").execute().actionGet();
+            assertEquals("Hello World", getResponse.getSource().get("name"));
+            assertEquals("Hello", getResponse.getSource().get("title"));
+            assertEquals(2L, getResponse.getVersion());
+            getResponse = new GetRequestBuilder(client.client(), GetAction.INSTANCE)
+                    .setIndex("test").setType("test").setId("2").execute().actionGet();
+            assertTrue(getResponse.isExists());
+            assertEquals("Upsert", getResponse.getSource().get("name"));
+            assertEquals(4, client.getMetric().getSucceeded().getCount());
+        } catch (NoNodeAvailableException e) {
+            logger.warn("skipping, no node available");
+        } finally {
+            client.shutdown();
+            if (client.hasThrowable()) {
+                logger.error("error", client.getThrowable());
+            }
+            assertFalse(client.hasThrowable());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.xbib.elasticsearch.helper.client.transport;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthAction;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.xbib.elasticsearch.NodeTestUtils;
+import org.xbib.elasticsearch.helper.client.TransportClient;
+
+import java.net.InetAddress;
+import java.util.Collections;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+
+/**
+ * Measures the time from building a transport client to its first successful request, in the default and
+ * in the lean mode, against a local test node.
+ *
+ * This is not a test and is not part of a suite. Run it with {@code main}, the argument is the number of
+ * measured rounds per mode.
+ */
+public class TransportClientStartupBenchmark extends NodeTestUtils {
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        TransportClientStartupBenchmark benchmark = new TransportClientStartupBenchmark();
+        benchmark.startNodes();
+        try {
+            // round 0 is for warming up
+            long regular = 0L;
+            long lean = 0L;
+            for (int round = 0; round <= rounds; round++) {
+                long regularNanos = benchmark.timeToFirstRequest(false);
+                long leanNanos = benchmark.timeToFirstRequest(true);
+                if (round > 0) {
+                    regular += regularNanos;
+                    lean += leanNanos;
+                }
+            }
+            System.out.println(String.format("time to first successful request, %d rounds: default %d ms, lean %d ms",
+                    rounds, regular / rounds / 1000000L, lean / rounds / 1000000L));
+        } finally {
+            benchmark.stopNodes();
+        }
+    }
+
+    private long timeToFirstRequest(boolean lean) throws Exception {
+        Settings settings = getSettings();
+        InetSocketTransportAddress address = new InetSocketTransportAddress(
+                InetAddress.getByName(settings.get("host")), settings.getAsInt("port", 9300));
+        long t0 = System.nanoTime();
+        TransportClient client = TransportClient.builder()
+                .settings(settingsBuilder()
+                        .put("cluster.name", getClusterName())
+                        .put("path.home", getHome()))
+                .setLean(lean)
+                .build();
+        try {
+            client.addTransportAddresses(Collections.singletonList(address));
+            client.execute(ClusterHealthAction.INSTANCE, new ClusterHealthRequest()).actionGet();
+            return System.nanoTime() - t0;
+        } finally {
+            client.close();
+        }
+    }
+}
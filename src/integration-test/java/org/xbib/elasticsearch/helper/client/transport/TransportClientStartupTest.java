@@ -0,0 +1,177 @@
+package org.xbib.elasticsearch.helper.client.transport;
+
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthAction;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+import org.xbib.elasticsearch.NodeTestUtils;
+import org.xbib.elasticsearch.helper.client.NodeWarmup;
+import org.xbib.elasticsearch.helper.client.SearchTransportClient;
+import org.xbib.elasticsearch.helper.client.TransportClient;
+import org.xbib.elasticsearch.helper.network.DnsCache;
+
+import java.net.InetAddress;
+import java.util.Collections;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the startup of a transport client in the default and the lean mode.
+ */
+public class TransportClientStartupTest extends NodeTestUtils {
+
+    @Test
+    public void testRegular() throws Exception {
+        TransportClient client = TransportClient.builder()
+                .settings(clientSettings())
+                .build();
+        try {
+            assertTrue(client.isStarted());
+            assertNotEquals("2", client.settings().get("transport.netty.worker_count"));
+            connectAndRequest(client);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testLean() throws Exception {
+        TransportClient client = TransportClient.builder()
+                .settings(clientSettings())
+                .setLean(true)
+                .build();
+        try {
+            // the transport service is started by the first address
+            assertFalse(client.isStarted());
+            assertEquals("2", client.settings().get("transport.netty.worker_count"));
+            assertEquals("1", client.settings().get("transport.connections_per_node.bulk"));
+            connectAndRequest(client);
+            assertTrue(client.isStarted());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testLeanBySettings() throws Exception {
+        TransportClient client = TransportClient.builder()
+                .settings(clientSettings()
+                        .put(TransportClient.LEAN, true)
+                        .put("transport.netty.worker_count", 4))
+                .build();
+        try {
+            assertFalse(client.isStarted());
+            // client settings override the lean defaults
+            assertEquals("4", client.settings().get("transport.netty.worker_count"));
+            assertEquals("1", client.settings().get("transport.connections_per_node.bulk"));
+            connectAndRequest(client);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testLeanClosedWithoutAddress() throws Exception {
+        TransportClient client = TransportClient.builder()
+                .settings(clientSettings())
+                .setLean(true)
+                .build();
+        client.close();
+        assertFalse(client.isStarted());
+    }
+
+    @Test
+    public void testDnsCacheFromSettings() throws Exception {
+        TransportClient client = TransportClient.builder()
+                .settings(clientSettings().put(DnsCache.TTL, "7s"))
+                .setLean(true)
+                .build();
+        try {
+            // host names are resolved by the cache which the client listens to
+            assertEquals(TimeValue.timeValueSeconds(7), client.dnsCache().getTtl());
+            assertSame(DnsCache.getInstance(client.settings()), client.dnsCache());
+            assertNotSame(DnsCache.getInstance(), client.dnsCache());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testPingTimesOfRemovedNode() throws Exception {
+        TransportClient client = TransportClient.builder()
+                .settings(clientSettings())
+                .build();
+        try {
+            connectAndRequest(client);
+            assertEquals(1, client.connectedNodes().size());
+            String id = client.connectedNodes().get(0).id();
+            assertTrue(client.pingTimes().containsKey(id));
+            client.removeTransportAddress(client.transportAddresses().get(0));
+            assertTrue(client.connectedNodes().isEmpty());
+            assertTrue(client.pingTimes().isEmpty());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testConnectReady() throws Exception {
+        SearchTransportClient client = new SearchTransportClient();
+        try {
+            client.init(getSettings());
+            TransportClient transportClient = (TransportClient) client.client();
+            assertTrue(transportClient.isReady());
+            assertTrue(transportClient.getNodeWarmup().isWarmedUp(transportClient.connectedNodes().get(0)));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testConnectNotReady() throws Exception {
+        Settings settings = getSettings();
+        SearchTransportClient client = new SearchTransportClient();
+        try {
+            // one of two listed nodes is reachable, but both must be warmed up
+            client.init(settingsBuilder()
+                    .put(settings)
+                    .putArray("host", settings.get("host") + ":" + settings.get("port"), "127.0.0.1:1")
+                    .put(NodeWarmup.WARMUP_READY_FRACTION, 1.0d)
+                    .build());
+            fail();
+        } catch (NoNodeAvailableException e) {
+            TransportClient transportClient = (TransportClient) client.client();
+            assertEquals(1, transportClient.connectedNodes().size());
+            assertFalse(transportClient.isReady());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private Settings.Builder clientSettings() {
+        return settingsBuilder()
+                .put("cluster.name", getClusterName())
+                .put("path.home", getHome());
+    }
+
+    private void connectAndRequest(TransportClient client) throws Exception {
+        Settings settings = getSettings();
+        InetSocketTransportAddress address = new InetSocketTransportAddress(
+                InetAddress.getByName(settings.get("host")), settings.getAsInt("port", 9300));
+        client.addTransportAddresses(Collections.singletonList(address));
+        ClusterHealthResponse response = client.execute(ClusterHealthAction.INSTANCE,
+                new ClusterHealthRequest()).actionGet();
+        assertEquals(getClusterName(), response.getClusterName());
+    }
+}
@@ -0,0 +1,177 @@
+package org.xbib.elasticsearch.helper.network;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DnsCacheTest {
+
+    private static final long TTL = TimeUnit.HOURS.toNanos(1L);
+
+    @Test
+    public void testCached() throws Exception {
+        ScriptedDnsCache cache = new ScriptedDnsCache();
+        cache.set("example", "10.0.0.1", "10.0.0.2");
+        assertEquals(addresses("10.0.0.1", "10.0.0.2")[0], cache.resolve("example"));
+        cache.set("example", "10.0.0.3");
+        assertArrayEquals(addresses("10.0.0.1", "10.0.0.2"), cache.resolveAll("example"));
+        assertEquals(1, cache.lookups.get());
+    }
+
+    @Test
+    public void testAddressLiteralIsNotCached() throws Exception {
+        ScriptedDnsCache cache = new ScriptedDnsCache();
+        assertEquals(InetAddress.getByName("10.0.0.1"), cache.resolve("10.0.0.1"));
+        assertEquals(0, cache.lookups.get());
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void testUnknownHost() throws Exception {
+        new ScriptedDnsCache().resolve("unknown");
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        ScriptedDnsCache cache = new ScriptedDnsCache();
+        RecordingListener listener = new RecordingListener();
+        cache.addListener(listener);
+        cache.set("example", "10.0.0.1");
+        cache.resolve("example");
+        cache.set("example", "10.0.0.2");
+        // the entry has not expired yet
+        cache.refresh(System.nanoTime());
+        assertEquals(InetAddress.getByName("10.0.0.1"), cache.resolve("example"));
+        assertTrue(listener.hosts.isEmpty());
+        cache.refresh(System.nanoTime() + TTL);
+        assertEquals(InetAddress.getByName("10.0.0.2"), cache.resolve("example"));
+        assertEquals(2, cache.lookups.get());
+        assertEquals(1, listener.hosts.size());
+        assertEquals("example", listener.hosts.get(0));
+        cache.removeListener(listener);
+        cache.set("example", "10.0.0.3");
+        cache.refresh(System.nanoTime() + 2 * TTL);
+        assertEquals(1, listener.hosts.size());
+    }
+
+    @Test
+    public void testReorderedAddressesAreNoChange() throws Exception {
+        ScriptedDnsCache cache = new ScriptedDnsCache();
+        RecordingListener listener = new RecordingListener();
+        cache.addListener(listener);
+        cache.set("example", "10.0.0.1", "10.0.0.2");
+        cache.resolve("example");
+        cache.set("example", "10.0.0.2", "10.0.0.1");
+        cache.refresh(System.nanoTime() + TTL);
+        assertEquals(2, cache.lookups.get());
+        assertTrue(listener.hosts.isEmpty());
+    }
+
+    @Test
+    public void testFailedLookupKeepsAddresses() throws Exception {
+        ScriptedDnsCache cache = new ScriptedDnsCache();
+        RecordingListener listener = new RecordingListener();
+        cache.addListener(listener);
+        cache.set("example", "10.0.0.1");
+        cache.resolve("example");
+        cache.set("example");
+        cache.refresh(System.nanoTime() + TTL);
+        assertEquals(InetAddress.getByName("10.0.0.1"), cache.resolve("example"));
+        assertTrue(listener.hosts.isEmpty());
+    }
+
+    @Test
+    public void testInstancePerTtl() throws Exception {
+        Settings settings = settingsBuilder().put(DnsCache.TTL, "5s").build();
+        DnsCache cache = DnsCache.getInstance(settings);
+        assertEquals(TimeValue.timeValueSeconds(5), cache.getTtl());
+        assertSame(cache, DnsCache.getInstance(settingsBuilder().put(DnsCache.TTL, "5000ms").build()));
+        assertSame(DnsCache.getInstance(), DnsCache.getInstance(Settings.EMPTY));
+        assertEquals(TimeValue.timeValueSeconds(60), DnsCache.getInstance().getTtl());
+        assertNotSame(cache, DnsCache.getInstance());
+    }
+
+    @Test
+    public void testResolveInetAddressWithConfiguredTtl() throws Exception {
+        TimeValue ttl = TimeValue.timeValueSeconds(7);
+        ScriptedDnsCache cache = new ScriptedDnsCache(ttl);
+        RecordingListener listener = new RecordingListener();
+        cache.addListener(listener);
+        cache.set("example", "10.0.0.1");
+        assertEquals(InetAddress.getByName("10.0.0.1"), NetworkUtils.resolveInetAddress("example", null, cache));
+        cache.set("example", "10.0.0.2");
+        long now = System.nanoTime();
+        // not yet expired with the configured time to live
+        cache.refresh(now + ttl.nanos() / 2);
+        assertTrue(listener.hosts.isEmpty());
+        cache.refresh(now + ttl.nanos());
+        assertEquals(1, listener.hosts.size());
+        assertEquals("example", listener.hosts.get(0));
+        assertEquals(InetAddress.getByName("10.0.0.2"), NetworkUtils.resolveInetAddress("example", null, cache));
+    }
+
+    private static InetAddress[] addresses(String... ips) throws UnknownHostException {
+        InetAddress[] addresses = new InetAddress[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            addresses[i] = InetAddress.getByName(ips[i]);
+        }
+        return addresses;
+    }
+
+    /**
+     * Answers lookups from a table of host names, without the name service.
+     */
+    private static class ScriptedDnsCache extends DnsCache {
+
+        final AtomicInteger lookups = new AtomicInteger();
+
+        private final Map<String, InetAddress[]> hosts = new ConcurrentHashMap<>();
+
+        ScriptedDnsCache() {
+            this(TimeValue.timeValueNanos(TTL));
+        }
+
+        ScriptedDnsCache(TimeValue ttl) {
+            super(ttl);
+        }
+
+        void set(String host, String... ips) throws UnknownHostException {
+            hosts.put(host, addresses(ips));
+        }
+
+        @Override
+        protected InetAddress[] lookup(String host) throws UnknownHostException {
+            lookups.incrementAndGet();
+            InetAddress[] addresses = hosts.get(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host);
+            }
+            return addresses;
+        }
+    }
+
+    private static class RecordingListener implements DnsCache.Listener {
+
+        final List<String> hosts = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onChange(String host, InetAddress[] oldAddresses, InetAddress[] newAddresses) {
+            hosts.add(host);
+        }
+    }
+}
@@ -6,13 +6,15 @@ import org.xbib.elasticsearch.helper.client.transport.BulkTransportClientTest;
 import org.xbib.elasticsearch.helper.client.transport.BulkTransportDuplicateIDTest;
 import org.xbib.elasticsearch.helper.client.transport.BulkTransportReplicaTest;
 import org.xbib.elasticsearch.helper.client.transport.BulkTransportUpdateReplicaLevelTest;
+import org.xbib.elasticsearch.helper.client.transport.TransportClientStartupTest;
 
 @RunWith(ListenerSuite.class)
 @Suite.SuiteClasses({
         BulkTransportClientTest.class,
         BulkTransportDuplicateIDTest.class,
         BulkTransportReplicaTest.class,
-        BulkTransportUpdateReplicaLevelTest.class
+        BulkTransportUpdateReplicaLevelTest.class,
+        TransportClientStartupTest.class
 })
 public class BulkTransportTestSuite {
 
@@ -1,12 +1,30 @@
 package suites;
 
+import org.elasticsearch.action.get.HttpGetActionTest;
+import org.elasticsearch.action.search.HttpMultiSearchActionTest;
+import org.elasticsearch.action.search.HttpSearchResponseParserTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.xbib.elasticsearch.helper.client.http.HttpBulkNodeClientTest;
+import org.xbib.elasticsearch.helper.client.http.HttpBulkRetryTest;
+import org.xbib.elasticsearch.helper.client.http.HttpChunkedInputStreamTest;
+import org.xbib.elasticsearch.helper.client.http.HttpCircuitBreakerTest;
+import org.xbib.elasticsearch.helper.client.http.HttpClientResourcesTest;
+import org.xbib.elasticsearch.helper.client.http.HttpRequestCoalescerTest;
+import org.xbib.elasticsearch.helper.client.http.HttpRequestCompressionTest;
 
 @RunWith(ListenerSuite.class)
 @Suite.SuiteClasses({
-        HttpBulkNodeClientTest.class
+        HttpBulkNodeClientTest.class,
+        HttpBulkRetryTest.class,
+        HttpChunkedInputStreamTest.class,
+        HttpCircuitBreakerTest.class,
+        HttpClientResourcesTest.class,
+        HttpRequestCoalescerTest.class,
+        HttpRequestCompressionTest.class,
+        HttpGetActionTest.class,
+        HttpSearchResponseParserTest.class,
+        HttpMultiSearchActionTest.class
 })
 public class HttpBulkNodeTestSuite {
 
@@ -6,13 +6,15 @@ import org.xbib.elasticsearch.helper.client.ingest.IngestTransportClientTest;
 import org.xbib.elasticsearch.helper.client.ingest.IngestTransportDuplicateIDTest;
 import org.xbib.elasticsearch.helper.client.ingest.IngestTransportReplicaTest;
 import org.xbib.elasticsearch.helper.client.ingest.IngestTransportUpdateReplicaLevelTest;
+import org.xbib.elasticsearch.helper.client.ingest.IngestTransportUpdateTest;
 
 @RunWith(ListenerSuite.class)
 @Suite.SuiteClasses({
         IngestTransportClientTest.class,
         IngestTransportDuplicateIDTest.class,
         IngestTransportReplicaTest.class,
-        IngestTransportUpdateReplicaLevelTest.class
+        IngestTransportUpdateReplicaLevelTest.class,
+        IngestTransportUpdateTest.class
 })
 public class IngestTransportTestSuite {
 }
@@ -2,19 +2,57 @@ package suites;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
+import org.xbib.elasticsearch.action.ingest.IngestActionCodecTest;
+import org.xbib.elasticsearch.action.ingest.IngestExecutorTest;
+import org.xbib.elasticsearch.action.ingest.ReplicaBatchTest;
+import org.xbib.elasticsearch.action.ingest.ShardPipelineTest;
+import org.xbib.elasticsearch.action.ingest.leader.CompletedIngestTableTest;
+import org.xbib.elasticsearch.action.ingest.leader.IngestLeaderShardRequestTest;
+import org.xbib.elasticsearch.action.ingest.replica.ReplicaNodeOperationRequestTest;
 import org.xbib.elasticsearch.helper.AliasTest;
 import org.xbib.elasticsearch.helper.IngestRequestTest;
+import org.xbib.elasticsearch.helper.IngestRequestParseTest;
+import org.xbib.elasticsearch.helper.IngestRejectionTest;
+import org.xbib.elasticsearch.helper.IngestRetryTest;
+import org.xbib.elasticsearch.helper.ReplicaLagTrackerTest;
 import org.xbib.elasticsearch.helper.SearchTest;
 import org.xbib.elasticsearch.helper.SimpleTest;
 import org.xbib.elasticsearch.helper.WildcardTest;
+import org.xbib.elasticsearch.helper.client.ClusterMetadataCacheTest;
+import org.xbib.elasticsearch.helper.client.HedgingPolicyTest;
+import org.xbib.elasticsearch.helper.client.LeastOutstandingNodeSelectorTest;
+import org.xbib.elasticsearch.helper.client.NodeQuarantineTest;
+import org.xbib.elasticsearch.helper.client.NodeWarmupTest;
+import org.xbib.elasticsearch.helper.client.TransportClientConnectTest;
+import org.xbib.elasticsearch.helper.client.TransportLanesTest;
+import org.xbib.elasticsearch.helper.network.DnsCacheTest;
 
 @RunWith(ListenerSuite.class)
 @Suite.SuiteClasses({
         SimpleTest.class,
         AliasTest.class,
         IngestRequestTest.class,
+        IngestRequestParseTest.class,
+        IngestRetryTest.class,
+        IngestRejectionTest.class,
+        ReplicaLagTrackerTest.class,
+        ReplicaNodeOperationRequestTest.class,
+        ReplicaBatchTest.class,
+        ShardPipelineTest.class,
+        IngestExecutorTest.class,
+        IngestLeaderShardRequestTest.class,
+        IngestActionCodecTest.class,
+        CompletedIngestTableTest.class,
         SearchTest.class,
-        WildcardTest.class
+        WildcardTest.class,
+        LeastOutstandingNodeSelectorTest.class,
+        HedgingPolicyTest.class,
+        NodeQuarantineTest.class,
+        NodeWarmupTest.class,
+        TransportLanesTest.class,
+        TransportClientConnectTest.class,
+        ClusterMetadataCacheTest.class,
+        DnsCacheTest.class
 })
 public class MiscTestSuite {
 }
@@ -13,89 +13,130 @@ import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
 import org.elasticsearch.rest.RestStatus;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.xbib.elasticsearch.helper.client.http.HttpAction;
 import org.xbib.elasticsearch.helper.client.http.HttpInvocationContext;
+import org.xbib.elasticsearch.helper.client.http.HttpRequestCompression;
+import org.xbib.elasticsearch.helper.client.http.HttpStatusException;
+import org.xbib.metrics.Metric;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricSet;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> {
+public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> implements MetricSet {
+
+    private final HttpRequestCompression compression;
 
     public HttpBulkAction(Settings settings) {
         super(settings, BulkAction.NAME);
+        this.compression = new HttpRequestCompression(settings);
     }
 
     @Override
-    protected HttpRequest createHttpRequest(URL base, BulkRequest request) {
-        StringBuilder bulkContent = new StringBuilder();
-        for (ActionRequest actionRequest : request.requests()) {
-            if (actionRequest instanceof IndexRequest) {
-                IndexRequest indexRequest = (IndexRequest) actionRequest;
-                bulkContent.append("{\"").append(indexRequest.opType().lowercase()).append("\":{");
-                bulkContent.append("\"_index\":\"").append(indexRequest.index()).append("\"");
-                bulkContent.append(",\"_type\":\"").append(indexRequest.type()).append("\"");
-                if (indexRequest.id() != null) {
-                    bulkContent.append(",\"_id\":\"").append(indexRequest.id()).append("\"");
-                }
-                if (indexRequest.routing() != null) {
-                    bulkContent.append(",\"_routing\":\"").append(indexRequest.routing()).append("\""); // _routing
-                }
-                if (indexRequest.parent() != null) {
-                    bulkContent.append(",\"_parent\":\"").append(indexRequest.parent()).append("\"");
-                }
-                if (indexRequest.timestamp() != null) {
-                    bulkContent.append(",\"_timestamp\":\"").append(indexRequest.timestamp()).append("\"");
-                }
-                // avoid _ttl <= 0 at all cost!
-                if (indexRequest.ttl() != null && indexRequest.ttl().seconds() > 0) {
-                    bulkContent.append(",\"_ttl\":\"").append(indexRequest.ttl()).append("\"");
-                }
-                if (indexRequest.version() > 0) {
-                    bulkContent.append(",\"_version\":\"").append(indexRequest.version()).append("\"");
-                    if (indexRequest.versionType() != null) {
-                        bulkContent.append(",\"_version_type\":\"").append(indexRequest.versionType().name()).append("\"");
+    protected HttpRequest createHttpRequest(URL base, BulkRequest request) throws IOException {
+        boolean compress = compression.isCompressing(request.estimatedSizeInBytes());
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer((int) Math.min(Integer.MAX_VALUE,
+                compress ? request.estimatedSizeInBytes() / 4 + 256 : request.estimatedSizeInBytes() + 256));
+        OutputStream out = new ChannelBufferOutputStream(buffer);
+        if (compress) {
+            out = compression.wrap(out);
+        }
+        try {
+            for (ActionRequest actionRequest : request.requests()) {
+                if (actionRequest instanceof IndexRequest) {
+                    IndexRequest indexRequest = (IndexRequest) actionRequest;
+                    StringBuilder bulkContent = new StringBuilder();
+                    bulkContent.append("{\"").append(indexRequest.opType().lowercase()).append("\":{");
+                    bulkContent.append("\"_index\":\"").append(indexRequest.index()).append("\"");
+                    bulkContent.append(",\"_type\":\"").append(indexRequest.type()).append("\"");
+                    if (indexRequest.id() != null) {
+                        bulkContent.append(",\"_id\":\"").append(indexRequest.id()).append("\"");
                     }
+                    if (indexRequest.routing() != null) {
+                        bulkContent.append(",\"_routing\":\"").append(indexRequest.routing()).append("\""); // _routing
+                    }
+                    if (indexRequest.parent() != null) {
+                        bulkContent.append(",\"_parent\":\"").append(indexRequest.parent()).append("\"");
+                    }
+                    if (indexRequest.timestamp() != null) {
+                        bulkContent.append(",\"_timestamp\":\"").append(indexRequest.timestamp()).append("\"");
+                    }
+                    // avoid _ttl <= 0 at all cost!
+                    if (indexRequest.ttl() != null && indexRequest.ttl().seconds() > 0) {
+                        bulkContent.append(",\"_ttl\":\"").append(indexRequest.ttl()).append("\"");
+                    }
+                    if (indexRequest.version() > 0) {
+                        bulkContent.append(",\"_version\":\"").append(indexRequest.version()).append("\"");
+                        if (indexRequest.versionType() != null) {
+                            bulkContent.append(",\"_version_type\":\"").append(indexRequest.versionType().name()).append("\"");
+                        }
+                    }
+                    bulkContent.append("}}\n");
+                    out.write(bulkContent.toString().getBytes(StandardCharsets.UTF_8));
+                    indexRequest.source().writeTo(out);
+                    out.write('\n');
+                } else if (actionRequest instanceof DeleteRequest) {
+                    DeleteRequest deleteRequest = (DeleteRequest) actionRequest;
+                    StringBuilder bulkContent = new StringBuilder();
+                    bulkContent.append("{\"delete\":{");
+                    bulkContent.append("\"_index\":\"").append(deleteRequest.index()).append("\"");
+                    bulkContent.append(",\"_type\":\"").append(deleteRequest.type()).append("\"");
+                    bulkContent.append(",\"_id\":\"").append(deleteRequest.id()).append("\"");
+                    if (deleteRequest.routing() != null) {
+                        bulkContent.append(",\"_routing\":\"").append(deleteRequest.routing()).append("\""); // _routing
+                    }
+                    bulkContent.append("}}\n");
+                    out.write(bulkContent.toString().getBytes(StandardCharsets.UTF_8));
                 }
-                bulkContent.append("}}\n");
-                bulkContent.append(indexRequest.source().toUtf8());
-                bulkContent.append("\n");
-            } else if (actionRequest instanceof DeleteRequest) {
-                DeleteRequest deleteRequest = (DeleteRequest) actionRequest;
-                bulkContent.append("{\"delete\":{");
-                bulkContent.append("\"_index\":\"").append(deleteRequest.index()).append("\"");
-                bulkContent.append(",\"_type\":\"").append(deleteRequest.type()).append("\"");
-                bulkContent.append(",\"_id\":\"").append(deleteRequest.id()).append("\"");
-                if (deleteRequest.routing() != null) {
-                    bulkContent.append(",\"_routing\":\"").append(deleteRequest.routing()).append("\""); // _routing
-                }
-                bulkContent.append("}}\n");
             }
+        } finally {
+            out.close();
         }
-        return newPostRequest(base, "/_bulk", bulkContent);
+        HttpRequest httpRequest = newRequest(HttpMethod.POST, base, "/_bulk", buffer);
+        if (compress) {
+            httpRequest.headers().add(HttpHeaders.Names.CONTENT_ENCODING, compression.getEncoding());
+        }
+        return httpRequest;
+    }
+
+    @Override
+    public Map<MetricName, Metric> getMetrics() {
+        return compression.getMetrics();
     }
 
     @Override
     @SuppressWarnings("unchecked")
-    protected BulkResponse createResponse(HttpInvocationContext<BulkRequest,BulkResponse> httpInvocationContext) {
+    protected BulkResponse createResponse(HttpInvocationContext<BulkRequest,BulkResponse> httpInvocationContext) throws IOException {
         if (httpInvocationContext == null) {
             throw new IllegalStateException("no http context");
         }
         HttpResponse httpResponse = httpInvocationContext.getHttpResponse();
-        try {
-            BytesReference ref = new ChannelBufferBytesReference(httpResponse.getContent());
-            Map<String,Object> map = JsonXContent.jsonXContent.createParser(ref).map();
-            long tookInMillis = map.containsKey("took") ? (Integer)map.get("took") : -1L;
-            BulkItemResponse[] responses = parseItems((List<Map<String,?>>)map.get("items"));
-            return new BulkResponse(responses, tookInMillis);
-        } catch (IOException e) {
-            //
+        BytesReference ref = new ChannelBufferBytesReference(httpResponse.getContent());
+        if (httpResponse.getStatus().getCode() >= 400) {
+            // 413 and 429 are resolved by the caller, by splitting the bulk request or by retrying
+            throw HttpStatusException.from(httpResponse, "bulk failed with status " + httpResponse.getStatus() +
+                    (ref.length() > 0 ? ": " + ref.toUtf8() : ""));
+        }
+        Map<String,Object> map = JsonXContent.jsonXContent.createParser(ref).map();
+        if (!map.containsKey("items")) {
+            throw new IOException("bulk response without items: " + ref.toUtf8());
         }
-        return null;
+        long tookInMillis = map.containsKey("took") ? ((Number) map.get("took")).longValue() : -1L;
+        BulkItemResponse[] responses = parseItems((List<Map<String,?>>)map.get("items"));
+        return new BulkResponse(responses, tookInMillis);
     }
 
     @SuppressWarnings("unchecked")
@@ -109,7 +150,7 @@ public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> {
                 String type = (String) item.get(TYPE);
                 String id = (String) item.get(ID);
                 if (item.containsKey(ERROR)) {
-                    ElasticsearchException e = new ElasticsearchException(item.get(ERROR).toString());
+                    ElasticsearchException e = itemFailure(item);
                     BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id, e);
                     list.add(new BulkItemResponse(i++, UPDATE_OP, failure));
                 } else {
@@ -124,7 +165,7 @@ public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> {
                 String type = (String) item.get(TYPE);
                 String id = (String) item.get(ID);
                 if (item.containsKey(ERROR)) {
-                    ElasticsearchException e = new ElasticsearchException(item.get(ERROR).toString());
+                    ElasticsearchException e = itemFailure(item);
                     BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id, e);
                     list.add(new BulkItemResponse(i++, INDEX_OP, failure));
                 } else {
@@ -140,7 +181,7 @@ public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> {
                 String type = (String) item.get(TYPE);
                 String id = (String) item.get(ID);
                 if (item.containsKey(ERROR)) {
-                    ElasticsearchException e = new ElasticsearchException(item.get(ERROR).toString());
+                    ElasticsearchException e = itemFailure(item);
                     BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id, e);
                     list.add(new BulkItemResponse(i++, CREATE_OP, failure));
                 } else {
@@ -156,7 +197,7 @@ public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> {
                 String type = (String) item.get(TYPE);
                 String id = (String) item.get(ID);
                 if (item.containsKey(ERROR)) {
-                    ElasticsearchException e = new ElasticsearchException(item.get(ERROR).toString());
+                    ElasticsearchException e = itemFailure(item);
                     BulkItemResponse.Failure failure = new BulkItemResponse.Failure(index, type, id, e);
                     list.add(new BulkItemResponse(i++, DELETE_OP, failure));
                 } else {
@@ -171,6 +212,12 @@ public class HttpBulkAction extends HttpAction<BulkRequest, BulkResponse> {
         return list.toArray(new BulkItemResponse[list.size()]);
     }
 
+    private static ElasticsearchException itemFailure(Map<String,?> item) {
+        RestStatus status = item.containsKey(STATUS) ?
+                HttpStatusException.toRestStatus(((Number) item.get(STATUS)).intValue()) : RestStatus.INTERNAL_SERVER_ERROR;
+        return new HttpStatusException(status, item.get(ERROR).toString());
+    }
+
     private final static String INDEX = "_index";
     private final static String TYPE = "_type";
     private final static String ID = "_id";
@@ -0,0 +1,75 @@
+package org.elasticsearch.action.get;
+
+import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.index.VersionType;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.QueryStringEncoder;
+import org.xbib.elasticsearch.helper.client.http.HttpAction;
+import org.xbib.elasticsearch.helper.client.http.HttpInvocationContext;
+
+import java.io.IOException;
+import java.net.URL;
+
+public class HttpGetAction extends HttpAction<GetRequest, GetResponse> {
+
+    public HttpGetAction(Settings settings) {
+        super(settings, GetAction.NAME);
+    }
+
+    @Override
+    protected HttpRequest createHttpRequest(URL url, GetRequest request) throws IOException {
+        QueryStringEncoder encoder = new QueryStringEncoder("/" + request.index() + "/" + request.type() + "/" + request.id());
+        if (request.routing() != null) {
+            encoder.addParam("routing", request.routing());
+        }
+        if (request.preference() != null) {
+            encoder.addParam("preference", request.preference());
+        }
+        if (request.refresh()) {
+            encoder.addParam("refresh", "true");
+        }
+        if (!request.realtime()) {
+            encoder.addParam("realtime", "false");
+        }
+        if (request.fields() != null) {
+            encoder.addParam("fields", String.join(",", request.fields()));
+        }
+        if (request.fetchSourceContext() != null) {
+            // the same source filtering as a coalesced get in a multi get
+            if (!request.fetchSourceContext().fetchSource()) {
+                encoder.addParam("_source", "false");
+            } else {
+                if (request.fetchSourceContext().includes().length > 0) {
+                    encoder.addParam("_source_include", String.join(",", request.fetchSourceContext().includes()));
+                }
+                if (request.fetchSourceContext().excludes().length > 0) {
+                    encoder.addParam("_source_exclude", String.join(",", request.fetchSourceContext().excludes()));
+                }
+            }
+        }
+        if (request.version() > 0) {
+            encoder.addParam("version", Long.toString(request.version()));
+            if (request.versionType() != VersionType.INTERNAL) {
+                encoder.addParam("version_type", request.versionType().name().toLowerCase());
+            }
+        }
+        return newGetRequest(url, encoder.toString());
+    }
+
+    @Override
+    protected GetResponse createResponse(HttpInvocationContext<GetRequest,GetResponse> httpInvocationContext) throws IOException {
+        if (httpInvocationContext == null) {
+            throw new IllegalStateException("no http context");
+        }
+        HttpResponse httpResponse = httpInvocationContext.getHttpResponse();
+        try (XContentParser parser = JsonXContent.jsonXContent
+                .createParser(new ChannelBufferBytesReference(httpResponse.getContent()))) {
+            parser.nextToken();
+            return new GetResponse(HttpGetResultParser.parse(parser));
+        }
+    }
+}
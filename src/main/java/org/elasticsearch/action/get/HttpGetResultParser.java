@@ -0,0 +1,96 @@
+package org.elasticsearch.action.get;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.get.GetField;
+import org.elasticsearch.index.get.GetResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses get results of the HTTP get and multi get responses.
+ */
+class HttpGetResultParser {
+
+    private HttpGetResultParser() {
+    }
+
+    /**
+     * Parse a get result. The parser must be positioned on the start of the object.
+     *
+     * @param parser the parser
+     * @return the get result
+     * @throws IOException if parsing fails
+     * @throws ElasticsearchException if the object is an error response
+     */
+    static GetResult parse(XContentParser parser) throws IOException {
+        String index = null;
+        String type = null;
+        String id = null;
+        long version = -1L;
+        boolean found = false;
+        BytesReference source = null;
+        Map<String, GetField> fields = new HashMap<>();
+        String error = null;
+        String fieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (INDEX.equals(fieldName)) {
+                    index = parser.text();
+                } else if (TYPE.equals(fieldName)) {
+                    type = parser.text();
+                } else if (ID.equals(fieldName)) {
+                    id = parser.text();
+                } else if (VERSION.equals(fieldName)) {
+                    version = parser.longValue();
+                } else if (FOUND.equals(fieldName)) {
+                    found = parser.booleanValue();
+                } else if (ERROR.equals(fieldName)) {
+                    error = parser.text();
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (SOURCE.equals(fieldName)) {
+                    source = XContentFactory.jsonBuilder().copyCurrentStructure(parser).bytes();
+                } else if (FIELDS.equals(fieldName)) {
+                    for (Map.Entry<String, Object> entry : parser.map().entrySet()) {
+                        List<Object> values = new ArrayList<>();
+                        if (entry.getValue() instanceof List) {
+                            values.addAll((List<?>) entry.getValue());
+                        } else {
+                            values.add(entry.getValue());
+                        }
+                        fields.put(entry.getKey(), new GetField(entry.getKey(), values));
+                    }
+                } else if (ERROR.equals(fieldName)) {
+                    error = parser.map().toString();
+                } else {
+                    parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (error != null) {
+            throw new ElasticsearchException(error);
+        }
+        return new GetResult(index, type, id, version, found, source, fields);
+    }
+
+    private final static String INDEX = "_index";
+    private final static String TYPE = "_type";
+    private final static String ID = "_id";
+    private final static String VERSION = "_version";
+    private final static String FOUND = "found";
+    private final static String SOURCE = "_source";
+    private final static String FIELDS = "fields";
+    private final static String ERROR = "error";
+}
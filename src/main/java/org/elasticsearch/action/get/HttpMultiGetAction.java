@@ -0,0 +1,113 @@
+package org.elasticsearch.action.get;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.index.VersionType;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.QueryStringEncoder;
+import org.xbib.elasticsearch.helper.client.http.HttpAction;
+import org.xbib.elasticsearch.helper.client.http.HttpInvocationContext;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HttpMultiGetAction extends HttpAction<MultiGetRequest, MultiGetResponse> {
+
+    public HttpMultiGetAction(Settings settings) {
+        super(settings, MultiGetAction.NAME);
+    }
+
+    @Override
+    protected HttpRequest createHttpRequest(URL url, MultiGetRequest request) throws IOException {
+        QueryStringEncoder encoder = new QueryStringEncoder("/_mget");
+        if (request.preference() != null) {
+            encoder.addParam("preference", request.preference());
+        }
+        if (request.refresh()) {
+            encoder.addParam("refresh", "true");
+        }
+        if (!request.realtime()) {
+            encoder.addParam("realtime", "false");
+        }
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject().startArray("docs");
+        for (MultiGetRequest.Item item : request.getItems()) {
+            builder.startObject()
+                    .field("_index", item.index())
+                    .field("_type", item.type())
+                    .field("_id", item.id());
+            if (item.routing() != null) {
+                builder.field("_routing", item.routing());
+            }
+            if (item.fields() != null) {
+                builder.array("fields", item.fields());
+            }
+            if (item.version() > 0) {
+                builder.field("_version", item.version());
+                if (item.versionType() != VersionType.INTERNAL) {
+                    builder.field("_version_type", item.versionType().name().toLowerCase());
+                }
+            }
+            if (item.fetchSourceContext() != null) {
+                if (!item.fetchSourceContext().fetchSource()) {
+                    builder.field("_source", false);
+                } else if (item.fetchSourceContext().includes().length > 0 || item.fetchSourceContext().excludes().length > 0) {
+                    builder.startObject("_source")
+                            .array("include", item.fetchSourceContext().includes())
+                            .array("exclude", item.fetchSourceContext().excludes())
+                            .endObject();
+                }
+            }
+            builder.endObject();
+        }
+        builder.endArray().endObject();
+        return newRequest(HttpMethod.POST, url, encoder.toString(), builder.bytes());
+    }
+
+    @Override
+    protected MultiGetResponse createResponse(HttpInvocationContext<MultiGetRequest,MultiGetResponse> httpInvocationContext) throws IOException {
+        if (httpInvocationContext == null) {
+            throw new IllegalStateException("no http context");
+        }
+        List<MultiGetRequest.Item> items = httpInvocationContext.getRequest().getItems();
+        HttpResponse httpResponse = httpInvocationContext.getHttpResponse();
+        List<MultiGetItemResponse> responses = new ArrayList<>();
+        try (XContentParser parser = JsonXContent.jsonXContent
+                .createParser(new ChannelBufferBytesReference(httpResponse.getContent()))) {
+            XContentParser.Token token = parser.nextToken();
+            String fieldName = null;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT && token != null) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    fieldName = parser.currentName();
+                } else if (token == XContentParser.Token.START_ARRAY && DOCS.equals(fieldName)) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                        MultiGetRequest.Item item = items.get(responses.size());
+                        try {
+                            GetResponse getResponse = new GetResponse(HttpGetResultParser.parse(parser));
+                            responses.add(new MultiGetItemResponse(getResponse, null));
+                        } catch (ElasticsearchException e) {
+                            responses.add(new MultiGetItemResponse(null,
+                                    new MultiGetResponse.Failure(item.index(), item.type(), item.id(), e)));
+                        }
+                    }
+                } else if (token == XContentParser.Token.START_OBJECT && ERROR.equals(fieldName)) {
+                    throw new ElasticsearchException(parser.map().toString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new MultiGetResponse(responses.toArray(new MultiGetItemResponse[responses.size()]));
+    }
+
+    private final static String DOCS = "docs";
+    private final static String ERROR = "error";
+}
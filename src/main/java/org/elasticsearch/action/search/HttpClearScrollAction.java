@@ -0,0 +1,48 @@
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.xbib.elasticsearch.helper.client.http.HttpAction;
+import org.xbib.elasticsearch.helper.client.http.HttpInvocationContext;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+public class HttpClearScrollAction extends HttpAction<ClearScrollRequest, ClearScrollResponse> {
+
+    public HttpClearScrollAction(Settings settings) {
+        super(settings, ClearScrollAction.NAME);
+    }
+
+    @Override
+    protected HttpRequest createHttpRequest(URL url, ClearScrollRequest request) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject()
+                .field("scroll_id", request.getScrollIds())
+                .endObject();
+        return newRequest(HttpMethod.DELETE, url, "/_search/scroll", builder.string());
+    }
+
+    @Override
+    protected ClearScrollResponse createResponse(HttpInvocationContext<ClearScrollRequest,ClearScrollResponse> httpInvocationContext) throws IOException {
+        if (httpInvocationContext == null) {
+            throw new IllegalStateException("no http context");
+        }
+        HttpResponse httpResponse = httpInvocationContext.getHttpResponse();
+        BytesReference ref = new ChannelBufferBytesReference(httpResponse.getContent());
+        Map<String,Object> map = JsonXContent.jsonXContent.createParser(ref).map();
+        boolean succeeded = map.containsKey(SUCCEEDED) && (Boolean) map.get(SUCCEEDED);
+        int numFreed = map.containsKey(NUM_FREED) ? (Integer) map.get(NUM_FREED) : 0;
+        return new ClearScrollResponse(succeeded, numFreed);
+    }
+
+    private final static String SUCCEEDED = "succeeded";
+    private final static String NUM_FREED = "num_freed";
+}
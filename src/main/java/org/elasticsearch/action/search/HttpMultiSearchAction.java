@@ -0,0 +1,147 @@
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.xbib.elasticsearch.helper.client.http.HttpAction;
+import org.xbib.elasticsearch.helper.client.http.HttpInvocationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP multi search action. The response is streamed, and each search response is decoded
+ * while the remaining responses are still arriving. Failed searches are returned as failed items.
+ */
+public class HttpMultiSearchAction extends HttpAction<MultiSearchRequest, MultiSearchResponse> {
+
+    public HttpMultiSearchAction(Settings settings) {
+        super(settings, MultiSearchAction.NAME);
+    }
+
+    @Override
+    protected HttpRequest createHttpRequest(URL url, MultiSearchRequest request) throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        for (SearchRequest searchRequest : request.requests()) {
+            XContentBuilder header = XContentFactory.jsonBuilder().startObject();
+            if (searchRequest.indices() != null && searchRequest.indices().length > 0) {
+                header.array("index", searchRequest.indices());
+            }
+            if (searchRequest.types() != null && searchRequest.types().length > 0) {
+                header.array("type", searchRequest.types());
+            }
+            if (searchRequest.searchType() != null && searchRequest.searchType() != SearchType.DEFAULT) {
+                header.field("search_type", searchRequest.searchType().name().toLowerCase());
+            }
+            if (searchRequest.routing() != null) {
+                header.field("routing", searchRequest.routing());
+            }
+            if (searchRequest.preference() != null) {
+                header.field("preference", searchRequest.preference());
+            }
+            if (searchRequest.requestCache() != null) {
+                header.field("request_cache", searchRequest.requestCache());
+            }
+            IndicesOptions indicesOptions = searchRequest.indicesOptions();
+            if (indicesOptions != null && !isDefault(indicesOptions)) {
+                header.field("ignore_unavailable", indicesOptions.ignoreUnavailable());
+                header.field("allow_no_indices", indicesOptions.allowNoIndices());
+                header.field("expand_wildcards", expandWildcards(indicesOptions));
+            }
+            header.endObject();
+            header.bytes().writeTo(out);
+            out.writeByte((byte) '\n');
+            BytesReference source = searchRequest.source() != null ? searchRequest.source() : searchRequest.extraSource();
+            if (source != null) {
+                // the body must be on a single line
+                XContentBuilder body = XContentFactory.jsonBuilder();
+                try (XContentParser parser = XContentFactory.xContent(source).createParser(source)) {
+                    parser.nextToken();
+                    body.copyCurrentStructure(parser);
+                }
+                body.bytes().writeTo(out);
+            } else {
+                out.writeByte((byte) '{');
+                out.writeByte((byte) '}');
+            }
+            out.writeByte((byte) '\n');
+        }
+        return newRequest(HttpMethod.POST, url, "/_msearch", out.bytes());
+    }
+
+    private static boolean isDefault(IndicesOptions indicesOptions) {
+        return indicesOptions.ignoreUnavailable() == DEFAULT_INDICES_OPTIONS.ignoreUnavailable()
+                && indicesOptions.allowNoIndices() == DEFAULT_INDICES_OPTIONS.allowNoIndices()
+                && indicesOptions.expandWildcardsOpen() == DEFAULT_INDICES_OPTIONS.expandWildcardsOpen()
+                && indicesOptions.expandWildcardsClosed() == DEFAULT_INDICES_OPTIONS.expandWildcardsClosed();
+    }
+
+    private static String expandWildcards(IndicesOptions indicesOptions) {
+        if (indicesOptions.expandWildcardsOpen() && indicesOptions.expandWildcardsClosed()) {
+            return "all";
+        } else if (indicesOptions.expandWildcardsOpen()) {
+            return "open";
+        } else if (indicesOptions.expandWildcardsClosed()) {
+            return "closed";
+        }
+        return "none";
+    }
+
+    @Override
+    protected boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    protected MultiSearchResponse createResponse(HttpInvocationContext<MultiSearchRequest,MultiSearchResponse> httpInvocationContext) throws IOException {
+        if (httpInvocationContext == null) {
+            throw new IllegalStateException("no http context");
+        }
+        HttpResponseStatus status = httpInvocationContext.getHttpResponse().getStatus();
+        InputStream inputStream = httpInvocationContext.getInputStream();
+        if (status.getCode() >= 400) {
+            String body = Streams.copyToString(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            throw new ElasticsearchException("multi search failed with status " + status + ": " + body);
+        }
+        List<MultiSearchResponse.Item> items = new ArrayList<>();
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(inputStream)) {
+            XContentParser.Token token = parser.nextToken();
+            String fieldName = null;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT && token != null) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    fieldName = parser.currentName();
+                } else if (token == XContentParser.Token.START_ARRAY && RESPONSES.equals(fieldName)) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                        try {
+                            items.add(new MultiSearchResponse.Item(HttpSearchResponseParser.parse(parser), null));
+                        } catch (ElasticsearchException e) {
+                            items.add(new MultiSearchResponse.Item(null, e));
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new MultiSearchResponse(items.toArray(new MultiSearchResponse.Item[items.size()]));
+    }
+
+    private final static String RESPONSES = "responses";
+
+    private final static IndicesOptions DEFAULT_INDICES_OPTIONS = new SearchRequest().indicesOptions();
+}
@@ -0,0 +1,254 @@
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHitField;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.search.profile.InternalProfileShardResults;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.xbib.elasticsearch.helper.client.http.HttpInvocationContext;
+import org.xbib.elasticsearch.helper.client.http.HttpSearchHitListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses search responses from a stream, one token at a time. Hits are decoded while the response content
+ * is arriving, so the raw content is never held in memory as a whole.
+ *
+ * Aggregations and suggestions are skipped. If the request carries a {@link HttpSearchHitListener} in its context,
+ * the hits are passed to the listener as soon as they are decoded and not collected in the response.
+ */
+class HttpSearchResponseParser {
+
+    private HttpSearchResponseParser() {
+    }
+
+    static SearchResponse parse(HttpInvocationContext<?, SearchResponse> httpInvocationContext) throws IOException {
+        HttpResponseStatus status = httpInvocationContext.getHttpResponse().getStatus();
+        InputStream inputStream = httpInvocationContext.getInputStream();
+        if (status.getCode() >= 400) {
+            String body = Streams.copyToString(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            throw new ElasticsearchException("search failed with status " + status + ": " + body);
+        }
+        HttpSearchHitListener hitListener = httpInvocationContext.getRequest() != null ?
+                httpInvocationContext.getRequest().<HttpSearchHitListener>getFromContext(HttpSearchHitListener.CONTEXT_KEY) :
+                null;
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(inputStream)) {
+            if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+                throw new IOException("search response must start with an object");
+            }
+            return parse(parser, hitListener);
+        }
+    }
+
+    /**
+     * Parse a search response. The parser must be positioned on the start of the object.
+     *
+     * @param parser the parser
+     * @return the search response
+     * @throws IOException if parsing fails
+     * @throws ElasticsearchException if the object is an error response, after the object has been consumed
+     */
+    static SearchResponse parse(XContentParser parser) throws IOException {
+        return parse(parser, null);
+    }
+
+    private static SearchResponse parse(XContentParser parser, HttpSearchHitListener hitListener) throws IOException {
+        String scrollId = null;
+        long tookInMillis = -1L;
+        boolean timedOut = false;
+        boolean terminatedEarly = false;
+        int totalShards = 0;
+        int successfulShards = 0;
+        InternalSearchHits hits = InternalSearchHits.empty();
+        String error = null;
+        XContentParser.Token token;
+        String fieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT && token != null) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (SCROLL_ID.equals(fieldName)) {
+                    scrollId = parser.text();
+                } else if (TOOK.equals(fieldName)) {
+                    tookInMillis = parser.longValue();
+                } else if (TIMED_OUT.equals(fieldName)) {
+                    timedOut = parser.booleanValue();
+                } else if (TERMINATED_EARLY.equals(fieldName)) {
+                    terminatedEarly = parser.booleanValue();
+                } else if (ERROR.equals(fieldName)) {
+                    error = parser.text();
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (SHARDS.equals(fieldName)) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                        if (token == XContentParser.Token.FIELD_NAME) {
+                            fieldName = parser.currentName();
+                        } else if (token.isValue()) {
+                            if (TOTAL.equals(fieldName)) {
+                                totalShards = parser.intValue();
+                            } else if (SUCCESSFUL.equals(fieldName)) {
+                                successfulShards = parser.intValue();
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if (HITS.equals(fieldName)) {
+                    hits = parseHits(parser, hitListener);
+                } else if (ERROR.equals(fieldName)) {
+                    error = parser.map().toString();
+                } else {
+                    parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (error != null) {
+            throw new ElasticsearchException(error);
+        }
+        InternalSearchResponse internalSearchResponse = new InternalSearchResponse(hits,
+                null, null, (InternalProfileShardResults) null, timedOut, terminatedEarly);
+        return new SearchResponse(internalSearchResponse, scrollId, totalShards, successfulShards, tookInMillis,
+                ShardSearchFailure.EMPTY_ARRAY);
+    }
+
+    private static InternalSearchHits parseHits(XContentParser parser, HttpSearchHitListener hitListener)
+            throws IOException {
+        long totalHits = -1L;
+        int docId = 0;
+        float maxScore = 0.0f;
+        List<InternalSearchHit> list = new ArrayList<>();
+        String fieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (TOTAL.equals(fieldName)) {
+                    totalHits = parser.longValue();
+                } else if (MAXSCORE.equals(fieldName)) {
+                    maxScore = parser.floatValue();
+                }
+            } else if (token == XContentParser.Token.START_ARRAY && HITS.equals(fieldName)) {
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    if (token == XContentParser.Token.START_OBJECT) {
+                        InternalSearchHit hit = parseHit(parser, docId++);
+                        if (hitListener != null) {
+                            hitListener.onHit(hit);
+                        } else {
+                            list.add(hit);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new InternalSearchHits(list.toArray(new InternalSearchHit[list.size()]), totalHits, maxScore);
+    }
+
+    private static InternalSearchHit parseHit(XContentParser parser, int docId) throws IOException {
+        String index = null;
+        String type = null;
+        String id = null;
+        float score = Float.NaN;
+        long version = -1L;
+        XContentBuilder source = null;
+        Map<String, SearchHitField> fields = new HashMap<>();
+        Object[] sortValues = null;
+        String fieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (INDEX.equals(fieldName)) {
+                    index = parser.text();
+                } else if (TYPE.equals(fieldName)) {
+                    type = parser.text();
+                } else if (ID.equals(fieldName)) {
+                    id = parser.text();
+                } else if (SCORE.equals(fieldName)) {
+                    score = parser.floatValue();
+                } else if (VERSION.equals(fieldName)) {
+                    version = parser.longValue();
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (SOURCE.equals(fieldName)) {
+                    source = XContentFactory.jsonBuilder().copyCurrentStructure(parser);
+                } else if (FIELDS.equals(fieldName)) {
+                    for (Map.Entry<String, Object> entry : parser.map().entrySet()) {
+                        List<Object> values = new ArrayList<>();
+                        if (entry.getValue() instanceof List) {
+                            values.addAll((List<?>) entry.getValue());
+                        } else {
+                            values.add(entry.getValue());
+                        }
+                        fields.put(entry.getKey(), new InternalSearchHitField(entry.getKey(), values));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (token == XContentParser.Token.START_ARRAY && SORT.equals(fieldName)) {
+                sortValues = parser.list().toArray();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        InternalSearchHit hit = new InternalSearchHit(docId, id, type != null ? new Text(type) : null, fields);
+        if (index != null) {
+            hit.shard(new SearchShardTarget(null, index, -1));
+        }
+        hit.score(score);
+        hit.version(version);
+        if (source != null) {
+            hit.sourceRef(source.bytes());
+        }
+        if (sortValues != null) {
+            hit.sortValues(sortValues);
+        }
+        return hit;
+    }
+
+    private final static String SCROLL_ID = "_scroll_id";
+    private final static String TOOK = "took";
+    private final static String TIMED_OUT = "timed_out";
+    private final static String TERMINATED_EARLY = "terminated_early";
+    private final static String ERROR = "error";
+
+    private final static String SHARDS = "_shards";
+    private final static String TOTAL = "total";
+    private final static String SUCCESSFUL = "successful";
+
+    private final static String HITS = "hits";
+    private final static String MAXSCORE = "max_score";
+
+    private final static String INDEX = "_index";
+    private final static String TYPE = "_type";
+    private final static String ID = "_id";
+    private final static String SCORE = "_score";
+    private final static String VERSION = "_version";
+    private final static String SOURCE = "_source";
+    private final static String FIELDS = "fields";
+    private final static String SORT = "sort";
+}
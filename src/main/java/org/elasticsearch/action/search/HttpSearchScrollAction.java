@@ -0,0 +1,44 @@
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.xbib.elasticsearch.helper.client.http.HttpAction;
+import org.xbib.elasticsearch.helper.client.http.HttpInvocationContext;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * HTTP search scroll action. Like {@link HttpSearchAction}, responses are streamed.
+ */
+public class HttpSearchScrollAction extends HttpAction<SearchScrollRequest, SearchResponse> {
+
+    public HttpSearchScrollAction(Settings settings) {
+        super(settings, SearchScrollAction.NAME);
+    }
+
+    @Override
+    protected HttpRequest createHttpRequest(URL url, SearchScrollRequest request) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        if (request.scroll() != null) {
+            builder.field("scroll", request.scroll().keepAlive().toString());
+        }
+        builder.field("scroll_id", request.scrollId()).endObject();
+        return newPostRequest(url, "/_search/scroll", builder.string());
+    }
+
+    @Override
+    protected boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    protected SearchResponse createResponse(HttpInvocationContext<SearchScrollRequest,SearchResponse> httpInvocationContext) throws IOException {
+        if (httpInvocationContext == null) {
+            throw new IllegalStateException("no http context");
+        }
+        return HttpSearchResponseParser.parse(httpInvocationContext);
+    }
+}
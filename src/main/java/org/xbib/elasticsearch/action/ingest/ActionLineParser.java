@@ -0,0 +1,401 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.VersionType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser for the action lines of the bulk format, like {@code {"index":{"_index":"test","_type":"type1","_id":"1"}}}.
+ *
+ * Action lines in JSON with plain string and number values are parsed directly from the bytes. Everything else,
+ * like escaped strings, other content types, or unexpected structure, is left to the generic parser of
+ * the content type, which is also used for error reporting.
+ *
+ * A parser instance is reused for all lines of a request and is not thread safe.
+ */
+public class ActionLineParser {
+
+    private static final long ONES = 0x0101010101010101L;
+
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private String action;
+
+    private String index;
+
+    private String type;
+
+    private String id;
+
+    private String routing;
+
+    private String parent;
+
+    private String timestamp;
+
+    private Long ttl;
+
+    private String opType;
+
+    private long version;
+
+    private VersionType versionType;
+
+    private int retryOnConflict;
+
+    private byte[] buf;
+
+    private int pos;
+
+    private int end;
+
+    public String action() {
+        return action;
+    }
+
+    public String index() {
+        return index;
+    }
+
+    public String type() {
+        return type;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String routing() {
+        return routing;
+    }
+
+    public String parent() {
+        return parent;
+    }
+
+    public String timestamp() {
+        return timestamp;
+    }
+
+    public Long ttl() {
+        return ttl;
+    }
+
+    public String opType() {
+        return opType;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public VersionType versionType() {
+        return versionType;
+    }
+
+    public int retryOnConflict() {
+        return retryOnConflict;
+    }
+
+    private void reset(String defaultIndex, String defaultType) {
+        action = null;
+        index = defaultIndex;
+        type = defaultType;
+        id = null;
+        routing = null;
+        parent = null;
+        timestamp = null;
+        ttl = null;
+        opType = null;
+        version = Versions.MATCH_ANY;
+        versionType = VersionType.INTERNAL;
+        retryOnConflict = 0;
+    }
+
+    /**
+     * Parse a JSON action line directly from the bytes.
+     *
+     * @param line the action line
+     * @param defaultIndex the default index
+     * @param defaultType the default type
+     * @return true if the line was parsed, false if the line must be parsed by {@link #parseGeneric}
+     */
+    public boolean parseFast(BytesReference line, String defaultIndex, String defaultType) {
+        if (!line.hasArray()) {
+            return false;
+        }
+        reset(defaultIndex, defaultType);
+        buf = line.array();
+        pos = line.arrayOffset();
+        end = pos + line.length();
+        try {
+            if (!expect('{')) {
+                return false;
+            }
+            action = string();
+            if (action == null || !expect(':') || !expect('{')) {
+                return false;
+            }
+            skipWhitespace();
+            if (pos < end && buf[pos] == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    int keyStart = skipWhitespace();
+                    if (pos >= end || buf[pos] != '"') {
+                        return false;
+                    }
+                    int keyLength = stringLength();
+                    if (keyLength < 0 || !expect(':') || !value(keyStart + 1, keyLength)) {
+                        return false;
+                    }
+                    skipWhitespace();
+                    if (pos >= end) {
+                        return false;
+                    }
+                    byte b = buf[pos++];
+                    if (b == '}') {
+                        break;
+                    }
+                    if (b != ',') {
+                        return false;
+                    }
+                }
+            }
+            if (!expect('}')) {
+                return false;
+            }
+            skipWhitespace();
+            return pos == end;
+        } catch (RuntimeException e) {
+            // malformed values are reported by the generic parser
+            return false;
+        } finally {
+            buf = null;
+        }
+    }
+
+    /**
+     * Parse an action line with the parser of the content type.
+     *
+     * @param xContent the content type
+     * @param line the action line
+     * @param defaultIndex the default index
+     * @param defaultType the default type
+     * @return true if the line was parsed, false if the line is empty
+     * @throws IOException if the line can not be parsed
+     */
+    public boolean parseGeneric(XContent xContent, BytesReference line, String defaultIndex, String defaultType)
+            throws IOException {
+        reset(defaultIndex, defaultType);
+        try (XContentParser parser = xContent.createParser(line)) {
+            // Move to START_OBJECT
+            XContentParser.Token token = parser.nextToken();
+            if (token == null) {
+                return false;
+            }
+            assert token == XContentParser.Token.START_OBJECT;
+            // Move to FIELD_NAME, that's the move
+            token = parser.nextToken();
+            assert token == XContentParser.Token.FIELD_NAME;
+            action = parser.currentName();
+            // at this stage, next token can either be END_OBJECT (and use default index and type, with auto generated id)
+            // or START_OBJECT which will have another set of parameters
+            String currentFieldName = null;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    currentFieldName = parser.currentName();
+                } else if (token.isValue()) {
+                    if ("_index".equals(currentFieldName)) {
+                        index = parser.text();
+                    } else if ("_type".equals(currentFieldName)) {
+                        type = parser.text();
+                    } else if ("_id".equals(currentFieldName)) {
+                        id = parser.text();
+                    } else if ("_routing".equals(currentFieldName) || "routing".equals(currentFieldName)) {
+                        routing = parser.text();
+                    } else if ("_parent".equals(currentFieldName) || "parent".equals(currentFieldName)) {
+                        parent = parser.text();
+                    } else if ("_timestamp".equals(currentFieldName) || "timestamp".equals(currentFieldName)) {
+                        timestamp = parser.text();
+                    } else if ("_ttl".equals(currentFieldName) || "ttl".equals(currentFieldName)) {
+                        if (parser.currentToken() == XContentParser.Token.VALUE_STRING) {
+                            ttl = TimeValue.parseTimeValue(parser.text(), null, currentFieldName).millis();
+                        } else {
+                            ttl = parser.longValue();
+                        }
+                    } else if ("op_type".equals(currentFieldName) || "opType".equals(currentFieldName)) {
+                        opType = parser.text();
+                    } else if ("_version".equals(currentFieldName) || "version".equals(currentFieldName)) {
+                        version = parser.longValue();
+                    } else if ("_version_type".equals(currentFieldName) || "_versionType".equals(currentFieldName) || "version_type".equals(currentFieldName) || "versionType".equals(currentFieldName)) {
+                        versionType = VersionType.fromString(parser.text());
+                    } else if ("_retry_on_conflict".equals(currentFieldName) || "_retryOnConflict".equals(currentFieldName)) {
+                        retryOnConflict = parser.intValue();
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the next occurrence of a marker byte, eight bytes at a time if the data is backed by an array.
+     *
+     * @param marker the marker byte
+     * @param from the offset to start from
+     * @param data the data
+     * @param length the length of the data
+     * @return the offset of the marker, or -1
+     */
+    public static int findNextMarker(byte marker, int from, BytesReference data, int length) {
+        if (!data.hasArray()) {
+            for (int i = from; i < length; i++) {
+                if (data.get(i) == marker) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        byte[] array = data.array();
+        int offset = data.arrayOffset();
+        int i = offset + from;
+        int to = offset + length;
+        ByteBuffer buffer = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+        long pattern = (marker & 0xffL) * ONES;
+        for (; i + 8 <= to; i += 8) {
+            long x = buffer.getLong(i) ^ pattern;
+            // the lowest set high bit marks the first byte equal to the marker
+            long found = (x - ONES) & ~x & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3) - offset;
+            }
+        }
+        for (; i < to; i++) {
+            if (array[i] == marker) {
+                return i - offset;
+            }
+        }
+        return -1;
+    }
+
+    private int skipWhitespace() {
+        while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t' || buf[pos] == '\r' || buf[pos] == '\n')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private boolean expect(char c) {
+        skipWhitespace();
+        if (pos < end && buf[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read a string without escapes, at the current position after whitespace.
+     */
+    private String string() {
+        int start = skipWhitespace();
+        if (pos >= end || buf[pos] != '"') {
+            return null;
+        }
+        int length = stringLength();
+        return length < 0 ? null : new String(buf, start + 1, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skip a string without escapes, starting at the opening quote.
+     *
+     * @return the length of the string content, or -1 if the string has escapes or is not terminated
+     */
+    private int stringLength() {
+        int start = ++pos;
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b == '"') {
+                pos++;
+                return pos - start - 1;
+            }
+            if (b == '\\') {
+                return -1;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private boolean value(int keyStart, int keyLength) {
+        int start = skipWhitespace();
+        if (pos >= end) {
+            return false;
+        }
+        String text;
+        boolean number = false;
+        if (buf[pos] == '"') {
+            int length = stringLength();
+            if (length < 0) {
+                return false;
+            }
+            text = new String(buf, start + 1, length, StandardCharsets.UTF_8);
+        } else if (buf[pos] == '-' || (buf[pos] >= '0' && buf[pos] <= '9')) {
+            pos++;
+            while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+                pos++;
+            }
+            text = new String(buf, start, pos - start, StandardCharsets.US_ASCII);
+            number = true;
+        } else {
+            // null, booleans, objects, arrays, floats
+            return false;
+        }
+        if (is(keyStart, keyLength, "_index")) {
+            index = text;
+        } else if (is(keyStart, keyLength, "_type")) {
+            type = text;
+        } else if (is(keyStart, keyLength, "_id")) {
+            id = text;
+        } else if (is(keyStart, keyLength, "_routing") || is(keyStart, keyLength, "routing")) {
+            routing = text;
+        } else if (is(keyStart, keyLength, "_parent") || is(keyStart, keyLength, "parent")) {
+            parent = text;
+        } else if (is(keyStart, keyLength, "_timestamp") || is(keyStart, keyLength, "timestamp")) {
+            timestamp = text;
+        } else if (is(keyStart, keyLength, "_ttl") || is(keyStart, keyLength, "ttl")) {
+            ttl = number ? Long.parseLong(text) : TimeValue.parseTimeValue(text, null, "ttl").millis();
+        } else if (is(keyStart, keyLength, "op_type") || is(keyStart, keyLength, "opType")) {
+            opType = text;
+        } else if (is(keyStart, keyLength, "_version") || is(keyStart, keyLength, "version")) {
+            version = Long.parseLong(text);
+        } else if (is(keyStart, keyLength, "_version_type") || is(keyStart, keyLength, "_versionType")
+                || is(keyStart, keyLength, "version_type") || is(keyStart, keyLength, "versionType")) {
+            versionType = VersionType.fromString(text);
+        } else if (is(keyStart, keyLength, "_retry_on_conflict") || is(keyStart, keyLength, "_retryOnConflict")) {
+            retryOnConflict = Integer.parseInt(text);
+        }
+        return true;
+    }
+
+    private boolean is(int keyStart, int keyLength, String key) {
+        if (keyLength != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (buf[keyStart + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
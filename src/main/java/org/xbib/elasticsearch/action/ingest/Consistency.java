@@ -12,7 +12,15 @@ public enum Consistency {
 
     QUORUM((byte) 2),
 
-    ALL((byte) 3);
+    ALL((byte) 3),
+
+    /**
+     * Acknowledge after the leader write, and execute the replica operations in the background. If the nodes
+     * of the replicas have too many outstanding bytes, the response waits for the replicas like {@link #ONE}.
+     * Actions of pipelined shards are always replicated before the response. The replica operations of a shard
+     * are executed in the order of the leader, also across ingest requests.
+     */
+    ASYNC_REPLICA((byte) 4);
 
     public static final TimeValue DEFAULT_TIMEOUT = new TimeValue(1, TimeUnit.MINUTES);
     public static final Consistency DEFAULT_CONSISTENCY = Consistency.QUORUM;
@@ -31,6 +39,8 @@ public enum Consistency {
             return QUORUM;
         } else if (value == 3) {
             return ALL;
+        } else if (value == 4) {
+            return ASYNC_REPLICA;
         }
         throw new IllegalArgumentException("No consistency match [" + value + "]");
     }
@@ -44,6 +54,8 @@ public enum Consistency {
             return QUORUM;
         } else if (value.equals("all")) {
             return ALL;
+        } else if (value.equals("async_replica")) {
+            return ASYNC_REPLICA;
         }
         throw new IllegalArgumentException("No consistency match [" + value + "]");
     }
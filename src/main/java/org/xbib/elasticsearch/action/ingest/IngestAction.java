@@ -15,6 +15,11 @@ public class IngestAction extends Action<IngestRequest, IngestResponse, IngestRe
 
     public static final String NAME = "indices:data/write/xbib/ingest";
 
+    /**
+     * The thread pool for the shard operations of ingest, registered by the helper plugin.
+     */
+    public static final String EXECUTOR = "ingest";
+
     public IngestAction() {
         super(NAME);
     }
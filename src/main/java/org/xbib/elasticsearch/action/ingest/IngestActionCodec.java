@@ -0,0 +1,283 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.VersionType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compact wire format for the index and delete actions of ingest requests.
+ *
+ * Index names, types, routing and parent values repeat across the actions of a request, so they are written
+ * once into a dictionary, and each action refers to them by number. Versions are written as variable length
+ * numbers, negative special versions as their complement, with a sign bit in the version type byte. The sources of all index actions follow as one contiguous block, which is read as
+ * a single bytes reference and sliced into the sources without copying.
+ *
+ * Update actions only travel from the client to the leader, where they are replaced by their resulting
+ * index or delete actions, so they are written in their own format.
+ *
+ * The format starts with a version byte. Null actions, for actions that failed on the leader, are kept.
+ */
+public final class IngestActionCodec {
+
+    public static final byte FORMAT_VERSION = 2;
+
+    private static final byte OP_NULL = 0;
+
+    private static final byte OP_INDEX = 1;
+
+    private static final byte OP_CREATE = 2;
+
+    private static final byte OP_DELETE = 3;
+
+    private static final byte OP_UPDATE = 4;
+
+    private static final int HAS_ID = 1;
+
+    private static final int HAS_ROUTING = 2;
+
+    private static final int HAS_PARENT = 4;
+
+    private static final int HAS_TIMESTAMP = 8;
+
+    private static final int HAS_TTL = 16;
+
+    private static final int AUTO_GENERATED_ID = 32;
+
+    private static final int REFRESH = 64;
+
+    private static final int NEGATIVE_VERSION = 0x40;
+
+    private IngestActionCodec() {
+    }
+
+    public static void writeActions(StreamOutput out, Collection<ActionRequest<?>> actionRequests) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        long sourceLength = 0L;
+        for (ActionRequest<?> actionRequest : actionRequests) {
+            if (actionRequest instanceof IndexRequest) {
+                IndexRequest indexRequest = (IndexRequest) actionRequest;
+                intern(indexRequest.index(), dictionary, strings);
+                intern(indexRequest.type(), dictionary, strings);
+                intern(indexRequest.routing(), dictionary, strings);
+                intern(indexRequest.parent(), dictionary, strings);
+                sourceLength += indexRequest.source().length();
+            } else if (actionRequest instanceof DeleteRequest) {
+                DeleteRequest deleteRequest = (DeleteRequest) actionRequest;
+                intern(deleteRequest.index(), dictionary, strings);
+                intern(deleteRequest.type(), dictionary, strings);
+                intern(deleteRequest.routing(), dictionary, strings);
+            } else if (actionRequest != null && !(actionRequest instanceof UpdateRequest)) {
+                throw new IllegalArgumentException("action request not supported: " + actionRequest.getClass().getName());
+            }
+        }
+        if (sourceLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("sources too large for one request: " + sourceLength);
+        }
+        out.writeByte(FORMAT_VERSION);
+        out.writeVInt(actionRequests.size());
+        out.writeVInt(strings.size());
+        for (String s : strings) {
+            out.writeString(s);
+        }
+        for (ActionRequest<?> actionRequest : actionRequests) {
+            if (actionRequest instanceof IndexRequest) {
+                IndexRequest indexRequest = (IndexRequest) actionRequest;
+                out.writeByte(indexRequest.opType() == IndexRequest.OpType.CREATE ? OP_CREATE : OP_INDEX);
+                int flags = 0;
+                flags |= indexRequest.id() != null ? HAS_ID : 0;
+                flags |= indexRequest.routing() != null ? HAS_ROUTING : 0;
+                flags |= indexRequest.parent() != null ? HAS_PARENT : 0;
+                flags |= indexRequest.timestamp() != null ? HAS_TIMESTAMP : 0;
+                flags |= indexRequest.ttl() != null ? HAS_TTL : 0;
+                flags |= indexRequest.autoGeneratedId() ? AUTO_GENERATED_ID : 0;
+                flags |= indexRequest.refresh() ? REFRESH : 0;
+                out.writeByte((byte) flags);
+                writeRef(out, indexRequest.index(), dictionary);
+                writeRef(out, indexRequest.type(), dictionary);
+                if (indexRequest.id() != null) {
+                    out.writeString(indexRequest.id());
+                }
+                if (indexRequest.routing() != null) {
+                    out.writeVInt(dictionary.get(indexRequest.routing()));
+                }
+                if (indexRequest.parent() != null) {
+                    out.writeVInt(dictionary.get(indexRequest.parent()));
+                }
+                if (indexRequest.timestamp() != null) {
+                    out.writeString(indexRequest.timestamp());
+                }
+                if (indexRequest.ttl() != null) {
+                    out.writeVLong(indexRequest.ttl().millis());
+                }
+                writeVersion(out, indexRequest.version(), indexRequest.versionType());
+                out.writeVInt(indexRequest.source().length());
+            } else if (actionRequest instanceof DeleteRequest) {
+                DeleteRequest deleteRequest = (DeleteRequest) actionRequest;
+                out.writeByte(OP_DELETE);
+                int flags = 0;
+                flags |= deleteRequest.id() != null ? HAS_ID : 0;
+                flags |= deleteRequest.routing() != null ? HAS_ROUTING : 0;
+                flags |= deleteRequest.refresh() ? REFRESH : 0;
+                out.writeByte((byte) flags);
+                writeRef(out, deleteRequest.index(), dictionary);
+                writeRef(out, deleteRequest.type(), dictionary);
+                if (deleteRequest.id() != null) {
+                    out.writeString(deleteRequest.id());
+                }
+                if (deleteRequest.routing() != null) {
+                    out.writeVInt(dictionary.get(deleteRequest.routing()));
+                }
+                writeVersion(out, deleteRequest.version(), deleteRequest.versionType());
+            } else if (actionRequest instanceof UpdateRequest) {
+                out.writeByte(OP_UPDATE);
+                actionRequest.writeTo(out);
+            } else {
+                out.writeByte(OP_NULL);
+            }
+        }
+        out.writeVInt((int) sourceLength);
+        for (ActionRequest<?> actionRequest : actionRequests) {
+            if (actionRequest instanceof IndexRequest) {
+                ((IndexRequest) actionRequest).source().writeTo(out);
+            }
+        }
+    }
+
+    public static void readActions(StreamInput in, Collection<ActionRequest<?>> actionRequests) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unknown ingest wire format version: " + version);
+        }
+        int size = in.readVInt();
+        String[] strings = new String[in.readVInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readString();
+        }
+        List<ActionRequest<?>> list = new ArrayList<>(size);
+        int[] sourceLengths = new int[size];
+        for (int i = 0; i < size; i++) {
+            byte op = in.readByte();
+            if (op == OP_NULL) {
+                list.add(null);
+                continue;
+            }
+            if (op == OP_UPDATE) {
+                UpdateRequest updateRequest = new UpdateRequest();
+                updateRequest.readFrom(in);
+                list.add(updateRequest);
+                continue;
+            }
+            int flags = in.readByte();
+            String index = readRef(in, strings);
+            String type = readRef(in, strings);
+            String id = (flags & HAS_ID) != 0 ? in.readString() : null;
+            String routing = (flags & HAS_ROUTING) != 0 ? strings[in.readVInt()] : null;
+            if (op == OP_DELETE) {
+                DeleteRequest deleteRequest = new DeleteRequest(index, type, id).routing(routing);
+                deleteRequest.refresh((flags & REFRESH) != 0);
+                readVersion(in, deleteRequest);
+                list.add(deleteRequest);
+                continue;
+            }
+            DecodedIndexRequest indexRequest = new DecodedIndexRequest(index, type, id, (flags & AUTO_GENERATED_ID) != 0);
+            indexRequest.routing(routing);
+            indexRequest.refresh((flags & REFRESH) != 0);
+            if ((flags & HAS_PARENT) != 0) {
+                indexRequest.parent(strings[in.readVInt()]);
+            }
+            if ((flags & HAS_TIMESTAMP) != 0) {
+                indexRequest.timestamp(in.readString());
+            }
+            if ((flags & HAS_TTL) != 0) {
+                indexRequest.ttl(in.readVLong());
+            }
+            indexRequest.opType(op == OP_CREATE ? IndexRequest.OpType.CREATE : IndexRequest.OpType.INDEX);
+            readVersion(in, indexRequest);
+            sourceLengths[i] = in.readVInt();
+            list.add(indexRequest);
+        }
+        BytesReference sources = in.readBytesReference(in.readVInt());
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            ActionRequest<?> actionRequest = list.get(i);
+            if (actionRequest instanceof IndexRequest) {
+                ((IndexRequest) actionRequest).source(sources.slice(offset, sourceLengths[i]));
+                offset += sourceLengths[i];
+            }
+        }
+        actionRequests.addAll(list);
+    }
+
+    private static void intern(String s, Map<String, Integer> dictionary, List<String> strings) {
+        if (s != null && !dictionary.containsKey(s)) {
+            dictionary.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    private static void writeRef(StreamOutput out, String s, Map<String, Integer> dictionary) throws IOException {
+        out.writeVInt(s != null ? dictionary.get(s) + 1 : 0);
+    }
+
+    private static String readRef(StreamInput in, String[] strings) throws IOException {
+        int ref = in.readVInt();
+        return ref > 0 ? strings[ref - 1] : null;
+    }
+
+    private static void writeVersion(StreamOutput out, long version, VersionType versionType) throws IOException {
+        // variable length numbers must not be negative, the complement keeps the negative special versions short
+        if (version < 0L) {
+            out.writeByte((byte) (versionType.getValue() | NEGATIVE_VERSION));
+            out.writeVLong(~version);
+        } else {
+            out.writeByte(versionType.getValue());
+            out.writeVLong(version);
+        }
+    }
+
+    private static void readVersion(StreamInput in, IndexRequest indexRequest) throws IOException {
+        byte b = in.readByte();
+        indexRequest.versionType(VersionType.fromValue((byte) (b & ~NEGATIVE_VERSION)));
+        long v = in.readVLong();
+        indexRequest.version((b & NEGATIVE_VERSION) != 0 ? ~v : v);
+    }
+
+    private static void readVersion(StreamInput in, DeleteRequest deleteRequest) throws IOException {
+        byte b = in.readByte();
+        deleteRequest.versionType(VersionType.fromValue((byte) (b & ~NEGATIVE_VERSION)));
+        long v = in.readVLong();
+        deleteRequest.version((b & NEGATIVE_VERSION) != 0 ? ~v : v);
+    }
+
+    /**
+     * An index request that remembers whether its id was generated, because index requests
+     * offer no setter for that.
+     */
+    private static class DecodedIndexRequest extends IndexRequest {
+
+        private final boolean autoGeneratedId;
+
+        DecodedIndexRequest(String index, String type, String id, boolean autoGeneratedId) {
+            super(index, type, id);
+            this.autoGeneratedId = autoGeneratedId;
+        }
+
+        @Override
+        public boolean autoGeneratedId() {
+            return autoGeneratedId || super.autoGeneratedId();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+
+/**
+ * Marks the tasks that the ingest actions submit to the {@link IngestAction#EXECUTOR} thread pool, so an action
+ * can tell that it already runs on the ingest executor and needs no further thread handoff.
+ *
+ * The marker is set only while a wrapped task runs, so it does not depend on thread names, and threads of other
+ * pools that share the name never count as ingest threads.
+ */
+public final class IngestExecutor {
+
+    private static final ThreadLocal<Boolean> running = new ThreadLocal<>();
+
+    private IngestExecutor() {
+    }
+
+    /**
+     * Check if the current thread runs a task that was wrapped by {@link #wrap(AbstractRunnable)}.
+     *
+     * @return true if the current thread runs an ingest task
+     */
+    public static boolean isCurrentThread() {
+        return Boolean.TRUE.equals(running.get());
+    }
+
+    /**
+     * Wrap a task for the ingest executor, so it runs with the marker set.
+     *
+     * @param runnable the task
+     * @return the wrapped task
+     */
+    public static AbstractRunnable wrap(final AbstractRunnable runnable) {
+        return new AbstractRunnable() {
+            @Override
+            public void onFailure(Throwable t) {
+                runnable.onFailure(t);
+            }
+
+            @Override
+            public void onRejected(Throwable t) {
+                runnable.onRejected(t);
+            }
+
+            @Override
+            public boolean isForceExecution() {
+                return runnable.isForceExecution();
+            }
+
+            @Override
+            protected void doRun() throws Exception {
+                Boolean previous = running.get();
+                running.set(Boolean.TRUE);
+                try {
+                    runnable.run();
+                } finally {
+                    running.set(previous);
+                }
+            }
+        };
+    }
+}
@@ -7,6 +7,7 @@ import org.elasticsearch.action.CompositeIndicesRequest;
 import org.elasticsearch.action.IndicesRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -15,10 +16,11 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContent;
 import org.elasticsearch.common.xcontent.XContentFactory;
-import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -58,6 +60,14 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
         return requiredConsistency;
     }
 
+    /**
+     * Set the ingest ID. An ingest request with an ingest ID is recognized when it is retried: documents
+     * without ID get IDs derived from the ingest ID, and the leader shards answer a retry of a completed
+     * request without executing it again. Use an ingest ID only for one ingest request and its retries.
+     *
+     * @param ingestId the ingest ID, or 0 for none
+     * @return this request
+     */
     public IngestRequest ingestId(long ingestId) {
         this.ingestId = ingestId;
         return this;
@@ -87,6 +97,8 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
             add((IndexRequest) request);
         } else if (request instanceof DeleteRequest) {
             add((DeleteRequest) request);
+        } else if (request instanceof UpdateRequest) {
+            add((UpdateRequest) request);
         } else {
             throw new IllegalArgumentException("no support for request [" + request + "]");
         }
@@ -99,6 +111,8 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
                 add((IndexRequest) request);
             } else if (request instanceof DeleteRequest) {
                 add((DeleteRequest) request);
+            } else if (request instanceof UpdateRequest) {
+                add((UpdateRequest) request);
             } else {
                 throw new IllegalArgumentException("no support for request [" + request + "]");
             }
@@ -116,6 +130,23 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
         return this;
     }
 
+    /**
+     * Add an update request. The update is executed on the leader shard, and the replicas receive the
+     * resulting index or delete operation.
+     *
+     * @param request the update request
+     * @return this request
+     */
+    public IngestRequest add(UpdateRequest request) {
+        ActionRequestValidationException validationException = request.validate();
+        if (validationException != null) {
+            throw validationException;
+        }
+        requests.offer(request);
+        sizeInBytes.addAndGet(updateSize(request));
+        return this;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public List<? extends IndicesRequest> subRequests() {
@@ -185,103 +216,61 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
      */
     public IngestRequest add(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType) throws Exception {
         XContent xContent = XContentFactory.xContent(data);
+        boolean json = xContent.type() == XContentType.JSON;
+        ActionLineParser lineParser = new ActionLineParser();
         int from = 0;
         int length = data.length();
         byte marker = xContent.streamSeparator();
         while (true) {
-            int nextMarker = findNextMarker(marker, from, data, length);
+            int nextMarker = ActionLineParser.findNextMarker(marker, from, data, length);
             if (nextMarker == -1) {
                 break;
             }
-            // now parse the move
-            XContentParser parser = xContent.createParser(data.slice(from, nextMarker - from));
-            try {
-                // move pointers
-                from = nextMarker + 1;
-
-                // Move to START_OBJECT
-                XContentParser.Token token = parser.nextToken();
-                if (token == null) {
-                    continue;
-                }
-                assert token == XContentParser.Token.START_OBJECT;
-                // Move to FIELD_NAME, that's the move
-                token = parser.nextToken();
-                assert token == XContentParser.Token.FIELD_NAME;
-                String action = parser.currentName();
-
-                String index = defaultIndex;
-                String type = defaultType;
-                String id = null;
-                String routing = null;
-                String parent = null;
-                String timestamp = null;
-                Long ttl = null;
-                String opType = null;
-                long version = 0;
-                VersionType versionType = VersionType.INTERNAL;
-
-                // at this stage, next token can either be END_OBJECT (and use default index and type, with auto generated id)
-                // or START_OBJECT which will have another set of parameters
-
-                String currentFieldName = null;
-                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
-                    if (token == XContentParser.Token.FIELD_NAME) {
-                        currentFieldName = parser.currentName();
-                    } else if (token.isValue()) {
-                        if ("_index".equals(currentFieldName)) {
-                            index = parser.text();
-                        } else if ("_type".equals(currentFieldName)) {
-                            type = parser.text();
-                        } else if ("_id".equals(currentFieldName)) {
-                            id = parser.text();
-                        } else if ("_routing".equals(currentFieldName) || "routing".equals(currentFieldName)) {
-                            routing = parser.text();
-                        } else if ("_parent".equals(currentFieldName) || "parent".equals(currentFieldName)) {
-                            parent = parser.text();
-                        } else if ("_timestamp".equals(currentFieldName) || "timestamp".equals(currentFieldName)) {
-                            timestamp = parser.text();
-                        } else if ("_ttl".equals(currentFieldName) || "ttl".equals(currentFieldName)) {
-                            if (parser.currentToken() == XContentParser.Token.VALUE_STRING) {
-                                ttl = TimeValue.parseTimeValue(parser.text(), null, currentFieldName).millis();
-                            } else {
-                                ttl = parser.longValue();
-                            }
-                        } else if ("op_type".equals(currentFieldName) || "opType".equals(currentFieldName)) {
-                            opType = parser.text();
-                        } else if ("_version".equals(currentFieldName) || "version".equals(currentFieldName)) {
-                            version = parser.longValue();
-                        } else if ("_version_type".equals(currentFieldName) || "_versionType".equals(currentFieldName) || "version_type".equals(currentFieldName) || "versionType".equals(currentFieldName)) {
-                            versionType = VersionType.fromString(parser.text());
-                        }
-                    }
+            BytesReference line = data.slice(from, nextMarker - from);
+            // move pointers
+            from = nextMarker + 1;
+            if (!(json && lineParser.parseFast(line, defaultIndex, defaultType))
+                    && !lineParser.parseGeneric(xContent, line, defaultIndex, defaultType)) {
+                continue;
+            }
+            String action = lineParser.action();
+            String index = lineParser.index();
+            String type = lineParser.type();
+            String id = lineParser.id();
+            String routing = lineParser.routing();
+            String parent = lineParser.parent();
+            String timestamp = lineParser.timestamp();
+            Long ttl = lineParser.ttl();
+            String opType = lineParser.opType();
+            long version = lineParser.version();
+            VersionType versionType = lineParser.versionType();
+            if ("delete".equals(action)) {
+                add(new DeleteRequest(index, type, id).parent(parent).version(version).versionType(versionType).routing(routing));
+            } else {
+                nextMarker = ActionLineParser.findNextMarker(marker, from, data, length);
+                if (nextMarker == -1) {
+                    break;
                 }
-
-                if ("delete".equals(action)) {
-                    add(new DeleteRequest(index, type, id).parent(parent).version(version).versionType(versionType).routing(routing));
-                } else {
-                    nextMarker = findNextMarker(marker, from, data, length);
-                    if (nextMarker == -1) {
-                        break;
+                if ("index".equals(action) || "create".equals(action)) {
+                    IndexRequest indexRequest = new IndexRequest(index, type, id).routing(routing).parent(parent)
+                            .timestamp(timestamp).version(version).versionType(versionType)
+                            .source(data.slice(from, nextMarker - from));
+                    if (ttl != null) {
+                        indexRequest.ttl(ttl);
                     }
-                    if ("index".equals(action)) {
-                        if (opType == null) {
-                            internalAdd(new IndexRequest(index, type, id).routing(routing).parent(parent).timestamp(timestamp).ttl(ttl).version(version).versionType(versionType)
-                                    .source(data.slice(from, nextMarker - from)));
-                        } else {
-                            internalAdd(new IndexRequest(index, type, id).routing(routing).parent(parent).timestamp(timestamp).ttl(ttl).version(version).versionType(versionType)
-                                    .create("create".equals(opType))
-                                    .source(data.slice(from, nextMarker - from)));
-                        }
-                    } else if ("create".equals(action)) {
-                        internalAdd(new IndexRequest(index, type, id).routing(routing).parent(parent).timestamp(timestamp).ttl(ttl).version(version).versionType(versionType)
-                                .create(true)
-                                .source(data.slice(from, nextMarker - from)));
+                    if ("create".equals(action)) {
+                        indexRequest.create(true);
+                    } else if (opType != null) {
+                        indexRequest.create("create".equals(opType));
                     }
-                    from = nextMarker + 1;
+                    internalAdd(indexRequest);
+                } else if ("update".equals(action)) {
+                    UpdateRequest updateRequest = new UpdateRequest(index, type, id).routing(routing).parent(parent)
+                            .retryOnConflict(lineParser.retryOnConflict()).version(version).versionType(versionType)
+                            .source(data.slice(from, nextMarker - from));
+                    add(updateRequest);
                 }
-            } finally {
-                parser.close();
+                from = nextMarker + 1;
             }
         }
         return this;
@@ -303,6 +292,8 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
                 sizeInBytes.addAndGet(-length);
             } else if (actionRequest instanceof DeleteRequest) {
                 sizeInBytes.addAndGet(REQUEST_OVERHEAD);
+            } else if (actionRequest instanceof UpdateRequest) {
+                sizeInBytes.addAndGet(-updateSize((UpdateRequest) actionRequest));
             }
         }
         return request;
@@ -326,6 +317,8 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
                 sizeInBytes.addAndGet(-length);
             } else if (actionRequest instanceof DeleteRequest) {
                 sizeInBytes.addAndGet(REQUEST_OVERHEAD);
+            } else if (actionRequest instanceof UpdateRequest) {
+                sizeInBytes.addAndGet(-updateSize((UpdateRequest) actionRequest));
             } else {
                 throw new IllegalStateException("action request not supported: " + actionRequest.getClass().getName());
             }
@@ -357,36 +350,32 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
 
     @Override
     public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
         timeout = TimeValue.readTimeValue(in);
+        requiredConsistency = Consistency.fromId(in.readByte());
         ingestId = in.readLong();
-        int size = in.readVInt();
-        for (int i = 0; i < size; i++) {
-            byte type = in.readByte();
-            if (type == 0) {
-                IndexRequest request = new IndexRequest();
-                request.readFrom(in);
-                requests.add(request);
-            } else if (type == 1) {
-                DeleteRequest request = new DeleteRequest();
-                request.readFrom(in);
-                requests.add(request);
-            }
-        }
+        IngestActionCodec.readActions(in, requests);
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
         timeout.writeTo(out);
+        out.writeByte(requiredConsistency.id());
         out.writeLong(ingestId);
-        out.writeVInt(requests.size());
-        for (ActionRequest<?> request : requests) {
-            if (request instanceof IndexRequest) {
-                out.writeByte((byte) 0);
-            } else if (request instanceof DeleteRequest) {
-                out.writeByte((byte) 1);
-            }
-            request.writeTo(out);
+        // a snapshot, the queue may change while writing
+        IngestActionCodec.writeActions(out, new ArrayList<ActionRequest<?>>(requests));
+    }
+
+    private static long updateSize(UpdateRequest request) {
+        long length = REQUEST_OVERHEAD;
+        if (request.doc() != null && request.doc().source() != null) {
+            length += request.doc().source().length();
+        }
+        if (request.upsertRequest() != null && request.upsertRequest().source() != null) {
+            length += request.upsertRequest().source().length();
         }
+        return length;
     }
 
     IngestRequest internalAdd(IndexRequest request) {
@@ -403,13 +392,4 @@ public class IngestRequest extends ActionRequest<IngestRequest> implements Compo
         sizeInBytes.addAndGet(request.source().length() + REQUEST_OVERHEAD);
         return this;
     }
-
-    private int findNextMarker(byte marker, int from, BytesReference data, int length) {
-        for (int i = from; i < length; i++) {
-            if (data.get(i) == marker) {
-                return i;
-            }
-        }
-        return -1;
-    }
 }
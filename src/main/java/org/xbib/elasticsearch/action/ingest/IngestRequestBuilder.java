@@ -38,6 +38,11 @@ public class IngestRequestBuilder extends ActionRequestBuilder<IngestRequest, In
         return this;
     }
 
+    public IngestRequestBuilder setConsistency(Consistency consistency) {
+        request.requiredConsistency(consistency);
+        return this;
+    }
+
     public int numberOfActions() {
         return request.numberOfActions();
     }
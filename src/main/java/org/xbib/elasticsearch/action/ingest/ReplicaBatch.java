@@ -0,0 +1,120 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardRequest;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardResponse;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batches the replica requests of the shards of an ingest request, to execute them with one request per node
+ * holding replicas.
+ *
+ * The replica requests of the first leader response are sent at once. While a batch is in flight, the replica
+ * requests of further leader responses are collected, and sent as the next batch when the batch in flight has
+ * completed. So the replicas never wait for the slowest leader, and the number of node requests adapts to
+ * the replica round trip. Each batch counts as one response in the response counter of the ingest request.
+ *
+ * Replica failures are reported in the replica responses, as without batching. A failed batch is reported
+ * as a failure of the ingest request.
+ */
+class ReplicaBatch {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(ReplicaBatch.class.getName());
+
+    /**
+     * Executes the replica requests of many shards with one request per node.
+     */
+    interface Sender {
+
+        void executeByNode(List<IngestReplicaShardRequest> requests, ActionListener<List<IngestReplicaShardResponse>> listener);
+    }
+
+    private final Sender sender;
+
+    private final IngestRequest ingestRequest;
+
+    private final IngestResponse ingestResponse;
+
+    private final AtomicInteger successCount;
+
+    private final AtomicInteger responseCounter;
+
+    private final long startTime;
+
+    private final ActionListener<IngestResponse> listener;
+
+    private final List<IngestReplicaShardRequest> requests = new LinkedList<>();
+
+    private boolean inFlight;
+
+    ReplicaBatch(Sender sender, IngestRequest ingestRequest, IngestResponse ingestResponse, AtomicInteger successCount,
+                 AtomicInteger responseCounter, long startTime, ActionListener<IngestResponse> listener) {
+        this.sender = sender;
+        this.ingestRequest = ingestRequest;
+        this.ingestResponse = ingestResponse;
+        this.successCount = successCount;
+        this.responseCounter = responseCounter;
+        this.startTime = startTime;
+        this.listener = listener;
+    }
+
+    /**
+     * Add the replica request of a leader response. Must be called before the leader response is counted
+     * down in the response counter.
+     *
+     * @param request the replica request
+     */
+    void add(IngestReplicaShardRequest request) {
+        synchronized (this) {
+            requests.add(request);
+            if (inFlight) {
+                return;
+            }
+            inFlight = true;
+        }
+        sendNext();
+    }
+
+    private void sendNext() {
+        List<IngestReplicaShardRequest> list;
+        synchronized (this) {
+            if (requests.isEmpty()) {
+                inFlight = false;
+                return;
+            }
+            list = new LinkedList<>(requests);
+            requests.clear();
+        }
+        responseCounter.incrementAndGet();
+        sender.executeByNode(list, new ActionListener<List<IngestReplicaShardResponse>>() {
+            @Override
+            public void onResponse(List<IngestReplicaShardResponse> responses) {
+                ingestResponse.addReplicaResponses(responses);
+                done();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                logger.error(e.getMessage(), e);
+                ingestResponse.addFailure(new IngestActionFailure(ingestRequest.ingestId(), null, ExceptionsHelper.detailedMessage(e)));
+                done();
+            }
+        });
+    }
+
+    private void done() {
+        // the next batch is counted before this batch is counted down
+        sendNext();
+        if (responseCounter.decrementAndGet() == 0) {
+            long millis = Math.max(1, System.currentTimeMillis() - startTime);
+            ingestResponse.setSuccessSize(successCount.get()).setTookInMillis(millis);
+            listener.onResponse(ingestResponse);
+        }
+    }
+}
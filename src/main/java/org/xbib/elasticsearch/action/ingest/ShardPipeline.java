@@ -0,0 +1,258 @@
+package org.xbib.elasticsearch.action.ingest;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocumentRequest;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.index.shard.ShardId;
+import org.xbib.elasticsearch.action.ingest.leader.IngestLeaderShardRequest;
+import org.xbib.elasticsearch.action.ingest.leader.IngestLeaderShardResponse;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardRequest;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardResponse;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes the actions of a shard in chunks, and sends each chunk to the replicas as soon as the leader
+ * has executed it, while the leader continues with the next chunk. Leader chunks and replica chunks are
+ * executed in order, so operations on the same document are applied in the same order on all copies.
+ * The shard counts as one response in the response counter of the ingest request.
+ *
+ * If a leader chunk fails, or the next chunk is rejected by the ingest executor, the remaining chunks are
+ * skipped, and each skipped action is reported as a failure. A rejection counts as a rejection of the shard,
+ * whatever the chunk, so an ingest request whose shards have all been rejected is answered with the rejection,
+ * and the client can back off and retry.
+ */
+class ShardPipeline {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(ShardPipeline.class.getName());
+
+    /**
+     * Executes the leader and replica requests of the shard.
+     */
+    interface Shard {
+
+        void executeOnLeader(IngestLeaderShardRequest request, ActionListener<IngestLeaderShardResponse> listener);
+
+        void executeOnReplica(IngestReplicaShardRequest request, ActionListener<List<IngestReplicaShardResponse>> listener);
+
+        /**
+         * Run a task on the ingest executor. A rejected task gets {@link AbstractRunnable#onRejected(Throwable)}.
+         *
+         * @param runnable the task
+         */
+        void fork(AbstractRunnable runnable);
+    }
+
+    private final Shard shard;
+
+    private final IngestRequest ingestRequest;
+
+    private final ShardId shardId;
+
+    private final List<List<ActionRequest<?>>> chunks;
+
+    private final IngestResponse ingestResponse;
+
+    private final AtomicInteger successCount;
+
+    private final AtomicInteger responseCounter;
+
+    private final long startTime;
+
+    private final TransportIngestAction.RejectionListener listener;
+
+    private final LinkedList<IngestReplicaShardRequest> replicaQueue = new LinkedList<>();
+
+    private boolean leaderDone;
+
+    private boolean replicaRunning;
+
+    private boolean finished;
+
+    ShardPipeline(Shard shard, int chunkSize, IngestRequest ingestRequest, ShardId shardId,
+                  List<ActionRequest<?>> actionRequests, IngestResponse ingestResponse, AtomicInteger successCount,
+                  AtomicInteger responseCounter, long startTime, TransportIngestAction.RejectionListener listener) {
+        this.shard = shard;
+        this.ingestRequest = ingestRequest;
+        this.shardId = shardId;
+        this.ingestResponse = ingestResponse;
+        this.successCount = successCount;
+        this.responseCounter = responseCounter;
+        this.startTime = startTime;
+        this.listener = listener;
+        this.chunks = new LinkedList<>();
+        List<ActionRequest<?>> chunk = new LinkedList<>();
+        for (ActionRequest<?> actionRequest : actionRequests) {
+            chunk.add(actionRequest);
+            if (chunk.size() == chunkSize) {
+                chunks.add(chunk);
+                chunk = new LinkedList<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+    }
+
+    void start() {
+        executeOnLeader(0);
+    }
+
+    private void executeOnLeader(final int chunk) {
+        final IngestLeaderShardRequest ingestLeaderShardRequest = new IngestLeaderShardRequest()
+                .setIngestId(ingestRequest.ingestId())
+                .setShardId(shardId)
+                .setActionRequests(chunks.get(chunk))
+                .timeout(ingestRequest.timeout())
+                .requiredConsistency(ingestRequest.requiredConsistency());
+        shard.executeOnLeader(ingestLeaderShardRequest, new ActionListener<IngestLeaderShardResponse>() {
+            @Override
+            public void onResponse(IngestLeaderShardResponse ingestLeaderShardResponse) {
+                ingestResponse.setLeaderResponse(ingestLeaderShardResponse);
+                successCount.addAndGet(ingestLeaderShardResponse.getSuccessCount());
+                int quorumShards = ingestLeaderShardResponse.getQuorumShards();
+                if (quorumShards < 0) {
+                    String message = "quorum not reached for shard " + shardId;
+                    ingestResponse.addFailure(new IngestActionFailure(ingestRequest.ingestId(), shardId, message));
+                    skip(chunk + 1, message);
+                    return;
+                }
+                if (quorumShards > 0) {
+                    IngestReplicaShardRequest ingestReplicaShardRequest =
+                            new IngestReplicaShardRequest(ingestRequest.ingestId(), shardId,
+                                    ingestLeaderShardResponse.getActionRequests());
+                    ingestReplicaShardRequest.timeout(ingestRequest.timeout());
+                    enqueueOnReplica(ingestReplicaShardRequest);
+                }
+                if (chunk + 1 < chunks.size()) {
+                    forkOnLeader(chunk + 1);
+                } else {
+                    leaderDone();
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                logger.error(e.getMessage(), e);
+                listener.leaderFailed(e);
+                ingestResponse.addFailure(new IngestActionFailure(-1L, shardId, ExceptionsHelper.detailedMessage(e)));
+                skip(chunk + 1, ExceptionsHelper.detailedMessage(e));
+            }
+        });
+    }
+
+    /**
+     * Execute the next chunk from the ingest executor. A local leader answers on the calling thread,
+     * so calling the leader from the response of the previous chunk would nest the chunks on the stack
+     * and keep an ingest thread busy for the whole shard, past the bounded ingest queue.
+     */
+    private void forkOnLeader(final int chunk) {
+        AbstractRunnable runnable = new AbstractRunnable() {
+            @Override
+            public void onFailure(Throwable t) {
+                logger.error(t.getMessage(), t);
+                listener.leaderFailed(t);
+                skip(chunk, ExceptionsHelper.detailedMessage(t));
+            }
+
+            @Override
+            protected void doRun() throws Exception {
+                executeOnLeader(chunk);
+            }
+        };
+        try {
+            shard.fork(runnable);
+        } catch (Throwable t) {
+            runnable.onFailure(t);
+        }
+    }
+
+    /**
+     * Report the actions of the chunks that have not been executed on the leader, one failure per action.
+     *
+     * @param chunk the first chunk that has not been executed
+     * @param reason the reason
+     */
+    private void skip(int chunk, String reason) {
+        for (int i = chunk; i < chunks.size(); i++) {
+            for (ActionRequest<?> actionRequest : chunks.get(i)) {
+                DocumentRequest<?> documentRequest = (DocumentRequest<?>) actionRequest;
+                ingestResponse.addFailure(new IngestActionFailure(ingestRequest.ingestId(), shardId,
+                        "skipped [" + documentRequest.index() + "][" + documentRequest.type() + "]["
+                                + documentRequest.id() + "]: " + reason));
+            }
+        }
+        leaderDone();
+    }
+
+    private void leaderDone() {
+        synchronized (this) {
+            leaderDone = true;
+        }
+        maybeFinish();
+    }
+
+    private void enqueueOnReplica(IngestReplicaShardRequest request) {
+        synchronized (this) {
+            if (replicaRunning) {
+                replicaQueue.add(request);
+                return;
+            }
+            replicaRunning = true;
+        }
+        executeOnReplica(request);
+    }
+
+    private void executeOnReplica(IngestReplicaShardRequest request) {
+        shard.executeOnReplica(request, new ActionListener<List<IngestReplicaShardResponse>>() {
+            @Override
+            public void onResponse(List<IngestReplicaShardResponse> responses) {
+                ingestResponse.addReplicaResponses(responses);
+                replicaDone();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                logger.error(e.getMessage(), e);
+                ingestResponse.addFailure(new IngestActionFailure(ingestRequest.ingestId(), shardId,
+                        ExceptionsHelper.detailedMessage(e)));
+                replicaDone();
+            }
+        });
+    }
+
+    private void replicaDone() {
+        IngestReplicaShardRequest next;
+        synchronized (this) {
+            next = replicaQueue.poll();
+            if (next == null) {
+                replicaRunning = false;
+            }
+        }
+        if (next != null) {
+            executeOnReplica(next);
+        } else {
+            maybeFinish();
+        }
+    }
+
+    private void maybeFinish() {
+        synchronized (this) {
+            if (finished || !leaderDone || replicaRunning) {
+                return;
+            }
+            finished = true;
+        }
+        if (responseCounter.decrementAndGet() == 0) {
+            long millis = Math.max(1, System.currentTimeMillis() - startTime);
+            ingestResponse.setSuccessSize(successCount.get()).setTookInMillis(millis);
+            listener.onResponse(ingestResponse);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.DocumentRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.HandledTransportAction;
 import org.elasticsearch.cluster.ClusterService;
@@ -16,8 +17,11 @@ import org.elasticsearch.cluster.block.ClusterBlockLevel;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.Base64;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
@@ -25,8 +29,11 @@ import org.xbib.elasticsearch.action.ingest.leader.IngestLeaderShardRequest;
 import org.xbib.elasticsearch.action.ingest.leader.IngestLeaderShardResponse;
 import org.xbib.elasticsearch.action.ingest.leader.TransportLeaderShardIngestAction;
 import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardRequest;
+import org.xbib.elasticsearch.action.ingest.replica.IngestReplicaShardResponse;
+import org.xbib.elasticsearch.action.ingest.replica.ReplicaLagTracker;
 import org.xbib.elasticsearch.action.ingest.replica.TransportReplicaShardIngestAction;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -35,14 +42,46 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class TransportIngestAction extends HandledTransportAction<IngestRequest, IngestResponse> {
 
+    /**
+     * The number of actions per leader request when leader and replica execution are pipelined,
+     * 0 disables pipelining.
+     */
+    public static final String PIPELINE_CHUNK_SIZE = "action.ingest.pipeline_chunk_size";
+
+    /**
+     * If true, the replica operations of all shards are sent with one request per node.
+     */
+    public static final String REPLICA_NODE_BATCHING = "action.ingest.replica_node_batching";
+
+    /**
+     * If true, index requests without ID in ingest requests with an ingest ID get an ID derived from the
+     * ingest ID and their position, so a retried ingest request writes the same documents to the same shards,
+     * and the leaders can answer the retry from their completed ingests. Without stable IDs, a retry gets new
+     * random IDs and its documents are indexed twice.
+     *
+     * Default is true, so it applies to all ingest requests with an ingest ID. Ingest requests without an
+     * ingest ID are not affected. A client which sets ingest IDs must use every ingest ID for one ingest
+     * request and its retries only, like {@code IngestProcessor} does. A reused ingest ID overwrites the
+     * documents of the earlier request. Set it to false to keep random IDs for all ingest requests.
+     */
+    public static final String STABLE_IDS = "action.ingest.stable_ids";
+
     private final boolean allowIdGeneration;
 
+    private final int pipelineChunkSize;
+
+    private final boolean replicaNodeBatching;
+
+    private final boolean stableIds;
+
     private final ClusterService clusterService;
 
     private final TransportLeaderShardIngestAction leaderShardIngestAction;
 
     private final TransportReplicaShardIngestAction replicaShardIngestAction;
 
+    private final ReplicaBatch.Sender replicaSender;
+
     @Inject
     public TransportIngestAction(Settings settings, ThreadPool threadPool,
                                  TransportService transportService, ClusterService clusterService,
@@ -55,10 +94,41 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
         this.leaderShardIngestAction = leaderShardIngestAction;
         this.replicaShardIngestAction = replicaShardIngestAction;
         this.allowIdGeneration = this.settings.getAsBoolean("action.allow_id_generation", true);
+        this.pipelineChunkSize = this.settings.getAsInt(PIPELINE_CHUNK_SIZE, 0);
+        this.replicaNodeBatching = this.settings.getAsBoolean(REPLICA_NODE_BATCHING, false);
+        this.stableIds = this.settings.getAsBoolean(STABLE_IDS, true);
+        this.replicaSender = new ReplicaBatch.Sender() {
+            @Override
+            public void executeByNode(List<IngestReplicaShardRequest> requests,
+                                      final ActionListener<List<IngestReplicaShardResponse>> listener) {
+                replicaShardIngestAction.executeByNode(requests,
+                        new ActionListener<TransportReplicaShardIngestAction.ReplicaOperationResponse>() {
+                            @Override
+                            public void onResponse(TransportReplicaShardIngestAction.ReplicaOperationResponse response) {
+                                listener.onResponse(response.responses());
+                            }
+
+                            @Override
+                            public void onFailure(Throwable e) {
+                                listener.onFailure(e);
+                            }
+                        });
+            }
+        };
+    }
+
+    /**
+     * The replica operations executing in the background on behalf of this node, for the
+     * {@link Consistency#ASYNC_REPLICA} consistency.
+     *
+     * @return the replica lag tracker
+     */
+    public ReplicaLagTracker replicaLag() {
+        return replicaShardIngestAction.replicaLag();
     }
 
     @Override
-    protected void doExecute(final IngestRequest ingestRequest, final ActionListener<IngestResponse> listener) {
+    protected void doExecute(final IngestRequest ingestRequest, final ActionListener<IngestResponse> actionListener) {
         final long startTime = System.currentTimeMillis();
         final IngestResponse ingestResponse = new IngestResponse();
         ingestResponse.setIngestId(ingestRequest.ingestId());
@@ -66,19 +136,24 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
         try {
             clusterState.blocks().globalBlockedRaiseException(ClusterBlockLevel.WRITE);
         } catch (ClusterBlockException e) {
-            listener.onFailure(e);
+            actionListener.onFailure(e);
             return;
         }
         final ConcreteIndices concreteIndices = new ConcreteIndices(clusterState, indexNameExpressionResolver);
         MetaData metaData = clusterState.metaData();
         final List<ActionRequest<?>> requests = new LinkedList<>();
+        int position = -1;
         for (ActionRequest<?> request : ingestRequest.requests()) {
+            position++;
             String concreteIndex = concreteIndices.resolveIfAbsent((DocumentRequest)request);
             if (request instanceof IndexRequest) {
                 try {
                     IndexRequest indexRequest = (IndexRequest) request;
                     indexRequest.routing(metaData.resolveIndexRouting(indexRequest.routing(), concreteIndex));
                     indexRequest.index(concreteIndex);
+                    if (stableIds && allowIdGeneration && indexRequest.id() == null && ingestRequest.ingestId() != 0L) {
+                        indexRequest.id(stableId(ingestRequest.ingestId(), position));
+                    }
                     MappingMetaData mappingMd = null;
                     if (metaData.hasIndex(concreteIndex)) {
                         mappingMd = metaData.index(concreteIndex).mappingOrDefault(indexRequest.type());
@@ -94,6 +169,11 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
                 deleteRequest.routing(metaData.resolveIndexRouting(deleteRequest.routing(), concreteIndex));
                 deleteRequest.index(concreteIndex);
                 requests.add(deleteRequest);
+            } else if (request instanceof UpdateRequest) {
+                UpdateRequest updateRequest = (UpdateRequest) request;
+                updateRequest.routing(metaData.resolveIndexRouting(updateRequest.routing(), concreteIndex));
+                updateRequest.index(concreteIndex);
+                requests.add(updateRequest);
             } else {
                 throw new ElasticsearchException("action request not known: " + request.getClass().getName());
             }
@@ -121,6 +201,16 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
                     requestsByShard.put(shardId, list);
                 }
                 list.add(deleteRequest);
+            } else if (request instanceof UpdateRequest) {
+                UpdateRequest updateRequest = (UpdateRequest) request;
+                String concreteIndex = concreteIndices.getConcreteIndex(updateRequest.index());
+                ShardId shardId = clusterService.operationRouting().indexShards(clusterState, concreteIndex, updateRequest.type(), updateRequest.id(), updateRequest.routing()).shardId();
+                List<ActionRequest<?>> list = requestsByShard.get(shardId);
+                if (list == null) {
+                    list = new LinkedList<>();
+                    requestsByShard.put(shardId, list);
+                }
+                list.add(updateRequest);
             }
         }
         if (requestsByShard.isEmpty()) {
@@ -128,15 +218,25 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
             ingestResponse.setSuccessSize(0)
                     .addFailure(new IngestActionFailure(-1L, null, "no shards to execute ingest"))
                     .setTookInMillis(System.currentTimeMillis() - startTime);
-            listener.onResponse(ingestResponse);
+            actionListener.onResponse(ingestResponse);
             return;
         }
+        final RejectionListener listener = new RejectionListener(actionListener, requestsByShard.size());
         // third, for each shard, execute leader/replica action
         final AtomicInteger successCount = new AtomicInteger(0);
         final AtomicInteger responseCounter = new AtomicInteger(requestsByShard.size());
+        final boolean asyncReplica = ingestRequest.requiredConsistency() == Consistency.ASYNC_REPLICA;
+        // with async replicas, the replica requests of a shard are ordered, and are not batched by node
+        final ReplicaBatch replicaBatch = replicaNodeBatching && !asyncReplica ? new ReplicaBatch(replicaSender,
+                ingestRequest, ingestResponse, successCount, responseCounter, startTime, listener) : null;
         for (Map.Entry<ShardId, List<ActionRequest<?>>> entry : requestsByShard.entrySet()) {
             final ShardId shardId = entry.getKey();
             final List<ActionRequest<?>> actionRequests = entry.getValue();
+            if (pipelineChunkSize > 0 && actionRequests.size() > pipelineChunkSize) {
+                new ShardPipeline(pipelineShard(ingestRequest), pipelineChunkSize, ingestRequest, shardId,
+                        actionRequests, ingestResponse, successCount, responseCounter, startTime, listener).start();
+                continue;
+            }
             final IngestLeaderShardRequest ingestLeaderShardRequest = new IngestLeaderShardRequest()
                     .setIngestId(ingestRequest.ingestId())
                     .setShardId(shardId)
@@ -144,6 +244,16 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
                     .timeout(ingestRequest.timeout())
                     .requiredConsistency(ingestRequest.requiredConsistency());
             leaderShardIngestAction.execute(ingestLeaderShardRequest, new ActionListener<IngestLeaderShardResponse>() {
+
+                private IngestReplicaShardRequest replicaRequest(IngestLeaderShardResponse ingestLeaderShardResponse) {
+                    IngestReplicaShardRequest ingestReplicaShardRequest =
+                            new IngestReplicaShardRequest(ingestLeaderShardRequest.getIngestId(),
+                                    ingestLeaderShardRequest.getShardId(),
+                                    ingestLeaderShardResponse.getActionRequests());
+                    ingestReplicaShardRequest.timeout(ingestRequest.timeout());
+                    return ingestReplicaShardRequest;
+                }
+
                 @Override
                 public void onResponse(IngestLeaderShardResponse ingestLeaderShardResponse) {
                     long millis = System.currentTimeMillis() - startTime;
@@ -153,14 +263,19 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
                     int quorumShards = ingestLeaderShardResponse.getQuorumShards();
                     if (quorumShards < 0) {
                         ingestResponse.addFailure(new IngestActionFailure(ingestRequest.ingestId(), shardId, "quorum not reached for shard " + shardId));
+                    } else if (quorumShards > 0 && asyncReplica
+                            && replicaShardIngestAction.executeAsync(replicaRequest(ingestLeaderShardResponse))) {
+                        // acknowledged after the leader write, the replicas follow in the background
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("[{}] replicating {} in the background", ingestRequest.ingestId(), shardId);
+                        }
+                    } else if (quorumShards > 0 && replicaBatch != null) {
+                        replicaBatch.add(replicaRequest(ingestLeaderShardResponse));
                     } else if (quorumShards > 0) {
                         responseCounter.incrementAndGet();
-                        final IngestReplicaShardRequest ingestReplicaShardRequest =
-                                new IngestReplicaShardRequest(ingestLeaderShardRequest.getIngestId(),
-                                        ingestLeaderShardRequest.getShardId(),
-                                        ingestLeaderShardRequest.getActionRequests());
-                        ingestReplicaShardRequest.timeout(ingestRequest.timeout());
-                        replicaShardIngestAction.execute(ingestReplicaShardRequest, new ActionListener<TransportReplicaShardIngestAction.ReplicaOperationResponse>() {
+                        final IngestReplicaShardRequest ingestReplicaShardRequest = replicaRequest(ingestLeaderShardResponse);
+                        final ActionListener<TransportReplicaShardIngestAction.ReplicaOperationResponse> replicaListener =
+                                new ActionListener<TransportReplicaShardIngestAction.ReplicaOperationResponse>() {
                             @Override
                             public void onResponse(TransportReplicaShardIngestAction.ReplicaOperationResponse response) {
                                 long millis = Math.max(1, System.currentTimeMillis() - startTime);
@@ -183,7 +298,13 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
                                     listener.onResponse(ingestResponse);
                                 }
                             }
-                        });
+                        };
+                        if (asyncReplica) {
+                            // behind the background replica requests of the shard
+                            replicaShardIngestAction.executeInOrder(ingestReplicaShardRequest, replicaListener);
+                        } else {
+                            replicaShardIngestAction.execute(ingestReplicaShardRequest, replicaListener);
+                        }
                     }
                     if (responseCounter.decrementAndGet() == 0) {
                         ingestResponse.setSuccessSize(successCount.get()).setTookInMillis(millis);
@@ -195,6 +316,7 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
                 public void onFailure(Throwable e) {
                     long millis = System.currentTimeMillis() - startTime;
                     logger.error(e.getMessage(), e);
+                    listener.leaderFailed(e);
                     ingestResponse.addFailure(new IngestActionFailure(-1L, shardId, ExceptionsHelper.detailedMessage(e)));
                     if (responseCounter.decrementAndGet() == 0) {
                         ingestResponse.setSuccessSize(successCount.get()).setTookInMillis(millis);
@@ -206,6 +328,115 @@ public class TransportIngestAction extends HandledTransportAction<IngestRequest,
         }
     }
 
+    /**
+     * An ID from the ingest ID and the position of an action in the ingest request, in the URL safe
+     * base64 form of generated IDs.
+     *
+     * @param ingestId the ingest ID
+     * @param position the position
+     * @return the ID
+     */
+    static String stableId(long ingestId, int position) {
+        byte[] bytes = new byte[12];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (ingestId >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; i++) {
+            bytes[8 + i] = (byte) (position >>> (24 - 8 * i));
+        }
+        try {
+            return Base64.encodeBytes(bytes, 0, bytes.length, Base64.URL_SAFE);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Answers with the rejection of the ingest thread pool if the leaders of all shards have rejected their
+     * operations, so the client receives a 429 response and can back off. Partial rejections are reported as
+     * failures in the ingest response.
+     */
+    static class RejectionListener implements ActionListener<IngestResponse> {
+
+        private final ActionListener<IngestResponse> listener;
+
+        private final int shards;
+
+        private final AtomicInteger rejected = new AtomicInteger();
+
+        private volatile Throwable rejection;
+
+        RejectionListener(ActionListener<IngestResponse> listener, int shards) {
+            this.listener = listener;
+            this.shards = shards;
+        }
+
+        void leaderFailed(Throwable e) {
+            if (ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+                rejection = ExceptionsHelper.unwrapCause(e);
+                rejected.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onResponse(IngestResponse response) {
+            if (rejected.get() == shards) {
+                listener.onFailure(rejection);
+            } else {
+                listener.onResponse(response);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            listener.onFailure(e);
+        }
+    }
+
+    /**
+     * Executes the leader and replica requests of a pipelined shard of an ingest request.
+     *
+     * @param ingestRequest the ingest request
+     * @return the shard
+     */
+    private ShardPipeline.Shard pipelineShard(final IngestRequest ingestRequest) {
+        return new ShardPipeline.Shard() {
+            @Override
+            public void executeOnLeader(IngestLeaderShardRequest request,
+                                        ActionListener<IngestLeaderShardResponse> listener) {
+                leaderShardIngestAction.execute(request, listener);
+            }
+
+            @Override
+            public void executeOnReplica(IngestReplicaShardRequest request,
+                                         final ActionListener<List<IngestReplicaShardResponse>> listener) {
+                ActionListener<TransportReplicaShardIngestAction.ReplicaOperationResponse> replicaListener =
+                        new ActionListener<TransportReplicaShardIngestAction.ReplicaOperationResponse>() {
+                            @Override
+                            public void onResponse(TransportReplicaShardIngestAction.ReplicaOperationResponse response) {
+                                listener.onResponse(response.responses());
+                            }
+
+                            @Override
+                            public void onFailure(Throwable e) {
+                                listener.onFailure(e);
+                            }
+                        };
+                if (ingestRequest.requiredConsistency() == Consistency.ASYNC_REPLICA) {
+                    // behind the background replica requests of earlier ingest requests for the shard
+                    replicaShardIngestAction.executeInOrder(request, replicaListener);
+                } else {
+                    replicaShardIngestAction.execute(request, replicaListener);
+                }
+            }
+
+            @Override
+            public void fork(AbstractRunnable runnable) {
+                threadPool.executor(IngestAction.EXECUTOR).execute(IngestExecutor.wrap(runnable));
+            }
+        };
+    }
+
     private static class ConcreteIndices  {
         private final ClusterState state;
         private final IndexNameExpressionResolver indexNameExpressionResolver;
@@ -0,0 +1,264 @@
+package org.xbib.elasticsearch.action.ingest.leader;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.index.shard.ShardId;
+import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The recently completed ingest operations of the leader shards on this node, by ingest ID and shard, so
+ * a retried ingest request is answered with the result of the first execution instead of being executed
+ * again.
+ *
+ * Entries expire after a while, and the oldest entries are dropped if the table is full. A retry which
+ * arrives while the first execution is still running waits for the response of the first execution, and
+ * is not executed. If the first execution fails, the waiting retries fail with the same failure.
+ *
+ * The actions of a leader request are part of the key by a fingerprint of their IDs, so chunks of the
+ * same shard and requests of other clients with the same ingest ID are not mistaken for retries.
+ */
+public class CompletedIngestTable {
+
+    private final int maxEntries;
+
+    private final long expireMillis;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>();
+
+    public CompletedIngestTable(int maxEntries, long expireMillis) {
+        this.maxEntries = maxEntries;
+        this.expireMillis = expireMillis;
+    }
+
+    /**
+     * Start the execution of a leader request.
+     *
+     * The listener identifies the execution. An execution which calls this method again, for example after
+     * a retry on another leader shard copy, is still the execution of the request.
+     *
+     * @param key the key of the request
+     * @param listener the listener of the execution, receives the response if the request is a retry
+     * @return true if the request must be executed, false if the listener receives the response of
+     * another execution of the request
+     */
+    public boolean begin(Key key, ActionListener<IngestLeaderShardResponse> listener) {
+        return begin(key, listener, System.currentTimeMillis());
+    }
+
+    boolean begin(Key key, ActionListener<IngestLeaderShardResponse> listener, long now) {
+        List<Entry> expired = new LinkedList<>();
+        boolean execute = false;
+        IngestLeaderShardResponse response = null;
+        synchronized (this) {
+            expire(now, expired);
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entries.put(key, new Entry(now, listener));
+                while (entries.size() > maxEntries) {
+                    Iterator<Entry> it = entries.values().iterator();
+                    expired.add(it.next());
+                    it.remove();
+                }
+                execute = true;
+            } else if (entry.completed) {
+                response = entry.response(key);
+            } else if (entry.owner == listener) {
+                execute = true;
+            } else {
+                entry.waiting.add(listener);
+            }
+        }
+        failWaiting(expired);
+        if (response != null) {
+            listener.onResponse(response);
+        }
+        return execute;
+    }
+
+    /**
+     * Record the response of a completed leader request, and answer the retries which wait for it.
+     *
+     * @param key the key of the request
+     * @param listener the listener of the execution
+     * @param response the response
+     */
+    public void complete(Key key, ActionListener<IngestLeaderShardResponse> listener, IngestLeaderShardResponse response) {
+        List<ActionListener<IngestLeaderShardResponse>> waiting;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.completed || entry.owner != listener) {
+                return;
+            }
+            entry.completed = true;
+            entry.successCount = response.getSuccessCount();
+            entry.failures = new LinkedList<>(response.getFailures());
+            waiting = new ArrayList<>(entry.waiting);
+            entry.waiting.clear();
+        }
+        for (ActionListener<IngestLeaderShardResponse> waitingListener : waiting) {
+            waitingListener.onResponse(entryResponse(key, response.getSuccessCount(), response.getFailures()));
+        }
+    }
+
+    /**
+     * Remove a leader request which did not complete, so it can be executed again. The retries which wait
+     * for the request fail with the same failure.
+     *
+     * @param key the key of the request
+     * @param listener the listener of the execution
+     * @param failure the failure of the execution
+     */
+    public void abort(Key key, ActionListener<IngestLeaderShardResponse> listener, Throwable failure) {
+        List<ActionListener<IngestLeaderShardResponse>> waiting;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.completed || entry.owner != listener) {
+                return;
+            }
+            entries.remove(key);
+            waiting = entry.waiting;
+        }
+        for (ActionListener<IngestLeaderShardResponse> waitingListener : waiting) {
+            waitingListener.onFailure(failure);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void expire(long now, List<Entry> expired) {
+        // entries are in the order of their start, the oldest first
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (now - entry.startTime <= expireMillis) {
+                break;
+            }
+            expired.add(entry);
+            it.remove();
+        }
+    }
+
+    private static void failWaiting(List<Entry> expired) {
+        for (Entry entry : expired) {
+            for (ActionListener<IngestLeaderShardResponse> listener : entry.waiting) {
+                listener.onFailure(new ElasticsearchException("ingest still executing, but removed from the completed ingests"));
+            }
+        }
+    }
+
+    private static IngestLeaderShardResponse entryResponse(Key key, int successCount, List<IngestActionFailure> failures) {
+        return new IngestLeaderShardResponse()
+                .setIngestId(key.ingestId)
+                .setShardId(key.shardId)
+                .setSuccessCount(successCount)
+                .setQuorumShards(0)
+                .setActionRequests(new LinkedList<ActionRequest<?>>())
+                .setFailures(new LinkedList<>(failures));
+    }
+
+    /**
+     * Create the key of a leader request.
+     *
+     * @param request the leader request
+     * @return the key
+     */
+    public static Key key(IngestLeaderShardRequest request) {
+        long fingerprint = request.getActionRequests().size();
+        for (ActionRequest<?> actionRequest : request.getActionRequests()) {
+            String id = null;
+            int op = 0;
+            if (actionRequest instanceof IndexRequest) {
+                id = ((IndexRequest) actionRequest).id();
+                op = 1;
+            } else if (actionRequest instanceof DeleteRequest) {
+                id = ((DeleteRequest) actionRequest).id();
+                op = 2;
+            } else if (actionRequest instanceof UpdateRequest) {
+                id = ((UpdateRequest) actionRequest).id();
+                op = 3;
+            }
+            fingerprint = 31 * fingerprint + op;
+            fingerprint = 31 * fingerprint + (id != null ? id.hashCode() : 0);
+        }
+        return new Key(request.getIngestId(), request.getShardId(), fingerprint);
+    }
+
+    /**
+     * The ingest ID, the shard, and a fingerprint of the actions of a leader request.
+     */
+    public static class Key {
+
+        private final long ingestId;
+
+        private final ShardId shardId;
+
+        private final long fingerprint;
+
+        Key(long ingestId, ShardId shardId, long fingerprint) {
+            this.ingestId = ingestId;
+            this.shardId = shardId;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return ingestId == key.ingestId && fingerprint == key.fingerprint && shardId.equals(key.shardId);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (ingestId ^ (ingestId >>> 32));
+            result = 31 * result + shardId.hashCode();
+            result = 31 * result + (int) (fingerprint ^ (fingerprint >>> 32));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + ingestId + "]" + shardId;
+        }
+    }
+
+    private static class Entry {
+
+        private final long startTime;
+
+        private final ActionListener<IngestLeaderShardResponse> owner;
+
+        private final List<ActionListener<IngestLeaderShardResponse>> waiting = new LinkedList<>();
+
+        private boolean completed;
+
+        private int successCount;
+
+        private List<IngestActionFailure> failures;
+
+        Entry(long startTime, ActionListener<IngestLeaderShardResponse> owner) {
+            this.startTime = startTime;
+            this.owner = owner;
+        }
+
+        IngestLeaderShardResponse response(Key key) {
+            return entryResponse(key, successCount, failures);
+        }
+    }
+}
@@ -1,19 +1,23 @@
 package org.xbib.elasticsearch.action.ingest.leader;
 
-import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.IndicesRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.cluster.routing.AllocationId;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.shard.ShardId;
 import org.xbib.elasticsearch.action.ingest.Consistency;
+import org.xbib.elasticsearch.action.ingest.IngestActionCodec;
+import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -35,6 +39,16 @@ public class IngestLeaderShardRequest extends ActionRequest<IngestLeaderShardReq
 
     private List<ActionRequest<?>> actionRequests = new LinkedList<ActionRequest<?>>();
 
+    private int resumeOffset;
+
+    private long[] resumeVersions;
+
+    private UpdateRequest[] resumeUpdates;
+
+    private String[] resumeAllocationIds = new String[0];
+
+    private List<IngestActionFailure> resumeFailures = new LinkedList<>();
+
     public IngestLeaderShardRequest() {
     }
 
@@ -66,6 +80,115 @@ public class IngestLeaderShardRequest extends ActionRequest<IngestLeaderShardReq
         return this;
     }
 
+    /**
+     * The offset of the first action that has not been executed on the leader yet. The actions before the offset
+     * carry the versions assigned by the leader.
+     *
+     * @return the resume offset, 0 if the request has not been executed partially
+     */
+    public int getResumeOffset() {
+        return resumeOffset;
+    }
+
+    /**
+     * The versions of the actions as requested by the client, before the leader assigned versions.
+     *
+     * @return the requested versions, or null
+     */
+    public long[] getResumeVersions() {
+        return resumeVersions;
+    }
+
+    /**
+     * The update actions that were executed before the resume offset. The leader replaces them with their
+     * resulting index or delete actions.
+     *
+     * @return the executed update actions by position, or null
+     */
+    public UpdateRequest[] getResumeUpdates() {
+        return resumeUpdates;
+    }
+
+    public List<IngestActionFailure> getResumeFailures() {
+        return resumeFailures;
+    }
+
+    /**
+     * Record the progress of a partial execution on the leader, so a retry can resume at the failed action.
+     *
+     * @param resumeOffset the offset of the failed action
+     * @param resumeVersions the requested versions of the actions
+     * @param resumeUpdates the executed update actions by position
+     * @param resumeFailures the failures of the actions before the offset
+     */
+    public IngestLeaderShardRequest setProgress(int resumeOffset, long[] resumeVersions, UpdateRequest[] resumeUpdates,
+                                                List<IngestActionFailure> resumeFailures) {
+        this.resumeOffset = resumeOffset;
+        this.resumeVersions = resumeVersions;
+        this.resumeUpdates = resumeUpdates;
+        this.resumeFailures = resumeFailures;
+        return this;
+    }
+
+    /**
+     * Record the allocation of the leader shard copy that executed the actions before the resume offset.
+     * A relocating leader also records the allocation of the relocation target, which receives the
+     * executed actions by recovery.
+     *
+     * @param allocationId the allocation of the leader shard
+     */
+    public IngestLeaderShardRequest setResumeAllocation(AllocationId allocationId) {
+        if (allocationId == null) {
+            this.resumeAllocationIds = new String[0];
+        } else if (allocationId.getRelocationId() != null) {
+            this.resumeAllocationIds = new String[]{allocationId.getId(), allocationId.getRelocationId()};
+        } else {
+            this.resumeAllocationIds = new String[]{allocationId.getId()};
+        }
+        return this;
+    }
+
+    /**
+     * Check if a leader shard copy holds the actions before the resume offset. Only then it is safe to skip them.
+     * Otherwise, for example after a replica has been promoted, the actions must be executed again.
+     *
+     * @param allocationId the allocation of the leader shard
+     * @return true if execution can resume at the resume offset
+     */
+    public boolean canResumeOn(AllocationId allocationId) {
+        if (allocationId == null) {
+            return false;
+        }
+        for (String id : resumeAllocationIds) {
+            if (id.equals(allocationId.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop the progress and restore the requested versions, for executing all actions again.
+     * Executed updates are restored, instead of their results, which carry the versions of the previous leader.
+     * Actions that failed before the resume offset stay failed.
+     */
+    public IngestLeaderShardRequest rewind() {
+        for (int i = 0; i < resumeOffset; i++) {
+            ActionRequest<?> actionRequest = actionRequests.get(i);
+            if (resumeUpdates != null && resumeUpdates[i] != null) {
+                actionRequests.set(i, resumeUpdates[i]);
+            } else if (actionRequest instanceof IndexRequest) {
+                ((IndexRequest) actionRequest).version(resumeVersions[i]);
+            } else if (actionRequest instanceof DeleteRequest) {
+                ((DeleteRequest) actionRequest).version(resumeVersions[i]);
+            }
+        }
+        this.resumeOffset = 0;
+        this.resumeUpdates = null;
+        this.resumeAllocationIds = new String[0];
+        return this;
+    }
+
     public final boolean operationThreaded() {
         return threadedOperation;
     }
@@ -133,20 +256,29 @@ public class IngestLeaderShardRequest extends ActionRequest<IngestLeaderShardReq
         out.writeByte(requiredConsistency.id());
         out.writeLong(ingestId);
         shardId.writeTo(out);
-        out.writeVInt(actionRequests.size());
-        for (ActionRequest<?> actionRequest : actionRequests) {
-            if (actionRequest == null) {
-                out.writeBoolean(false);
-            } else {
-                out.writeBoolean(true);
-                if (actionRequest instanceof IndexRequest) {
-                    out.writeBoolean(true);
-                } else if (actionRequest instanceof DeleteRequest) {
-                    out.writeBoolean(false);
-                } else {
-                    throw new ElasticsearchException("action request not supported: " + actionRequest.getClass().getName());
+        IngestActionCodec.writeActions(out, actionRequests);
+        out.writeVInt(resumeOffset);
+        if (resumeOffset > 0) {
+            for (int i = 0; i < resumeOffset; i++) {
+                out.writeLong(resumeVersions[i]);
+            }
+            int updates = 0;
+            for (int i = 0; resumeUpdates != null && i < resumeOffset; i++) {
+                if (resumeUpdates[i] != null) {
+                    updates++;
+                }
+            }
+            out.writeVInt(updates);
+            for (int i = 0; updates > 0 && i < resumeOffset; i++) {
+                if (resumeUpdates[i] != null) {
+                    out.writeVInt(i);
+                    resumeUpdates[i].writeTo(out);
                 }
-                actionRequest.writeTo(out);
+            }
+            out.writeStringArray(resumeAllocationIds);
+            out.writeVInt(resumeFailures.size());
+            for (IngestActionFailure failure : resumeFailures) {
+                failure.writeTo(out);
             }
         }
     }
@@ -159,23 +291,28 @@ public class IngestLeaderShardRequest extends ActionRequest<IngestLeaderShardReq
         requiredConsistency = Consistency.fromId(in.readByte());
         ingestId = in.readLong();
         shardId = ShardId.readShardId(in);
-        int size = in.readVInt();
-        actionRequests = new LinkedList<ActionRequest<?>>();
-        for (int i = 0; i < size; i++) {
-            boolean exists = in.readBoolean();
-            if (exists) {
-                boolean b = in.readBoolean();
-                if (b) {
-                    IndexRequest indexRequest = new IndexRequest();
-                    indexRequest.readFrom(in);
-                    actionRequests.add(indexRequest);
-                } else {
-                    DeleteRequest deleteRequest = new DeleteRequest();
-                    deleteRequest.readFrom(in);
-                    actionRequests.add(deleteRequest);
-                }
-            } else {
-                actionRequests.add(null);
+        actionRequests = new ArrayList<>();
+        IngestActionCodec.readActions(in, actionRequests);
+        int size = actionRequests.size();
+        resumeOffset = in.readVInt();
+        if (resumeOffset > 0) {
+            resumeVersions = new long[size];
+            for (int i = 0; i < resumeOffset; i++) {
+                resumeVersions[i] = in.readLong();
+            }
+            resumeUpdates = new UpdateRequest[size];
+            int updates = in.readVInt();
+            for (int i = 0; i < updates; i++) {
+                UpdateRequest updateRequest = new UpdateRequest();
+                int position = in.readVInt();
+                updateRequest.readFrom(in);
+                resumeUpdates[position] = updateRequest;
+            }
+            resumeAllocationIds = in.readStringArray();
+            resumeFailures = new LinkedList<>();
+            int failures = in.readVInt();
+            for (int i = 0; i < failures; i++) {
+                resumeFailures.add(IngestActionFailure.from(in));
             }
         }
     }
@@ -1,16 +1,15 @@
 package org.xbib.elasticsearch.action.ingest.leader;
 
-import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionResponse;
-import org.elasticsearch.action.delete.DeleteRequest;
-import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.index.shard.ShardId;
+import org.xbib.elasticsearch.action.ingest.IngestActionCodec;
 import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -108,27 +107,10 @@ public class IngestLeaderShardResponse extends ActionResponse {
         }
         successCount = in.readVInt();
         quorumShards = in.readVInt();
-        actionRequests = new LinkedList<>();
-        int size = in.readVInt();
-        for (int i = 0; i < size; i++) {
-            boolean exists = in.readBoolean();
-            if (exists) {
-                boolean b = in.readBoolean();
-                if (b) {
-                    IndexRequest indexRequest = new IndexRequest();
-                    indexRequest.readFrom(in);
-                    actionRequests.add(indexRequest);
-                } else {
-                    DeleteRequest deleteRequest = new DeleteRequest();
-                    deleteRequest.readFrom(in);
-                    actionRequests.add(deleteRequest);
-                }
-            } else {
-                actionRequests.add(null);
-            }
-        }
+        actionRequests = new ArrayList<>();
+        IngestActionCodec.readActions(in, actionRequests);
         failures = new LinkedList<>();
-        size = in.readVInt();
+        int size = in.readVInt();
         for (int i = 0; i < size; i++) {
             failures.add(IngestActionFailure.from(in));
         }
@@ -147,22 +129,7 @@ public class IngestLeaderShardResponse extends ActionResponse {
         }
         out.writeVInt(successCount);
         out.writeVInt(quorumShards);
-        out.writeVInt(actionRequests.size());
-        for (ActionRequest<?> actionRequest : actionRequests) {
-            if (actionRequest == null) {
-                out.writeBoolean(false);
-            } else {
-                out.writeBoolean(true);
-                if (actionRequest instanceof IndexRequest) {
-                    out.writeBoolean(true);
-                } else if (actionRequest instanceof DeleteRequest) {
-                    out.writeBoolean(false);
-                } else {
-                    throw new ElasticsearchException("action request not supported: " + actionRequest.getClass().getName());
-                }
-                actionRequest.writeTo(out);
-            }
-        }
+        IngestActionCodec.writeActions(out, actionRequests);
         out.writeVInt(failures.size());
         for (IngestActionFailure f : failures) {
             f.writeTo(out);
@@ -4,18 +4,23 @@ import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.UnavailableShardsException;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.TransportAction;
 import org.elasticsearch.action.support.TransportActions;
+import org.elasticsearch.action.update.UpdateHelper;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.ClusterStateObserver;
 import org.elasticsearch.cluster.block.ClusterBlockException;
 import org.elasticsearch.cluster.block.ClusterBlockLevel;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.routing.ShardIterator;
 import org.elasticsearch.cluster.routing.ShardRouting;
@@ -29,8 +34,11 @@ import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
 import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.indices.IndicesService;
@@ -47,6 +55,7 @@ import org.elasticsearch.transport.TransportService;
 import org.xbib.elasticsearch.action.ingest.Consistency;
 import org.xbib.elasticsearch.action.ingest.IngestAction;
 import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+import org.xbib.elasticsearch.action.ingest.IngestExecutor;
 
 import java.io.IOException;
 import java.util.LinkedList;
@@ -56,32 +65,48 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class TransportLeaderShardIngestAction
         extends TransportAction<IngestLeaderShardRequest, IngestLeaderShardResponse> {
 
+    /**
+     * The maximum number of completed leader requests to remember for answering retries, 0 disables the table.
+     */
+    public static final String COMPLETED_MAX_ENTRIES = "action.ingest.completed.max_entries";
+
+    /**
+     * How long completed leader requests are remembered for answering retries.
+     */
+    public static final String COMPLETED_EXPIRE = "action.ingest.completed.expire";
+
     private final static ESLogger logger = ESLoggerFactory.getLogger(TransportLeaderShardIngestAction.class.getSimpleName());
     final String transportAction;
     final String executor;
     private final TransportService transportService;
     private final ClusterService clusterService;
     private final IndicesService indicesService;
+    private final UpdateHelper updateHelper;
     private final TransportRequestOptions transportOptions;
+    private final CompletedIngestTable completedIngests;
 
     @Inject
     public TransportLeaderShardIngestAction(Settings settings, TransportService transportService, ClusterService clusterService,
                                             IndicesService indicesService, ThreadPool threadPool,
-                                            ActionFilters actionFilters,
+                                            UpdateHelper updateHelper, ActionFilters actionFilters,
                                             IndexNameExpressionResolver indexNameExpressionResolver) {
         super(settings, IngestAction.NAME, threadPool, actionFilters, indexNameExpressionResolver, transportService.getTaskManager());
         this.transportService = transportService;
         this.clusterService = clusterService;
         this.indicesService = indicesService;
+        this.updateHelper = updateHelper;
         this.transportAction = transportAction();
         this.transportOptions = transportOptions();
         this.executor = executor();
+        int maxEntries = settings.getAsInt(COMPLETED_MAX_ENTRIES, 10000);
+        this.completedIngests = maxEntries > 0 ? new CompletedIngestTable(maxEntries,
+                settings.getAsTime(COMPLETED_EXPIRE, TimeValue.timeValueMinutes(5)).millis()) : null;
         transportService.registerRequestHandler(transportAction, IngestLeaderShardRequest.class,
                 ThreadPool.Names.SAME, new LeaderOperationTransportHandler());
     }
 
     protected String executor() {
-        return ThreadPool.Names.BULK;
+        return IngestAction.EXECUTOR;
     }
 
     protected TransportRequestOptions transportOptions() {
@@ -116,26 +141,35 @@ public class TransportLeaderShardIngestAction
         final long t0 = shardRequest.startTime();
         final IngestLeaderShardRequest request = shardRequest.request();
         int successCount = 0;
-        List<IngestActionFailure> failures = new LinkedList<>();
+        List<IngestActionFailure> failures = new LinkedList<>(request.getResumeFailures());
         int size = request.getActionRequests().size();
-        long[] versions = new long[size];
+        int offset = request.getResumeOffset();
+        long[] versions = request.getResumeVersions() != null ? request.getResumeVersions() : new long[size];
+        UpdateRequest[] updates = request.getResumeUpdates() != null ? request.getResumeUpdates() : new UpdateRequest[size];
+        // actions before the offset have been executed on this shard copy by an earlier attempt
+        for (int i = 0; i < offset; i++) {
+            if (request.getActionRequests().get(i) != null) {
+                successCount++;
+            }
+        }
+        if (offset > 0 && logger.isDebugEnabled()) {
+            logger.debug("[{}][{}] resuming ingest at offset {} of {}", request.index(), shardRequest.shardId(), offset, size);
+        }
         IndexService indexService = indicesService.indexServiceSafe(request.index());
-        for (int i = 0; i < size; i++) {
+        for (int i = offset; i < size; i++) {
             ActionRequest<?> actionRequest = request.getActionRequests().get(i);
             if (actionRequest instanceof IndexRequest) {
                 try {
                     IndexRequest indexRequest = (IndexRequest) actionRequest;
-                    long version = indexOperationOnLeader(indexRequest, request);
                     versions[i] = indexRequest.version();
+                    long version = indexOperationOnLeader(indexRequest, request);
                     indexRequest.version(indexRequest.version() == Versions.MATCH_ANY ? Versions.MATCH_ANY : version);
                     successCount++;
                 } catch (Throwable e) {
                     if (retryLeaderException(e)) {
-                        for (int j = 0; j < i; j++) {
-                            ((IndexRequest) request.getActionRequests().get(j)).version(versions[j]);
-                        }
                         logger.error(e.getMessage(), e);
-                        throw new ElasticsearchException(e.getMessage(), e);
+                        request.setProgress(i, versions, updates, failures);
+                        throw ExceptionsHelper.convertToElastic(e);
                     }
                     logger.error("[{}][{}] failed to execute ingest (index) {}", e, request.index(), shardRequest.shardId(), actionRequest);
                     failures.add(new IngestActionFailure(request.getIngestId(), request.getShardId(), ExceptionsHelper.detailedMessage(e)));
@@ -145,22 +179,46 @@ public class TransportLeaderShardIngestAction
                 try {
                     IndexShard indexShard = indexService.shardSafe(shardRequest.shardId());
                     DeleteRequest deleteRequest = (DeleteRequest) actionRequest;
+                    versions[i] = deleteRequest.version();
                     Engine.Delete delete = indexShard.prepareDeleteOnPrimary(deleteRequest.type(), deleteRequest.id(), deleteRequest.version(), deleteRequest.versionType());
                     indexShard.delete(delete);
                     deleteRequest.version(deleteRequest.version() == Versions.MATCH_ANY ? Versions.MATCH_ANY : delete.version());
                     successCount++;
                 } catch (Throwable e) {
                     if (retryLeaderException(e)) {
-                        for (int j = 0; j < i; j++) {
-                            ((DeleteRequest) request.getActionRequests().get(j)).version(versions[j]);
-                        }
                         logger.error(e.getMessage(), e);
-                        throw new ElasticsearchException(e.getMessage(), e);
+                        request.setProgress(i, versions, updates, failures);
+                        throw ExceptionsHelper.convertToElastic(e);
                     }
                     logger.error("[{}][{}] failed to execute ingest (delete) {}", e, request.index(), shardRequest.shardId(), actionRequest);
                     failures.add(new IngestActionFailure(request.getIngestId(), request.getShardId(), ExceptionsHelper.detailedMessage(e)));
                     request.getActionRequests().set(i, null);
                 }
+            } else if (actionRequest instanceof UpdateRequest) {
+                try {
+                    IndexShard indexShard = indexService.shardSafe(shardRequest.shardId());
+                    UpdateRequest updateRequest = (UpdateRequest) actionRequest;
+                    // a bad update fails alone, and not the whole ingest request
+                    ActionRequestValidationException validationException = updateRequest.validate();
+                    if (validationException != null) {
+                        throw validationException;
+                    }
+                    ActionRequest<?> result = updateOperationOnLeader(updateRequest, clusterState.metaData(), indexShard, request);
+                    // the replicas receive the resulting operation, a noop update is not replicated
+                    request.getActionRequests().set(i, result);
+                    // the result carries the version of this leader, a new leader must execute the update again
+                    updates[i] = updateRequest;
+                    successCount++;
+                } catch (Throwable e) {
+                    if (retryLeaderException(e)) {
+                        logger.error(e.getMessage(), e);
+                        request.setProgress(i, versions, updates, failures);
+                        throw ExceptionsHelper.convertToElastic(e);
+                    }
+                    logger.error("[{}][{}] failed to execute ingest (update) {}", e, request.index(), shardRequest.shardId(), actionRequest);
+                    failures.add(new IngestActionFailure(request.getIngestId(), request.getShardId(), ExceptionsHelper.detailedMessage(e)));
+                    request.getActionRequests().set(i, null);
+                }
             }
         }
         int quorumShards = findQuorum(clusterState, shards(clusterState, request), request);
@@ -206,6 +264,51 @@ public class TransportLeaderShardIngestAction
 
     }
 
+    /**
+     * Execute an update on the leader: get the document, apply the partial document, the upsert or the script,
+     * and index or delete the result. Version conflicts from concurrent writes are retried as often as
+     * the update request allows.
+     *
+     * @return the executed index or delete request, with the version for the replicas, or null for a noop
+     */
+    private ActionRequest<?> updateOperationOnLeader(UpdateRequest updateRequest, MetaData metaData,
+                                                     IndexShard indexShard, IngestLeaderShardRequest request) {
+        int retries = 0;
+        while (true) {
+            try {
+                UpdateHelper.Result result = updateHelper.prepare(updateRequest, indexShard);
+                switch (result.operation()) {
+                    case UPSERT:
+                    case INDEX: {
+                        IndexRequest indexRequest = result.action();
+                        MappingMetaData mappingMd = null;
+                        if (metaData.hasIndex(request.index())) {
+                            mappingMd = metaData.index(request.index()).mappingOrDefault(indexRequest.type());
+                        }
+                        indexRequest.process(metaData, mappingMd, false, request.index());
+                        long version = indexOperationOnLeader(indexRequest, request);
+                        indexRequest.version(version).versionType(indexRequest.versionType().versionTypeForReplicationAndRecovery());
+                        return indexRequest;
+                    }
+                    case DELETE: {
+                        DeleteRequest deleteRequest = result.action();
+                        Engine.Delete delete = indexShard.prepareDeleteOnPrimary(deleteRequest.type(), deleteRequest.id(),
+                                deleteRequest.version(), deleteRequest.versionType());
+                        indexShard.delete(delete);
+                        deleteRequest.version(delete.version()).versionType(deleteRequest.versionType().versionTypeForReplicationAndRecovery());
+                        return deleteRequest;
+                    }
+                    default:
+                        return null;
+                }
+            } catch (VersionConflictEngineException | DocumentAlreadyExistsException e) {
+                if (retries++ >= updateRequest.retryOnConflict()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
     @Override
     protected void doExecute(IngestLeaderShardRequest request, ActionListener<IngestLeaderShardResponse> listener) {
         new AsyncShardOperationAction(request, listener).start();
@@ -234,6 +337,10 @@ public class TransportLeaderShardIngestAction
         if (replicaLevelOfIndex == 0) {
             return 0;
         }
+        if (request.requiredConsistency() == Consistency.ASYNC_REPLICA) {
+            // no replicas required, replicate to the active ones
+            return findReplicaLevel(shardIt);
+        }
         int replicaLevel = findReplicaLevel(shardIt) + 1;
         switch (request.requiredConsistency()) {
             case ONE:
@@ -288,12 +395,29 @@ public class TransportLeaderShardIngestAction
 
         private final IngestLeaderShardRequest request;
         private final AtomicBoolean leaderOperationStarted = new AtomicBoolean();
+        private final CompletedIngestTable.Key key;
         private volatile ShardIterator shardIt;
         private volatile ClusterStateObserver observer;
 
-        AsyncShardOperationAction(IngestLeaderShardRequest request, ActionListener<IngestLeaderShardResponse> listener) {
+        AsyncShardOperationAction(IngestLeaderShardRequest request, final ActionListener<IngestLeaderShardResponse> listener) {
             this.request = request;
-            this.listener = listener;
+            // before execution, the leader replaces failed and updated actions
+            this.key = completedIngests != null && request.getIngestId() != 0L ? CompletedIngestTable.key(request) : null;
+            this.listener = key == null ? listener : new ActionListener<IngestLeaderShardResponse>() {
+                @Override
+                public void onResponse(IngestLeaderShardResponse response) {
+                    // answers the retries waiting for this execution, and later retries
+                    completedIngests.complete(key, this, response);
+                    listener.onResponse(response);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    // retries waiting for this execution fail, and later retries are executed again
+                    completedIngests.abort(key, this, e);
+                    listener.onFailure(e);
+                }
+            };
         }
 
         public void start() {
@@ -369,19 +493,22 @@ public class TransportLeaderShardIngestAction
                 }
                 foundLeader = true;
                 if (shard.currentNodeId().equals(observer.observedState().nodes().localNodeId())) {
+                    // local leader: execute the in-memory request without serialization, and without
+                    // a thread handoff if we are already running on the executor
                     try {
-                        if (request.operationThreaded()) {
-                            threadPool.executor(executor).execute(new Runnable() {
+                        if (request.operationThreaded() && !IngestExecutor.isCurrentThread()) {
+                            threadPool.executor(executor).execute(IngestExecutor.wrap(new AbstractRunnable() {
+                                @Override
+                                public void onFailure(Throwable t) {
+                                    logger.error(t.getMessage(), t);
+                                    listener.onFailure(t);
+                                }
+
                                 @Override
-                                public void run() {
-                                    try {
-                                        performOnLeader(shard, quorum, observer.observedState());
-                                    } catch (Throwable t) {
-                                        logger.error(t.getMessage(), t);
-                                        listener.onFailure(t);
-                                    }
+                                protected void doRun() throws Exception {
+                                    performOnLeader(shard, quorum, observer.observedState());
                                 }
-                            });
+                            }));
                         } else {
                             performOnLeader(shard, quorum, observer.observedState());
                         }
@@ -476,14 +603,29 @@ public class TransportLeaderShardIngestAction
         }
 
         private void performOnLeader(final ShardRouting shard, int quorum, ClusterState clusterState) {
+            if (request.getResumeOffset() > 0 && !request.canResumeOn(shard.allocationId())) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{}: leader shard copy changed, executing all actions again", shard.shortSummary());
+                }
+                request.rewind();
+            }
+            if (key != null && !completedIngests.begin(key, listener)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{}: retry of ingest {} is answered by its first execution", shard.shortSummary(), key);
+                }
+                return;
+            }
+            IngestLeaderShardResponse response;
             try {
                 LeaderOperationRequest leaderOperationRequest = new LeaderOperationRequest(System.currentTimeMillis(), shard.id(), request);
-                IngestLeaderShardResponse response = shardOperationOnLeader(clusterState, quorum, leaderOperationRequest);
-                listener.onResponse(response);
+                response = shardOperationOnLeader(clusterState, quorum, leaderOperationRequest);
             } catch (Throwable e) {
                 logger.error(e.getMessage(), e);
                 if (retryLeaderException(e)) {
                     leaderOperationStarted.set(false);
+                    if (request.getResumeOffset() > 0) {
+                        request.setResumeAllocation(shard.allocationId());
+                    }
                     if (logger.isTraceEnabled()) {
                         logger.trace("error while performing operation on leader {}, scheduling a retry", e);
                     }
@@ -500,7 +642,9 @@ public class TransportLeaderShardIngestAction
                     }
                 }
                 listener.onFailure(e);
+                return;
             }
+            listener.onResponse(response);
         }
     }
 
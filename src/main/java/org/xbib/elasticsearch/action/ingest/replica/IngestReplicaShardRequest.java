@@ -1,17 +1,17 @@
 package org.xbib.elasticsearch.action.ingest.replica;
 
-import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionRequestValidationException;
-import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.shard.ShardId;
+import org.xbib.elasticsearch.action.ingest.IngestActionCodec;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -22,6 +22,8 @@ public class IngestReplicaShardRequest extends ActionRequest<IngestReplicaShardR
 
     public static final TimeValue DEFAULT_TIMEOUT = new TimeValue(1, TimeUnit.MINUTES);
 
+    private static final int REQUEST_OVERHEAD = 50;
+
     private TimeValue timeout = DEFAULT_TIMEOUT;
 
     private String index;
@@ -56,6 +58,22 @@ public class IngestReplicaShardRequest extends ActionRequest<IngestReplicaShardR
         return actionRequests;
     }
 
+    /**
+     * The estimated size in bytes of the replica request.
+     *
+     * @return the estimated byte size
+     */
+    public long estimatedSizeInBytes() {
+        long size = 0L;
+        for (ActionRequest<?> actionRequest : actionRequests) {
+            size += REQUEST_OVERHEAD;
+            if (actionRequest instanceof IndexRequest && ((IndexRequest) actionRequest).source() != null) {
+                size += ((IndexRequest) actionRequest).source().length();
+            }
+        }
+        return size;
+    }
+
     public final boolean operationThreaded() {
         return threadedOperation;
     }
@@ -110,22 +128,7 @@ public class IngestReplicaShardRequest extends ActionRequest<IngestReplicaShardR
         timeout.writeTo(out);
         out.writeLong(ingestId);
         shardId.writeTo(out);
-        out.writeVInt(actionRequests.size());
-        for (ActionRequest<?> actionRequest : actionRequests) {
-            if (actionRequest == null) {
-                out.writeBoolean(false);
-                continue;
-            }
-            out.writeBoolean(true);
-            if (actionRequest instanceof IndexRequest) {
-                out.writeBoolean(true);
-            } else if (actionRequest instanceof DeleteRequest) {
-                out.writeBoolean(false);
-            } else {
-                throw new ElasticsearchException("action request not supported: " + actionRequest.getClass().getName());
-            }
-            actionRequest.writeTo(out);
-        }
+        IngestActionCodec.writeActions(out, actionRequests);
     }
 
     @Override
@@ -135,24 +138,7 @@ public class IngestReplicaShardRequest extends ActionRequest<IngestReplicaShardR
         timeout = TimeValue.readTimeValue(in);
         ingestId = in.readLong();
         shardId = ShardId.readShardId(in);
-        int size = in.readVInt();
-        actionRequests = new LinkedList<>();
-        for (int i = 0; i < size; i++) {
-            boolean exists = in.readBoolean();
-            if (exists) {
-                boolean b = in.readBoolean();
-                if (b) {
-                    IndexRequest indexRequest = new IndexRequest();
-                    indexRequest.readFrom(in);
-                    actionRequests.add(indexRequest);
-                } else {
-                    DeleteRequest deleteRequest = new DeleteRequest();
-                    deleteRequest.readFrom(in);
-                    actionRequests.add(deleteRequest);
-                }
-            } else {
-                actionRequests.add(null);
-            }
-        }
+        actionRequests = new ArrayList<>();
+        IngestActionCodec.readActions(in, actionRequests);
     }
 }
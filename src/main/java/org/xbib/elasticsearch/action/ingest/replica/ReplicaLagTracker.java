@@ -0,0 +1,180 @@
+package org.xbib.elasticsearch.action.ingest.replica;
+
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Tracks the replica operations which are executed in the background after the leader has been acknowledged.
+ *
+ * The bytes of outstanding operations are bounded per node. If a node has no room left, no reservation is
+ * given, and the caller must wait for the replicas. A node without outstanding operations always accepts one
+ * operation, so large requests are not starved.
+ *
+ * The lag of a node is the age of its oldest outstanding operation.
+ */
+public class ReplicaLagTracker implements ToXContent {
+
+    private final long maxBytesPerNode;
+
+    private final Map<String, NodeLag> nodes = new TreeMap<>();
+
+    public ReplicaLagTracker(long maxBytesPerNode) {
+        this.maxBytesPerNode = maxBytesPerNode;
+    }
+
+    public long maxBytesPerNode() {
+        return maxBytesPerNode;
+    }
+
+    /**
+     * Reserve room for a replica operation on all nodes.
+     *
+     * @param nodeIds the nodes of the replica shards
+     * @param bytes the size of the operation
+     * @return the reservation, or null if a node has no room left
+     */
+    public synchronized Reservation reserve(Collection<String> nodeIds, long bytes) {
+        for (String nodeId : nodeIds) {
+            NodeLag nodeLag = nodes.get(nodeId);
+            if (nodeLag != null && nodeLag.outstandingBytes > 0 && nodeLag.outstandingBytes + bytes > maxBytesPerNode) {
+                nodeLag.rejected++;
+                return null;
+            }
+        }
+        Reservation reservation = new Reservation(nodeIds, bytes, System.currentTimeMillis());
+        for (String nodeId : nodeIds) {
+            NodeLag nodeLag = nodes.get(nodeId);
+            if (nodeLag == null) {
+                nodeLag = new NodeLag();
+                nodes.put(nodeId, nodeLag);
+            }
+            nodeLag.outstanding.add(reservation);
+            nodeLag.outstandingBytes += bytes;
+        }
+        return reservation;
+    }
+
+    /**
+     * Release a reservation after the replica operation has completed.
+     *
+     * @param reservation the reservation
+     * @param failed true if the operation failed on a replica
+     */
+    public synchronized void release(Reservation reservation, boolean failed) {
+        long millis = System.currentTimeMillis() - reservation.startTime;
+        for (String nodeId : reservation.nodeIds) {
+            NodeLag nodeLag = nodes.get(nodeId);
+            if (nodeLag == null || !nodeLag.outstanding.remove(reservation)) {
+                continue;
+            }
+            nodeLag.outstandingBytes -= reservation.bytes;
+            nodeLag.lastMillis = millis;
+            nodeLag.maxMillis = Math.max(nodeLag.maxMillis, millis);
+            if (failed) {
+                nodeLag.failed++;
+            } else {
+                nodeLag.completed++;
+            }
+        }
+    }
+
+    /**
+     * Forget a node which has left the cluster. Outstanding reservations on the node are no longer counted.
+     *
+     * @param nodeId the node
+     */
+    public synchronized void remove(String nodeId) {
+        nodes.remove(nodeId);
+    }
+
+    /**
+     * The lag of a node.
+     *
+     * @param nodeId the node
+     * @return the age of the oldest outstanding operation in milliseconds, or 0
+     */
+    public synchronized long lagInMillis(String nodeId) {
+        NodeLag nodeLag = nodes.get(nodeId);
+        return nodeLag != null ? nodeLag.lagInMillis(System.currentTimeMillis()) : 0L;
+    }
+
+    /**
+     * The bytes of outstanding operations of a node.
+     *
+     * @param nodeId the node
+     * @return the outstanding bytes
+     */
+    public synchronized long outstandingBytes(String nodeId) {
+        NodeLag nodeLag = nodes.get(nodeId);
+        return nodeLag != null ? nodeLag.outstandingBytes : 0L;
+    }
+
+    @Override
+    public synchronized XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        long now = System.currentTimeMillis();
+        builder.field("max_bytes_per_node", maxBytesPerNode);
+        builder.startObject("nodes");
+        for (Map.Entry<String, NodeLag> entry : nodes.entrySet()) {
+            NodeLag nodeLag = entry.getValue();
+            builder.startObject(entry.getKey())
+                    .field("lag_in_millis", nodeLag.lagInMillis(now))
+                    .field("outstanding_operations", nodeLag.outstanding.size())
+                    .field("outstanding_bytes", nodeLag.outstandingBytes)
+                    .field("last_replication_in_millis", nodeLag.lastMillis)
+                    .field("max_replication_in_millis", nodeLag.maxMillis)
+                    .field("completed", nodeLag.completed)
+                    .field("failed", nodeLag.failed)
+                    .field("rejected", nodeLag.rejected)
+                    .endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    /**
+     * Room for a replica operation on the nodes of the replica shards.
+     */
+    public static class Reservation {
+
+        private final Collection<String> nodeIds;
+
+        private final long bytes;
+
+        private final long startTime;
+
+        Reservation(Collection<String> nodeIds, long bytes, long startTime) {
+            this.nodeIds = nodeIds;
+            this.bytes = bytes;
+            this.startTime = startTime;
+        }
+    }
+
+    private static class NodeLag {
+
+        // in order of reservation, the first is the oldest
+        private final Set<Reservation> outstanding = new LinkedHashSet<>();
+
+        private long outstandingBytes;
+
+        private long lastMillis;
+
+        private long maxMillis;
+
+        private long completed;
+
+        private long failed;
+
+        private long rejected;
+
+        long lagInMillis(long now) {
+            return outstanding.isEmpty() ? 0L : now - outstanding.iterator().next().startTime;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.xbib.elasticsearch.action.ingest.replica;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The replica operations of many shards for a single node.
+ */
+public class ReplicaNodeOperationRequest extends TransportRequest {
+
+    private List<ReplicaOperationRequest> requests = new LinkedList<>();
+
+    public ReplicaNodeOperationRequest() {
+    }
+
+    public ReplicaNodeOperationRequest(List<ReplicaOperationRequest> requests) {
+        this.requests = requests;
+    }
+
+    public List<ReplicaOperationRequest> requests() {
+        return requests;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        requests = new LinkedList<>();
+        for (int i = 0; i < size; i++) {
+            ReplicaOperationRequest request = new ReplicaOperationRequest();
+            request.readFrom(in);
+            requests.add(request);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(requests.size());
+        for (ReplicaOperationRequest request : requests) {
+            request.writeTo(out);
+        }
+    }
+}
@@ -11,8 +11,10 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.TransportAction;
 import org.elasticsearch.action.support.TransportActions;
+import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
 import org.elasticsearch.cluster.ClusterStateObserver;
 import org.elasticsearch.cluster.action.shard.ShardStateAction;
 import org.elasticsearch.cluster.block.ClusterBlockException;
@@ -29,6 +31,8 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.index.IndexService;
@@ -36,6 +40,7 @@ import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.node.NodeClosedException;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -47,19 +52,31 @@ import org.elasticsearch.transport.TransportRequestOptions;
 import org.elasticsearch.transport.TransportService;
 import org.xbib.elasticsearch.action.ingest.IngestAction;
 import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
+import org.xbib.elasticsearch.action.ingest.IngestExecutor;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class TransportReplicaShardIngestAction
         extends TransportAction<IngestReplicaShardRequest, TransportReplicaShardIngestAction.ReplicaOperationResponse> {
 
+    /**
+     * The maximum bytes of replica operations per node which may be outstanding in the background
+     * for the {@link org.xbib.elasticsearch.action.ingest.Consistency#ASYNC_REPLICA} consistency.
+     */
+    public static final String ASYNC_MAX_BYTES_PER_NODE = "action.ingest.async_replica_max_bytes_per_node";
+
     private final static ESLogger logger = ESLoggerFactory.getLogger(TransportReplicaShardIngestAction.class.getSimpleName());
 
     final String transportAction;
 
+    final String nodeTransportAction;
+
     final String executor;
 
     private final TransportService transportService;
@@ -72,6 +89,11 @@ public class TransportReplicaShardIngestAction
 
     private final TransportRequestOptions transportOptions;
 
+    private final ReplicaLagTracker replicaLag;
+
+    // the queued replica requests of the shards which have a replica request running, in the order of the leader
+    private final Map<ShardId, LinkedList<OrderedRequest>> shardQueues = new HashMap<>();
+
     @Inject
     public TransportReplicaShardIngestAction(Settings settings, TransportService transportService, ClusterService clusterService,
                                              IndicesService indicesService, ThreadPool threadPool, ShardStateAction shardStateAction,
@@ -83,14 +105,30 @@ public class TransportReplicaShardIngestAction
         this.indicesService = indicesService;
         this.shardStateAction = shardStateAction;
         this.transportAction = transportAction();
+        this.nodeTransportAction = nodeTransportAction();
         this.transportOptions = transportOptions();
         this.executor = executor();
+        this.replicaLag = new ReplicaLagTracker(settings.getAsBytesSize(ASYNC_MAX_BYTES_PER_NODE,
+                new ByteSizeValue(16, ByteSizeUnit.MB)).bytes());
+        clusterService.add(new ClusterStateListener() {
+            @Override
+            public void clusterChanged(ClusterChangedEvent event) {
+                if (event.nodesRemoved()) {
+                    for (DiscoveryNode node : event.nodesDelta().removedNodes()) {
+                        replicaLag.remove(node.id());
+                    }
+                }
+            }
+        });
+        // replica operations must not be rejected after the leader has executed them
         transportService.registerRequestHandler(transportAction, ReplicaOperationRequest.class,
-                ThreadPool.Names.SAME, new ReplicaOperationTransportHandler());
+                executor, true, false, new ReplicaOperationTransportHandler());
+        transportService.registerRequestHandler(nodeTransportAction, ReplicaNodeOperationRequest.class,
+                ThreadPool.Names.SAME, new ReplicaNodeOperationTransportHandler());
     }
 
     protected String executor() {
-        return ThreadPool.Names.BULK;
+        return IngestAction.EXECUTOR;
     }
 
     protected TransportRequestOptions transportOptions() {
@@ -105,6 +143,10 @@ public class TransportReplicaShardIngestAction
         return IngestAction.NAME + ".shard.replica";
     }
 
+    protected String nodeTransportAction() {
+        return IngestAction.NAME + ".node.replica";
+    }
+
     protected ClusterBlockException checkGlobalBlock(ClusterState state, IngestReplicaShardRequest request) {
         return state.blocks().globalBlockedException(ClusterBlockLevel.WRITE);
     }
@@ -188,6 +230,304 @@ public class TransportReplicaShardIngestAction
         new AsyncShardOperationAction(request, listener).start();
     }
 
+    /**
+     * The replica operations executing in the background, by node.
+     *
+     * @return the replica lag tracker
+     */
+    public ReplicaLagTracker replicaLag() {
+        return replicaLag;
+    }
+
+    /**
+     * Execute the replica operations in the background, if the nodes of the replicas have room for the
+     * outstanding bytes of the request. Failed replicas are failed in the cluster state as usual, and are
+     * counted in the replica lag tracker. The replica requests of a shard execute one after another, in the
+     * order of this method and {@link #executeInOrder}.
+     *
+     * @param request the replica shard request
+     * @return true if the operations execute in the background, false if there is no room and the caller
+     * must execute the request and wait for the replicas
+     */
+    public boolean executeAsync(IngestReplicaShardRequest request) {
+        List<String> nodeIds = new LinkedList<>();
+        for (ReplicaInfo replicaInfo : replicaInfos(shards(clusterService.state(), request))) {
+            nodeIds.add(replicaInfo.nodeId());
+        }
+        final ReplicaLagTracker.Reservation reservation = replicaLag.reserve(nodeIds, request.estimatedSizeInBytes());
+        if (reservation == null) {
+            return false;
+        }
+        executeInOrder(request, new ActionListener<ReplicaOperationResponse>() {
+            @Override
+            public void onResponse(ReplicaOperationResponse response) {
+                boolean failed = false;
+                for (IngestReplicaShardResponse replicaShardResponse : response.responses()) {
+                    failed |= !replicaShardResponse.getFailures().isEmpty();
+                }
+                replicaLag.release(reservation, failed);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                logger.error(e.getMessage(), e);
+                replicaLag.release(reservation, true);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Execute the replica operations after the replica requests of the shard which are still running or queued in
+     * the background, so the replicas receive the operations of a shard in the order of the leader.
+     *
+     * @param request the replica shard request
+     * @param listener the listener
+     */
+    public void executeInOrder(IngestReplicaShardRequest request, ActionListener<ReplicaOperationResponse> listener) {
+        synchronized (shardQueues) {
+            LinkedList<OrderedRequest> queue = shardQueues.get(request.shardId());
+            if (queue != null) {
+                queue.add(new OrderedRequest(request, listener));
+                return;
+            }
+            shardQueues.put(request.shardId(), new LinkedList<OrderedRequest>());
+        }
+        executeOrdered(request, listener);
+    }
+
+    private void executeOrdered(final IngestReplicaShardRequest request, final ActionListener<ReplicaOperationResponse> listener) {
+        execute(request, new ActionListener<ReplicaOperationResponse>() {
+            @Override
+            public void onResponse(ReplicaOperationResponse response) {
+                try {
+                    listener.onResponse(response);
+                } finally {
+                    executeNext(request.shardId());
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                try {
+                    listener.onFailure(e);
+                } finally {
+                    executeNext(request.shardId());
+                }
+            }
+        });
+    }
+
+    private void executeNext(ShardId shardId) {
+        OrderedRequest next;
+        synchronized (shardQueues) {
+            next = shardQueues.get(shardId).poll();
+            if (next == null) {
+                shardQueues.remove(shardId);
+                return;
+            }
+        }
+        executeOrdered(next.request, next.listener);
+    }
+
+    /**
+     * Execute the replica operations of many shards with one request per node. The operations for the replicas
+     * on a node are sent in a single message, and the node executes them in parallel, one task per shard.
+     * Failures of single shards or nodes are reported as failures in the shard responses.
+     *
+     * @param requests the replica shard requests
+     * @param listener the listener, receives the responses of all replicas
+     */
+    public void executeByNode(List<IngestReplicaShardRequest> requests, final ActionListener<ReplicaOperationResponse> listener) {
+        final ClusterState clusterState = clusterService.state();
+        final ReplicaOperationResponse response = newReplicaResponseInstance();
+        Map<String, List<ReplicaOperationRequest>> requestsByNode = new HashMap<>();
+        Map<String, List<ShardRouting>> shardsByNode = new HashMap<>();
+        for (IngestReplicaShardRequest request : requests) {
+            try {
+                ClusterBlockException blockException = checkGlobalBlock(clusterState, request);
+                if (blockException == null) {
+                    blockException = checkRequestBlock(clusterState, request);
+                }
+                if (blockException != null) {
+                    throw blockException;
+                }
+                for (ReplicaInfo info : replicaInfos(shards(clusterState, request))) {
+                    if (!clusterState.nodes().nodeExists(info.nodeId())) {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("node {} no longer exists", info.nodeId());
+                        }
+                        continue;
+                    }
+                    List<ReplicaOperationRequest> list = requestsByNode.get(info.nodeId());
+                    if (list == null) {
+                        list = new LinkedList<>();
+                        requestsByNode.put(info.nodeId(), list);
+                        shardsByNode.put(info.nodeId(), new LinkedList<ShardRouting>());
+                    }
+                    list.add(new ReplicaOperationRequest(System.currentTimeMillis(),
+                            request.index(), info.shardRouting().shardId().id(), info.replicaLevel(), request));
+                    shardsByNode.get(info.nodeId()).add(info.shardRouting());
+                }
+            } catch (Throwable e) {
+                logger.error(e.getMessage(), e);
+                response.add(failedResponse(request, 0, e));
+            }
+        }
+        if (requestsByNode.isEmpty()) {
+            listener.onResponse(response);
+            return;
+        }
+        final AtomicInteger nodes = new AtomicInteger(requestsByNode.size());
+        for (Map.Entry<String, List<ReplicaOperationRequest>> entry : requestsByNode.entrySet()) {
+            final String nodeId = entry.getKey();
+            final List<ReplicaOperationRequest> nodeRequests = entry.getValue();
+            final List<ShardRouting> shardRoutings = shardsByNode.get(nodeId);
+            final ActionListener<ReplicaOperationResponse> nodeListener = new ActionListener<ReplicaOperationResponse>() {
+                @Override
+                public void onResponse(ReplicaOperationResponse nodeResponse) {
+                    synchronized (response) {
+                        for (IngestReplicaShardResponse shardResponse : nodeResponse.responses()) {
+                            response.add(shardResponse);
+                        }
+                    }
+                    if (nodes.decrementAndGet() == 0) {
+                        listener.onResponse(response);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    synchronized (response) {
+                        for (ReplicaOperationRequest request : nodeRequests) {
+                            response.add(failedResponse(request.request(), request.replicaId(), e));
+                        }
+                    }
+                    if (nodes.decrementAndGet() == 0) {
+                        listener.onResponse(response);
+                    }
+                }
+            };
+            if (nodeId.equals(clusterState.nodes().localNodeId())) {
+                shardOperationsOnReplica(nodeRequests, nodeListener);
+            } else {
+                final DiscoveryNode node = clusterState.nodes().get(nodeId);
+                transportService.sendRequest(node, nodeTransportAction, new ReplicaNodeOperationRequest(nodeRequests),
+                        transportOptions, new BaseTransportResponseHandler<ReplicaOperationResponse>() {
+                            @Override
+                            public ReplicaOperationResponse newInstance() {
+                                return newReplicaResponseInstance();
+                            }
+
+                            @Override
+                            public String executor() {
+                                return ThreadPool.Names.SAME;
+                            }
+
+                            @Override
+                            public void handleResponse(ReplicaOperationResponse result) {
+                                nodeListener.onResponse(result);
+                            }
+
+                            @Override
+                            public void handleException(TransportException exp) {
+                                if (!ignoreReplicaException(exp.unwrapCause())) {
+                                    logger.warn("failed to perform " + nodeTransportAction + " on replica node " + node, exp);
+                                    for (ShardRouting shardRouting : shardRoutings) {
+                                        IndexMetaData indexMetaData = clusterState.metaData().index(shardRouting.index());
+                                        if (indexMetaData != null) {
+                                            shardStateAction.shardFailed(shardRouting, indexMetaData.getIndexUUID(),
+                                                    "failed to perform [" + nodeTransportAction + "] on replica, message ["
+                                                            + ExceptionsHelper.detailedMessage(exp) + "]", exp);
+                                        }
+                                    }
+                                } else {
+                                    logger.error(exp.getMessage(), exp);
+                                }
+                                nodeListener.onFailure(exp);
+                            }
+                        });
+            }
+        }
+    }
+
+    /**
+     * Execute replica operations of many shards on this node, in parallel on the executor.
+     */
+    private void shardOperationsOnReplica(List<ReplicaOperationRequest> requests,
+                                          final ActionListener<ReplicaOperationResponse> listener) {
+        final ReplicaOperationResponse response = newReplicaResponseInstance();
+        final AtomicInteger counter = new AtomicInteger(requests.size());
+        for (final ReplicaOperationRequest request : requests) {
+            AbstractRunnable runnable = new AbstractRunnable() {
+
+                @Override
+                public void onFailure(Throwable t) {
+                    logger.error(t.getMessage(), t);
+                    failReplicaIfNeeded(request.index(), request.shardId(), t);
+                    done(failedResponse(request.request(), request.replicaId(), t));
+                }
+
+                @Override
+                protected void doRun() throws Exception {
+                    done(shardOperationOnReplica(request));
+                }
+
+                @Override
+                public boolean isForceExecution() {
+                    return true;
+                }
+
+                private void done(IngestReplicaShardResponse shardResponse) {
+                    synchronized (response) {
+                        response.add(shardResponse);
+                    }
+                    if (counter.decrementAndGet() == 0) {
+                        listener.onResponse(response);
+                    }
+                }
+            };
+            try {
+                threadPool.executor(executor).execute(IngestExecutor.wrap(runnable));
+            } catch (Throwable e) {
+                runnable.onFailure(e);
+            }
+        }
+    }
+
+    private IngestReplicaShardResponse failedResponse(IngestReplicaShardRequest request, int replicaLevel, Throwable t) {
+        List<IngestActionFailure> failures = new LinkedList<>();
+        failures.add(new IngestActionFailure(request.ingestId(), request.shardId(), ExceptionsHelper.detailedMessage(t)));
+        return new IngestReplicaShardResponse(request.ingestId(), request.shardId(), replicaLevel, 0, 0L, failures);
+    }
+
+    private List<ReplicaInfo> replicaInfos(ShardIterator shardIt) {
+        List<ReplicaInfo> infos = new LinkedList<>();
+        int replicaLevel = 1;
+        shardIt.reset();
+        ShardRouting shard;
+        while ((shard = shardIt.nextOrNull()) != null) {
+            if (shard.unassigned()) {
+                continue;
+            }
+            boolean doOnlyOnRelocating = false;
+            if (shard.primary()) {
+                if (shard.relocating()) {
+                    doOnlyOnRelocating = true;
+                } else {
+                    continue;
+                }
+            }
+            String nodeId = !doOnlyOnRelocating ? shard.currentNodeId() : shard.relocating() ? shard.relocatingNodeId() : null;
+            if (nodeId == null) {
+                continue;
+            }
+            infos.add(new ReplicaInfo(nodeId, shard, replicaLevel));
+            replicaLevel++;
+        }
+        return infos;
+    }
+
     boolean ignoreReplicaException(Throwable e) {
         if (TransportActions.isShardNotAvailableException(e)) {
             return true;
@@ -319,28 +659,7 @@ public class TransportReplicaShardIngestAction
                 logger.debug("we have a new leader shard?");
                 //performOnReplica(newLeaderShard, replicaCounter, newLeaderShard.currentNodeId(), indexMetaData);
             }
-            List<ReplicaInfo> infos = new LinkedList<>();
-            int replicaLevel = 1;
-            shardIt.reset();
-            while ((shard = shardIt.nextOrNull()) != null) {
-                if (shard.unassigned()) {
-                    continue;
-                }
-                boolean doOnlyOnRelocating = false;
-                if (shard.primary()) {
-                    if (shard.relocating()) {
-                        doOnlyOnRelocating = true;
-                    } else {
-                        continue;
-                    }
-                }
-                String nodeId = !doOnlyOnRelocating ? shard.currentNodeId() : shard.relocating() ? shard.relocatingNodeId() : null;
-                if (nodeId == null) {
-                    continue;
-                }
-                infos.add(new ReplicaInfo(nodeId, shard, replicaLevel));
-                replicaLevel++;
-            }
+            List<ReplicaInfo> infos = replicaInfos(shardIt);
             final AtomicLong replicas = new AtomicLong(infos.size());
             for (ReplicaInfo info : infos) {
                 final ReplicaOperationRequest replicaRequest = new ReplicaOperationRequest(System.currentTimeMillis(),
@@ -355,7 +674,7 @@ public class TransportReplicaShardIngestAction
                     if (nodeId.equals(observer.observedState().nodes().localNodeId())) {
                         if (request.operationThreaded()) {
                             try {
-                                threadPool.executor(executor).execute(new AbstractRunnable() {
+                                threadPool.executor(executor).execute(IngestExecutor.wrap(new AbstractRunnable() {
 
                                     @Override
                                     public void onFailure(Throwable t) {
@@ -375,10 +694,10 @@ public class TransportReplicaShardIngestAction
                                     public boolean isForceExecution() {
                                         return true;
                                     }
-                                });
+                                }));
                             } catch (Throwable e) {
                                 logger.error(e.getMessage(), e);
-                                failReplicaIfNeeded(shard.index(), shard.id(), e);
+                                failReplicaIfNeeded(shardRouting.index(), shardRouting.id(), e);
                             }
                         } else {
                             try {
@@ -388,7 +707,7 @@ public class TransportReplicaShardIngestAction
                                 }
                             } catch (Throwable e) {
                                 logger.error(e.getMessage(), e);
-                                failReplicaIfNeeded(shard.index(), shard.id(), e);
+                                failReplicaIfNeeded(shardRouting.index(), shardRouting.id(), e);
                             }
                         }
                     } else {
@@ -513,7 +832,8 @@ public class TransportReplicaShardIngestAction
         @Override
         public void readFrom(StreamInput in) throws IOException {
             super.readFrom(in);
-            for (int i = 0; i < in.readVInt(); i++) {
+            int size = in.readVInt();
+            for (int i = 0; i < size; i++) {
                 IngestReplicaShardResponse response = newResponseInstance();
                 response.readFrom(in);
                 responses.add(response);
@@ -534,6 +854,32 @@ public class TransportReplicaShardIngestAction
         }
     }
 
+    class ReplicaNodeOperationTransportHandler extends TransportRequestHandler<ReplicaNodeOperationRequest> {
+
+        @Override
+        public void messageReceived(final ReplicaNodeOperationRequest request, final TransportChannel channel) throws Exception {
+            shardOperationsOnReplica(request.requests(), new ActionListener<ReplicaOperationResponse>() {
+                @Override
+                public void onResponse(ReplicaOperationResponse response) {
+                    try {
+                        channel.sendResponse(response);
+                    } catch (Throwable e) {
+                        onFailure(e);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    try {
+                        channel.sendResponse(e);
+                    } catch (Throwable e1) {
+                        logger.warn("failed to send response for " + nodeTransportAction, e1);
+                    }
+                }
+            });
+        }
+    }
+
     class ReplicaOperationTransportHandler extends TransportRequestHandler<ReplicaOperationRequest> {
 
         @Override
@@ -547,4 +893,16 @@ public class TransportReplicaShardIngestAction
             }
         }
     }
+
+    private static class OrderedRequest {
+
+        private final IngestReplicaShardRequest request;
+
+        private final ActionListener<ReplicaOperationResponse> listener;
+
+        OrderedRequest(IngestReplicaShardRequest request, ActionListener<ReplicaOperationResponse> listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+    }
 }
@@ -88,12 +88,34 @@ abstract class BaseClient {
 
     private Map<String, String> mappings = new HashMap<>();
 
+    private volatile ClusterMetadataCache metadataCache = new ClusterMetadataCache(Settings.EMPTY);
+
     public abstract ElasticsearchClient client();
 
     protected abstract void createClient(Settings settings) throws IOException;
 
     public abstract void shutdown();
 
+    /**
+     * Configure the cache of the cluster metadata which is used for resolving aliases and indices.
+     *
+     * @param settings the client settings
+     */
+    protected void createMetadataCache(Settings settings) {
+        this.metadataCache = new ClusterMetadataCache(settings);
+    }
+
+    /**
+     * Invalidate the cached cluster metadata, after indices or aliases have been changed by this client.
+     */
+    protected void invalidateMetadataCache() {
+        metadataCache.invalidate();
+    }
+
+    private ClusterMetadataCache.Aliases aliases() {
+        return metadataCache.isEnabled() ? metadataCache.aliases(client()) : null;
+    }
+
     public Settings.Builder getSettingsBuilder() {
         return settingsBuilder();
     }
@@ -301,6 +323,17 @@ abstract class BaseClient {
         if (client() == null) {
             return alias;
         }
+        ClusterMetadataCache.Aliases aliases = aliases();
+        if (aliases != null) {
+            List<String> indices = aliases.indicesOf(alias);
+            if (indices.isEmpty()) {
+                return alias;
+            }
+            if (indices.size() == 1) {
+                return indices.get(0);
+            }
+            // an alias of several indices is resolved by the cluster, as without the cache
+        }
         GetAliasesRequestBuilder getAliasesRequestBuilder = new GetAliasesRequestBuilder(client(), GetAliasesAction.INSTANCE);
         GetAliasesResponse getAliasesResponse = getAliasesRequestBuilder.setAliases(alias).execute().actionGet();
         if (!getAliasesResponse.getAliases().isEmpty()) {
@@ -316,15 +349,24 @@ abstract class BaseClient {
         if (alias == null) {
             return null;
         }
-        GetAliasesRequestBuilder getAliasesRequestBuilder = new GetAliasesRequestBuilder(client(), GetAliasesAction.INSTANCE);
-        GetAliasesResponse getAliasesResponse = getAliasesRequestBuilder.setAliases(alias).execute().actionGet();
+        List<String> indexNames = new ArrayList<>();
+        ClusterMetadataCache.Aliases aliases = aliases();
+        if (aliases != null) {
+            indexNames.addAll(aliases.indicesOf(alias));
+        } else {
+            GetAliasesRequestBuilder getAliasesRequestBuilder = new GetAliasesRequestBuilder(client(), GetAliasesAction.INSTANCE);
+            GetAliasesResponse getAliasesResponse = getAliasesRequestBuilder.setAliases(alias).execute().actionGet();
+            for (ObjectCursor<String> indexName : getAliasesResponse.getAliases().keys()) {
+                indexNames.add(indexName.value);
+            }
+        }
         Pattern pattern = Pattern.compile("^(.*?)(\\d+)$");
         Set<String> indices = new TreeSet<>(Collections.reverseOrder());
-        for (ObjectCursor<String> indexName : getAliasesResponse.getAliases().keys()) {
-            Matcher m = pattern.matcher(indexName.value);
+        for (String indexName : indexNames) {
+            Matcher m = pattern.matcher(indexName);
             if (m.matches()) {
                 if (alias.equals(m.group(1))) {
-                    indices.add(indexName.value);
+                    indices.add(indexName);
                 }
             }
         }
@@ -332,11 +374,20 @@ abstract class BaseClient {
     }
 
     public Map<String,String> getAliasFilters(String alias) {
-        GetAliasesRequestBuilder getAliasesRequestBuilder = new GetAliasesRequestBuilder(client(), GetAliasesAction.INSTANCE);
-        return getFilters(getAliasesRequestBuilder.setIndices(resolveAlias(alias)).execute().actionGet());
+        return getIndexFilters(resolveAlias(alias));
     }
 
     public Map<String,String> getIndexFilters(String index) {
+        ClusterMetadataCache.Aliases aliases = aliases();
+        // index expressions with wildcards or lists, and indices without aliases, are left to the cluster
+        List<AliasMetaData> aliasMetaDataList = aliases != null ? aliases.ofIndex(index) : null;
+        if (aliasMetaDataList != null) {
+            Map<String,String> result = new HashMap<>();
+            for (AliasMetaData aliasMetaData : aliasMetaDataList) {
+                putFilter(result, aliasMetaData);
+            }
+            return result;
+        }
         GetAliasesRequestBuilder getAliasesRequestBuilder = new GetAliasesRequestBuilder(client(), GetAliasesAction.INSTANCE);
         return getFilters(getAliasesRequestBuilder.setIndices(index).execute().actionGet());
     }
@@ -346,16 +397,20 @@ abstract class BaseClient {
         for (ObjectObjectCursor<String, List<AliasMetaData>> object : getAliasesResponse.getAliases()) {
             List<AliasMetaData> aliasMetaDataList = object.value;
             for (AliasMetaData aliasMetaData : aliasMetaDataList) {
-                if (aliasMetaData.filteringRequired()) {
-                    result.put(aliasMetaData.alias(), new String(aliasMetaData.getFilter().uncompressed()));
-                } else {
-                    result.put(aliasMetaData.alias(), null);
-                }
+                putFilter(result, aliasMetaData);
             }
         }
         return result;
     }
 
+    private static void putFilter(Map<String,String> result, AliasMetaData aliasMetaData) {
+        if (aliasMetaData.filteringRequired()) {
+            result.put(aliasMetaData.alias(), new String(aliasMetaData.getFilter().uncompressed()));
+        } else {
+            result.put(aliasMetaData.alias(), null);
+        }
+    }
+
     public void switchAliases(String index, String concreteIndex, List<String> extraAliases) {
         switchAliases(index, concreteIndex, extraAliases, null);
     }
@@ -418,7 +473,11 @@ abstract class BaseClient {
         }
         if (!newAliases.isEmpty() || !switchAliases.isEmpty()) {
             logger.info("new aliases = {}, switch aliases = {}", newAliases, switchAliases);
-            requestBuilder.execute().actionGet();
+            try {
+                requestBuilder.execute().actionGet();
+            } finally {
+                invalidateMetadataCache();
+            }
         }
     }
 
@@ -476,7 +535,12 @@ abstract class BaseClient {
         }
         String[] s = indicesToDelete.toArray(new String[indicesToDelete.size()]);
         DeleteIndexRequestBuilder requestBuilder = new DeleteIndexRequestBuilder(client(), DeleteIndexAction.INSTANCE, s);
-        DeleteIndexResponse response = requestBuilder.execute().actionGet();
+        DeleteIndexResponse response;
+        try {
+            response = requestBuilder.execute().actionGet();
+        } finally {
+            invalidateMetadataCache();
+        }
         if (!response.isAcknowledged()) {
             logger.warn("retention delete index operation was not acknowledged");
         }
@@ -80,7 +80,11 @@ abstract class BaseMetricTransportClient extends BaseTransportClient implements
                 createIndexRequestBuilder.addMapping(type, mappings.get(type));
             }
         }
-        createIndexRequestBuilder.execute().actionGet();
+        try {
+            createIndexRequestBuilder.execute().actionGet();
+        } finally {
+            invalidateMetadataCache();
+        }
         logger.info("index {} created", index);
         return this;
     }
@@ -106,7 +110,11 @@ abstract class BaseMetricTransportClient extends BaseTransportClient implements
             logger.warn("no index name given to delete index");
             return this;
         }
-        new DeleteIndexRequestBuilder(client(), DeleteIndexAction.INSTANCE, index).execute().actionGet();
+        try {
+            new DeleteIndexRequestBuilder(client(), DeleteIndexAction.INSTANCE, index).execute().actionGet();
+        } finally {
+            invalidateMetadataCache();
+        }
         return this;
     }
 
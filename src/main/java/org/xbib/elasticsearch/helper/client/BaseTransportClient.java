@@ -26,6 +26,7 @@ import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.xbib.elasticsearch.common.GcMonitor;
+import org.xbib.elasticsearch.helper.network.DnsCache;
 import org.xbib.elasticsearch.helper.network.NetworkUtils;
 import org.xbib.elasticsearch.plugin.helper.HelperPlugin;
 
@@ -72,6 +73,7 @@ abstract class BaseTransportClient extends BaseClient {
                     .settings(settings)
                     .build();
             this.gcmon = new GcMonitor(settings);
+            createMetadataCache(settings);
             this.ignoreBulkErrors = settings.getAsBoolean("ignoreBulkErrors", true);
         }
     }
@@ -112,7 +114,7 @@ abstract class BaseTransportClient extends BaseClient {
                     client.addDiscoveryNodes(discoveryNodes);
                     logger.info("after auto-discovery connected to {}", client.connectedNodes());
                 }
-                return true;
+                return client.isReady();
             }
             return false;
         }
@@ -136,12 +138,14 @@ abstract class BaseTransportClient extends BaseClient {
     protected Collection<InetSocketTransportAddress> findAddresses(Settings settings) throws IOException {
         String[] hostnames = settings.getAsArray("host", new String[]{"localhost"});
         int port = settings.getAsInt("port", 9300);
+        // the client follows the address changes of the host names in its own cache
+        DnsCache dnsCache = client != null ? client.dnsCache() : DnsCache.getInstance(settings);
         Collection<InetSocketTransportAddress> addresses = new ArrayList<>();
         for (String hostname : hostnames) {
             String[] splitHost = hostname.split(":", 2);
             if (splitHost.length == 2) {
                 String host = splitHost[0];
-                InetAddress inetAddress = NetworkUtils.resolveInetAddress(host, null);
+                InetAddress inetAddress = NetworkUtils.resolveInetAddress(host, null, dnsCache);
                 try {
                     port = Integer.parseInt(splitHost[1]);
                 } catch (Exception e) {
@@ -151,7 +155,7 @@ abstract class BaseTransportClient extends BaseClient {
             }
             if (splitHost.length == 1) {
                 String host = splitHost[0];
-                InetAddress inetAddress = NetworkUtils.resolveInetAddress(host, null);
+                InetAddress inetAddress = NetworkUtils.resolveInetAddress(host, null, dnsCache);
                 addresses.add(new InetSocketTransportAddress(inetAddress, port));
             }
         }
@@ -221,6 +221,7 @@ public class BulkNodeClient extends BaseClient implements ClientAPI {
             Node node = new BulkNode(new Environment(effectiveSettings), plugins);
             node.start();
             this.client = node.client();
+            createMetadataCache(settings);
         }
     }
 
@@ -446,7 +447,11 @@ public class BulkNodeClient extends BaseClient implements ClientAPI {
                 createIndexRequestBuilder.addMapping(type, mappings.get(type));
             }
         }
-        createIndexRequestBuilder.execute().actionGet();
+        try {
+            createIndexRequestBuilder.execute().actionGet();
+        } finally {
+            invalidateMetadataCache();
+        }
         logger.info("index {} created", index);
         return this;
     }
@@ -479,7 +484,11 @@ public class BulkNodeClient extends BaseClient implements ClientAPI {
         }
         DeleteIndexRequestBuilder deleteIndexRequestBuilder =
                 new DeleteIndexRequestBuilder(client(), DeleteIndexAction.INSTANCE, index);
-        deleteIndexRequestBuilder.execute().actionGet();
+        try {
+            deleteIndexRequestBuilder.execute().actionGet();
+        } finally {
+            invalidateMetadataCache();
+        }
         return this;
     }
 
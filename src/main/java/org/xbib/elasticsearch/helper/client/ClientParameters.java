@@ -22,4 +22,6 @@ public interface ClientParameters {
 
     String FLUSH_INTERVAL = "flush_interval";
 
+    String INGEST_CONSISTENCY = "ingest_consistency";
+
 }
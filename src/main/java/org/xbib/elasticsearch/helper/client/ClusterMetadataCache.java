@@ -0,0 +1,216 @@
+package org.xbib.elasticsearch.helper.client;
+
+import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateAction;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateRequest;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateResponse;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesAction;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client-side cache of the aliases of the cluster, for resolving aliases and indices without a request per lookup.
+ *
+ * The aliases are loaded once and kept together with the version of the cluster state they were taken from.
+ * Only the aliases are loaded, not the full metadata with the mappings. When the cached aliases are older than
+ * the refresh interval, the next lookup triggers an asynchronous refresh and is answered from the cache.
+ * The refresh asks for the cluster state version only, and loads the aliases again only if the version has
+ * changed. Changes made through the same client invalidate the cache, so the next lookup loads the aliases
+ * synchronously.
+ */
+class ClusterMetadataCache {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(ClusterMetadataCache.class.getName());
+
+    static final String ENABLED = "client.metadata_cache.enabled";
+
+    static final String REFRESH_INTERVAL = "client.metadata_cache.refresh_interval";
+
+    private final boolean enabled;
+
+    private final long refreshNanos;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Entry entry;
+
+    ClusterMetadataCache(Settings settings) {
+        this.enabled = settings.getAsBoolean(ENABLED, true);
+        this.refreshNanos = settings.getAsTime(REFRESH_INTERVAL, TimeValue.timeValueSeconds(1)).nanos();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the aliases of the cluster.
+     *
+     * @param client the client
+     * @return the cached aliases, or the current aliases if nothing is cached
+     */
+    Aliases aliases(ElasticsearchClient client) {
+        Entry entry = this.entry;
+        if (entry == null) {
+            return load(client).aliases;
+        }
+        if (System.nanoTime() - entry.checkedNanos >= refreshNanos && refreshing.compareAndSet(false, true)) {
+            refresh(client, entry);
+        }
+        return entry.aliases;
+    }
+
+    /**
+     * Drop the cached aliases, after indices or aliases have been changed by this client.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        entry = null;
+    }
+
+    private Entry load(ElasticsearchClient client) {
+        long gen = generation.get();
+        // the aliases are read after the version, so they are at least as recent as the version
+        long version = client.execute(ClusterStateAction.INSTANCE, new ClusterStateRequest().clear())
+                .actionGet().getState().version();
+        GetAliasesResponse response = client.execute(GetAliasesAction.INSTANCE, new GetAliasesRequest()).actionGet();
+        Entry entry = new Entry(new Aliases(response), version, System.nanoTime());
+        store(gen, entry);
+        return entry;
+    }
+
+    private void refresh(final ElasticsearchClient client, final Entry current) {
+        final long gen = generation.get();
+        try {
+            client.execute(ClusterStateAction.INSTANCE, new ClusterStateRequest().clear(),
+                    new ActionListener<ClusterStateResponse>() {
+                        @Override
+                        public void onResponse(ClusterStateResponse response) {
+                            final long version = response.getState().version();
+                            if (version == current.version) {
+                                store(gen, new Entry(current.aliases, version, System.nanoTime()));
+                                refreshing.set(false);
+                                return;
+                            }
+                            logger.debug("cluster state version changed from {} to {}, reloading aliases",
+                                    current.version, version);
+                            client.execute(GetAliasesAction.INSTANCE, new GetAliasesRequest(),
+                                    new ActionListener<GetAliasesResponse>() {
+                                        @Override
+                                        public void onResponse(GetAliasesResponse response) {
+                                            store(gen, new Entry(new Aliases(response), version, System.nanoTime()));
+                                            refreshing.set(false);
+                                        }
+
+                                        @Override
+                                        public void onFailure(Throwable e) {
+                                            onRefreshFailure(e);
+                                        }
+                                    });
+                        }
+
+                        @Override
+                        public void onFailure(Throwable e) {
+                            onRefreshFailure(e);
+                        }
+                    });
+        } catch (Throwable t) {
+            onRefreshFailure(t);
+        }
+    }
+
+    private void onRefreshFailure(Throwable t) {
+        // keep the stale entry, the next lookup tries again
+        logger.debug("refresh of cluster aliases failed", t);
+        refreshing.set(false);
+    }
+
+    private synchronized void store(long gen, Entry entry) {
+        // a load that started before an invalidation may have read metadata older than the change
+        if (gen != generation.get()) {
+            return;
+        }
+        Entry current = this.entry;
+        if (current == null || current.version <= entry.version) {
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * The aliases of the cluster, by index and by alias.
+     */
+    static class Aliases {
+
+        private final Map<String, List<AliasMetaData>> byIndex = new HashMap<>();
+
+        private final Map<String, List<String>> byAlias = new HashMap<>();
+
+        Aliases(GetAliasesResponse response) {
+            for (ObjectObjectCursor<String, List<AliasMetaData>> cursor : response.getAliases()) {
+                byIndex.put(cursor.key, cursor.value);
+                for (AliasMetaData aliasMetaData : cursor.value) {
+                    List<String> indices = byAlias.get(aliasMetaData.alias());
+                    if (indices == null) {
+                        indices = new ArrayList<>();
+                        byAlias.put(aliasMetaData.alias(), indices);
+                    }
+                    indices.add(cursor.key);
+                }
+            }
+        }
+
+        /**
+         * The aliases of an index.
+         *
+         * @param index the index name
+         * @return the aliases, or null if the index has no aliases or does not exist
+         */
+        List<AliasMetaData> ofIndex(String index) {
+            List<AliasMetaData> aliases = byIndex.get(index);
+            return aliases == null || aliases.isEmpty() ? null : aliases;
+        }
+
+        /**
+         * The indices of an alias.
+         *
+         * @param alias the alias name
+         * @return the index names, empty if the name is not an alias
+         */
+        List<String> indicesOf(String alias) {
+            List<String> indices = byAlias.get(alias);
+            return indices != null ? Collections.unmodifiableList(indices) : Collections.<String>emptyList();
+        }
+    }
+
+    private static class Entry {
+
+        private final Aliases aliases;
+
+        private final long version;
+
+        private final long checkedNanos;
+
+        Entry(Aliases aliases, long version, long checkedNanos) {
+            this.aliases = aliases;
+            this.version = version;
+            this.checkedNanos = checkedNanos;
+        }
+    }
+}
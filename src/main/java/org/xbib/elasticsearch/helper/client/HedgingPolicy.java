@@ -0,0 +1,182 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.GenericAction;
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.xbib.metrics.CountMetric;
+import org.xbib.metrics.Gauge;
+import org.xbib.metrics.Metric;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricSet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The policy for hedged read requests of the {@link TransportClient}.
+ *
+ * If a search or get request has not been answered within a delay, a duplicate request is sent to another
+ * node, and the first answer is used. The delay is derived from a percentile of the recent response times
+ * of read requests, but is never shorter than the minimum delay. Hedging starts after enough response
+ * times have been seen.
+ *
+ * The number of hedged requests is bounded by a budget: each read request earns a fraction of a token,
+ * each hedged request spends a whole token. A budget of 0.05 allows to hedge at most 5% of the requests.
+ *
+ * Hedging is disabled by default. Scroll and scan searches are never hedged, because the duplicate would open
+ * a second search context.
+ */
+public class HedgingPolicy implements MetricSet {
+
+    public static final String HEDGE_ENABLED = "client.transport.hedge.enabled";
+
+    public static final String HEDGE_PERCENTILE = "client.transport.hedge.percentile";
+
+    public static final String HEDGE_MIN_DELAY = "client.transport.hedge.min_delay";
+
+    public static final String HEDGE_BUDGET = "client.transport.hedge.budget";
+
+    private static final int SAMPLES = 1024;
+
+    private static final int MIN_SAMPLES = 32;
+
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private static final double MAX_TOKENS = 10.0d;
+
+    private final boolean enabled;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final double budget;
+
+    private final long[] samples = new long[SAMPLES];
+
+    private final CountMetric requests = new CountMetric();
+
+    private final CountMetric hedged = new CountMetric();
+
+    private final CountMetric wins = new CountMetric();
+
+    private final CountMetric throttled = new CountMetric();
+
+    private int count;
+
+    private double tokens;
+
+    private volatile long delayNanos = -1L;
+
+    public HedgingPolicy(Settings settings) {
+        this.enabled = settings.getAsBoolean(HEDGE_ENABLED, false);
+        this.percentile = settings.getAsDouble(HEDGE_PERCENTILE, 95.0d);
+        this.minDelayNanos = settings.getAsTime(HEDGE_MIN_DELAY, TimeValue.timeValueMillis(10)).nanos();
+        this.budget = settings.getAsDouble(HEDGE_BUDGET, 0.05d);
+        if (percentile <= 0.0d || percentile >= 100.0d) {
+            throw new IllegalArgumentException("invalid hedge percentile: " + percentile);
+        }
+        if (budget < 0.0d || budget > 1.0d) {
+            throw new IllegalArgumentException("invalid hedge budget: " + budget);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check if a request can be hedged.
+     *
+     * @param action the action
+     * @param request the request
+     * @return true if the request is a read request that can be safely sent twice
+     */
+    public boolean isHedgeable(GenericAction<?, ?> action, ActionRequest<?> request) {
+        if (!enabled) {
+            return false;
+        }
+        if (action == GetAction.INSTANCE) {
+            return true;
+        }
+        if (action == SearchAction.INSTANCE) {
+            SearchRequest searchRequest = (SearchRequest) request;
+            return searchRequest.scroll() == null && searchRequest.searchType() != SearchType.SCAN;
+        }
+        return false;
+    }
+
+    /**
+     * The current hedge delay.
+     *
+     * @return the delay in nanoseconds, or -1 if not enough response times have been seen yet
+     */
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * Called for each hedgeable request. Earns a fraction of a token.
+     */
+    synchronized void onRequest() {
+        requests.inc();
+        tokens = Math.min(MAX_TOKENS, tokens + budget);
+    }
+
+    /**
+     * Spend a token for a hedged request.
+     *
+     * @return true if the budget allows a hedged request
+     */
+    synchronized boolean tryHedge() {
+        if (tokens >= 1.0d) {
+            tokens -= 1.0d;
+            hedged.inc();
+            return true;
+        }
+        throttled.inc();
+        return false;
+    }
+
+    void onHedgeWin() {
+        wins.inc();
+    }
+
+    /**
+     * Record the response time of a read request.
+     *
+     * @param nanos the response time in nanoseconds
+     */
+    synchronized void record(long nanos) {
+        samples[count % SAMPLES] = nanos;
+        count++;
+        if (count >= MIN_SAMPLES && count % RECOMPUTE_INTERVAL == 0 || count == MIN_SAMPLES) {
+            long[] sorted = Arrays.copyOf(samples, Math.min(count, SAMPLES));
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0d * sorted.length) - 1;
+            delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, rank)]);
+        }
+    }
+
+    @Override
+    public Map<MetricName, Metric> getMetrics() {
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(MetricName.build("transport", "client", "hedge", "requests"), requests);
+        metrics.put(MetricName.build("transport", "client", "hedge", "hedged"), hedged);
+        metrics.put(MetricName.build("transport", "client", "hedge", "wins"), wins);
+        metrics.put(MetricName.build("transport", "client", "hedge", "throttled"), throttled);
+        metrics.put(MetricName.build("transport", "client", "hedge", "delay", "nanos"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getDelayNanos();
+            }
+        });
+        return metrics;
+    }
+}
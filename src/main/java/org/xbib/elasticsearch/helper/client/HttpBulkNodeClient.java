@@ -210,6 +210,7 @@ public class HttpBulkNodeClient extends BaseClient implements ClientAPI {
             logger.info("creating http client on {} with effective settings {}",
                     version, effectiveSettings.getAsMap());
             init(HttpElasticsearchClient.builder(settings).build(), metric);
+            createMetadataCache(settings);
         }
     }
 
@@ -428,7 +429,11 @@ public class HttpBulkNodeClient extends BaseClient implements ClientAPI {
                 createIndexRequestBuilder.addMapping(type, mappings.get(type));
             }
         }
-        createIndexRequestBuilder.execute().actionGet();
+        try {
+            createIndexRequestBuilder.execute().actionGet();
+        } finally {
+            invalidateMetadataCache();
+        }
         logger.info("index {} created", index);
         return this;
     }
@@ -461,7 +466,11 @@ public class HttpBulkNodeClient extends BaseClient implements ClientAPI {
         }
         DeleteIndexRequestBuilder deleteIndexRequestBuilder =
                 new DeleteIndexRequestBuilder(client(), DeleteIndexAction.INSTANCE, index);
-        deleteIndexRequestBuilder.execute().actionGet();
+        try {
+            deleteIndexRequestBuilder.execute().actionGet();
+        } finally {
+            invalidateMetadataCache();
+        }
         return this;
     }
 
@@ -3,6 +3,7 @@ package org.xbib.elasticsearch.helper.client;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -11,9 +12,11 @@ import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.xbib.elasticsearch.action.ingest.IngestAction;
+import org.xbib.elasticsearch.action.ingest.Consistency;
 import org.xbib.elasticsearch.action.ingest.IngestRequest;
 import org.xbib.elasticsearch.action.ingest.IngestResponse;
 
+import java.security.SecureRandom;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -33,12 +36,15 @@ public class IngestProcessor {
 
     private Semaphore semaphore = new Semaphore(maxConcurrency);
 
-    private AtomicLong ingestId = new AtomicLong(0L);
+    // random high bits, so the ingest IDs of different clients do not meet in the completed ingests of the leaders
+    private AtomicLong ingestId = new AtomicLong((new SecureRandom().nextLong() & 0x7fffffffL) << 32);
 
     private IngestRequest ingestRequest = new IngestRequest();
 
     private IngestListener ingestListener;
 
+    private Consistency consistency = Consistency.DEFAULT_CONSISTENCY;
+
     private ScheduledThreadPoolExecutor scheduler;
 
     private ScheduledFuture<?> scheduledFuture;
@@ -86,11 +92,24 @@ public class IngestProcessor {
         return this;
     }
 
+    /**
+     * Set the last ingest ID, the ingest requests are numbered from the next one on. The ingest IDs must not
+     * repeat across clients and restarts, because the leaders take a request with the ingest ID and the
+     * actions of a recent request for a retry, and answer it without executing it.
+     *
+     * @param ingestId the ingest ID
+     * @return this processor
+     */
     public IngestProcessor ingestId(long ingestId) {
         this.ingestId = new AtomicLong(ingestId);
         return this;
     }
 
+    public IngestProcessor consistency(Consistency consistency) {
+        this.consistency = consistency;
+        return this;
+    }
+
     public IngestProcessor listener(IngestListener ingestListener) {
         this.ingestListener = ingestListener;
         return this;
@@ -108,6 +127,12 @@ public class IngestProcessor {
         return this;
     }
 
+    public IngestProcessor add(UpdateRequest request) {
+        ingestRequest.add(request);
+        flushIfNeeded(ingestListener);
+        return this;
+    }
+
     /**
      * For REST API
      *
@@ -204,7 +229,7 @@ public class IngestProcessor {
         if (ingestListener == null) {
             return;
         }
-        request.ingestId(ingestId.incrementAndGet());
+        request.ingestId(ingestId.incrementAndGet()).requiredConsistency(consistency);
         boolean done = false;
         try {
             semaphore.acquire();
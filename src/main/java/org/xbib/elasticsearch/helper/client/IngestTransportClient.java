@@ -28,6 +28,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.xbib.elasticsearch.action.ingest.Consistency;
 import org.xbib.elasticsearch.action.ingest.IngestActionFailure;
 import org.xbib.elasticsearch.action.ingest.IngestRequest;
 import org.xbib.elasticsearch.action.ingest.IngestResponse;
@@ -145,6 +146,7 @@ public class IngestTransportClient extends BaseMetricTransportClient implements
                 .maxActions(maxActionsPerRequest)
                 .maxVolumePerRequest(maxVolumePerRequest)
                 .flushInterval(flushInterval)
+                .consistency(Consistency.fromString(settings.get(INGEST_CONSISTENCY, "quorum")))
                 .listener(ingestListener);
         try {
             Collection<InetSocketTransportAddress> addrs = findAddresses(settings);
@@ -288,15 +290,43 @@ public class IngestTransportClient extends BaseMetricTransportClient implements
     }
 
     @Override
-    public ClientAPI update(String index, String type, String id, String source) {
-        // we will never implement this!
-        throw new UnsupportedOperationException();
+    public IngestTransportClient update(String index, String type, String id, String source) {
+        if (closed) {
+            if (throwable != null) {
+                throw new ElasticsearchException("client is closed, possible reason: ", throwable);
+            } else {
+                throw new ElasticsearchException("client is closed");
+            }
+        }
+        try {
+            metric.getCurrentIngest().inc(index, type, id);
+            ingestProcessor.add(new UpdateRequest().index(index).type(type).id(id).doc(source).upsert(source));
+        } catch (Exception e) {
+            logger.error("add of update request failed: " + e.getMessage(), e);
+            throwable = e;
+            closed = true;
+        }
+        return this;
     }
 
     @Override
-    public ClientAPI bulkUpdate(UpdateRequest updateRequest) {
-        // we will never implement this!
-        throw new UnsupportedOperationException();
+    public IngestTransportClient bulkUpdate(UpdateRequest updateRequest) {
+        if (closed) {
+            if (throwable != null) {
+                throw new ElasticsearchException("client is closed, possible reason: ", throwable);
+            } else {
+                throw new ElasticsearchException("client is closed");
+            }
+        }
+        try {
+            metric.getCurrentIngest().inc(updateRequest.index(), updateRequest.type(), updateRequest.id());
+            ingestProcessor.add(updateRequest);
+        } catch (Exception e) {
+            logger.error("add of update request failed: " + e.getMessage(), e);
+            throwable = e;
+            closed = true;
+        }
+        return this;
     }
 
     @Override
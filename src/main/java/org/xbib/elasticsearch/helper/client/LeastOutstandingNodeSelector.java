@@ -0,0 +1,165 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.xbib.elasticsearch.helper.client.TransportLanes.Lane;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the least loaded node. The load of a node is the number of requests in flight to the node,
+ * weighted by the moving average of its response times in the lane of the request. Nodes without a response
+ * time yet are weighted with their ping round-trip time, or else with the mean response time of the other nodes.
+ *
+ * The averages decay towards the ping round-trip time with the half-life {@code client.transport.node_selector.decay},
+ * so nodes that were slow or failed are tried again later. A failure counts as twice the average response time,
+ * but at most as {@code client.transport.node_selector.max_penalty}, unless the failure itself took longer.
+ * The statistics of nodes that are no longer connected are dropped.
+ *
+ * The scan over the nodes starts at a rotating position, so equally loaded nodes are selected in turn.
+ * Selection decisions are logged at trace level, and the statistics of the nodes are available
+ * with {@link #getStatistics()}.
+ */
+public class LeastOutstandingNodeSelector implements NodeSelector {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(LeastOutstandingNodeSelector.class.getName());
+
+    public static final String EWMA_ALPHA = "client.transport.node_selector.ewma_alpha";
+
+    public static final String DECAY = "client.transport.node_selector.decay";
+
+    public static final String MAX_PENALTY = "client.transport.node_selector.max_penalty";
+
+    private final double alpha;
+
+    private final long decayNanos;
+
+    private final long maxPenaltyNanos;
+
+    private final ConcurrentHashMap<String, NodeStatistics> statistics;
+
+    private final AtomicInteger nodeCounter = new AtomicInteger();
+
+    public LeastOutstandingNodeSelector(Settings settings) {
+        this.alpha = settings.getAsDouble(EWMA_ALPHA, 0.3d);
+        if (alpha <= 0.0d || alpha > 1.0d) {
+            throw new IllegalArgumentException("invalid EWMA alpha: " + alpha);
+        }
+        this.decayNanos = settings.getAsTime(DECAY, TimeValue.timeValueSeconds(10)).nanos();
+        this.maxPenaltyNanos = settings.getAsTime(MAX_PENALTY, TimeValue.timeValueSeconds(5)).nanos();
+        this.statistics = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public int select(List<DiscoveryNode> nodes, Lane lane) {
+        return select(nodes, lane, System.nanoTime());
+    }
+
+    int select(List<DiscoveryNode> nodes, Lane lane, long now) {
+        int size = nodes.size();
+        int start = (nodeCounter.incrementAndGet() & Integer.MAX_VALUE) % size;
+        if (size == 1) {
+            statistics(nodes.get(0)).selected();
+            return 0;
+        }
+        long sum = 0L;
+        int known = 0;
+        for (DiscoveryNode node : nodes) {
+            long latency = statistics(node).getEstimatedLatencyNanos(lane, now);
+            if (latency > 0L) {
+                sum += latency;
+                known++;
+            }
+        }
+        long defaultLatency = known > 0 ? sum / known : 1L;
+        int best = start;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            NodeStatistics stats = statistics(nodes.get(index));
+            long latency = stats.getEstimatedLatencyNanos(lane, now);
+            double score = (stats.getInFlight() + 1.0d) * (latency > 0L ? latency : defaultLatency);
+            if (score < bestScore) {
+                bestScore = score;
+                best = index;
+            }
+        }
+        NodeStatistics selected = statistics(nodes.get(best));
+        selected.selected();
+        if (logger.isTraceEnabled()) {
+            logger.trace("selected {} with score {} from {}", nodes.get(best), bestScore, describe(nodes));
+        }
+        return best;
+    }
+
+    @Override
+    public void onStart(DiscoveryNode node) {
+        statistics(node).start();
+    }
+
+    @Override
+    public void onFinish(DiscoveryNode node, Lane lane, long nanos, boolean success) {
+        onFinish(node, lane, nanos, success, System.nanoTime());
+    }
+
+    void onFinish(DiscoveryNode node, Lane lane, long nanos, boolean success, long now) {
+        // the node may have been removed while the request was in flight
+        NodeStatistics stats = statistics.get(node.id());
+        if (stats != null) {
+            stats.finish(lane, nanos, success, now);
+        }
+    }
+
+    @Override
+    public void onPing(DiscoveryNode node, long nanos) {
+        statistics(node).ping(nanos);
+    }
+
+    @Override
+    public void retain(Collection<DiscoveryNode> nodes) {
+        Set<String> ids = new HashSet<>();
+        for (DiscoveryNode node : nodes) {
+            ids.add(node.id());
+        }
+        statistics.keySet().retainAll(ids);
+    }
+
+    /**
+     * The statistics of the nodes that were seen by this selector, by node ID.
+     *
+     * @return the node statistics
+     */
+    public Map<String, NodeStatistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    private NodeStatistics statistics(DiscoveryNode node) {
+        NodeStatistics stats = statistics.get(node.id());
+        if (stats == null) {
+            stats = new NodeStatistics(node.id(), alpha, decayNanos, maxPenaltyNanos);
+            NodeStatistics previous = statistics.putIfAbsent(node.id(), stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    private String describe(List<DiscoveryNode> nodes) {
+        StringBuilder sb = new StringBuilder();
+        for (DiscoveryNode node : nodes) {
+            sb.append(statistics(node));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,219 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.xbib.metrics.CountMetric;
+import org.xbib.metrics.Gauge;
+import org.xbib.metrics.Metric;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A table of nodes that are excluded from node selection after a connect failure, shared by all requests
+ * of a {@link TransportClient}.
+ *
+ * A quarantined node is probed in the background after a backoff. If the probe succeeds, the node is
+ * reinstated, otherwise the backoff is doubled, up to the maximum backoff. A node is also reinstated
+ * if the node sampler of the client finds it alive. If all nodes are quarantined, none is excluded,
+ * so requests still get a chance.
+ */
+public class NodeQuarantine implements MetricSet {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(NodeQuarantine.class.getName());
+
+    public static final String QUARANTINE_ENABLED = "client.transport.quarantine.enabled";
+
+    public static final String QUARANTINE_INITIAL_BACKOFF = "client.transport.quarantine.initial_backoff";
+
+    public static final String QUARANTINE_MAX_BACKOFF = "client.transport.quarantine.max_backoff";
+
+    /**
+     * Checks if a quarantined node is available again.
+     */
+    public interface Probe {
+
+        /**
+         * Probe a node. Called from a generic thread, the probe may block.
+         *
+         * @param node the node
+         * @return true if the node is available
+         */
+        boolean probe(DiscoveryNode node);
+    }
+
+    private final boolean enabled;
+
+    private final long initialBackoffNanos;
+
+    private final long maxBackoffNanos;
+
+    private final ThreadPool threadPool;
+
+    private final Probe probe;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final CountMetric quarantined = new CountMetric();
+
+    private final CountMetric reinstated = new CountMetric();
+
+    private final CountMetric probes = new CountMetric();
+
+    private volatile boolean closed;
+
+    public NodeQuarantine(Settings settings, ThreadPool threadPool, Probe probe) {
+        this.enabled = settings.getAsBoolean(QUARANTINE_ENABLED, true);
+        this.initialBackoffNanos = settings.getAsTime(QUARANTINE_INITIAL_BACKOFF, TimeValue.timeValueSeconds(1)).nanos();
+        this.maxBackoffNanos = settings.getAsTime(QUARANTINE_MAX_BACKOFF, TimeValue.timeValueSeconds(60)).nanos();
+        this.threadPool = threadPool;
+        this.probe = probe;
+        if (initialBackoffNanos <= 0L || maxBackoffNanos < initialBackoffNanos) {
+            throw new IllegalArgumentException("invalid quarantine backoff: " + initialBackoffNanos + "ns, max "
+                    + maxBackoffNanos + "ns");
+        }
+    }
+
+    /**
+     * Put a node into quarantine. Nothing happens if the node is already quarantined.
+     *
+     * @param node the node
+     */
+    public void add(DiscoveryNode node) {
+        if (!enabled || closed) {
+            return;
+        }
+        Entry entry = new Entry(node, initialBackoffNanos);
+        if (entries.putIfAbsent(node.id(), entry) == null) {
+            quarantined.inc();
+            logger.warn("node {} quarantined for {}", node, TimeValue.timeValueNanos(entry.backoffNanos));
+            schedule(entry);
+        }
+    }
+
+    /**
+     * Remove a node from quarantine.
+     *
+     * @param node the node
+     */
+    public void remove(DiscoveryNode node) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (entries.remove(node.id()) != null) {
+            reinstated.inc();
+            logger.info("node {} reinstated", node);
+        }
+    }
+
+    public boolean isQuarantined(DiscoveryNode node) {
+        return entries.containsKey(node.id());
+    }
+
+    public Set<String> getQuarantinedNodeIds() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Exclude the quarantined nodes from a list of nodes.
+     *
+     * @param nodes the nodes
+     * @return the nodes which are not quarantined, or all nodes if all are quarantined
+     */
+    public List<DiscoveryNode> filter(List<DiscoveryNode> nodes) {
+        if (entries.isEmpty()) {
+            return nodes;
+        }
+        List<DiscoveryNode> list = new ArrayList<>(nodes.size());
+        for (DiscoveryNode node : nodes) {
+            if (!entries.containsKey(node.id())) {
+                list.add(node);
+            }
+        }
+        return list.isEmpty() ? nodes : list;
+    }
+
+    public void close() {
+        closed = true;
+        entries.clear();
+    }
+
+    private void schedule(final Entry entry) {
+        try {
+            threadPool.schedule(TimeValue.timeValueNanos(entry.backoffNanos), ThreadPool.Names.GENERIC, new Runnable() {
+                @Override
+                public void run() {
+                    probe(entry);
+                }
+            });
+        } catch (EsRejectedExecutionException e) {
+            // the thread pool is shutting down
+            entries.remove(entry.node.id(), entry);
+        }
+    }
+
+    private void probe(Entry entry) {
+        if (closed || entries.get(entry.node.id()) != entry) {
+            return;
+        }
+        probes.inc();
+        boolean available;
+        try {
+            available = probe.probe(entry.node);
+        } catch (Throwable t) {
+            logger.debug("probe of node {} failed", t, entry.node);
+            available = false;
+        }
+        if (available) {
+            if (entries.remove(entry.node.id(), entry)) {
+                reinstated.inc();
+                logger.info("node {} reinstated after probe", entry.node);
+            }
+        } else if (entries.get(entry.node.id()) == entry) {
+            entry.backoffNanos = Math.min(maxBackoffNanos, entry.backoffNanos * 2);
+            logger.debug("node {} still unavailable, next probe in {}", entry.node,
+                    TimeValue.timeValueNanos(entry.backoffNanos));
+            schedule(entry);
+        }
+    }
+
+    @Override
+    public Map<MetricName, Metric> getMetrics() {
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(MetricName.build("transport", "client", "quarantine", "nodes"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return entries.size();
+            }
+        });
+        metrics.put(MetricName.build("transport", "client", "quarantine", "quarantined"), quarantined);
+        metrics.put(MetricName.build("transport", "client", "quarantine", "reinstated"), reinstated);
+        metrics.put(MetricName.build("transport", "client", "quarantine", "probes"), probes);
+        return metrics;
+    }
+
+    private static class Entry {
+
+        private final DiscoveryNode node;
+
+        private volatile long backoffNanos;
+
+        Entry(DiscoveryNode node, long backoffNanos) {
+            this.node = node;
+            this.backoffNanos = backoffNanos;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.xbib.elasticsearch.helper.client.TransportLanes.Lane;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Selects the node a request of the {@link TransportClient} is sent to.
+ *
+ * The selector is notified when a request is sent to a node, and when the request has completed,
+ * so it can track the load of the nodes.
+ */
+public interface NodeSelector {
+
+    /**
+     * Select a node. If the request fails because the node is not reachable, the following nodes
+     * in the list are tried.
+     *
+     * @param nodes the connected nodes, never empty
+     * @param lane the lane of the request
+     * @return the index of the selected node in the list
+     */
+    int select(List<DiscoveryNode> nodes, Lane lane);
+
+    /**
+     * Called when a request is sent to a node.
+     *
+     * @param node the node
+     */
+    void onStart(DiscoveryNode node);
+
+    /**
+     * Called when a request to a node has completed.
+     *
+     * @param node the node
+     * @param lane the lane of the request
+     * @param nanos the response time in nanoseconds
+     * @param success false if the node failed to respond, true otherwise
+     */
+    void onFinish(DiscoveryNode node, Lane lane, long nanos, boolean success);
+
+    /**
+     * Called when a liveness ping to a node has completed.
+     *
+     * @param node the node
+     * @param nanos the round-trip time in nanoseconds
+     */
+    void onPing(DiscoveryNode node, long nanos);
+
+    /**
+     * Called when the connected nodes have changed. State kept for other nodes can be dropped.
+     *
+     * @param nodes the connected nodes
+     */
+    void retain(Collection<DiscoveryNode> nodes);
+}
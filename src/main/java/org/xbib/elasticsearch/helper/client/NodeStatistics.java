@@ -0,0 +1,185 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.xbib.elasticsearch.helper.client.TransportLanes.Lane;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load statistics of a node, as seen by the client.
+ *
+ * Response times are averaged separately for the bulk lane and the interactive lane, since bulk requests
+ * take much longer than searches and gets. The averages decay towards the ping round-trip time of the node
+ * while no responses are seen, with a half-life of {@code decayNanos}, so a node that was slow or failing
+ * gets requests again after a while and can show that it has recovered.
+ */
+public class NodeStatistics {
+
+    private final String nodeId;
+
+    private final double alpha;
+
+    private final long decayNanos;
+
+    private final long maxPenaltyNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong selected = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final Latency bulk = new Latency();
+
+    private final Latency interactive = new Latency();
+
+    private volatile long pingNanos;
+
+    /**
+     * Create statistics for a node.
+     *
+     * @param nodeId the node ID
+     * @param alpha the weight of a new response time in the moving average
+     * @param decayNanos the half-life of the moving average while no responses are seen, 0 for no decay
+     * @param maxPenaltyNanos the maximum response time a failure counts with, unless the failure itself took longer
+     */
+    public NodeStatistics(String nodeId, double alpha, long decayNanos, long maxPenaltyNanos) {
+        this.nodeId = nodeId;
+        this.alpha = alpha;
+        this.decayNanos = decayNanos;
+        this.maxPenaltyNanos = maxPenaltyNanos;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * The number of requests sent to the node that have not completed yet.
+     *
+     * @return the number of requests in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * The number of times the node was selected.
+     *
+     * @return the selection count
+     */
+    public long getSelected() {
+        return selected.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * The exponentially weighted moving average of the response times of the node in a lane.
+     *
+     * @param lane the lane
+     * @return the average response time in nanoseconds, or 0 if no response has been seen yet
+     */
+    public long getLatencyNanos(Lane lane) {
+        return latency(lane).get(System.nanoTime());
+    }
+
+    /**
+     * The round-trip time of the last liveness ping to the node.
+     *
+     * @return the ping round-trip time in nanoseconds, or 0 if the node has not been pinged yet
+     */
+    public long getPingNanos() {
+        return pingNanos;
+    }
+
+    /**
+     * The response time estimate of the node in a lane, which is the average response time, or the ping
+     * round-trip time if no response has been seen yet.
+     *
+     * @param lane the lane
+     * @return the response time estimate in nanoseconds, or 0 if unknown
+     */
+    public long getEstimatedLatencyNanos(Lane lane) {
+        return getEstimatedLatencyNanos(lane, System.nanoTime());
+    }
+
+    long getEstimatedLatencyNanos(Lane lane, long now) {
+        long latency = latency(lane).get(now);
+        return latency > 0L ? latency : pingNanos;
+    }
+
+    void ping(long nanos) {
+        pingNanos = nanos;
+    }
+
+    void selected() {
+        selected.incrementAndGet();
+    }
+
+    void start() {
+        inFlight.incrementAndGet();
+    }
+
+    void finish(Lane lane, long nanos, boolean success) {
+        finish(lane, nanos, success, System.nanoTime());
+    }
+
+    void finish(Lane lane, long nanos, boolean success, long now) {
+        inFlight.decrementAndGet();
+        requests.incrementAndGet();
+        if (!success) {
+            failures.incrementAndGet();
+        }
+        latency(lane).add(nanos, success, now);
+    }
+
+    private Latency latency(Lane lane) {
+        return lane == Lane.BULK ? bulk : interactive;
+    }
+
+    @Override
+    public String toString() {
+        long now = System.nanoTime();
+        return "[" + nodeId + ",inflight=" + getInFlight() +
+                ",latency=" + (interactive.get(now) / 1000L) + "us,bulk=" + (bulk.get(now) / 1000L) + "us" +
+                ",ping=" + (getPingNanos() / 1000L) + "us,selected=" + getSelected() + ",requests=" + getRequests() + ",failures=" + getFailures() + "]";
+    }
+
+    private class Latency {
+
+        private long nanos;
+
+        private long timestamp;
+
+        synchronized long get(long now) {
+            if (nanos == 0L || decayNanos <= 0L) {
+                return nanos;
+            }
+            long floor = pingNanos;
+            if (nanos <= floor) {
+                return nanos;
+            }
+            double factor = Math.pow(0.5d, (double) Math.max(0L, now - timestamp) / decayNanos);
+            return floor + (long) ((nanos - floor) * factor);
+        }
+
+        synchronized void add(long sample, boolean success, long now) {
+            long current = get(now);
+            if (!success) {
+                // a failing node is penalized, even if it fails fast, but the penalty is bounded
+                sample = Math.max(sample, Math.min(2 * current, maxPenaltyNanos));
+            }
+            nanos = current == 0L ? sample : (long) (alpha * sample + (1.0d - alpha) * current);
+            timestamp = now;
+        }
+    }
+}
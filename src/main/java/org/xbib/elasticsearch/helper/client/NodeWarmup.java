@@ -0,0 +1,140 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The warm-up of the channels to the connected nodes of a {@link TransportClient}, and the readiness of the client.
+ *
+ * A node is warmed up once after it has been connected, so the first requests do not pay for it. A node whose
+ * warm-up fails is not used. The client is ready when at least one connected node is warmed up, and the warmed up
+ * nodes have reached the ready fraction of the listed nodes. If the warm-up is disabled, connected nodes count
+ * as warmed up.
+ */
+public class NodeWarmup {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(NodeWarmup.class.getName());
+
+    public static final String WARMUP_ENABLED = "client.transport.warmup.enabled";
+
+    /**
+     * The fraction of the listed nodes that must be warmed up before the client is ready. The default of 0
+     * requires at least one warmed up node.
+     */
+    public static final String WARMUP_READY_FRACTION = "client.transport.warmup.ready_fraction";
+
+    /**
+     * Warms up the channels to a node.
+     */
+    public interface Warmup {
+
+        /**
+         * Warm up a node. Called from a generic thread, the warm-up may block.
+         *
+         * @param node the node
+         * @throws Exception if the warm-up failed
+         */
+        void warmup(DiscoveryNode node) throws Exception;
+    }
+
+    private final boolean enabled;
+
+    private final double readyFraction;
+
+    private final Warmup warmup;
+
+    private final Set<String> warmedUp = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public NodeWarmup(Settings settings, Warmup warmup) {
+        this.enabled = settings.getAsBoolean(WARMUP_ENABLED, true);
+        this.readyFraction = settings.getAsDouble(WARMUP_READY_FRACTION, 0.0d);
+        if (readyFraction < 0.0d || readyFraction > 1.0d) {
+            throw new IllegalArgumentException("invalid ready fraction: " + readyFraction);
+        }
+        this.warmup = warmup;
+    }
+
+    /**
+     * Warm up a connected node, unless it is already warmed up.
+     *
+     * @param node the node
+     * @return true if the node is warmed up, false if the warm-up failed
+     */
+    public boolean warmup(DiscoveryNode node) {
+        if (warmedUp.contains(node.id())) {
+            return true;
+        }
+        if (enabled) {
+            try {
+                warmup.warmup(node);
+            } catch (Exception e) {
+                logger.debug("warm-up of node {} failed: {}", node, e.getMessage());
+                return false;
+            }
+        }
+        warmedUp.add(node.id());
+        return true;
+    }
+
+    public boolean isWarmedUp(DiscoveryNode node) {
+        return warmedUp.contains(node.id());
+    }
+
+    /**
+     * Forget the nodes that are no longer connected, they must be warmed up again after a reconnect.
+     *
+     * @param nodes the connected nodes
+     */
+    public void retain(Collection<DiscoveryNode> nodes) {
+        Set<String> ids = new HashSet<>();
+        for (DiscoveryNode node : nodes) {
+            ids.add(node.id());
+        }
+        warmedUp.retainAll(ids);
+    }
+
+    /**
+     * Returns the number of warmed up nodes a client needs to be ready.
+     *
+     * @param listed the number of listed nodes
+     * @return the number of warmed up nodes, at least one
+     */
+    public int getReadyThreshold(int listed) {
+        return Math.max(1, (int) Math.ceil(readyFraction * listed));
+    }
+
+    /**
+     * Returns the number of warmed up nodes among the connected nodes.
+     *
+     * @param nodes the connected nodes
+     * @return the number of warmed up nodes
+     */
+    public int getWarmedUp(Collection<DiscoveryNode> nodes) {
+        int count = 0;
+        for (DiscoveryNode node : nodes) {
+            if (warmedUp.contains(node.id())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if enough of the connected nodes are warmed up.
+     *
+     * @param nodes the connected nodes
+     * @param listed the number of listed nodes
+     * @return true if the client is ready
+     */
+    public boolean isReady(Collection<DiscoveryNode> nodes, int listed) {
+        return getWarmedUp(nodes) >= getReadyThreshold(listed);
+    }
+}
@@ -0,0 +1,46 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.xbib.elasticsearch.helper.client.TransportLanes.Lane;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the nodes in turn, regardless of their load.
+ */
+public class RoundRobinNodeSelector implements NodeSelector {
+
+    private final AtomicInteger nodeCounter = new AtomicInteger();
+
+    @Override
+    public int select(List<DiscoveryNode> nodes, Lane lane) {
+        int index = nodeCounter.incrementAndGet();
+        if (index < 0) {
+            index = 0;
+            nodeCounter.set(0);
+        }
+        return index % nodes.size();
+    }
+
+    @Override
+    public void onStart(DiscoveryNode node) {
+        // not tracked
+    }
+
+    @Override
+    public void onFinish(DiscoveryNode node, Lane lane, long nanos, boolean success) {
+        // not tracked
+    }
+
+    @Override
+    public void onPing(DiscoveryNode node, long nanos) {
+        // not tracked
+    }
+
+    @Override
+    public void retain(Collection<DiscoveryNode> nodes) {
+        // not tracked
+    }
+}
@@ -37,6 +37,8 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsModule;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.indices.breaker.CircuitBreakerModule;
 import org.elasticsearch.monitor.MonitorService;
 import org.elasticsearch.node.internal.InternalSettingsPreparer;
@@ -48,23 +50,38 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.threadpool.ThreadPoolModule;
 import org.elasticsearch.transport.ConnectTransportException;
 import org.elasticsearch.transport.FutureTransportResponseHandler;
+import org.elasticsearch.transport.ReceiveTimeoutTransportException;
 import org.elasticsearch.transport.TransportModule;
 import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.TransportFuture;
 import org.elasticsearch.transport.TransportService;
 import org.elasticsearch.client.transport.TransportClient.HostFailureListener;
+import org.xbib.elasticsearch.helper.network.DnsCache;
+import org.xbib.metrics.MetricRegistry;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.elasticsearch.common.settings.Settings.settingsBuilder;
+import static org.elasticsearch.common.unit.TimeValue.timeValueMillis;
 import static org.elasticsearch.common.unit.TimeValue.timeValueSeconds;
 
 /**
@@ -84,6 +101,8 @@ public class TransportClient extends AbstractClient {
         private Settings settings = Settings.EMPTY;
         private List<Class<? extends Plugin>> pluginClasses = new ArrayList<>();
         private HostFailureListener hostFailedListener;
+        private NodeSelector nodeSelector;
+        private Boolean lean;
 
         public Builder settings(Settings.Builder settings) {
             return settings(settings.build());
@@ -100,10 +119,13 @@ public class TransportClient extends AbstractClient {
         }
 
         public TransportClient build() {
+            boolean lean = this.lean != null ? this.lean : this.settings.getAsBoolean(LEAN, false);
             Settings settings = InternalSettingsPreparer.prepareSettings(this.settings);
             settings = settingsBuilder()
                     .put("transport.ping.schedule", this.settings.get("ping.interval", "30s"))
+                    .put(lean ? LEAN_DEFAULTS : Settings.EMPTY)
                     .put(settings)
+                    .put(TransportLanes.transportSettings(this.settings))
                     .put("network.server", false)
                     .put("node.client", true)
                     .put(CLIENT_TYPE_SETTING, CLIENT_TYPE)
@@ -139,8 +161,13 @@ public class TransportClient extends AbstractClient {
                 modules.add(new CircuitBreakerModule(this.settings));
                 pluginsService.processModules(modules);
                 Injector injector = modules.createInjector();
-                injector.getInstance(TransportService.class).start();
-                TransportClient transportClient = new TransportClient(injector);
+                if (!lean) {
+                    injector.getInstance(TransportService.class).start();
+                }
+                if (nodeSelector == null) {
+                    nodeSelector = createNodeSelector(this.settings);
+                }
+                TransportClient transportClient = new TransportClient(injector, nodeSelector, lean);
                 success = true;
                 return transportClient;
             } finally {
@@ -154,16 +181,69 @@ public class TransportClient extends AbstractClient {
             this.hostFailedListener = hostFailedListener;
             return this;
         }
+
+        /**
+         * Set the strategy for selecting the node a request is sent to. By default, the strategy is
+         * selected by the setting {@code client.transport.node_selector}, which is either
+         * {@code least_outstanding} (the default) or {@code round_robin}.
+         * @param nodeSelector the node selector
+         * @return this builder
+         */
+        public Builder setNodeSelector(NodeSelector nodeSelector) {
+            this.nodeSelector = nodeSelector;
+            return this;
+        }
+
+        /**
+         * Set the lean mode. A lean client uses fewer transport threads and channels per node, and starts
+         * its transport service when the first address is added instead of when it is built. Services
+         * which are not bound by the client are not touched when the client is closed. By default,
+         * the mode is selected by the setting {@code client.transport.lean}.
+         * @param lean true for the lean mode
+         * @return this builder
+         */
+        public Builder setLean(boolean lean) {
+            this.lean = lean;
+            return this;
+        }
+
+        private static NodeSelector createNodeSelector(Settings settings) {
+            String name = settings.get(NODE_SELECTOR, "least_outstanding");
+            switch (name) {
+                case "least_outstanding":
+                    return new LeastOutstandingNodeSelector(settings);
+                case "round_robin":
+                    return new RoundRobinNodeSelector();
+                default:
+                    throw new IllegalArgumentException("unknown node selector: " + name);
+            }
+        }
     }
 
     public static final String CLIENT_TYPE = "transport";
 
+    public static final String NODE_SELECTOR = "client.transport.node_selector";
+
+    public static final String LEAN = "client.transport.lean";
+
+    /**
+     * The defaults of the lean mode, which can be overridden by the client settings.
+     */
+    private static final Settings LEAN_DEFAULTS = settingsBuilder()
+            .put("transport.netty.worker_count", 2)
+            .put("transport.connections_per_node.recovery", 1)
+            .put("transport.connections_per_node.bulk", 1)
+            .put("transport.connections_per_node.reg", 2)
+            .build();
+
     private final Injector injector;
 
     private final ProxyActionMap proxyActionMap;
 
     private final long pingTimeout;
 
+    private final long livenessTimeout;
+
     private final ClusterName clusterName;
 
     private final TransportService transportService;
@@ -174,10 +254,32 @@ public class TransportClient extends AbstractClient {
 
     private final AtomicInteger tempNodeId = new AtomicInteger();
 
-    private final AtomicInteger nodeCounter = new AtomicInteger();
+    private final NodeSelector nodeSelector;
+
+    private final HedgingPolicy hedgingPolicy;
+
+    private final NodeQuarantine quarantine;
+
+    private final NodeWarmup nodeWarmup;
+
+    private final TransportLanes lanes;
+
+    private final MetricRegistry metricRegistry;
+
+    private final DnsCache dnsCache;
+
+    private final DnsCache.Listener dnsListener;
 
     private final Object mutex = new Object();
 
+    private final Object connectMutex = new Object();
+
+    private final Map<String, Long> pingTimes = new ConcurrentHashMap<>();
+
+    private final boolean lean;
+
+    private final AtomicBoolean started;
+
     private volatile List<DiscoveryNode> listedNodes = Collections.emptyList();
 
     private volatile List<DiscoveryNode> nodes = Collections.emptyList();
@@ -186,7 +288,9 @@ public class TransportClient extends AbstractClient {
 
     private volatile boolean closed;
 
-    private TransportClient(Injector injector) {
+    private volatile boolean ready;
+
+    private TransportClient(Injector injector, NodeSelector nodeSelector, boolean lean) {
         super(injector.getInstance(Settings.class), injector.getInstance(ThreadPool.class),
                 injector.getInstance(Headers.class));
         this.injector = injector;
@@ -195,7 +299,129 @@ public class TransportClient extends AbstractClient {
         this.minCompatibilityVersion = injector.getInstance(Version.class).minimumCompatibilityVersion();
         this.headers = injector.getInstance(Headers.class);
         this.pingTimeout = this.settings.getAsTime("client.transport.ping_timeout", timeValueSeconds(5)).millis();
+        this.livenessTimeout = this.settings.getAsTime("client.transport.liveness_timeout",
+                timeValueMillis(2 * pingTimeout)).millis();
         this.proxyActionMap = injector.getInstance(ProxyActionMap.class);
+        this.nodeSelector = nodeSelector;
+        this.lean = lean;
+        this.started = new AtomicBoolean(!lean);
+        this.hedgingPolicy = new HedgingPolicy(this.settings);
+        this.quarantine = new NodeQuarantine(this.settings, threadPool(), new NodeQuarantine.Probe() {
+            @Override
+            public boolean probe(DiscoveryNode node) {
+                return TransportClient.this.probe(node);
+            }
+        });
+        this.nodeWarmup = new NodeWarmup(this.settings, new NodeWarmup.Warmup() {
+            @Override
+            public void warmup(DiscoveryNode node) {
+                validate(node);
+            }
+        });
+        this.lanes = new TransportLanes(this.settings);
+        this.metricRegistry = new MetricRegistry();
+        metricRegistry.registerAll(hedgingPolicy);
+        metricRegistry.registerAll(quarantine);
+        metricRegistry.registerAll(lanes);
+        this.dnsCache = DnsCache.getInstance(this.settings);
+        this.dnsListener = new DnsCache.Listener() {
+            @Override
+            public void onChange(final String host, InetAddress[] oldAddresses, final InetAddress[] newAddresses) {
+                // connecting to the new addresses blocks, do not hold up the refresh thread of the shared cache
+                try {
+                    threadPool().generic().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            onAddressChange(host, newAddresses);
+                        }
+                    });
+                } catch (EsRejectedExecutionException e) {
+                    // the thread pool is shutting down
+                }
+            }
+        };
+        dnsCache.addListener(dnsListener);
+    }
+
+    /**
+     * Returns the DNS cache of this client. Host names of transport addresses must be resolved by this cache,
+     * so the client follows their address changes.
+     * @return the DNS cache
+     */
+    public DnsCache dnsCache() {
+        return dnsCache;
+    }
+
+    /**
+     * Returns the round-trip times of the last liveness pings, by node ID.
+     * @return the ping round-trip times in nanoseconds
+     */
+    public Map<String, Long> pingTimes() {
+        return Collections.unmodifiableMap(pingTimes);
+    }
+
+    /**
+     * Returns true if the client is connected to enough warmed up nodes, see {@link NodeWarmup}.
+     * @return true if the client is ready
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns true if the transport service has been started. A lean client starts it when the first address is added.
+     * @return true if the transport service has been started
+     */
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    /**
+     * Returns the strategy for selecting the node a request is sent to.
+     * @return the node selector
+     */
+    public NodeSelector getNodeSelector() {
+        return nodeSelector;
+    }
+
+    /**
+     * Returns the policy for hedged read requests.
+     * @return the hedging policy
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Returns the table of nodes that are excluded from node selection after connect failures.
+     * @return the node quarantine
+     */
+    public NodeQuarantine getQuarantine() {
+        return quarantine;
+    }
+
+    /**
+     * Returns the warm-up of the connected nodes, which decides if the client is ready.
+     * @return the node warm-up
+     */
+    public NodeWarmup getNodeWarmup() {
+        return nodeWarmup;
+    }
+
+    /**
+     * Returns the connection lanes for bulk and interactive traffic.
+     * @return the transport lanes
+     */
+    public TransportLanes getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Returns the metrics of this client.
+     * @return the metric registry
+     */
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
     }
 
     /**
@@ -260,6 +486,10 @@ public class TransportClient extends AbstractClient {
             if (closed) {
                 throw new IllegalStateException("transport client is closed, can't add addresses");
             }
+            if (started.compareAndSet(false, true)) {
+                logger.debug("starting transport service");
+                transportService.start();
+            }
             List<TransportAddress> filtered = new ArrayList<>(transportAddresses.size());
             for (TransportAddress transportAddress : transportAddresses) {
                 boolean found = false;
@@ -286,8 +516,8 @@ public class TransportClient extends AbstractClient {
                 discoveryNodeList.add(node);
             }
             listedNodes = Collections.unmodifiableList(discoveryNodeList);
-            connect();
         }
+        connect();
         return this;
     }
 
@@ -297,6 +527,7 @@ public class TransportClient extends AbstractClient {
      * @return this transport client
      */
     public TransportClient removeTransportAddress(TransportAddress transportAddress) {
+        List<DiscoveryNode> removed = new ArrayList<>();
         synchronized (mutex) {
             if (closed) {
                 throw new IllegalStateException("transport client is closed, can't remove an address");
@@ -307,13 +538,85 @@ public class TransportClient extends AbstractClient {
                     builder.add(otherNode);
                 } else {
                     logger.debug("removing address [{}]", otherNode);
+                    removed.add(otherNode);
                 }
             }
             listedNodes = Collections.unmodifiableList(builder);
+            List<DiscoveryNode> remaining = new ArrayList<>();
+            for (DiscoveryNode node : nodes) {
+                if (!node.address().equals(transportAddress)) {
+                    remaining.add(node);
+                } else {
+                    removed.add(node);
+                    quarantine.remove(node);
+                }
+            }
+            if (remaining.size() < nodes.size()) {
+                nodes = Collections.unmodifiableList(remaining);
+                nodeSelector.retain(remaining);
+                prune();
+            }
+        }
+        // the channels stay open until the node is disconnected
+        for (DiscoveryNode node : removed) {
+            transportService.disconnectFromNode(node);
         }
         return this;
     }
 
+    /**
+     * Replace the listed addresses of a host name whose addresses have changed in the DNS.
+     * @param host the host name
+     * @param addresses the current addresses of the host name
+     */
+    private void onAddressChange(String host, InetAddress[] addresses) {
+        if (closed) {
+            return;
+        }
+        List<TransportAddress> removed = new ArrayList<>();
+        Set<Integer> ports = new LinkedHashSet<>();
+        for (DiscoveryNode listedNode : listedNodes) {
+            if (!(listedNode.address() instanceof InetSocketTransportAddress)) {
+                continue;
+            }
+            InetSocketAddress address = ((InetSocketTransportAddress) listedNode.address()).address();
+            if (host.equals(address.getHostString())) {
+                ports.add(address.getPort());
+                boolean found = false;
+                for (InetAddress inetAddress : addresses) {
+                    if (inetAddress.equals(address.getAddress())) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    removed.add(listedNode.address());
+                }
+            }
+        }
+        if (ports.isEmpty()) {
+            return;
+        }
+        List<InetSocketTransportAddress> added = new ArrayList<>();
+        for (Integer port : ports) {
+            for (InetAddress inetAddress : addresses) {
+                added.add(new InetSocketTransportAddress(inetAddress, port));
+            }
+        }
+        logger.info("addresses of {} changed, removing {}, adding {}", host, removed, added);
+        try {
+            for (TransportAddress transportAddress : removed) {
+                removeTransportAddress(transportAddress);
+            }
+            addTransportAddresses(added);
+            if (!removed.isEmpty()) {
+                connect();
+            }
+        } catch (IllegalStateException e) {
+            // closed in the meantime
+        }
+    }
+
     @Override
     public void close() {
         synchronized (mutex) {
@@ -321,6 +624,8 @@ public class TransportClient extends AbstractClient {
                 return;
             }
             closed = true;
+            dnsCache.removeListener(dnsListener);
+            quarantine.close();
             for (DiscoveryNode node : nodes) {
                 transportService.disconnectFromNode(node);
             }
@@ -328,12 +633,16 @@ public class TransportClient extends AbstractClient {
                 transportService.disconnectFromNode(listedNode);
             }
             nodes = Collections.emptyList();
+            pingTimes.clear();
         }
         injector.getInstance(TransportService.class).close();
-        try {
-            injector.getInstance(MonitorService.class).close();
-        } catch (Exception e) {
-            // ignore, might not be bounded
+        lanes.close();
+        if (!lean) {
+            try {
+                injector.getInstance(MonitorService.class).close();
+            } catch (Exception e) {
+                // ignore, might not be bounded
+            }
         }
         for (Class<? extends LifecycleComponent> plugin : injector.getInstance(PluginsService.class).nodeServices()) {
             injector.getInstance(plugin).close();
@@ -346,62 +655,261 @@ public class TransportClient extends AbstractClient {
         injector.getInstance(PageCacheRecycler.class).close();
     }
 
+    /**
+     * Check the liveness of the listed nodes and update the connected nodes. The listed nodes are pinged
+     * concurrently, each with the ping timeout. Nodes that do not respond within the liveness timeout
+     * are considered unavailable for this round. The list of connected nodes is updated incrementally,
+     * unchanged nodes keep their position.
+     */
     private void connect() {
-        Set<DiscoveryNode> newNodes = new HashSet<>();
-        Set<DiscoveryNode> newFilteredNodes = new HashSet<>();
-        for (DiscoveryNode listedNode : listedNodes) {
-            if (!transportService.nodeConnected(listedNode)) {
-                try {
-                    logger.trace("connecting to listed node (light) [{}]", listedNode);
-                    transportService.connectToNodeLight(listedNode);
-                } catch (Throwable e) {
-                    logger.debug("failed to connect to node [{}], removed from nodes list", e, listedNode);
-                    continue;
+        synchronized (connectMutex) {
+            final List<DiscoveryNode> listed = this.listedNodes;
+            final Map<DiscoveryNode, DiscoveryNode> alive = new ConcurrentHashMap<>();
+            final Set<DiscoveryNode> filtered = Collections.newSetFromMap(new ConcurrentHashMap<DiscoveryNode, Boolean>());
+            boolean complete = pingAll(listed, threadPool().generic(), livenessTimeout, new Pinger() {
+                @Override
+                public void ping(DiscoveryNode listedNode) {
+                    TransportClient.this.ping(listedNode, alive, filtered);
                 }
+            });
+            if (!complete) {
+                logger.warn("liveness check of {} nodes did not complete within {}ms",
+                        listed.size(), livenessTimeout);
             }
+            update(listed, new HashMap<>(alive), new HashSet<>(filtered));
+            List<DiscoveryNode> connected = nodes;
+            boolean ready = nodeWarmup.isReady(connected, listed.size());
+            if (ready != this.ready) {
+                logger.info("client {} ready, {} of {} listed nodes warmed up", ready ? "is" : "is not",
+                        nodeWarmup.getWarmedUp(connected), listed.size());
+            }
+            this.ready = ready;
+        }
+    }
+
+    /**
+     * Ping the listed nodes concurrently on the executor, and wait for the pings to complete, but not longer
+     * than the timeout. Pings that are still running after the timeout are not cancelled.
+     * @param listed the listed nodes
+     * @param executor the executor
+     * @param timeout the timeout in milliseconds
+     * @param pinger the ping of a listed node
+     * @return true if all pings completed within the timeout
+     */
+    static boolean pingAll(List<DiscoveryNode> listed, Executor executor, long timeout, final Pinger pinger) {
+        final CountDownLatch latch = new CountDownLatch(listed.size());
+        for (final DiscoveryNode listedNode : listed) {
             try {
-                LivenessResponse livenessResponse = transportService.submitRequest(listedNode,
-                        TransportLivenessAction.NAME, headers.applyTo(new LivenessRequest()),
-                        TransportRequestOptions.builder().withType(TransportRequestOptions.Type.STATE)
-                                .withTimeout(pingTimeout).build(),
-                        new FutureTransportResponseHandler<LivenessResponse>() {
-                            @Override
-                            public LivenessResponse newInstance() {
-                                return new LivenessResponse();
-                            }
-                        }).txGet();
-                if (!clusterName.equals(livenessResponse.getClusterName())) {
-                    logger.warn("node {} not part of the cluster {}, ignoring...", listedNode, clusterName);
-                    newFilteredNodes.add(listedNode);
-                } else if (livenessResponse.getDiscoveryNode() != null) {
-                    DiscoveryNode nodeWithInfo = livenessResponse.getDiscoveryNode();
-                    newNodes.add(new DiscoveryNode(nodeWithInfo.name(), nodeWithInfo.id(), nodeWithInfo.getHostName(),
-                            nodeWithInfo.getHostAddress(), listedNode.address(), nodeWithInfo.attributes(),
-                            nodeWithInfo.version()));
-                } else {
-                    logger.debug("node {} didn't return any discovery info, temporarily using transport discovery node",
-                            listedNode);
-                    newNodes.add(listedNode);
-                }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            pinger.ping(listedNode);
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            } catch (EsRejectedExecutionException e) {
+                // the thread pool is shutting down
+                latch.countDown();
+            }
+        }
+        try {
+            return latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * The ping of a listed node.
+     */
+    interface Pinger {
+        void ping(DiscoveryNode listedNode);
+    }
+
+    private void ping(DiscoveryNode listedNode, Map<DiscoveryNode, DiscoveryNode> alive, Set<DiscoveryNode> filtered) {
+        if (!transportService.nodeConnected(listedNode)) {
+            try {
+                logger.trace("connecting to listed node (light) [{}]", listedNode);
+                transportService.connectToNodeLight(listedNode);
             } catch (Throwable e) {
-                logger.info("failed to get node info for {}, disconnecting...", e, listedNode);
-                transportService.disconnectFromNode(listedNode);
+                logger.debug("failed to connect to node [{}], removed from nodes list", e, listedNode);
+                return;
             }
         }
-        for (Iterator<DiscoveryNode> it = newNodes.iterator(); it.hasNext(); ) {
-            DiscoveryNode node = it.next();
-            if (!transportService.nodeConnected(node)) {
-                try {
-                    logger.trace("connecting to node [{}]", node);
-                    transportService.connectToNode(node);
-                } catch (Throwable e) {
-                    it.remove();
-                    logger.debug("failed to connect to discovered node [" + node + "]", e);
-                }
+        DiscoveryNode node;
+        long nanos;
+        try {
+            long start = System.nanoTime();
+            LivenessResponse livenessResponse = transportService.submitRequest(listedNode,
+                    TransportLivenessAction.NAME, headers.applyTo(new LivenessRequest()),
+                    TransportRequestOptions.builder().withType(TransportRequestOptions.Type.STATE)
+                            .withTimeout(pingTimeout).build(),
+                    new FutureTransportResponseHandler<LivenessResponse>() {
+                        @Override
+                        public LivenessResponse newInstance() {
+                            return new LivenessResponse();
+                        }
+                    }).txGet();
+            nanos = System.nanoTime() - start;
+            if (!clusterName.equals(livenessResponse.getClusterName())) {
+                logger.warn("node {} not part of the cluster {}, ignoring...", listedNode, clusterName);
+                filtered.add(listedNode);
+                return;
+            } else if (livenessResponse.getDiscoveryNode() != null) {
+                DiscoveryNode nodeWithInfo = livenessResponse.getDiscoveryNode();
+                node = new DiscoveryNode(nodeWithInfo.name(), nodeWithInfo.id(), nodeWithInfo.getHostName(),
+                        nodeWithInfo.getHostAddress(), listedNode.address(), nodeWithInfo.attributes(),
+                        nodeWithInfo.version());
+            } else {
+                logger.debug("node {} didn't return any discovery info, temporarily using transport discovery node",
+                        listedNode);
+                node = listedNode;
+            }
+        } catch (Throwable e) {
+            logger.info("failed to get node info for {}, disconnecting...", e, listedNode);
+            transportService.disconnectFromNode(listedNode);
+            return;
+        }
+        if (!transportService.nodeConnected(node)) {
+            try {
+                logger.trace("connecting to node [{}]", node);
+                transportService.connectToNode(node);
+            } catch (Throwable e) {
+                logger.debug("failed to connect to discovered node [" + node + "]", e);
+                transportService.disconnectFromNode(node);
+                return;
+            }
+        }
+        if (!nodeWarmup.warmup(node)) {
+            transportService.disconnectFromNode(node);
+            return;
+        }
+        pingTimes.put(node.id(), nanos);
+        nodeSelector.onPing(node, nanos);
+        quarantine.remove(node);
+        alive.put(listedNode, node);
+    }
+
+    /**
+     * Warm up the channels of a freshly connected node with a round-trip on the interactive and the bulk channels,
+     * so the first requests do not pay for it.
+     * @param node the node
+     */
+    private void validate(DiscoveryNode node) {
+        long start = System.nanoTime();
+        TransportFuture<LivenessResponse> reg = liveness(node, TransportRequestOptions.Type.REG);
+        TransportFuture<LivenessResponse> bulk = liveness(node, TransportRequestOptions.Type.BULK);
+        reg.txGet();
+        bulk.txGet();
+        logger.debug("channels to node {} warmed up in {}", node, TimeValue.timeValueNanos(System.nanoTime() - start));
+    }
+
+    private TransportFuture<LivenessResponse> liveness(DiscoveryNode node, TransportRequestOptions.Type type) {
+        return transportService.submitRequest(node, TransportLivenessAction.NAME, headers.applyTo(new LivenessRequest()),
+                TransportRequestOptions.builder().withType(type).withTimeout(pingTimeout).build(),
+                new FutureTransportResponseHandler<LivenessResponse>() {
+                    @Override
+                    public LivenessResponse newInstance() {
+                        return new LivenessResponse();
+                    }
+                });
+    }
+
+    /**
+     * Probe a quarantined node with a liveness request.
+     * @param node the node
+     * @return true if the node responded within the ping timeout
+     */
+    private boolean probe(DiscoveryNode node) {
+        if (closed) {
+            return false;
+        }
+        try {
+            transportService.connectToNode(node);
+            liveness(node, TransportRequestOptions.Type.STATE).txGet();
+            return true;
+        } catch (Throwable e) {
+            logger.debug("probe of quarantined node {} failed: {}", node, e.getMessage());
+            return false;
+        }
+    }
+
+    private void update(List<DiscoveryNode> listed, Map<DiscoveryNode, DiscoveryNode> alive, Set<DiscoveryNode> filtered) {
+        synchronized (mutex) {
+            if (closed) {
+                return;
+            }
+            List<DiscoveryNode> current = this.nodes;
+            List<DiscoveryNode> removed = new ArrayList<>();
+            List<DiscoveryNode> updated = merge(current, listed, alive, removed);
+            for (DiscoveryNode node : removed) {
+                quarantine.remove(node);
+                logger.debug("node {} is no longer available", node);
+            }
+            if (updated != current) {
+                logger.debug("nodes updated: {} removed, {} total", removed.size(), updated.size());
+                this.nodes = Collections.unmodifiableList(updated);
+                nodeSelector.retain(updated);
+            }
+            prune();
+            this.filteredNodes = Collections.unmodifiableList(new ArrayList<>(filtered));
+        }
+    }
+
+    /**
+     * Merge the result of a liveness check into the connected nodes. Unchanged nodes keep their instance
+     * and their position, nodes with a changed address are replaced in place, nodes that are no longer alive
+     * are dropped, and new nodes are appended in the order of the listed nodes.
+     * @param current the connected nodes
+     * @param listed the listed nodes
+     * @param alive the discovered nodes by listed node
+     * @param removed receives the dropped nodes
+     * @return the merged nodes, or the current nodes if nothing has changed
+     */
+    static List<DiscoveryNode> merge(List<DiscoveryNode> current, List<DiscoveryNode> listed,
+                                     Map<DiscoveryNode, DiscoveryNode> alive, List<DiscoveryNode> removed) {
+        Map<String, DiscoveryNode> fresh = new LinkedHashMap<>();
+        for (DiscoveryNode listedNode : listed) {
+            DiscoveryNode node = alive.get(listedNode);
+            if (node != null) {
+                fresh.put(node.id(), node);
             }
         }
-        this.nodes = Collections.unmodifiableList(new ArrayList<>(newNodes));
-        this.filteredNodes = Collections.unmodifiableList(new ArrayList<>(newFilteredNodes));
+        List<DiscoveryNode> updated = new ArrayList<>(fresh.size());
+        boolean changed = false;
+        for (DiscoveryNode node : current) {
+            DiscoveryNode freshNode = fresh.remove(node.id());
+            if (freshNode == null) {
+                changed = true;
+                removed.add(node);
+            } else if (freshNode.address().equals(node.address())) {
+                updated.add(node);
+            } else {
+                changed = true;
+                updated.add(freshNode);
+            }
+        }
+        if (!fresh.isEmpty()) {
+            changed = true;
+            updated.addAll(fresh.values());
+        }
+        return changed ? updated : current;
+    }
+
+    /**
+     * Drop the ping times and the warm-up state of nodes that are no longer connected.
+     */
+    private void prune() {
+        Set<String> ids = new HashSet<>();
+        for (DiscoveryNode node : nodes) {
+            ids.add(node.id());
+        }
+        pingTimes.keySet().retainAll(ids);
+        nodeWarmup.retain(nodes);
     }
 
     @Override
@@ -424,20 +932,153 @@ public class TransportClient extends AbstractClient {
         if (nodes.isEmpty()) {
             throw new NoNodeAvailableException("none of the configured nodes are available: " + this.listedNodes);
         }
-        int index = nodeCounter.incrementAndGet();
-        if (index < 0) {
-            index = 0;
-            nodeCounter.set(0);
+        nodes = quarantine.filter(nodes);
+        listener = lanes.wrap(action, listener);
+        TransportLanes.Lane lane = lanes.getLane(action);
+        int index = nodeSelector.select(nodes, lane);
+        if (nodes.size() > 1 && hedgingPolicy.isHedgeable(action, request)) {
+            new HedgedExecution<>(callback, listener, nodes, index, lane).start();
+            return;
         }
-        RetryListener<Response> retryListener = new RetryListener<>(callback, listener, nodes, index);
-        DiscoveryNode node = nodes.get((index) % nodes.size());
+        RetryListener<Response> retryListener = new RetryListener<>(callback, listener, nodes, index, lane,
+                nodeSelector, quarantine);
         try {
-            callback.doWithNode(node, retryListener);
+            retryListener.start();
         } catch (Throwable t) {
             listener.onFailure(t);
         }
     }
 
+    /**
+     * A read request that is sent to a second node if the first node does not answer within the hedge delay.
+     * The first response wins, the response of the other node is discarded. The request fails only
+     * if all attempts have failed.
+     */
+    private class HedgedExecution<Response> {
+        private final NodeListenerCallback<Response> callback;
+        private final ActionListener<Response> listener;
+        private final List<DiscoveryNode> nodes;
+        private final int index;
+        private final TransportLanes.Lane lane;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private volatile ScheduledFuture<?> timer;
+
+        HedgedExecution(NodeListenerCallback<Response> callback, ActionListener<Response> listener,
+                        List<DiscoveryNode> nodes, int index, TransportLanes.Lane lane) {
+            this.callback = callback;
+            this.listener = listener;
+            this.nodes = nodes;
+            this.index = index;
+            this.lane = lane;
+        }
+
+        void start() {
+            hedgingPolicy.onRequest();
+            long delay = hedgingPolicy.getDelayNanos();
+            if (delay > 0) {
+                try {
+                    timer = threadPool().schedule(TimeValue.timeValueNanos(delay), ThreadPool.Names.GENERIC,
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    hedge();
+                                }
+                            });
+                } catch (EsRejectedExecutionException e) {
+                    // the thread pool is shutting down, no hedging
+                }
+            }
+            send(nodes, index, false);
+        }
+
+        private void hedge() {
+            if (done.get()) {
+                return;
+            }
+            // do not hedge if all attempts have already failed
+            int current;
+            do {
+                current = pending.get();
+                if (current == 0) {
+                    return;
+                }
+            } while (!pending.compareAndSet(current, current + 1));
+            if (!hedgingPolicy.tryHedge()) {
+                onAttemptFailure(null);
+                return;
+            }
+            DiscoveryNode primary = nodes.get(index % nodes.size());
+            List<DiscoveryNode> others = new ArrayList<>(nodes.size() - 1);
+            for (DiscoveryNode node : nodes) {
+                if (!node.equals(primary)) {
+                    others.add(node);
+                }
+            }
+            if (others.isEmpty()) {
+                onAttemptFailure(null);
+                return;
+            }
+            logger.trace("no response from {} after {}, hedging request", primary,
+                    TimeValue.timeValueNanos(hedgingPolicy.getDelayNanos()));
+            send(others, nodeSelector.select(others, lane), true);
+        }
+
+        private void send(List<DiscoveryNode> nodes, int index, boolean hedged) {
+            ActionListener<Response> attempt = new Attempt(hedged);
+            try {
+                new RetryListener<>(callback, attempt, nodes, index, lane, nodeSelector, quarantine).start();
+            } catch (Throwable t) {
+                attempt.onFailure(t);
+            }
+        }
+
+        private void onAttemptFailure(Throwable e) {
+            if (e != null) {
+                failure.set(e);
+            }
+            if (pending.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+                cancelTimer();
+                listener.onFailure(failure.get());
+            }
+        }
+
+        private void cancelTimer() {
+            ScheduledFuture<?> timer = this.timer;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+
+        private class Attempt implements ActionListener<Response> {
+            private final boolean hedged;
+            private final long startNanos = System.nanoTime();
+
+            Attempt(boolean hedged) {
+                this.hedged = hedged;
+            }
+
+            @Override
+            public void onResponse(Response response) {
+                hedgingPolicy.record(System.nanoTime() - startNanos);
+                if (done.compareAndSet(false, true)) {
+                    cancelTimer();
+                    if (hedged) {
+                        hedgingPolicy.onHedgeWin();
+                    }
+                    listener.onResponse(response);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                onAttemptFailure(e);
+            }
+        }
+    }
+
     interface NodeListenerCallback<Response> {
 
         void doWithNode(DiscoveryNode node, ActionListener<Response> listener);
@@ -449,25 +1090,59 @@ public class TransportClient extends AbstractClient {
         private final ActionListener<Response> listener;
         private final List<DiscoveryNode> nodes;
         private final int index;
+        private final TransportLanes.Lane lane;
+        private final NodeSelector nodeSelector;
+        private final NodeQuarantine quarantine;
+
+    private final NodeWarmup nodeWarmup;
 
         private volatile int n;
+        private volatile DiscoveryNode node;
+        private volatile long startNanos;
 
         public RetryListener(NodeListenerCallback<Response> callback, ActionListener<Response> listener,
-                             List<DiscoveryNode> nodes, int index) {
+                             List<DiscoveryNode> nodes, int index, TransportLanes.Lane lane,
+                             NodeSelector nodeSelector, NodeQuarantine quarantine) {
             this.callback = callback;
             this.listener = listener;
             this.nodes = nodes;
             this.index = index;
+            this.lane = lane;
+            this.nodeSelector = nodeSelector;
+            this.quarantine = quarantine;
+        }
+
+        void start() {
+            send(nodes.get(index % nodes.size()));
+        }
+
+        private void send(DiscoveryNode node) {
+            this.node = node;
+            this.startNanos = System.nanoTime();
+            nodeSelector.onStart(node);
+            try {
+                callback.doWithNode(node, this);
+            } catch (Throwable t) {
+                nodeSelector.onFinish(node, lane, System.nanoTime() - startNanos, false);
+                throw t;
+            }
         }
 
         @Override
         public void onResponse(Response response) {
+            nodeSelector.onFinish(node, lane, System.nanoTime() - startNanos, true);
             listener.onResponse(response);
         }
 
         @Override
         public void onFailure(Throwable e) {
-            if (ExceptionsHelper.unwrapCause(e) instanceof ConnectTransportException) {
+            Throwable cause = ExceptionsHelper.unwrapCause(e);
+            // errors of the request itself do not tell anything about the node
+            nodeSelector.onFinish(node, lane, System.nanoTime() - startNanos,
+                    !(cause instanceof ConnectTransportException || cause instanceof ReceiveTimeoutTransportException));
+            if (cause instanceof ConnectTransportException) {
+                // keep the following requests away from the node until it is probed successfully
+                quarantine.add(node);
                 int n = ++this.n;
                 if (n >= nodes.size()) {
                     listener.onFailure(new NoNodeAvailableException("none of the configured nodes were available: "
@@ -475,7 +1150,7 @@ public class TransportClient extends AbstractClient {
                 } else {
                     try {
                         logger.warn("retrying on anoher node (n={}, nodes={})", n, nodes.size());
-                        callback.doWithNode(nodes.get((index + n) % nodes.size()), this);
+                        send(nodes.get((index + n) % nodes.size()));
                     } catch (final Throwable t) {
                         listener.onFailure(t);
                     }
@@ -0,0 +1,203 @@
+package org.xbib.elasticsearch.helper.client;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.GenericAction;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.EsThreadPoolExecutor;
+import org.elasticsearch.transport.TransportRequestOptions;
+import org.xbib.metrics.Gauge;
+import org.xbib.metrics.Metric;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricSet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Separates bulk traffic from interactive traffic of a {@link TransportClient}.
+ *
+ * Actions with the transport request type {@code BULK}, like bulk and ingest, use the bulk lane,
+ * all other actions, like searches, gets and admin calls, use the interactive lane. Each lane has its own
+ * channels to every node, the number of channels is configured by
+ * {@code client.transport.lanes.bulk.connections} and {@code client.transport.lanes.interactive.connections}.
+ *
+ * Responses of the bulk lane are handed over to a dedicated thread pool, so bulk listeners do not occupy the
+ * network threads which also read the responses of the interactive lane. Responses of the interactive lane are
+ * delivered on the network thread. If the bulk lane thread pool is saturated, the response is delivered on
+ * the network thread.
+ *
+ * The number of outstanding requests of each lane and the queue of the bulk lane thread pool are exposed as metrics.
+ */
+public class TransportLanes implements MetricSet {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(TransportLanes.class.getName());
+
+    public static final String BULK_CONNECTIONS = "client.transport.lanes.bulk.connections";
+
+    public static final String INTERACTIVE_CONNECTIONS = "client.transport.lanes.interactive.connections";
+
+    public static final String BULK_THREADS = "client.transport.lanes.bulk.threads";
+
+    public static final String BULK_QUEUE_SIZE = "client.transport.lanes.bulk.queue_size";
+
+    public enum Lane {
+        BULK, INTERACTIVE
+    }
+
+    private final Settings settings;
+
+    private final EsThreadPoolExecutor bulkExecutor;
+
+    private final Map<GenericAction<?, ?>, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger bulkOutstanding = new AtomicInteger();
+
+    private final AtomicInteger interactiveOutstanding = new AtomicInteger();
+
+    public TransportLanes(Settings settings) {
+        this.settings = settings;
+        int threads = settings.getAsInt(BULK_THREADS, Math.min(4, EsExecutors.boundedNumberOfProcessors(settings)));
+        int queueSize = settings.getAsInt(BULK_QUEUE_SIZE, 1000);
+        this.bulkExecutor = EsExecutors.newFixed("transport_client_bulk", threads, queueSize,
+                EsExecutors.daemonThreadFactory(settings, "transport_client_bulk"));
+    }
+
+    /**
+     * Map the lane settings to the transport settings for the channels per node.
+     *
+     * @param settings the client settings
+     * @return the transport settings
+     */
+    static Settings transportSettings(Settings settings) {
+        Settings.Builder builder = Settings.settingsBuilder();
+        String bulk = settings.get(BULK_CONNECTIONS);
+        if (bulk != null) {
+            builder.put("transport.connections_per_node.bulk", bulk);
+        }
+        String interactive = settings.get(INTERACTIVE_CONNECTIONS);
+        if (interactive != null) {
+            builder.put("transport.connections_per_node.reg", interactive);
+        }
+        return builder.build();
+    }
+
+    public Lane getLane(GenericAction<?, ?> action) {
+        Lane lane = lanes.get(action);
+        if (lane == null) {
+            lane = action.transportOptions(settings).type() == TransportRequestOptions.Type.BULK ?
+                    Lane.BULK : Lane.INTERACTIVE;
+            lanes.put(action, lane);
+        }
+        return lane;
+    }
+
+    public int getOutstanding(Lane lane) {
+        return lane == Lane.BULK ? bulkOutstanding.get() : interactiveOutstanding.get();
+    }
+
+    public int getBulkQueueSize() {
+        return bulkExecutor.getQueue().size();
+    }
+
+    /**
+     * Wrap the listener of a request, for counting the outstanding requests of the lane, and for delivering
+     * the responses of the bulk lane on the bulk lane thread pool.
+     *
+     * @param action the action
+     * @param listener the listener
+     * @param <Response> the response type
+     * @return the wrapped listener
+     */
+    public <Response> ActionListener<Response> wrap(GenericAction<?, ?> action, final ActionListener<Response> listener) {
+        final Lane lane = getLane(action);
+        final AtomicInteger outstanding = lane == Lane.BULK ? bulkOutstanding : interactiveOutstanding;
+        outstanding.incrementAndGet();
+        if (lane == Lane.INTERACTIVE) {
+            return new ActionListener<Response>() {
+                @Override
+                public void onResponse(Response response) {
+                    outstanding.decrementAndGet();
+                    listener.onResponse(response);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    outstanding.decrementAndGet();
+                    listener.onFailure(e);
+                }
+            };
+        }
+        return new ActionListener<Response>() {
+            @Override
+            public void onResponse(final Response response) {
+                outstanding.decrementAndGet();
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onResponse(response);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(final Throwable e) {
+                outstanding.decrementAndGet();
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onFailure(e);
+                    }
+                });
+            }
+        };
+    }
+
+    private void dispatch(Runnable runnable) {
+        try {
+            bulkExecutor.execute(runnable);
+        } catch (EsRejectedExecutionException e) {
+            logger.debug("bulk lane saturated, delivering response on the calling thread");
+            runnable.run();
+        }
+    }
+
+    public void close() {
+        bulkExecutor.shutdown();
+        try {
+            bulkExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public Map<MetricName, Metric> getMetrics() {
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(MetricName.build("transport", "client", "lane", "bulk", "outstanding"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getOutstanding(Lane.BULK);
+            }
+        });
+        metrics.put(MetricName.build("transport", "client", "lane", "bulk", "queue"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getBulkQueueSize();
+            }
+        });
+        metrics.put(MetricName.build("transport", "client", "lane", "interactive", "outstanding"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getOutstanding(Lane.INTERACTIVE);
+            }
+        });
+        return metrics;
+    }
+}
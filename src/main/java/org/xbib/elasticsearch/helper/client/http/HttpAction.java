@@ -75,7 +75,7 @@ public abstract class HttpAction<Request extends ActionRequest, Response extends
     }
 
     protected HttpRequest newRequest(HttpMethod method, URL url, String path, BytesReference content) {
-        return newRequest(method, url, path, content != null ? ChannelBuffers.copiedBuffer(content.toBytes()) : null);
+        return newRequest(method, url, path, content != null ? content.toChannelBuffer() : null);
     }
 
     protected HttpRequest newRequest(HttpMethod method, URL url, String path, ChannelBuffer buffer) {
@@ -92,6 +92,17 @@ public abstract class HttpAction<Request extends ActionRequest, Response extends
         return request;
     }
 
+    /**
+     * Streaming actions receive the response content incrementally through
+     * {@link HttpInvocationContext#getInputStream()} and create the response on a separate thread.
+     * The response content is not aggregated, so it is not limited in size.
+     *
+     * @return true if this action is streaming, false by default
+     */
+    protected boolean isStreaming() {
+        return false;
+    }
+
     protected void doExecute(final HttpInvocationContext<Request,Response> httpInvocationContext) {
         httpInvocationContext.getChannel().write(httpInvocationContext.getHttpRequest());
     }
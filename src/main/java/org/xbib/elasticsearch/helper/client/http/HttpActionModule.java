@@ -15,8 +15,18 @@ import org.elasticsearch.action.admin.indices.refresh.RefreshAction;
 import org.elasticsearch.action.admin.indices.settings.put.HttpUpdateSettingsAction;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsAction;
 import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.get.HttpGetAction;
+import org.elasticsearch.action.get.HttpMultiGetAction;
+import org.elasticsearch.action.get.MultiGetAction;
+import org.elasticsearch.action.search.ClearScrollAction;
+import org.elasticsearch.action.search.HttpClearScrollAction;
+import org.elasticsearch.action.search.HttpMultiSearchAction;
 import org.elasticsearch.action.search.HttpSearchAction;
+import org.elasticsearch.action.search.HttpSearchScrollAction;
+import org.elasticsearch.action.search.MultiSearchAction;
 import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchScrollAction;
 import org.elasticsearch.action.support.ActionFilter;
 import org.elasticsearch.common.inject.AbstractModule;
 import org.elasticsearch.common.inject.multibindings.MapBinder;
@@ -131,7 +141,6 @@ public class HttpActionModule extends AbstractModule {
         registerAction(GetSettingsAction.INSTANCE, TransportGetSettingsAction.class);
 
         registerAction(IndexAction.INSTANCE, TransportIndexAction.class);
-        registerAction(GetAction.INSTANCE, TransportGetAction.class);
         registerAction(TermVectorsAction.INSTANCE, TransportTermVectorsAction.class,
                 TransportDfsOnlyAction.class);
         registerAction(MultiTermVectorsAction.INSTANCE, TransportMultiTermVectorsAction.class,
@@ -140,11 +149,14 @@ public class HttpActionModule extends AbstractModule {
         registerAction(ExistsAction.INSTANCE, TransportExistsAction.class);
         registerAction(SuggestAction.INSTANCE, TransportSuggestAction.class);
         registerAction(UpdateAction.INSTANCE, TransportUpdateAction.class);
-        registerAction(MultiGetAction.INSTANCE, TransportMultiGetAction.class,
-                TransportShardMultiGetAction.class);
         registerAction(BulkAction.INSTANCE, TransportBulkAction.class,
                 TransportShardBulkAction.class);*/
         registerAction(SearchAction.INSTANCE, HttpSearchAction.class);
+        registerAction(SearchScrollAction.INSTANCE, HttpSearchScrollAction.class);
+        registerAction(ClearScrollAction.INSTANCE, HttpClearScrollAction.class);
+        registerAction(MultiSearchAction.INSTANCE, HttpMultiSearchAction.class);
+        registerAction(GetAction.INSTANCE, HttpGetAction.class);
+        registerAction(MultiGetAction.INSTANCE, HttpMultiGetAction.class);
         /*registerAction(SearchAction.INSTANCE, TransportSearchAction.class,
                 TransportSearchDfsQueryThenFetchAction.class,
                 TransportSearchQueryThenFetchAction.class,
@@ -152,16 +164,9 @@ public class HttpActionModule extends AbstractModule {
                 TransportSearchQueryAndFetchAction.class,
                 TransportSearchScanAction.class
         );
-        registerAction(SearchScrollAction.INSTANCE, TransportSearchScrollAction.class,
-                TransportSearchScrollScanAction.class,
-                TransportSearchScrollQueryThenFetchAction.class,
-                TransportSearchScrollQueryAndFetchAction.class
-        );
-        registerAction(MultiSearchAction.INSTANCE, TransportMultiSearchAction.class);
         registerAction(PercolateAction.INSTANCE, TransportPercolateAction.class);
         registerAction(MultiPercolateAction.INSTANCE, TransportMultiPercolateAction.class, TransportShardMultiPercolateAction.class);
         registerAction(ExplainAction.INSTANCE, TransportExplainAction.class);
-        registerAction(ClearScrollAction.INSTANCE, TransportClearScrollAction.class);
         registerAction(RecoveryAction.INSTANCE, TransportRecoveryAction.class);
         registerAction(RenderSearchTemplateAction.INSTANCE, TransportRenderSearchTemplateAction.class);
 
@@ -2,11 +2,12 @@ package org.xbib.elasticsearch.helper.client.http;
 
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
-import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.bulk.BackoffPolicy;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -71,6 +72,7 @@ public class HttpBulkProcessor implements Closeable {
         private int bulkActions = 1000;
         private ByteSizeValue bulkSize = new ByteSizeValue(5, ByteSizeUnit.MB);
         private TimeValue flushInterval = null;
+        private BackoffPolicy backoffPolicy = BackoffPolicy.exponentialBackoff();
 
         /**
          * Creates a builder of bulk processor with the client to use and the listener that will be used
@@ -139,12 +141,30 @@ public class HttpBulkProcessor implements Closeable {
             return this;
         }
 
+        /**
+         * Sets a custom backoff policy. The backoff policy defines how the bulk processor should handle
+         * bulk requests or bulk items that are rejected, by the cluster with 429, or by the client because the
+         * circuit breaker of the host is open or too many requests are outstanding. A rejected bulk request
+         * keeps its concurrent request slot while backing off, so no new bulk requests pile up. Defaults to
+         * {@link BackoffPolicy#exponentialBackoff()}. Use {@link BackoffPolicy#noBackoff()} to fail immediately.
+         * @param backoffPolicy backoff policy
+         * @return this builder
+         */
+        public Builder setBackoffPolicy(BackoffPolicy backoffPolicy) {
+            if (backoffPolicy == null) {
+                throw new NullPointerException("backoffPolicy must not be null");
+            }
+            this.backoffPolicy = backoffPolicy;
+            return this;
+        }
+
         /**
          * Builds a new bulk processor.
          * @return a HTTP bulk processor
          */
         public HttpBulkProcessor build() {
-            return new HttpBulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval);
+            return new HttpBulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval,
+                    backoffPolicy);
         }
     }
 
@@ -162,6 +182,7 @@ public class HttpBulkProcessor implements Closeable {
     private final int concurrentRequests;
     private final int bulkActions;
     private final long bulkSize;
+    private final HttpBulkRetry retry;
 
     private final Semaphore semaphore;
     private final ScheduledThreadPoolExecutor scheduler;
@@ -173,12 +194,14 @@ public class HttpBulkProcessor implements Closeable {
 
     private volatile boolean closed = false;
 
-    HttpBulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval) {
+    HttpBulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval,
+                      BackoffPolicy backoffPolicy) {
         this.client = client;
         this.listener = listener;
         this.concurrentRequests = concurrentRequests;
         this.bulkActions = bulkActions;
         this.bulkSize = bulkSize.bytes();
+        this.retry = new HttpBulkRetry(client, backoffPolicy);
 
         this.semaphore = new Semaphore(concurrentRequests);
         this.bulkRequest = new BulkRequest();
@@ -315,7 +338,9 @@ public class HttpBulkProcessor implements Closeable {
             boolean afterCalled = false;
             try {
                 listener.beforeBulk(executionId, bulkRequest);
-                BulkResponse bulkItemResponses = client.execute(BulkAction.INSTANCE, bulkRequest).actionGet();
+                PlainActionFuture<BulkResponse> future = PlainActionFuture.newFuture();
+                retry.execute(bulkRequest, future);
+                BulkResponse bulkItemResponses = future.actionGet();
                 afterCalled = true;
                 listener.afterBulk(executionId, bulkRequest, bulkItemResponses);
             } catch (Exception e) {
@@ -328,7 +353,7 @@ public class HttpBulkProcessor implements Closeable {
             try {
                 listener.beforeBulk(executionId, bulkRequest);
                 semaphore.acquire();
-                client.execute(BulkAction.INSTANCE, bulkRequest, new ActionListener<BulkResponse>() {
+                retry.execute(bulkRequest, new ActionListener<BulkResponse>() {
                     @Override
                     public void onResponse(BulkResponse response) {
                         try {
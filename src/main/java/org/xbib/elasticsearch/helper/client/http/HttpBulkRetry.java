@@ -0,0 +1,244 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionWriteResponse;
+import org.elasticsearch.action.DocumentRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes bulk requests over HTTP and resolves rejections and oversized requests.
+ *
+ * If the whole bulk request is rejected, by a 429 or 503 response, or by the circuit breaker of the client,
+ * it is sent again after a backoff. A delay requested by a {@code Retry-After} header is honoured.
+ * If single items are rejected with 429, only these items are sent again. If the bulk request is too
+ * large (413), it is split into halves which are sent separately.
+ *
+ * The item responses of all attempts are merged into a single bulk response, in the order of the original request.
+ */
+public class HttpBulkRetry {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(HttpBulkRetry.class.getName());
+
+    private final ElasticsearchClient client;
+
+    private final BackoffPolicy backoffPolicy;
+
+    public HttpBulkRetry(ElasticsearchClient client, BackoffPolicy backoffPolicy) {
+        this.client = client;
+        this.backoffPolicy = backoffPolicy;
+    }
+
+    public void execute(BulkRequest bulkRequest, ActionListener<BulkResponse> listener) {
+        new Execution(bulkRequest, listener).start();
+    }
+
+    private class Execution {
+
+        private final BulkRequest bulkRequest;
+
+        private final ActionListener<BulkResponse> listener;
+
+        private final BulkItemResponse[] items;
+
+        private final Iterator<TimeValue> backoff;
+
+        private final AtomicInteger pending;
+
+        private final long startNanos;
+
+        Execution(BulkRequest bulkRequest, ActionListener<BulkResponse> listener) {
+            this.bulkRequest = bulkRequest;
+            this.listener = listener;
+            this.items = new BulkItemResponse[bulkRequest.numberOfActions()];
+            this.backoff = backoffPolicy.iterator();
+            this.pending = new AtomicInteger(1);
+            this.startNanos = System.nanoTime();
+        }
+
+        void start() {
+            int[] positions = new int[items.length];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            send(bulkRequest, positions, true);
+        }
+
+        void send(BulkRequest request, int[] positions, boolean root) {
+            client.execute(BulkAction.INSTANCE, request, new Attempt(this, request, positions, root));
+        }
+
+        void schedule(final BulkRequest request, final int[] positions, final boolean root, TimeValue delay) {
+            try {
+                client.threadPool().schedule(delay, ThreadPool.Names.GENERIC, new Runnable() {
+                    @Override
+                    public void run() {
+                        send(request, positions, root);
+                    }
+                });
+            } catch (EsRejectedExecutionException e) {
+                // the thread pool is shutting down
+                if (root) {
+                    listener.onFailure(e);
+                } else {
+                    failItems(request, positions, e);
+                    complete();
+                }
+            }
+        }
+
+        synchronized TimeValue nextDelay(TimeValue retryAfter) {
+            if (!backoff.hasNext()) {
+                return null;
+            }
+            TimeValue delay = backoff.next();
+            return retryAfter != null && retryAfter.millis() > delay.millis() ? retryAfter : delay;
+        }
+
+        void failItems(BulkRequest request, int[] positions, Throwable t) {
+            List<ActionRequest> requests = request.requests();
+            for (int i = 0; i < positions.length; i++) {
+                ActionRequest actionRequest = requests.get(i);
+                String opType = actionRequest instanceof IndexRequest ? ((IndexRequest) actionRequest).opType().lowercase() :
+                        actionRequest instanceof DeleteRequest ? "delete" : "update";
+                DocumentRequest<?> documentRequest = (DocumentRequest<?>) actionRequest;
+                items[positions[i]] = new BulkItemResponse(positions[i], opType,
+                        new BulkItemResponse.Failure(documentRequest.index(), documentRequest.type(), documentRequest.id(), t));
+            }
+        }
+
+        void complete() {
+            if (pending.decrementAndGet() == 0) {
+                long tookInMillis = (System.nanoTime() - startNanos) / 1000000L;
+                listener.onResponse(new BulkResponse(items, tookInMillis));
+            }
+        }
+    }
+
+    private class Attempt implements ActionListener<BulkResponse> {
+
+        private final Execution execution;
+
+        private final BulkRequest request;
+
+        private final int[] positions;
+
+        private final boolean root;
+
+        Attempt(Execution execution, BulkRequest request, int[] positions, boolean root) {
+            this.execution = execution;
+            this.request = request;
+            this.positions = positions;
+            this.root = root;
+        }
+
+        @Override
+        public void onResponse(BulkResponse bulkResponse) {
+            BulkItemResponse[] responses = bulkResponse.getItems();
+            if (responses.length != positions.length) {
+                onFailure(new IllegalStateException("bulk response has " + responses.length +
+                        " items, but " + positions.length + " were requested"));
+                return;
+            }
+            List<Integer> rejected = new ArrayList<>();
+            for (int i = 0; i < responses.length; i++) {
+                BulkItemResponse response = responses[i];
+                int pos = positions[i];
+                if (response.isFailed()) {
+                    if (response.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                        rejected.add(i);
+                    }
+                    execution.items[pos] = new BulkItemResponse(pos, response.getOpType(), response.getFailure());
+                } else {
+                    execution.items[pos] = new BulkItemResponse(pos, response.getOpType(),
+                            (ActionWriteResponse) response.getResponse());
+                }
+            }
+            if (!rejected.isEmpty()) {
+                TimeValue delay = execution.nextDelay(null);
+                if (delay != null) {
+                    BulkRequest retryRequest = newBulkRequest();
+                    int[] retryPositions = new int[rejected.size()];
+                    for (int i = 0; i < retryPositions.length; i++) {
+                        retryRequest.add(request.requests().get(rejected.get(i)));
+                        retryPositions[i] = positions[rejected.get(i)];
+                    }
+                    logger.debug("{} bulk items rejected, retrying in {}", rejected.size(), delay);
+                    execution.schedule(retryRequest, retryPositions, false, delay);
+                    return;
+                }
+            }
+            execution.complete();
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            Throwable cause = ExceptionsHelper.unwrapCause(e);
+            RestStatus status = ExceptionsHelper.status(cause);
+            if (cause instanceof EsRejectedExecutionException ||
+                    status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE) {
+                TimeValue retryAfter = cause instanceof HttpStatusException ? ((HttpStatusException) cause).getRetryAfter() : null;
+                TimeValue delay = execution.nextDelay(retryAfter);
+                if (delay != null) {
+                    logger.debug("bulk request rejected, retrying in {}: {}", delay, cause.getMessage());
+                    execution.schedule(request, positions, root, delay);
+                    return;
+                }
+            } else if (status == RestStatus.REQUEST_ENTITY_TOO_LARGE && request.numberOfActions() > 1) {
+                int half = request.numberOfActions() / 2;
+                BulkRequest first = newBulkRequest();
+                BulkRequest second = newBulkRequest();
+                int[] firstPositions = new int[half];
+                int[] secondPositions = new int[positions.length - half];
+                for (int i = 0; i < positions.length; i++) {
+                    if (i < half) {
+                        first.add(request.requests().get(i));
+                        firstPositions[i] = positions[i];
+                    } else {
+                        second.add(request.requests().get(i));
+                        secondPositions[i - half] = positions[i];
+                    }
+                }
+                logger.debug("bulk request of {} bytes too large, splitting {} actions",
+                        request.estimatedSizeInBytes(), request.numberOfActions());
+                execution.pending.incrementAndGet();
+                execution.send(first, firstPositions, false);
+                execution.send(second, secondPositions, false);
+                return;
+            }
+            if (root) {
+                execution.listener.onFailure(e);
+            } else {
+                execution.failItems(request, positions, cause);
+                execution.complete();
+            }
+        }
+
+        private BulkRequest newBulkRequest() {
+            BulkRequest bulkRequest = new BulkRequest();
+            bulkRequest.timeout(request.timeout());
+            bulkRequest.refresh(request.refresh());
+            bulkRequest.consistencyLevel(request.consistencyLevel());
+            return bulkRequest;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelPipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An input stream over the content chunks of a HTTP response.
+ *
+ * Chunks are offered by the I/O thread and consumed by a reader thread while the response is still
+ * arriving. If more than the high watermark of bytes are queued, reading from the channel is suspended
+ * until the reader has drained the queue below the low watermark. While reading is suspended, the read timeout
+ * handler of the channel is removed, so a slow reader does not let the request time out.
+ */
+public class HttpChunkedInputStream extends InputStream {
+
+    /**
+     * The name of the read timeout handler in the channel pipeline.
+     */
+    public static final String TIMEOUT_HANDLER = "timeout";
+
+    private static final ChannelBuffer END = ChannelBuffers.EMPTY_BUFFER;
+
+    private final Channel channel;
+
+    private final BlockingQueue<ChannelBuffer> queue;
+
+    private final AtomicLong queuedBytes;
+
+    private final long highWatermark;
+
+    private final long lowWatermark;
+
+    private ChannelBuffer current;
+
+    private volatile Throwable failure;
+
+    private volatile boolean finished;
+
+    private boolean eof;
+
+    private boolean suspended;
+
+    private ChannelHandler timeoutHandler;
+
+    public HttpChunkedInputStream(Channel channel, long highWatermark) {
+        this.channel = channel;
+        this.queue = new LinkedBlockingQueue<>();
+        this.queuedBytes = new AtomicLong();
+        this.highWatermark = highWatermark;
+        this.lowWatermark = highWatermark / 2;
+    }
+
+    /**
+     * Offer a content chunk. Called by the I/O thread.
+     *
+     * @param buffer the chunk content
+     */
+    public void offer(ChannelBuffer buffer) {
+        if (finished || !buffer.readable()) {
+            return;
+        }
+        queue.add(buffer);
+        if (queuedBytes.addAndGet(buffer.readableBytes()) > highWatermark) {
+            suspend();
+        }
+    }
+
+    /**
+     * Signal the end of the content.
+     */
+    public void finish() {
+        if (!finished) {
+            finished = true;
+            queue.add(END);
+        }
+    }
+
+    /**
+     * Signal a failure to the reader.
+     *
+     * @param t the failure
+     */
+    public void fail(Throwable t) {
+        if (!finished) {
+            failure = t;
+            finish();
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureReadable()) {
+            return -1;
+        }
+        return current.readByte() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureReadable()) {
+            return -1;
+        }
+        int n = Math.min(len, current.readableBytes());
+        current.readBytes(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current != null ? current.readableBytes() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        eof = true;
+        current = null;
+        queue.clear();
+        if (!finished && channel != null) {
+            channel.close();
+        }
+    }
+
+    private boolean ensureReadable() throws IOException {
+        while (current == null || !current.readable()) {
+            if (eof) {
+                return false;
+            }
+            try {
+                current = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (current == END) {
+                eof = true;
+                current = null;
+                if (failure != null) {
+                    throw new IOException(failure);
+                }
+                return false;
+            }
+            long remaining = queuedBytes.addAndGet(-current.readableBytes());
+            if (remaining < lowWatermark) {
+                resume();
+            }
+        }
+        return true;
+    }
+
+    private synchronized void suspend() {
+        if (suspended || channel == null) {
+            return;
+        }
+        suspended = true;
+        ChannelPipeline pipeline = channel.getPipeline();
+        timeoutHandler = pipeline.get(TIMEOUT_HANDLER);
+        if (timeoutHandler != null) {
+            pipeline.remove(timeoutHandler);
+        }
+        channel.setReadable(false);
+    }
+
+    private synchronized void resume() {
+        if (!suspended) {
+            return;
+        }
+        suspended = false;
+        if (timeoutHandler != null) {
+            // the read timeout starts again from now
+            channel.getPipeline().addFirst(TIMEOUT_HANDLER, timeoutHandler);
+            timeoutHandler = null;
+        }
+        channel.setReadable(true);
+    }
+}
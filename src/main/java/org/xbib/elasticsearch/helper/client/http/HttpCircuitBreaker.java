@@ -0,0 +1,268 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.jboss.netty.channel.ChannelException;
+import org.xbib.metrics.CountMetric;
+import org.xbib.metrics.Gauge;
+import org.xbib.metrics.Metric;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricSet;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A circuit breaker for the requests to a single host.
+ *
+ * The number of outstanding requests to the host is capped. The outcomes of the requests are evaluated
+ * in windows of a fixed number of requests. If the ratio of failed requests in a window reaches the
+ * error threshold, the breaker opens, and all requests are rejected without being sent. Only transport
+ * errors, 5xx responses and requests that take longer than the latency threshold count as failed, client
+ * errors like 404 mean the host is healthy. After the open time, a single probe request is let through.
+ * If the probe succeeds, the breaker closes, otherwise it opens again. Requests that were admitted before
+ * the breaker opened do not decide about the probe.
+ *
+ * Rejected requests fail with {@link EsRejectedExecutionException}, so callers like
+ * {@link HttpBulkProcessor} can back off.
+ */
+public class HttpCircuitBreaker implements MetricSet {
+
+    public static final String MAX_OUTSTANDING_REQUESTS = "http.client.max_outstanding_requests";
+
+    public static final String BREAKER_WINDOW = "http.client.breaker.window";
+
+    public static final String BREAKER_ERROR_THRESHOLD = "http.client.breaker.error_threshold";
+
+    public static final String BREAKER_LATENCY_THRESHOLD = "http.client.breaker.latency_threshold";
+
+    public static final String BREAKER_OPEN_TIME = "http.client.breaker.open_time";
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String host;
+
+    private final int maxOutstanding;
+
+    private final int window;
+
+    private final double errorThreshold;
+
+    private final long latencyThresholdNanos;
+
+    private final long openTimeNanos;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final CountMetric rejected = new CountMetric();
+
+    private final CountMetric trips = new CountMetric();
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private boolean probing;
+
+    private int calls;
+
+    private int failures;
+
+    public HttpCircuitBreaker(Settings settings, String host) {
+        this.host = host;
+        this.maxOutstanding = settings.getAsInt(MAX_OUTSTANDING_REQUESTS, 64);
+        this.window = settings.getAsInt(BREAKER_WINDOW, 20);
+        this.errorThreshold = settings.getAsDouble(BREAKER_ERROR_THRESHOLD, 0.5d);
+        this.latencyThresholdNanos = settings.getAsTime(BREAKER_LATENCY_THRESHOLD, TimeValue.timeValueSeconds(30)).nanos();
+        this.openTimeNanos = settings.getAsTime(BREAKER_OPEN_TIME, TimeValue.timeValueSeconds(5)).nanos();
+        if (maxOutstanding < 1) {
+            throw new IllegalArgumentException("invalid max outstanding requests: " + maxOutstanding);
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("invalid breaker window: " + window);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Wrap the listener of a request. The request is admitted if the breaker is not open and the cap of
+     * outstanding requests is not reached. The outcome of the request is recorded when the listener is notified.
+     *
+     * @param listener the listener of the request
+     * @param <Response> the response type
+     * @return the wrapped listener
+     * @throws EsRejectedExecutionException if the request is not admitted
+     */
+    public <Response extends ActionResponse> ActionListener<Response> admit(final ActionListener<Response> listener) {
+        final boolean probe;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < openTimeNanos) {
+                    rejected.inc();
+                    throw new EsRejectedExecutionException("circuit breaker for " + host + " is open");
+                }
+                state = State.HALF_OPEN;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probing) {
+                    rejected.inc();
+                    throw new EsRejectedExecutionException("circuit breaker for " + host + " is half open");
+                }
+                probing = true;
+            }
+            probe = probing;
+        }
+        if (outstanding.incrementAndGet() > maxOutstanding) {
+            outstanding.decrementAndGet();
+            if (probe) {
+                synchronized (this) {
+                    probing = false;
+                }
+            }
+            rejected.inc();
+            throw new EsRejectedExecutionException("too many outstanding requests to " + host + " (max " + maxOutstanding + ")");
+        }
+        return new Admission<>(listener, probe);
+    }
+
+    /**
+     * Check if a failed request means the host is unhealthy.
+     *
+     * @param status the HTTP status of the response, or 0 if no response has been received
+     * @param e the failure
+     * @return true for transport errors and 5xx responses
+     */
+    static boolean isHostFailure(int status, Throwable e) {
+        if (status > 0) {
+            return status >= 500;
+        }
+        // invalid requests or requests that can not be built never reach the host
+        return !(e instanceof ActionRequestValidationException) &&
+                (e instanceof IOException || e instanceof ChannelException);
+    }
+
+    private void record(long nanos, boolean failed, boolean probe) {
+        outstanding.decrementAndGet();
+        failed = failed || nanos > latencyThresholdNanos;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                // only the probe decides, late requests from before the breaker opened are ignored
+                if (probe) {
+                    probing = false;
+                    if (failed) {
+                        open();
+                    } else {
+                        state = State.CLOSED;
+                        calls = 0;
+                        failures = 0;
+                    }
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                return;
+            }
+            calls++;
+            if (failed) {
+                failures++;
+            }
+            if (calls >= window) {
+                if ((double) failures / calls >= errorThreshold) {
+                    open();
+                }
+                calls = 0;
+                failures = 0;
+            }
+        }
+    }
+
+    /**
+     * The listener of an admitted request. The HTTP status is set when the response arrives, so that
+     * failures can be classified.
+     */
+    class Admission<Response extends ActionResponse> implements ActionListener<Response> {
+
+        private final ActionListener<Response> listener;
+
+        private final boolean probe;
+
+        private final long start;
+
+        private final AtomicBoolean done;
+
+        private volatile int status;
+
+        Admission(ActionListener<Response> listener, boolean probe) {
+            this.listener = listener;
+            this.probe = probe;
+            this.start = System.nanoTime();
+            this.done = new AtomicBoolean();
+        }
+
+        void setStatus(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public void onResponse(Response response) {
+            if (done.compareAndSet(false, true)) {
+                record(System.nanoTime() - start, status >= 500, probe);
+            }
+            listener.onResponse(response);
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            if (done.compareAndSet(false, true)) {
+                record(System.nanoTime() - start, isHostFailure(status, e), probe);
+            }
+            listener.onFailure(e);
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        trips.inc();
+    }
+
+    @Override
+    public Map<MetricName, Metric> getMetrics() {
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(MetricName.build("http", "client", "breaker", host, "outstanding"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getOutstanding();
+            }
+        });
+        metrics.put(MetricName.build("http", "client", "breaker", host, "state"), new Gauge<String>() {
+            @Override
+            public String getValue() {
+                return getState().name().toLowerCase();
+            }
+        });
+        metrics.put(MetricName.build("http", "client", "breaker", host, "rejected"), rejected);
+        metrics.put(MetricName.build("http", "client", "breaker", host, "trips"), trips);
+        return metrics;
+    }
+}
@@ -0,0 +1,377 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientBossPool;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.ThreadNameDeterminer;
+import org.jboss.netty.util.Timer;
+import org.xbib.metrics.Gauge;
+import org.xbib.metrics.Metric;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricSet;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide Netty resources shared by HTTP clients.
+ *
+ * The boss and worker pools are bounded and created on first use. Clients with the same pool settings share
+ * one instance, clients asking for other pool sizes or another buffer allocation get their own instance.
+ * Every client must call {@link #release()} exactly once after {@link #acquire(Settings)},
+ * the pools of an instance are shut down when the last of its clients releases them.
+ */
+public final class HttpClientResources implements MetricSet {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(HttpClientResources.class.getName());
+
+    public static final String BOSS_THREADS = "http.client.boss_threads";
+
+    public static final String WORKER_THREADS = "http.client.worker_threads";
+
+    public static final String DIRECT_BUFFERS = "http.client.direct_buffers";
+
+    public static final String BUFFER_CHUNK_SIZE = "http.client.buffer_chunk_size";
+
+    private static final Map<Key, HttpClientResources> instances = new HashMap<>();
+
+    private final Key key;
+
+    private int refCount;
+
+    private final int bossCount;
+
+    private final int workerCount;
+
+    private final ExecutorService bossExecutor;
+
+    private final ExecutorService workerExecutor;
+
+    private final HashedWheelTimer timer;
+
+    private final NioClientSocketChannelFactory channelFactory;
+
+    private final CountingChannelBufferFactory bufferFactory;
+
+    private final ChannelGroup channels;
+
+    private final AtomicInteger bossThreads;
+
+    private final AtomicInteger workerThreads;
+
+    private volatile boolean released;
+
+    private HttpClientResources(Settings settings, Key key) {
+        this.key = key;
+        this.bossCount = key.bossCount;
+        this.workerCount = key.workerCount;
+        this.bossThreads = new AtomicInteger();
+        this.workerThreads = new AtomicInteger();
+        this.bossExecutor = Executors.newCachedThreadPool(new CountingThreadFactory(
+                EsExecutors.daemonThreadFactory(settings, "http_client_boss"), bossThreads));
+        this.workerExecutor = Executors.newCachedThreadPool(new CountingThreadFactory(
+                EsExecutors.daemonThreadFactory(settings, "http_client_worker"), workerThreads));
+        this.timer = new HashedWheelTimer(EsExecutors.daemonThreadFactory(settings, "http_client_timer"));
+        this.channelFactory = new NioClientSocketChannelFactory(
+                new NioClientBossPool(bossExecutor, bossCount, timer, ThreadNameDeterminer.CURRENT),
+                new NioWorkerPool(workerExecutor, workerCount, ThreadNameDeterminer.CURRENT));
+        ChannelBufferFactory delegate = key.directBuffers ?
+                new DirectChannelBufferFactory(key.bufferChunkSize) :
+                HeapChannelBufferFactory.getInstance();
+        this.bufferFactory = new CountingChannelBufferFactory(delegate);
+        this.channels = new DefaultChannelGroup("http_client");
+    }
+
+    /**
+     * Acquire the shared resources for the pool settings. Resources are allocated if no other client
+     * holds resources with the same pool settings.
+     *
+     * @param settings the settings
+     * @return the shared resources
+     */
+    public static synchronized HttpClientResources acquire(Settings settings) {
+        Key key = new Key(settings.getAsInt(BOSS_THREADS, 1),
+                settings.getAsInt(WORKER_THREADS, EsExecutors.boundedNumberOfProcessors(settings) * 2),
+                settings.getAsBoolean(DIRECT_BUFFERS, true),
+                settings.getAsBytesSize(BUFFER_CHUNK_SIZE, new ByteSizeValue(1024 * 1024)).bytesAsInt());
+        HttpClientResources resources = instances.get(key);
+        if (resources == null) {
+            resources = new HttpClientResources(settings, key);
+            instances.put(key, resources);
+            logger.debug("allocated shared http client resources, boss threads = {}, worker threads = {}",
+                    resources.bossCount, resources.workerCount);
+        }
+        resources.refCount++;
+        return resources;
+    }
+
+    /**
+     * Release the shared resources. When the last client has released the resources, all channels are closed
+     * and the thread pools are shut down.
+     */
+    public void release() {
+        synchronized (HttpClientResources.class) {
+            if (instances.get(key) != this || refCount == 0) {
+                return;
+            }
+            if (--refCount > 0) {
+                return;
+            }
+            instances.remove(key);
+            released = true;
+        }
+        channels.close().awaitUninterruptibly();
+        channelFactory.releaseExternalResources();
+        timer.stop();
+        logger.debug("released shared http client resources");
+    }
+
+    /**
+     * Check if the resources have been released by the last client. Released resources can not be used anymore,
+     * a client must acquire new resources.
+     *
+     * @return true if released
+     */
+    public boolean isReleased() {
+        return released;
+    }
+
+    public ClientSocketChannelFactory getChannelFactory() {
+        return channelFactory;
+    }
+
+    public ChannelBufferFactory getBufferFactory() {
+        return bufferFactory;
+    }
+
+    public Timer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Register a channel for bookkeeping. The channel is removed automatically when it is closed.
+     *
+     * @param channel the channel
+     */
+    public void register(Channel channel) {
+        channels.add(channel);
+        if (released) {
+            // released concurrently, the channel group has already been closed
+            channel.close();
+        }
+    }
+
+    public int getBossCount() {
+        return bossCount;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    @Override
+    public Map<MetricName, Metric> getMetrics() {
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(MetricName.build("http", "client", "boss", "threads", "max"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return bossCount;
+            }
+        });
+        metrics.put(MetricName.build("http", "client", "boss", "threads", "live"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return bossThreads.get();
+            }
+        });
+        metrics.put(MetricName.build("http", "client", "worker", "threads", "max"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return workerCount;
+            }
+        });
+        metrics.put(MetricName.build("http", "client", "worker", "threads", "live"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return workerThreads.get();
+            }
+        });
+        // open channels per worker thread, the NIO workers do not report their busy time
+        metrics.put(MetricName.build("http", "client", "worker", "channels"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return workerCount > 0 ? (double) channels.size() / workerCount : 0.0d;
+            }
+        });
+        metrics.put(MetricName.build("http", "client", "channels", "open"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return channels.size();
+            }
+        });
+        // Netty 3 buffers are not released explicitly, so only the totals since allocation can be counted
+        metrics.put(MetricName.build("http", "client", "buffers", "allocated", "count"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return bufferFactory.count.get();
+            }
+        });
+        metrics.put(MetricName.build("http", "client", "buffers", "allocated", "bytes"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return bufferFactory.bytes.get();
+            }
+        });
+        // direct memory in use by the JVM, shrinks again when the buffer chunks are garbage collected
+        metrics.put(MetricName.build("http", "client", "buffers", "direct", "used"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+                    if ("direct".equals(pool.getName())) {
+                        return pool.getMemoryUsed();
+                    }
+                }
+                return 0L;
+            }
+        });
+        return metrics;
+    }
+
+    private static class Key {
+
+        private final int bossCount;
+
+        private final int workerCount;
+
+        private final boolean directBuffers;
+
+        private final int bufferChunkSize;
+
+        Key(int bossCount, int workerCount, boolean directBuffers, int bufferChunkSize) {
+            this.bossCount = bossCount;
+            this.workerCount = workerCount;
+            this.directBuffers = directBuffers;
+            this.bufferChunkSize = bufferChunkSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return bossCount == other.bossCount && workerCount == other.workerCount &&
+                    directBuffers == other.directBuffers && bufferChunkSize == other.bufferChunkSize;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 31 * bossCount + workerCount;
+            h = 31 * h + (directBuffers ? 1 : 0);
+            return 31 * h + bufferChunkSize;
+        }
+    }
+
+    private static class CountingThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory threadFactory;
+
+        private final AtomicInteger live;
+
+        CountingThreadFactory(ThreadFactory threadFactory, AtomicInteger live) {
+            this.threadFactory = threadFactory;
+            this.live = live;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    live.incrementAndGet();
+                    try {
+                        r.run();
+                    } finally {
+                        live.decrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Delegates buffer allocation and counts the total number of allocations and the total allocated bytes.
+     * With direct buffers, small allocations are sliced from preallocated chunks of the delegate factory.
+     */
+    private static class CountingChannelBufferFactory implements ChannelBufferFactory {
+
+        private final ChannelBufferFactory delegate;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        CountingChannelBufferFactory(ChannelBufferFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        private ChannelBuffer count(ChannelBuffer buffer) {
+            count.incrementAndGet();
+            bytes.addAndGet(buffer.capacity());
+            return buffer;
+        }
+
+        @Override
+        public ChannelBuffer getBuffer(int capacity) {
+            return count(delegate.getBuffer(capacity));
+        }
+
+        @Override
+        public ChannelBuffer getBuffer(ByteOrder endianness, int capacity) {
+            return count(delegate.getBuffer(endianness, capacity));
+        }
+
+        @Override
+        public ChannelBuffer getBuffer(byte[] array, int offset, int length) {
+            return count(delegate.getBuffer(array, offset, length));
+        }
+
+        @Override
+        public ChannelBuffer getBuffer(ByteOrder endianness, byte[] array, int offset, int length) {
+            return count(delegate.getBuffer(endianness, array, offset, length));
+        }
+
+        @Override
+        public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+            return count(delegate.getBuffer(nioBuffer));
+        }
+
+        @Override
+        public ByteOrder getDefaultOrder() {
+            return delegate.getDefaultOrder();
+        }
+    }
+}
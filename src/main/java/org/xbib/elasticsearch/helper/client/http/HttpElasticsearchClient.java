@@ -15,38 +15,49 @@ import org.elasticsearch.action.admin.indices.refresh.RefreshAction;
 import org.elasticsearch.action.admin.indices.settings.put.HttpUpdateSettingsAction;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsAction;
 import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.get.HttpGetAction;
+import org.elasticsearch.action.get.HttpMultiGetAction;
+import org.elasticsearch.action.get.MultiGetAction;
+import org.elasticsearch.action.search.ClearScrollAction;
+import org.elasticsearch.action.search.HttpClearScrollAction;
+import org.elasticsearch.action.search.HttpMultiSearchAction;
 import org.elasticsearch.action.search.HttpSearchAction;
+import org.elasticsearch.action.search.HttpSearchScrollAction;
+import org.elasticsearch.action.search.MultiSearchAction;
 import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchScrollAction;
 import org.elasticsearch.client.support.AbstractClient;
 import org.elasticsearch.client.support.Headers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
-import org.jboss.netty.channel.ExceptionEvent;
-import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
-import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
 import org.jboss.netty.handler.codec.http.HttpClientCodec;
 import org.jboss.netty.handler.codec.http.HttpContentDecompressor;
-import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
 import org.elasticsearch.action.admin.indices.create.HttpCreateIndexAction;
 import org.elasticsearch.action.bulk.HttpBulkAction;
+import org.xbib.elasticsearch.helper.network.DnsCache;
+import org.xbib.metrics.MetricRegistry;
+import org.xbib.metrics.MetricSet;
 
-import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class HttpElasticsearchClient extends AbstractClient {
 
@@ -64,6 +75,20 @@ public class HttpElasticsearchClient extends AbstractClient {
         }
     }
 
+    final MetricRegistry metricRegistry;
+
+    final HttpRequestCoalescer coalescer;
+
+    final Map<String, HttpCircuitBreaker> breakers;
+
+    final TimeValue requestTimeout;
+
+    final HttpClientResources resources;
+
+    private final DnsCache dnsCache;
+
+    volatile boolean closed;
+
     ClientBootstrap bootstrap;
 
     URL url;
@@ -128,6 +153,11 @@ public class HttpElasticsearchClient extends AbstractClient {
             client.registerAction(ClusterUpdateSettingsAction.INSTANCE, HttpClusterUpdateSettingsAction.class);
             client.registerAction(UpdateSettingsAction.INSTANCE, HttpUpdateSettingsAction.class);
             client.registerAction(SearchAction.INSTANCE, HttpSearchAction.class);
+            client.registerAction(SearchScrollAction.INSTANCE, HttpSearchScrollAction.class);
+            client.registerAction(ClearScrollAction.INSTANCE, HttpClearScrollAction.class);
+            client.registerAction(MultiSearchAction.INSTANCE, HttpMultiSearchAction.class);
+            client.registerAction(GetAction.INSTANCE, HttpGetAction.class);
+            client.registerAction(MultiGetAction.INSTANCE, HttpMultiGetAction.class);
 
             return client;
         }
@@ -139,18 +169,58 @@ public class HttpElasticsearchClient extends AbstractClient {
 
     private HttpElasticsearchClient(Settings settings, ThreadPool threadPool, Headers headers, URL url) {
         super(settings, threadPool, headers);
-        this.contextMap = Maps.newHashMap();
-        this.bootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
-                Executors.newCachedThreadPool(),
-                Executors.newCachedThreadPool()));
+        this.contextMap = new ConcurrentHashMap<>();
+        this.resources = HttpClientResources.acquire(settings);
+        this.metricRegistry = new MetricRegistry();
+        metricRegistry.registerAll(resources);
+        this.coalescer = new HttpRequestCoalescer(settings, threadPool, this);
+        metricRegistry.registerAll(coalescer);
+        this.breakers = new ConcurrentHashMap<>();
+        this.requestTimeout = settings.getAsTime("http.client.request_timeout", TimeValue.timeValueMillis(0));
+        this.dnsCache = DnsCache.getInstance(settings);
+        this.bootstrap = new ClientBootstrap(resources.getChannelFactory());
         bootstrap.setPipelineFactory(new HttpClientPipelineFactory());
         bootstrap.setOption("tcpNoDelay", true);
+        bootstrap.setOption("bufferFactory", resources.getBufferFactory());
         this.url = url;
     }
 
     @Override
-    public void close() {
-        bootstrap.releaseExternalResources();
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            resources.release();
+        }
+    }
+
+    public HttpClientResources getResources() {
+        return resources;
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * Get the circuit breaker of a host. Breakers are created on first use.
+     *
+     * @param url the URL of the host
+     * @return the circuit breaker
+     */
+    public HttpCircuitBreaker getCircuitBreaker(URL url) {
+        String host = url.getHost() + ":" + url.getPort();
+        HttpCircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            synchronized (breakers) {
+                breaker = breakers.get(host);
+                if (breaker == null) {
+                    breaker = new HttpCircuitBreaker(settings, host);
+                    metricRegistry.registerAll(breaker);
+                    breakers.put(host, breaker);
+                }
+            }
+        }
+        return breaker;
     }
 
     @SuppressWarnings("unchecked")
@@ -164,22 +234,44 @@ public class HttpElasticsearchClient extends AbstractClient {
         if (httpAction == null) {
             throw new IllegalStateException("failed to find action [" + action + "] to execute");
         }
+        if (closed) {
+            listener.onFailure(new IllegalStateException("http client is closed"));
+            return;
+        }
+        if (coalescer.offer(action, request, listener)) {
+            return;
+        }
+        try {
+            listener = getCircuitBreaker(url).admit(listener);
+        } catch (EsRejectedExecutionException e) {
+            listener.onFailure(e);
+            return;
+        }
         HttpInvocationContext<Request, Response> httpInvocationContext = new HttpInvocationContext(httpAction, listener, new LinkedList<>(), request);
+        InetSocketAddress address;
         try {
             httpInvocationContext.httpRequest = httpAction.createHttpRequest(this.url, request);
-        } catch (IOException e) {
+            // answered from the cache after the first lookup
+            address = new InetSocketAddress(dnsCache.resolve(url.getHost()), url.getPort());
+        } catch (Exception e) {
             logger.error(e.getMessage(), e);
+            listener.onFailure(e);
+            return;
         }
-        ChannelFuture future = bootstrap.connect(new InetSocketAddress(url.getHost(), url.getPort()));
+        ChannelFuture future = bootstrap.connect(address);
         future.awaitUninterruptibly();
         if (!future.isSuccess()) {
-            bootstrap.releaseExternalResources();
             logger.error("can't connect to {}", url);
+            listener.onFailure(future.getCause());
         } else {
             Channel channel = future.getChannel();
+            resources.register(channel);
             httpInvocationContext.setChannel(channel);
             contextMap.put(channel, httpInvocationContext);
             channel.getConfig().setConnectTimeoutMillis(settings.getAsInt("http.client.timeout", 5000));
+            if (httpAction.isStreaming()) {
+                channel.getPipeline().remove("aggregator");
+            }
             httpAction.execute(httpInvocationContext, listener);
         }
     }
@@ -189,6 +281,9 @@ public class HttpElasticsearchClient extends AbstractClient {
                                                                                                 Class<? extends HttpAction<Request, Response>> httpAction) {
         try {
             HttpAction<Request, Response> instance = httpAction.getDeclaredConstructor(Settings.class).newInstance(settings);
+            if (instance instanceof MetricSet) {
+                metricRegistry.registerAll((MetricSet) instance);
+            }
             actionMap.put(action.name(), new ActionEntry<>(action, instance));
         } catch (NoSuchMethodException | InvocationTargetException | InstantiationException | IllegalAccessException e ) {
             logger.error(e.getMessage(), e);
@@ -199,52 +294,15 @@ public class HttpElasticsearchClient extends AbstractClient {
 
         public ChannelPipeline getPipeline() throws Exception {
             ChannelPipeline pipeline = Channels.pipeline();
+            if (requestTimeout.millis() > 0) {
+                pipeline.addLast(HttpChunkedInputStream.TIMEOUT_HANDLER, new ReadTimeoutHandler(resources.getTimer(), requestTimeout.millis(), TimeUnit.MILLISECONDS));
+            }
             pipeline.addLast("codec", new HttpClientCodec());
             pipeline.addLast("aggregator", new HttpChunkAggregator(settings.getAsInt("http.client.maxchunksize", 10 * 1024 * 1024)));
             pipeline.addLast("inflater", new HttpContentDecompressor());
-            pipeline.addLast("handler", new HttpResponseHandler());
+            pipeline.addLast("handler", new HttpResponseHandler(logger, contextMap, threadPool().generic(),
+                    settings.getAsBytesSize("http.client.stream_watermark", new ByteSizeValue(1024 * 1024)).bytes()));
             return pipeline;
         }
     }
-
-    class HttpResponseHandler<Request extends ActionRequest, Response extends ActionResponse> extends SimpleChannelUpstreamHandler {
-
-        @SuppressWarnings("unchecked")
-        @Override
-        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-            HttpInvocationContext<Request, Response> httpInvocationContext = contextMap.get(ctx.getChannel());
-            if (httpInvocationContext == null) {
-                throw new IllegalStateException("no context for channel?");
-            }
-            try {
-                if (e.getMessage() instanceof HttpResponse) {
-                    HttpResponse httpResponse = (HttpResponse) e.getMessage();
-                    HttpAction<Request, Response> action = httpInvocationContext.getHttpAction();
-                    ActionListener<Response> listener = httpInvocationContext.getListener();
-                    httpInvocationContext.httpResponse = httpResponse;
-                    if (httpResponse.getContent().readable() && listener != null && action != null) {
-                        listener.onResponse(action.createResponse(httpInvocationContext));
-                    }
-                }
-            } finally {
-                ctx.getChannel().close();
-                contextMap.remove(ctx.getChannel());
-            }
-        }
-
-        @SuppressWarnings("unchecked")
-        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
-            HttpInvocationContext<Request, Response> httpInvocationContext = contextMap.get(ctx.getChannel());
-            try {
-                if (httpInvocationContext != null && httpInvocationContext.getListener() != null) {
-                    httpInvocationContext.getListener().onFailure(e.getCause());
-                } else {
-                    logger.error(e.getCause().getMessage(), e.getCause());
-                }
-            } finally {
-                ctx.getChannel().close();
-                contextMap.remove(ctx.getChannel());
-            }
-        }
-    }
 }
@@ -26,6 +26,8 @@ public class HttpInvocationContext<Request extends ActionRequest, Response exten
 
     HttpResponse httpResponse;
 
+    private HttpChunkedInputStream inputStream;
+
     private long millis;
 
     HttpInvocationContext(HttpAction httpAction, ActionListener<Response> listener, List<HttpChunk> chunks, Request request) {
@@ -67,6 +69,19 @@ public class HttpInvocationContext<Request extends ActionRequest, Response exten
         return httpResponse;
     }
 
+    void setInputStream(HttpChunkedInputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * The content of the response, if the HTTP action is streaming.
+     *
+     * @return the input stream or null
+     */
+    public HttpChunkedInputStream getInputStream() {
+        return inputStream;
+    }
+
     public void setMillis(long millis) {
         this.millis = millis;
     }
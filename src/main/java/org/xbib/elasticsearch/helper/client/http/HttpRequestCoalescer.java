@@ -0,0 +1,287 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.GenericAction;
+import org.elasticsearch.action.get.GetAction;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetAction;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.MultiSearchAction;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.xbib.metrics.CountMetric;
+import org.xbib.metrics.Metric;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces single get and search requests that arrive within a short window into multi get
+ * and multi search requests, and dispatches the items of the multi response to the original listeners.
+ *
+ * Coalescing is disabled by default. It is enabled by setting a window, for example
+ * {@code http.client.coalesce_window: 2ms}. A batch is sent when the window has elapsed or when
+ * the batch has reached {@code http.client.coalesce_max_batch} requests.
+ *
+ * Only requests with default execution options are coalesced: gets without preference and refresh,
+ * and searches without scroll.
+ */
+public class HttpRequestCoalescer implements MetricSet {
+
+    public static final String COALESCE_WINDOW = "http.client.coalesce_window";
+
+    public static final String COALESCE_MAX_BATCH = "http.client.coalesce_max_batch";
+
+    private final ElasticsearchClient client;
+
+    private final ThreadPool threadPool;
+
+    private final TimeValue window;
+
+    private final int maxBatch;
+
+    private final CountMetric requests = new CountMetric();
+
+    private final CountMetric batches = new CountMetric();
+
+    private Batch<GetRequest, GetResponse> gets;
+
+    private Batch<SearchRequest, SearchResponse> searches;
+
+    public HttpRequestCoalescer(Settings settings, ThreadPool threadPool, ElasticsearchClient client) {
+        this.client = client;
+        this.threadPool = threadPool;
+        this.window = settings.getAsTime(COALESCE_WINDOW, TimeValue.timeValueMillis(0));
+        this.maxBatch = settings.getAsInt(COALESCE_MAX_BATCH, 100);
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("invalid coalesce max batch: " + maxBatch);
+        }
+    }
+
+    public boolean isEnabled() {
+        return window.millis() > 0;
+    }
+
+    /**
+     * Offer a request for coalescing.
+     *
+     * @param action the action
+     * @param request the request
+     * @param listener the listener of the request
+     * @return true if the request was taken over, false if the request must be executed by the caller
+     */
+    @SuppressWarnings("unchecked")
+    public <Request extends ActionRequest, Response extends ActionResponse> boolean offer(GenericAction<Request, Response> action,
+                                                                                         Request request,
+                                                                                         ActionListener<Response> listener) {
+        if (!isEnabled()) {
+            return false;
+        }
+        if (action == GetAction.INSTANCE && isCoalescable((GetRequest) request)) {
+            Batch<GetRequest, GetResponse> flush = null;
+            synchronized (this) {
+                if (gets == null) {
+                    gets = new GetBatch();
+                    gets.schedule();
+                }
+                gets.add((GetRequest) request, (ActionListener<GetResponse>) listener);
+                if (gets.size() >= maxBatch) {
+                    flush = gets;
+                    gets = null;
+                }
+            }
+            if (flush != null) {
+                flush.flush();
+            }
+            return true;
+        }
+        if (action == SearchAction.INSTANCE && isCoalescable((SearchRequest) request)) {
+            Batch<SearchRequest, SearchResponse> flush = null;
+            synchronized (this) {
+                if (searches == null) {
+                    searches = new SearchBatch();
+                    searches.schedule();
+                }
+                searches.add((SearchRequest) request, (ActionListener<SearchResponse>) listener);
+                if (searches.size() >= maxBatch) {
+                    flush = searches;
+                    searches = null;
+                }
+            }
+            if (flush != null) {
+                flush.flush();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Map<MetricName, Metric> getMetrics() {
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(MetricName.build("http", "client", "coalesce", "requests"), requests);
+        metrics.put(MetricName.build("http", "client", "coalesce", "batches"), batches);
+        return metrics;
+    }
+
+    private static boolean isCoalescable(GetRequest request) {
+        return request.preference() == null && !request.refresh() && request.realtime();
+    }
+
+    private static boolean isCoalescable(SearchRequest request) {
+        return request.scroll() == null && request.searchType() != SearchType.SCAN;
+    }
+
+    private synchronized void detach(Batch<?, ?> batch) {
+        if (gets == batch) {
+            gets = null;
+        } else if (searches == batch) {
+            searches = null;
+        }
+    }
+
+    private abstract class Batch<Request, Response> implements Runnable {
+
+        final List<Request> requestList = new ArrayList<>();
+
+        final List<ActionListener<Response>> listeners = new ArrayList<>();
+
+        private final AtomicBoolean flushed = new AtomicBoolean();
+
+        private ScheduledFuture<?> scheduledFuture;
+
+        void add(Request request, ActionListener<Response> listener) {
+            requestList.add(request);
+            listeners.add(listener);
+        }
+
+        int size() {
+            return requestList.size();
+        }
+
+        void schedule() {
+            scheduledFuture = threadPool.schedule(window, ThreadPool.Names.GENERIC, this);
+        }
+
+        @Override
+        public void run() {
+            detach(this);
+            flush();
+        }
+
+        void flush() {
+            if (!flushed.compareAndSet(false, true)) {
+                return;
+            }
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+            }
+            if (requestList.isEmpty()) {
+                return;
+            }
+            batches.inc();
+            requests.inc(requestList.size());
+            try {
+                execute();
+            } catch (Throwable t) {
+                onFailure(t);
+            }
+        }
+
+        void onFailure(Throwable t) {
+            for (ActionListener<Response> listener : listeners) {
+                listener.onFailure(t);
+            }
+        }
+
+        abstract void execute();
+    }
+
+    private class GetBatch extends Batch<GetRequest, GetResponse> {
+
+        @Override
+        void execute() {
+            MultiGetRequest multiGetRequest = new MultiGetRequest();
+            for (GetRequest getRequest : requestList) {
+                multiGetRequest.add(new MultiGetRequest.Item(getRequest.index(), getRequest.type(), getRequest.id())
+                        .routing(getRequest.routing())
+                        .fields(getRequest.fields())
+                        .version(getRequest.version())
+                        .versionType(getRequest.versionType())
+                        .fetchSourceContext(getRequest.fetchSourceContext()));
+            }
+            client.execute(MultiGetAction.INSTANCE, multiGetRequest, new ActionListener<MultiGetResponse>() {
+                @Override
+                public void onResponse(MultiGetResponse multiGetResponse) {
+                    MultiGetItemResponse[] items = multiGetResponse.getResponses();
+                    for (int i = 0; i < listeners.size(); i++) {
+                        ActionListener<GetResponse> listener = listeners.get(i);
+                        if (i >= items.length) {
+                            listener.onFailure(new IllegalStateException("no response for item " + i));
+                        } else if (items[i].isFailed()) {
+                            listener.onFailure(items[i].getFailure().getFailure());
+                        } else {
+                            listener.onResponse(items[i].getResponse());
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    GetBatch.this.onFailure(e);
+                }
+            });
+        }
+    }
+
+    private class SearchBatch extends Batch<SearchRequest, SearchResponse> {
+
+        @Override
+        void execute() {
+            MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+            for (SearchRequest searchRequest : requestList) {
+                multiSearchRequest.add(searchRequest);
+            }
+            client.execute(MultiSearchAction.INSTANCE, multiSearchRequest, new ActionListener<MultiSearchResponse>() {
+                @Override
+                public void onResponse(MultiSearchResponse multiSearchResponse) {
+                    MultiSearchResponse.Item[] items = multiSearchResponse.getResponses();
+                    for (int i = 0; i < listeners.size(); i++) {
+                        ActionListener<SearchResponse> listener = listeners.get(i);
+                        if (i >= items.length) {
+                            listener.onFailure(new IllegalStateException("no response for item " + i));
+                        } else if (items[i].isFailure()) {
+                            listener.onFailure(items[i].getFailure());
+                        } else {
+                            listener.onResponse(items[i].getResponse());
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    SearchBatch.this.onFailure(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.xbib.metrics.CountMetric;
+import org.xbib.metrics.Gauge;
+import org.xbib.metrics.Metric;
+import org.xbib.metrics.MetricName;
+import org.xbib.metrics.MetricSet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opt-in compression of HTTP request bodies. Compression is off unless {@code http.client.compression}
+ * is set to {@code gzip} or {@code deflate}.
+ *
+ * An Elasticsearch 2.x node only decompresses request bodies if it runs with {@code http.compression: true},
+ * otherwise it tries to parse the compressed bytes and rejects the request. Enable compression on the client
+ * only if all nodes the client talks to have HTTP compression enabled.
+ *
+ * The body is compressed while it is encoded, by wrapping the output stream of the request body.
+ * Bodies with an estimated size below the threshold are sent uncompressed.
+ */
+public class HttpRequestCompression implements MetricSet {
+
+    /**
+     * The request body compression, {@code none} (default), {@code gzip} or {@code deflate}.
+     * Requires {@code http.compression: true} on the Elasticsearch nodes.
+     */
+    public static final String COMPRESSION = "http.client.compression";
+
+    public static final String COMPRESSION_LEVEL = "http.client.compression_level";
+
+    public static final String COMPRESSION_THRESHOLD = "http.client.compression_threshold";
+
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final String encoding;
+
+    private final int level;
+
+    private final long threshold;
+
+    private final CountMetric requests = new CountMetric();
+
+    private final CountMetric uncompressedBytes = new CountMetric();
+
+    private final CountMetric compressedBytes = new CountMetric();
+
+    private final CountMetric cpuNanos = new CountMetric();
+
+    public HttpRequestCompression(Settings settings) {
+        String s = settings.get(COMPRESSION, "none").toLowerCase();
+        switch (s) {
+            case "none":
+            case "false":
+                this.encoding = null;
+                break;
+            case "true":
+            case HttpHeaders.Values.GZIP:
+                this.encoding = HttpHeaders.Values.GZIP;
+                break;
+            case HttpHeaders.Values.DEFLATE:
+                this.encoding = HttpHeaders.Values.DEFLATE;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown compression: " + s);
+        }
+        this.level = settings.getAsInt(COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION);
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+        this.threshold = settings.getAsBytesSize(COMPRESSION_THRESHOLD, new ByteSizeValue(4096)).bytes();
+    }
+
+    /**
+     * Check if a request body should be compressed.
+     *
+     * @param estimatedSize the estimated size of the uncompressed body in bytes
+     * @return true if the body should be compressed
+     */
+    public boolean isCompressing(long estimatedSize) {
+        return encoding != null && estimatedSize >= threshold;
+    }
+
+    /**
+     * The value for the content encoding header of compressed requests.
+     *
+     * @return the content encoding
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Wrap the output stream of a request body. The body is compressed while it is written.
+     * The returned stream must be closed to finish compression and to update the metrics. The CPU time
+     * is measured on the calling thread from wrapping until closing, so the stream must not change threads.
+     *
+     * @param out the output stream of the request body
+     * @return the compressing output stream
+     * @throws IOException if the stream can not be created
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(out);
+        if (HttpHeaders.Values.GZIP.equals(encoding)) {
+            OutputStream compressed = new GZIPOutputStream(counter, 8192) {
+                {
+                    def.setLevel(level);
+                }
+            };
+            return new CompressingOutputStream(compressed, null, counter);
+        }
+        Deflater deflater = new Deflater(level);
+        return new CompressingOutputStream(new DeflaterOutputStream(counter, deflater, 8192), deflater, counter);
+    }
+
+    @Override
+    public Map<MetricName, Metric> getMetrics() {
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(MetricName.build("http", "client", "compression", "requests"), requests);
+        metrics.put(MetricName.build("http", "client", "compression", "bytes", "in"), uncompressedBytes);
+        metrics.put(MetricName.build("http", "client", "compression", "bytes", "out"), compressedBytes);
+        metrics.put(MetricName.build("http", "client", "compression", "cpu", "nanos"), cpuNanos);
+        metrics.put(MetricName.build("http", "client", "compression", "ratio"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                long out = compressedBytes.getCount();
+                return out > 0L ? (double) uncompressedBytes.getCount() / out : 0.0d;
+            }
+        });
+        return metrics;
+    }
+
+    private static long cpuTime() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ?
+                threadMXBean.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private class CompressingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private final Deflater deflater;
+
+        private final CountingOutputStream counter;
+
+        private final long start;
+
+        private long length;
+
+        private boolean closed;
+
+        CompressingOutputStream(OutputStream out, Deflater deflater, CountingOutputStream counter) {
+            this.out = out;
+            this.deflater = deflater;
+            this.counter = counter;
+            this.start = cpuTime();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            length += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.close();
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+            requests.inc();
+            uncompressedBytes.inc(length);
+            compressedBytes.inc(counter.count);
+            cpuNanos.inc(cpuTime() - start);
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
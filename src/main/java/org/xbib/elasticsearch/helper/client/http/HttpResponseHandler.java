@@ -0,0 +1,161 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.logging.ESLogger;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches HTTP responses to the invocation context of the channel.
+ *
+ * Aggregated responses are converted by the HTTP action on the I/O thread. Responses of streaming actions
+ * are converted on the given executor, while the content chunks are still arriving.
+ */
+class HttpResponseHandler<Request extends ActionRequest, Response extends ActionResponse> extends SimpleChannelUpstreamHandler {
+
+    private final ESLogger logger;
+
+    private final Map<Channel, HttpInvocationContext> contexts;
+
+    private final Executor executor;
+
+    private final long streamWatermark;
+
+    HttpResponseHandler(ESLogger logger, Map<Channel, HttpInvocationContext> contexts, Executor executor,
+                        long streamWatermark) {
+        this.logger = logger;
+        this.contexts = contexts;
+        this.executor = executor;
+        this.streamWatermark = streamWatermark;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        final HttpInvocationContext<Request, Response> httpInvocationContext = contexts.get(ctx.getChannel());
+        if (httpInvocationContext == null) {
+            throw new IllegalStateException("no context for channel?");
+        }
+        if (e.getMessage() instanceof HttpChunk) {
+            HttpChunkedInputStream inputStream = httpInvocationContext.getInputStream();
+            if (inputStream != null) {
+                HttpChunk chunk = (HttpChunk) e.getMessage();
+                inputStream.offer(chunk.getContent());
+                if (chunk.isLast()) {
+                    inputStream.finish();
+                    contexts.remove(ctx.getChannel());
+                    ctx.getChannel().close();
+                }
+            }
+            return;
+        }
+        if (!(e.getMessage() instanceof HttpResponse)) {
+            return;
+        }
+        final HttpResponse httpResponse = (HttpResponse) e.getMessage();
+        final HttpAction<Request, Response> action = httpInvocationContext.getHttpAction();
+        final ActionListener<Response> listener = httpInvocationContext.getListener();
+        httpInvocationContext.httpResponse = httpResponse;
+        if (listener instanceof HttpCircuitBreaker.Admission) {
+            ((HttpCircuitBreaker.Admission) listener).setStatus(httpResponse.getStatus().getCode());
+        }
+        if (action != null && action.isStreaming()) {
+            final HttpChunkedInputStream inputStream = new HttpChunkedInputStream(ctx.getChannel(), streamWatermark);
+            httpInvocationContext.setInputStream(inputStream);
+            if (!httpResponse.isChunked()) {
+                inputStream.offer(httpResponse.getContent());
+                inputStream.finish();
+                contexts.remove(ctx.getChannel());
+                ctx.getChannel().close();
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Response response = action.createResponse(httpInvocationContext);
+                        if (listener != null) {
+                            listener.onResponse(response);
+                        }
+                    } catch (Throwable t) {
+                        if (listener != null) {
+                            listener.onFailure(t);
+                        } else {
+                            logger.error(t.getMessage(), t);
+                        }
+                    } finally {
+                        try {
+                            inputStream.close();
+                        } catch (Exception e) {
+                            logger.warn(e.getMessage(), e);
+                        }
+                    }
+                }
+            });
+            return;
+        }
+        try {
+            if (listener != null && action != null) {
+                if (httpResponse.getContent().readable() || httpResponse.getStatus().getCode() >= 400) {
+                    Response response;
+                    try {
+                        response = action.createResponse(httpInvocationContext);
+                    } catch (Throwable t) {
+                        listener.onFailure(t);
+                        return;
+                    }
+                    listener.onResponse(response);
+                } else {
+                    listener.onFailure(new IllegalStateException("empty response, status " + httpResponse.getStatus()));
+                }
+            }
+        } finally {
+            contexts.remove(ctx.getChannel());
+            ctx.getChannel().close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        // a context that is still registered has not been completed, the listener must not wait forever
+        HttpInvocationContext<Request, Response> httpInvocationContext = contexts.remove(ctx.getChannel());
+        if (httpInvocationContext != null) {
+            if (httpInvocationContext.getInputStream() != null) {
+                httpInvocationContext.getInputStream().fail(new ClosedChannelException());
+            } else if (httpInvocationContext.getListener() != null) {
+                httpInvocationContext.getListener().onFailure(new ClosedChannelException());
+            }
+        }
+        super.channelClosed(ctx, e);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+        HttpInvocationContext<Request, Response> httpInvocationContext = contexts.remove(ctx.getChannel());
+        try {
+            if (httpInvocationContext != null && httpInvocationContext.getInputStream() != null) {
+                // the reader of the stream notifies the listener
+                httpInvocationContext.getInputStream().fail(e.getCause());
+            } else if (httpInvocationContext != null && httpInvocationContext.getListener() != null) {
+                httpInvocationContext.getListener().onFailure(e.getCause());
+            } else {
+                logger.error(e.getCause().getMessage(), e.getCause());
+            }
+        } finally {
+            ctx.getChannel().close();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.ClearScrollAction;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollAction;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lazy iterator over the hits of a scroll search.
+ *
+ * With the HTTP clients, hits are handed to the iterator while a page is still arriving. At most
+ * {@code bufferSize} hits are buffered, if the caller consumes slower, parsing and then reading from
+ * the connection are suspended. When a page has been received, the next page is already requested
+ * while the caller consumes the remaining hits. With other clients, the hits of a page are delivered
+ * after the page has been received. The scroll is cleared when the iterator is exhausted or closed.
+ */
+public class HttpScrollIterator implements Iterator<SearchHit>, Closeable {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(HttpScrollIterator.class.getName());
+
+    private final static Object END = new Object();
+
+    private final ElasticsearchClient client;
+
+    private final TimeValue keepAlive;
+
+    private final int bufferSize;
+
+    private Page page;
+
+    private SearchHit current;
+
+    private volatile String scrollId;
+
+    private volatile long totalHits = -1L;
+
+    private volatile boolean closed;
+
+    public HttpScrollIterator(ElasticsearchClient client, SearchRequest searchRequest, TimeValue keepAlive) {
+        this(client, searchRequest, keepAlive, 1000);
+    }
+
+    public HttpScrollIterator(ElasticsearchClient client, SearchRequest searchRequest, TimeValue keepAlive,
+                              int bufferSize) {
+        this.client = client;
+        this.keepAlive = keepAlive;
+        this.bufferSize = bufferSize;
+        // do not modify the request of the caller
+        SearchRequest request = new SearchRequest(searchRequest, searchRequest).scroll(keepAlive);
+        this.page = new Page(searchRequest.searchType() == SearchType.SCAN);
+        request.putInContext(HttpSearchHitListener.CONTEXT_KEY, page);
+        client.execute(SearchAction.INSTANCE, request, page);
+    }
+
+    /**
+     * The total number of hits, known after the first page has been received completely.
+     *
+     * @return the total hits or -1
+     */
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null) {
+            if (closed || page == null) {
+                return false;
+            }
+            Object o;
+            try {
+                o = page.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException("interrupted while waiting for hits");
+            }
+            if (o == END) {
+                Throwable failure = page.failure;
+                page = page.next;
+                if (failure != null) {
+                    close();
+                    throw ExceptionsHelper.convertToRuntime(failure instanceof Exception ?
+                            (Exception) failure : new RuntimeException(failure));
+                }
+                if (page == null) {
+                    close();
+                    return false;
+                }
+            } else {
+                page.permits.release();
+                current = (SearchHit) o;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public SearchHit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SearchHit hit = current;
+        current = null;
+        return hit;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current = null;
+        // wait for the pages in flight so the scroll ID is not cleared while a page is in flight
+        while (page != null) {
+            try {
+                while (page.queue.take() != END) {
+                    page.permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            page = page.next;
+        }
+        page = null;
+        if (scrollId != null) {
+            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+            clearScrollRequest.addScrollId(scrollId);
+            try {
+                client.execute(ClearScrollAction.INSTANCE, clearScrollRequest).actionGet();
+            } catch (Exception e) {
+                logger.warn("failed to clear scroll {}: {}", scrollId, e.getMessage());
+            }
+            scrollId = null;
+        }
+    }
+
+    /**
+     * A page of hits. Streamed hits take a permit of the buffer, the iterator returns the permit when
+     * it takes the hit. When the page is complete, the next page is requested before the end of the page
+     * is queued, so the iterator always finds the next page at the end of the current one.
+     */
+    private class Page implements HttpSearchHitListener, ActionListener<SearchResponse> {
+
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+        private final Semaphore permits = new Semaphore(bufferSize);
+
+        private final AtomicInteger streamed = new AtomicInteger();
+
+        // the first response of a scan search never carries hits
+        private final boolean scanStart;
+
+        private volatile Page next;
+
+        private volatile Throwable failure;
+
+        Page(boolean scanStart) {
+            this.scanStart = scanStart;
+        }
+
+        @Override
+        public void onHit(SearchHit hit) throws IOException {
+            try {
+                while (!permits.tryAcquire(100L, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            streamed.incrementAndGet();
+            if (!closed) {
+                queue.add(hit);
+            }
+        }
+
+        @Override
+        public void onResponse(SearchResponse response) {
+            try {
+                if (response.getScrollId() != null) {
+                    scrollId = response.getScrollId();
+                }
+                int count = streamed.get();
+                if (response.getHits() != null) {
+                    totalHits = response.getHits().getTotalHits();
+                    // clients that do not stream deliver the hits with the response
+                    for (SearchHit hit : response.getHits().getHits()) {
+                        if (!closed) {
+                            queue.add(hit);
+                        }
+                        count++;
+                    }
+                }
+                if ((count > 0 || scanStart) && !closed && scrollId != null) {
+                    Page page = new Page(false);
+                    SearchScrollRequest request = new SearchScrollRequest(scrollId).scroll(keepAlive);
+                    request.putInContext(HttpSearchHitListener.CONTEXT_KEY, page);
+                    client.execute(SearchScrollAction.INSTANCE, request, page);
+                    next = page;
+                }
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                queue.add(END);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            failure = e;
+            queue.add(END);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.search.SearchHit;
+
+import java.io.IOException;
+
+/**
+ * Receives the hits of a streamed search response one by one, while the response is parsed.
+ *
+ * A listener is attached to a search request by putting it in the request context under {@link #CONTEXT_KEY}.
+ * Hits that are passed to the listener are not collected in the search response.
+ */
+public interface HttpSearchHitListener {
+
+    String CONTEXT_KEY = HttpSearchHitListener.class.getName();
+
+    /**
+     * Called on the thread that parses the response. The listener may block to slow down parsing.
+     *
+     * @param hit the hit
+     * @throws IOException to abort parsing
+     */
+    void onHit(SearchHit hit) throws IOException;
+}
@@ -0,0 +1,82 @@
+package org.xbib.elasticsearch.helper.client.http;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+/**
+ * An error response of the cluster, carrying the HTTP status, and the delay requested by a
+ * {@code Retry-After} header, if present.
+ */
+public class HttpStatusException extends ElasticsearchException {
+
+    private final RestStatus status;
+
+    private final TimeValue retryAfter;
+
+    public HttpStatusException(RestStatus status, String msg) {
+        this(status, msg, null);
+    }
+
+    public HttpStatusException(RestStatus status, String msg, TimeValue retryAfter) {
+        super(msg);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Create an exception from an error response.
+     *
+     * @param httpResponse the HTTP response
+     * @param msg the message
+     * @return the exception
+     */
+    public static HttpStatusException from(HttpResponse httpResponse, String msg) {
+        return new HttpStatusException(toRestStatus(httpResponse.getStatus().getCode()), msg,
+                parseRetryAfter(httpResponse.headers().get(HttpHeaders.Names.RETRY_AFTER)));
+    }
+
+    /**
+     * Map a HTTP status code to a REST status.
+     *
+     * @param code the status code
+     * @return the REST status, or internal server error if the code is unknown
+     */
+    public static RestStatus toRestStatus(int code) {
+        for (RestStatus status : RestStatus.values()) {
+            if (status.getStatus() == code) {
+                return status;
+            }
+        }
+        return RestStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    @Override
+    public RestStatus status() {
+        return status;
+    }
+
+    /**
+     * The delay requested by the cluster before the request is retried.
+     *
+     * @return the delay, or null if the response had no {@code Retry-After} header in seconds
+     */
+    public TimeValue getRetryAfter() {
+        return retryAfter;
+    }
+
+    private static TimeValue parseRetryAfter(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds >= 0 ? TimeValue.timeValueSeconds(seconds) : null;
+        } catch (NumberFormatException e) {
+            // HTTP dates are not supported
+            return null;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.xbib.elasticsearch.helper.network;
+
+import com.google.common.net.InetAddresses;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of host name resolutions, so name lookups on the request path do not block.
+ *
+ * The first lookup of a host name resolves it synchronously. After that, lookups are answered from the cache.
+ * A background thread resolves all cached host names again when their time to live has passed. If a
+ * resolution fails, the previous addresses are kept. If the addresses of a host name have changed,
+ * the registered listeners are notified, from the background thread.
+ *
+ * IP address literals are never cached, they are converted without a lookup.
+ *
+ * Clients share one cache per time to live, which is configured by {@code client.dns_cache.ttl}.
+ */
+public class DnsCache {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(DnsCache.class.getName());
+
+    public static final String TTL = "client.dns_cache.ttl";
+
+    private static final TimeValue DEFAULT_TTL = TimeValue.timeValueSeconds(60);
+
+    private static final ConcurrentMap<Long, DnsCache> instances = new ConcurrentHashMap<>();
+
+    /**
+     * Receives address changes of cached host names.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the addresses of a host name have changed.
+         *
+         * @param host the host name
+         * @param oldAddresses the previous addresses
+         * @param newAddresses the current addresses
+         */
+        void onChange(String host, InetAddress[] oldAddresses, InetAddress[] newAddresses);
+    }
+
+    private final long ttlNanos;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public DnsCache(TimeValue ttl) {
+        this.ttlNanos = ttl.nanos();
+    }
+
+    /**
+     * The cache shared in this JVM with the default time to live of 60 seconds.
+     *
+     * @return the shared cache
+     */
+    public static DnsCache getInstance() {
+        return getInstance(DEFAULT_TTL);
+    }
+
+    /**
+     * The cache shared by all clients in this JVM with the time to live of the client settings.
+     *
+     * @param settings the client settings
+     * @return the shared cache
+     */
+    public static DnsCache getInstance(Settings settings) {
+        return getInstance(settings.getAsTime(TTL, DEFAULT_TTL));
+    }
+
+    private static DnsCache getInstance(TimeValue ttl) {
+        DnsCache dnsCache = instances.get(ttl.nanos());
+        if (dnsCache == null) {
+            dnsCache = new DnsCache(ttl);
+            DnsCache previous = instances.putIfAbsent(ttl.nanos(), dnsCache);
+            if (previous != null) {
+                dnsCache = previous;
+            }
+        }
+        return dnsCache;
+    }
+
+    public TimeValue getTtl() {
+        return TimeValue.timeValueNanos(ttlNanos);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Resolve a host name to its addresses.
+     *
+     * @param host the host name or IP address literal
+     * @return the addresses, never empty
+     * @throws UnknownHostException if the host name is not cached and can not be resolved
+     */
+    public InetAddress[] resolveAll(String host) throws UnknownHostException {
+        if (host == null || InetAddresses.isInetAddress(host)) {
+            return InetAddress.getAllByName(host);
+        }
+        Entry entry = entries.get(host);
+        if (entry != null) {
+            return entry.addresses.clone();
+        }
+        InetAddress[] addresses = lookup(host);
+        entries.put(host, new Entry(addresses, System.nanoTime()));
+        startRefresh();
+        return addresses;
+    }
+
+    /**
+     * Resolve a host name to its first address.
+     *
+     * @param host the host name or IP address literal
+     * @return the address
+     * @throws UnknownHostException if the host name is not cached and can not be resolved
+     */
+    public InetAddress resolve(String host) throws UnknownHostException {
+        return resolveAll(host)[0];
+    }
+
+    private synchronized void startRefresh() {
+        if (scheduler != null) {
+            return;
+        }
+        long intervalNanos = Math.max(TimeUnit.SECONDS.toNanos(1), ttlNanos / 4);
+        scheduler = Executors.newSingleThreadScheduledExecutor(EsExecutors.daemonThreadFactory("dns_cache"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void refresh() {
+        refresh(System.nanoTime());
+    }
+
+    void refresh(long now) {
+        for (Map.Entry<String, Entry> me : entries.entrySet()) {
+            String host = me.getKey();
+            Entry entry = me.getValue();
+            if (now - entry.resolvedNanos < ttlNanos) {
+                continue;
+            }
+            InetAddress[] addresses;
+            try {
+                addresses = lookup(host);
+            } catch (Throwable t) {
+                logger.warn("failed to resolve {}, keeping {}", host, Arrays.toString(entry.addresses));
+                continue;
+            }
+            entries.put(host, new Entry(addresses, now));
+            if (!sameAddresses(entry.addresses, addresses)) {
+                logger.info("addresses of {} changed from {} to {}", host,
+                        Arrays.toString(entry.addresses), Arrays.toString(addresses));
+                for (Listener listener : listeners) {
+                    try {
+                        listener.onChange(host, entry.addresses, addresses);
+                    } catch (Throwable t) {
+                        logger.warn("address change listener failed", t);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Look up the addresses of a host name.
+     *
+     * @param host the host name
+     * @return the addresses
+     * @throws UnknownHostException if the host name can not be resolved
+     */
+    protected InetAddress[] lookup(String host) throws UnknownHostException {
+        return InetAddress.getAllByName(host);
+    }
+
+    /**
+     * Compare two address lists. The order of the records may change between lookups, which does not count
+     * as a change.
+     */
+    private static boolean sameAddresses(InetAddress[] a, InetAddress[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        String[] left = new String[a.length];
+        String[] right = new String[b.length];
+        for (int i = 0; i < a.length; i++) {
+            left[i] = a[i].getHostAddress();
+            right[i] = b[i].getHostAddress();
+        }
+        Arrays.sort(left);
+        Arrays.sort(right);
+        return Arrays.equals(left, right);
+    }
+
+    private static class Entry {
+
+        private final InetAddress[] addresses;
+
+        private final long resolvedNanos;
+
+        Entry(InetAddress[] addresses, long resolvedNanos) {
+            this.addresses = addresses;
+            this.resolvedNanos = resolvedNanos;
+        }
+    }
+}
@@ -169,6 +169,20 @@ public abstract class NetworkUtils {
     }
 
     public static InetAddress resolveInetAddress(String host, String defaultValue) throws IOException {
+        return resolveInetAddress(host, defaultValue, DnsCache.getInstance());
+    }
+
+    /**
+     * Resolve a host, a network interface or a special name like {@code _local_}. Host names are resolved
+     * by the given DNS cache, so its listeners receive the address changes of the host.
+     *
+     * @param host the host
+     * @param defaultValue the host to use if host is null
+     * @param dnsCache the DNS cache for host names
+     * @return the address
+     * @throws IOException if the host can not be resolved
+     */
+    public static InetAddress resolveInetAddress(String host, String defaultValue, DnsCache dnsCache) throws IOException {
         if (host == null) {
             host = defaultValue;
         }
@@ -213,7 +227,7 @@ public abstract class NetworkUtils {
             }
             throw new IOException("failed to find network interface for [" + origHost + "]");
         }
-        return InetAddress.getByName(host);
+        return dnsCache.resolve(host);
     }
 
     private static List<NetworkInterface> getNetworkInterfaces() throws SocketException {
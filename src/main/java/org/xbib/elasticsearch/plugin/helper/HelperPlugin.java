@@ -16,14 +16,24 @@
 package org.xbib.elasticsearch.plugin.helper;
 
 import org.elasticsearch.action.ActionModule;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.rest.RestModule;
 import org.xbib.elasticsearch.action.ingest.IngestAction;
 import org.xbib.elasticsearch.action.ingest.TransportIngestAction;
 import org.xbib.elasticsearch.rest.action.ingest.RestIngestAction;
+import org.xbib.elasticsearch.rest.action.ingest.RestIngestReplicaLagAction;
 
 public class HelperPlugin extends Plugin {
 
+    private final Settings settings;
+
+    public HelperPlugin(Settings settings) {
+        this.settings = settings;
+    }
+
     @Override
     public String name() {
         return "helper";
@@ -35,11 +45,32 @@ public class HelperPlugin extends Plugin {
     }
 
 
+    /**
+     * Register the fixed size {@code ingest} thread pool with a bounded queue. Size and queue size can be
+     * changed by {@code threadpool.ingest.size} and {@code threadpool.ingest.queue_size}. Queue size and
+     * rejections are reported in the thread pool section of the node stats.
+     *
+     * @return the thread pool settings
+     */
+    @Override
+    public Settings additionalSettings() {
+        if ("transport".equals(settings.get(Client.CLIENT_TYPE_SETTING))) {
+            return Settings.EMPTY;
+        }
+        String prefix = "threadpool." + IngestAction.EXECUTOR + ".";
+        return Settings.settingsBuilder()
+                .put(prefix + "type", "fixed")
+                .put(prefix + "size", EsExecutors.boundedNumberOfProcessors(settings))
+                .put(prefix + "queue_size", 200)
+                .build();
+    }
+
     public void onModule(ActionModule module) {
         module.registerAction(IngestAction.INSTANCE, TransportIngestAction.class);
     }
 
     public void onModule(RestModule module) {
         module.addRestAction(RestIngestAction.class);
+        module.addRestAction(RestIngestReplicaLagAction.class);
     }
 }
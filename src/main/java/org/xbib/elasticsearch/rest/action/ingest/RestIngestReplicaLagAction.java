@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 Jörg Prante
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xbib.elasticsearch.rest.action.ingest;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.xbib.elasticsearch.action.ingest.TransportIngestAction;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestStatus.OK;
+
+/**
+ * Shows the lag of the replica operations which this node executes in the background
+ * for ingest requests with the {@code async_replica} consistency.
+ *
+ * <pre>
+ * curl 'localhost:9200/_ingest/replica_lag?pretty'
+ * </pre>
+ */
+public class RestIngestReplicaLagAction extends BaseRestHandler {
+
+    private final TransportIngestAction ingestAction;
+
+    @Inject
+    public RestIngestReplicaLagAction(Settings settings, RestController controller, Client client,
+                                      TransportIngestAction ingestAction) {
+        super(settings, controller, client);
+        this.ingestAction = ingestAction;
+        controller.registerHandler(GET, "/_ingest/replica_lag", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) throws Exception {
+        XContentBuilder builder = channel.newBuilder();
+        builder.startObject();
+        ingestAction.replicaLag().toXContent(builder, request);
+        builder.endObject();
+        channel.sendResponse(new BytesRestResponse(OK, builder));
+    }
+}